@@ -0,0 +1,8 @@
+-- 复制账号，不写入 binlog，从库上不会重复创建
+SET SQL_LOG_BIN = 0;
+CREATE USER 'repl'@'%' IDENTIFIED BY 'repl@123';
+GRANT REPLICATION SLAVE ON *.* TO 'repl'@'%';
+SET SQL_LOG_BIN = 1;
+
+-- 业务库写入 binlog，复制到从库
+CREATE DATABASE IF NOT EXISTS payment_demo DEFAULT CHARSET utf8mb4;
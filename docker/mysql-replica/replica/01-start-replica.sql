@@ -0,0 +1,13 @@
+-- 按 GTID 自动定位，从主库的第一个事务开始复制（包括 payment_demo 库的创建）
+CHANGE REPLICATION SOURCE TO
+    SOURCE_HOST = 'mysql-primary',
+    SOURCE_PORT = 3306,
+    SOURCE_USER = 'repl',
+    SOURCE_PASSWORD = 'repl@123',
+    SOURCE_AUTO_POSITION = 1,
+    GET_SOURCE_PUBLIC_KEY = 1;
+START REPLICA;
+
+-- 初始化完成后只读，复制线程不受影响；SET PERSIST 在重启后仍然生效
+SET PERSIST read_only = ON;
+SET PERSIST super_read_only = ON;
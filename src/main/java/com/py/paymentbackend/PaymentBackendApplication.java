@@ -2,9 +2,14 @@ package com.py.paymentbackend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
-@SpringBootApplication
+/**
+ * 数据源由 DataSourceConfig 定义（主库、从库、读写路由三个 DataSource），
+ * 不使用 DataSourceAutoConfiguration：它的 schema.sql 初始化器会在主库创建时去取 @Primary 数据源，形成循环依赖；表结构由 Flyway 管理
+ */
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
 @EnableScheduling
 public class PaymentBackendApplication {
 
@@ -0,0 +1,114 @@
+package com.py.paymentbackend.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.py.paymentbackend.entity.OrderInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.BeanUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * 按订单号缓存订单，回调、查状态、退款时同一笔订单不用反复查库
+ *   1.读：未命中时查库并放入缓存，同一订单同时只有一个线程查库；读写事务中的读不放入缓存，避免缓存未提交的数据，
+ *     只读事务看不到未提交的数据，照常放入
+ *   2.写：修改前先清除，事务提交后再把新值写回缓存；回滚时缓存中只会留下已提交的数据
+ *   3.多节点部署时其他节点的修改靠过期时间兜底；订单状态都是带条件更新的，读到旧状态也不会重复处理；
+ *     给前端看的订单状态（OrderInfoService.getOrderStatus）不走缓存
+ * 缓存中存的是副本，取出时也返回副本，调用方可以随意修改
+ * 命中率、淘汰次数通过 cache.gets、cache.evictions 等指标查看（tag cache=order）
+ */
+public class OrderCache {
+
+    private final Cache<String, OrderInfo> orders;
+
+    public OrderCache(long maximumSize, Duration expireAfterWrite, MeterRegistry meterRegistry) {
+        this.orders = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, orders, "order");
+    }
+
+    /**
+     * @param loader 未命中时按订单号查库，订单不存在时返回null（不缓存）
+     */
+    public OrderInfo get(String orderNo, Function<String, OrderInfo> loader) {
+        OrderInfo orderInfo;
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            orderInfo = orders.getIfPresent(orderNo);
+            if (orderInfo == null) {
+                return loader.apply(orderNo);
+            }
+        } else {
+            orderInfo = orders.get(orderNo, loader);
+        }
+        return copy(orderInfo);
+    }
+
+    /**
+     * 新建的订单，事务提交后调用
+     */
+    public void put(OrderInfo orderInfo) {
+        orders.put(orderInfo.getOrderNo(), copy(orderInfo));
+    }
+
+    /**
+     * 修改订单前调用
+     * @return 清除前缓存中的订单，没有时为null
+     */
+    public OrderInfo evict(String orderNo) {
+        return orders.asMap().remove(orderNo);
+    }
+
+    public void evictAll(Collection<String> orderNos) {
+        orders.invalidateAll(orderNos);
+    }
+
+    /**
+     * 订单状态由expect改为update的事务提交后调用
+     * @param previous evict 返回的订单
+     */
+    public void statusChanged(String orderNo, OrderInfo previous, String expect, String update) {
+        orders.asMap().compute(orderNo, (key, current) -> {
+            // 提交前有其他线程把旧数据读进了缓存，改成新状态
+            OrderInfo base = current != null ? current : previous;
+            if (base == null || update.equals(base.getOrderStatus())) {
+                return base;
+            }
+            if (!expect.equals(base.getOrderStatus())) {
+                // 期间被改成了其他状态，不知道哪个更新，下次查库
+                return null;
+            }
+            OrderInfo changed = copy(base);
+            changed.setOrderStatus(update);
+            return changed;
+        });
+    }
+
+    /**
+     * 二维码链接保存后调用，只更新已缓存的订单
+     */
+    public void codeUrlChanged(String orderNo, String codeUrl) {
+        orders.asMap().computeIfPresent(orderNo, (key, current) -> {
+            OrderInfo changed = copy(current);
+            changed.setCodeUrl(codeUrl);
+            return changed;
+        });
+    }
+
+    private static OrderInfo copy(OrderInfo orderInfo) {
+        if (orderInfo == null) {
+            return null;
+        }
+        OrderInfo copy = new OrderInfo();
+        BeanUtils.copyProperties(orderInfo, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,97 @@
+package com.py.paymentbackend.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.py.paymentbackend.entity.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 商品目录的本地缓存，下单时按id取商品、商品列表页取全部商品都走这里
+ *   1.启动时预热：一次查出全部商品，放入两个缓存
+ *   2.未命中时由 Caffeine 加载，同一个key同时只有一个线程查库，其他线程等它的结果
+ *   3.商品修改后调用 invalidate 清除；多节点部署时其他节点靠过期时间兜底
+ * 命中率、加载耗时通过 cache.gets、cache.load.duration 等指标查看（tag cache=product/productList）
+ * 返回的商品对象是缓存中的同一个实例，调用方不要修改
+ */
+@Slf4j
+public class ProductCatalog {
+
+    private static final String ALL = "all";
+
+    private final LoadingCache<Long, Product> products;
+
+    private final LoadingCache<String, List<Product>> productList;
+
+    private final Supplier<List<Product>> allLoader;
+
+    /**
+     * @param loader 按id查商品
+     * @param allLoader 查全部商品
+     * @param maximumSize 按id缓存的最大商品数
+     * @param expireAfterWrite 写入后多久过期
+     */
+    public ProductCatalog(Function<Long, Product> loader, Supplier<List<Product>> allLoader,
+                          long maximumSize, Duration expireAfterWrite, MeterRegistry meterRegistry) {
+        this.allLoader = allLoader;
+        this.products = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(loader::apply);
+        this.productList = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(key -> Collections.unmodifiableList(allLoader.get()));
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "product");
+        CaffeineCacheMetrics.monitor(meterRegistry, productList, "productList");
+    }
+
+    /**
+     * 预热，启动时调用
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        List<Product> all = Collections.unmodifiableList(allLoader.get());
+        for (Product product : all) {
+            products.put(Long.valueOf(product.getId()), product);
+        }
+        productList.put(ALL, all);
+        log.info("商品缓存预热完成，商品数:{}，耗时{}ms", all.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return 商品，不存在时返回null（不缓存，下次仍会查库）
+     */
+    public Product get(Long productId) {
+        return products.get(productId);
+    }
+
+    public List<Product> list() {
+        return productList.get(ALL);
+    }
+
+    /**
+     * 商品修改、删除后调用，列表一并清除
+     */
+    public void invalidate(Long productId) {
+        products.invalidate(productId);
+        productList.invalidateAll();
+    }
+
+    /**
+     * 批量修改或按条件修改时，不知道改了哪些商品，全部清除
+     */
+    public void invalidateAll() {
+        products.invalidateAll();
+        productList.invalidateAll();
+    }
+}
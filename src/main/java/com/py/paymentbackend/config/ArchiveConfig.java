@@ -0,0 +1,40 @@
+package com.py.paymentbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 冷数据归档：已结束的订单超过保留月数后搬到归档表，热表只保留最近的数据
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.archive")
+public class ArchiveConfig {
+
+    /**
+     * 是否开启
+     */
+    private boolean enabled = true;
+
+    /**
+     * 创建超过多少个月的已结束订单归档
+     * 归档后的订单不能再退款，要大于支付平台允许退款的期限（微信、支付宝都是一年）
+     */
+    private int afterMonths = 13;
+
+    /**
+     * 每批搬运的订单数，每批一个短事务，只锁住这一批订单
+     */
+    private int batchSize = 500;
+
+    /**
+     * 两批之间的间隔，毫秒，给复制和业务写入留出空隙
+     */
+    private long pauseMillis = 200;
+
+    /**
+     * 每次执行的时间预算，超出后剩下的留到第二天
+     */
+    private long timeBudgetMillis = 60 * 60 * 1000L;
+}
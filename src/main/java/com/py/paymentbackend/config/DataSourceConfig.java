@@ -0,0 +1,112 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.datasource.RecentWrites;
+import com.py.paymentbackend.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离数据源：spring.datasource 是主库，payment.datasource.replicas 是从库
+ * 没有配置从库时全部走主库，和单库部署一样
+ * Flyway 迁移固定在主库上执行
+ */
+@Data
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+@ConfigurationProperties(prefix = "payment.datasource")
+public class DataSourceConfig {
+
+    /**
+     * 从库列表，用户名、密码不填时与主库相同
+     */
+    private List<ReplicaProperties> replicas = new ArrayList<>();
+
+    /**
+     * 允许的最大从库延迟，毫秒；超过后这个从库不再承担读请求，直到追上
+     */
+    private long maxLagMillis = 1500;
+
+    /**
+     * 写过的订单号在多长时间内只读主库，毫秒；要大于 maxLagMillis
+     */
+    private long stickyMillis = 5000;
+
+    /**
+     * 最多记录多少个最近写过的订单号
+     */
+    private long stickyMaximumSize = 100000;
+
+    @Data
+    public static class ReplicaProperties {
+
+        private String name;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        private int maximumPoolSize = 10;
+    }
+
+    @Bean(destroyMethod = "close")
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+                                                      DataSourceProperties properties,
+                                                      MeterRegistry meterRegistry) {
+        List<ReplicaRoutingDataSource.Replica> list = new ArrayList<>(replicas.size());
+        for (ReplicaProperties replica : replicas) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + replica.getName());
+            dataSource.setDriverClassName(properties.determineDriverClassName());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.determineUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.determinePassword());
+            dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            // 启动时从库不可用不影响应用启动，只读查询先走主库
+            dataSource.setInitializationFailTimeout(-1);
+            dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            list.add(new ReplicaRoutingDataSource.Replica(replica.getName(), dataSource));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, list, maxLagMillis, meterRegistry);
+    }
+
+    /**
+     * 应用使用的数据源：事务开始时不取连接，等到第一条语句时再按事务是否只读选择主库或从库
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public RecentWrites recentWrites() {
+        return new RecentWrites(Duration.ofMillis(stickyMillis), stickyMaximumSize);
+    }
+}
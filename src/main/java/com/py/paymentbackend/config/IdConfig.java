@@ -0,0 +1,33 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.util.OrderNoUtils;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 订单号、退款单号生成器
+ */
+@Slf4j
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.id")
+public class IdConfig {
+
+    /**
+     * 节点id，0 ~ 1023，多节点部署时每个节点必须不同；不配置时按进程名散列，不保证不重复
+     */
+    private Long nodeId;
+
+    @PostConstruct
+    public void init() {
+        if (nodeId == null) {
+            log.warn("没有配置 payment.id.node-id，多节点部署时订单号可能重复");
+            return;
+        }
+        OrderNoUtils.setNodeId(nodeId);
+    }
+}
@@ -0,0 +1,36 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.util.StripedLock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.annotation.Resource;
+
+/**
+ * 支付、退款回调共用的订单分段锁
+ */
+@Configuration
+public class LockConfig {
+
+    @Resource
+    private Environment env;
+
+    @Bean(name = "orderLock")
+    public StripedLock orderLock(MeterRegistry meterRegistry) {
+        StripedLock orderLock = new StripedLock(env.getProperty("payment.lock.stripes", Integer.class, 1024));
+        // 加锁次数和竞争次数，通过 /actuator/metrics 查看
+        FunctionCounter.builder("payment.order.lock.acquired", orderLock, StripedLock::getAcquiredCount)
+                .description("订单锁加锁次数")
+                .register(meterRegistry);
+        FunctionCounter.builder("payment.order.lock.contended", orderLock, StripedLock::getContendedCount)
+                .description("订单锁发生等待的次数")
+                .register(meterRegistry);
+        Gauge.builder("payment.order.lock.stripes", orderLock, StripedLock::getStripes)
+                .register(meterRegistry);
+        return orderLock;
+    }
+}
@@ -0,0 +1,64 @@
+package com.py.paymentbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回调收件箱：回调验签后先落库并立即应答，再由后台线程池处理
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.notify-inbox")
+public class NotifyInboxConfig {
+
+    /**
+     * 是否开启；默认关闭，回调在请求线程中同步处理，需要时在配置中开启
+     */
+    private boolean enabled = false;
+
+    /**
+     * 处理线程数
+     */
+    private int workers = 8;
+
+    /**
+     * 每次领取的通知条数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 领取后的租约时长，处理线程挂掉时过期后由其他线程重新领取
+     */
+    private long leaseMillis = 5 * 60 * 1000L;
+
+    /**
+     * 最大重试次数，超过后标记为失败
+     */
+    private int maxRetries = 10;
+
+    /**
+     * 第一次重试的间隔，之后每次翻倍
+     */
+    private long retryBaseMillis = 5000L;
+
+    /**
+     * 积压数、最早等待时间这两个指标的刷新间隔，采集时读缓存的值，不查库
+     */
+    private long metricsIntervalMillis = 15000L;
+
+    @Bean(name = "notifyExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor notifyExecutor() {
+        // 队列和批大小一致，一批任务都能放下；万一放不下由拉取线程自己执行，不丢任务
+        return new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(batchSize),
+                new CustomizableThreadFactory("notify-inbox-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
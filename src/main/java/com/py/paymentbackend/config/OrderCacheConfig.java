@@ -0,0 +1,34 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.cache.OrderCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 订单缓存
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.order-cache")
+public class OrderCacheConfig {
+
+    /**
+     * 最多缓存的订单数，超过后按访问频率淘汰
+     */
+    private long maximumSize = 100000;
+
+    /**
+     * 写入后的过期时间；一笔支付的回调、查询、退款基本在几分钟内完成
+     */
+    private long expireAfterWriteSeconds = 600;
+
+    @Bean
+    public OrderCache orderCache(MeterRegistry meterRegistry) {
+        return new OrderCache(maximumSize, Duration.ofSeconds(expireAfterWriteSeconds), meterRegistry);
+    }
+}
@@ -0,0 +1,29 @@
+package com.py.paymentbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 支付平台原始报文的保留期，过期的报文由 PayloadRetentionTask 分批删除
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.payload")
+public class PayloadConfig {
+
+    /**
+     * 报文保留天数，0 表示永久保留
+     */
+    private int retentionDays = 180;
+
+    /**
+     * 每次删除的条数，每批一个短事务
+     */
+    private int purgeBatchSize = 1000;
+
+    /**
+     * 两批之间的间隔，毫秒，给复制和其他写入留出空隙
+     */
+    private long purgePauseMillis = 100;
+}
@@ -0,0 +1,99 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.entity.PaymentInfo;
+import com.py.paymentbackend.entity.RawPayload;
+import com.py.paymentbackend.enums.PayloadType;
+import com.py.paymentbackend.mapper.PaymentInfoMapper;
+import com.py.paymentbackend.mapper.RawPayloadMapper;
+import com.py.paymentbackend.service.RawPayloadService;
+import com.py.paymentbackend.util.GroupCommitBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 支付记录批量写入：回调中的 t_payment_info 插入由后台线程攒批，在一个事务中写入、一次提交
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.payment-batch")
+public class PaymentBatchConfig {
+
+    /**
+     * 是否开启；关闭时在回调线程中逐条插入
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每批最多条数
+     */
+    private int maxBatchSize = 200;
+
+    /**
+     * 第一条最多等待多久凑批，毫秒；并发低时每条最多多等这么久
+     */
+    private long maxDelayMillis = 2;
+
+    /**
+     * 等待写入的队列长度，满了之后回调线程阻塞
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 回调线程等待这一批提交的最长时间，超时按失败处理，由支付平台重发通知
+     */
+    private long commitTimeoutMillis = 5000;
+
+    @Bean(destroyMethod = "shutdown")
+    public GroupCommitBuffer<PaymentInfo, Boolean> paymentInfoBuffer(PaymentInfoMapper paymentInfoMapper,
+                                                                     RawPayloadMapper rawPayloadMapper,
+                                                                     PlatformTransactionManager transactionManager,
+                                                                     MeterRegistry meterRegistry) {
+        // 批次在自己的事务中提交，不加入回调线程的事务
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return new GroupCommitBuffer<>("payment_info", maxBatchSize, maxDelayMillis, queueCapacity, commitTimeoutMillis,
+                batch -> transactionTemplate.execute(status -> insertBatch(paymentInfoMapper, rawPayloadMapper, batch)),
+                meterRegistry);
+    }
+
+    /**
+     * 在这一批的事务中逐条 INSERT IGNORE，每条的影响行数就是它是否新记录：
+     * 同一批中重复的交易号只有第一条是1，其他节点同时插入同一交易号时唯一索引保证只有一个节点拿到1
+     * 单条记录本身的数据错误（DataIntegrityViolationException）只让这一条失败，失败的语句自己回滚，同一批的其他记录照常提交；
+     * 死锁、连接断开等会回滚整个事务的错误直接抛出，整批失败
+     * 新记录的通知原文压缩后写入 t_raw_payload，整批一条多行INSERT
+     */
+    static List<GroupCommitBuffer.Result<Boolean>> insertBatch(PaymentInfoMapper paymentInfoMapper,
+                                                              RawPayloadMapper rawPayloadMapper,
+                                                              List<PaymentInfo> batch) {
+        List<GroupCommitBuffer.Result<Boolean>> results = new ArrayList<>(batch.size());
+        List<RawPayload> payloads = new ArrayList<>(batch.size());
+        for (PaymentInfo paymentInfo : batch) {
+            boolean isNew;
+            try {
+                isNew = paymentInfoMapper.insertIfAbsent(paymentInfo) > 0;
+            } catch (DataIntegrityViolationException e) {
+                results.add(GroupCommitBuffer.Result.failed(e));
+                continue;
+            }
+            results.add(GroupCommitBuffer.Result.ok(isNew));
+            if (isNew && paymentInfo.getTransactionId() != null && paymentInfo.getContent() != null) {
+                payloads.add(RawPayloadService.compress(PayloadType.PAYMENT, paymentInfo.getTransactionId(), paymentInfo.getContent()));
+            }
+        }
+        if (!payloads.isEmpty()) {
+            rawPayloadMapper.upsertBatch(payloads);
+        }
+        return results;
+    }
+}
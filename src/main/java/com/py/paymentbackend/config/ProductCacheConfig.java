@@ -0,0 +1,39 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.cache.ProductCatalog;
+import com.py.paymentbackend.datasource.ReadRouting;
+import com.py.paymentbackend.mapper.ProductMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 商品目录缓存
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.product-cache")
+public class ProductCacheConfig {
+
+    /**
+     * 按id缓存的最大商品数
+     */
+    private long maximumSize = 10000;
+
+    /**
+     * 写入后的过期时间；本节点修改商品会立即清除，这个时间是其他节点修改后本节点最长的不一致时间
+     */
+    private long expireAfterWriteSeconds = 300;
+
+    @Bean
+    public ProductCatalog productCatalog(ProductMapper productMapper, MeterRegistry meterRegistry) {
+        // 商品很少修改，缓存本身已经允许几分钟的不一致，未命中时读从库
+        return new ProductCatalog(id -> ReadRouting.onReplica(() -> productMapper.selectById(id)),
+                () -> ReadRouting.onReplica(() -> productMapper.selectList(null)),
+                maximumSize, Duration.ofSeconds(expireAfterWriteSeconds), meterRegistry);
+    }
+}
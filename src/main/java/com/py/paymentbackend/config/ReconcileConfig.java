@@ -0,0 +1,56 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.reconcile.ReconcileEngine;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 账单对账：账单和本地记录分区后在线程池中并行排序、合并
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.reconcile")
+public class ReconcileConfig {
+
+    /**
+     * 支付宝账单、对账报告和临时文件的目录
+     */
+    private String workDir = "reconcile";
+
+    /**
+     * 分区数
+     */
+    private int partitions = 16;
+
+    /**
+     * 外部排序时内存中一次排序的行数，单线程内存占用大约为 chunkSize * 100 字节
+     */
+    private int chunkSize = 100000;
+
+    /**
+     * 并行处理分区的线程数，默认为CPU核数
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Bean(name = "reconcileExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor reconcileExecutor() {
+        // 队列放得下一次对账的全部分区；同时有多次对账放不下时由调用线程自己处理
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(partitions),
+                new CustomizableThreadFactory("reconcile-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ReconcileEngine reconcileEngine() {
+        return new ReconcileEngine(Paths.get(workDir), partitions, chunkSize, reconcileExecutor());
+    }
+}
@@ -0,0 +1,63 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.task.ReconcileSweeper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 超时订单、退款单核实任务：分页读取，查单请求并行发出，本地状态批量回写
+ * 多个节点按订单号分片，每个节点只核实分给自己的分片
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "payment.sweep")
+public class SweepConfig {
+
+    /**
+     * 同时向支付端发出的查单请求数，微信、支付宝的任务共用
+     */
+    private int concurrency = 16;
+
+    /**
+     * 每页读取的记录数，也是批量回写的最大条数
+     */
+    private int pageSize = 200;
+
+    /**
+     * 每次执行的时间预算，要小于任务间隔（30秒），超出后剩下的留到下一次
+     */
+    private long timeBudgetMillis = 25000L;
+
+    /**
+     * 节点标识，多个节点之间不能重复，默认为 进程号@主机名
+     */
+    private String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    /**
+     * 超过这么久没有心跳的节点视为下线，它的分片由其他节点接管；要比心跳间隔大几倍
+     */
+    private long nodeTtlMillis = 15000L;
+
+    @Bean(name = "sweepExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor sweepExecutor() {
+        // 队列能放下一页；两个任务同时提交放不下时由任务线程自己执行，相当于限流
+        return new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(pageSize),
+                new CustomizableThreadFactory("sweep-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ReconcileSweeper reconcileSweeper(MeterRegistry meterRegistry) {
+        return new ReconcileSweeper(sweepExecutor(), pageSize, timeBudgetMillis, meterRegistry);
+    }
+}
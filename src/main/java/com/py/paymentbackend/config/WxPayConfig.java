@@ -4,18 +4,26 @@
  */
 package com.py.paymentbackend.config;
 
+import com.py.paymentbackend.util.AesGcmDecryptor;
+import com.py.paymentbackend.util.HttpClientUtils;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.auth.PrivateKeySigner;
 import com.wechat.pay.contrib.apache.httpclient.auth.ScheduledUpdateCertificatesVerifier;
+import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
 import com.wechat.pay.contrib.apache.httpclient.auth.WechatPay2Credentials;
 import com.wechat.pay.contrib.apache.httpclient.auth.WechatPay2Validator;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.ssl.SSLContexts;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
 
 import java.io.FileInputStream;
@@ -46,6 +54,37 @@ public class WxPayConfig {
 
     private String partnerKey;
 
+    /**
+     * 客户端连接池最大连接数，APIv2 客户端和 APIv3 的 wxPayClient 共用
+     */
+    private int httpMaxTotal = 200;
+
+    /**
+     * 客户端每个目标地址最大连接数，只访问微信一个域名，一般与最大连接数一致
+     */
+    private int httpMaxPerRoute = 200;
+
+    /**
+     * 客户端建立连接、从连接池取连接的超时，毫秒，APIv2 客户端和 APIv3 的 wxPayClient 共用
+     */
+    private int httpConnectTimeout = 2000;
+
+    /**
+     * 客户端读超时，毫秒，APIv2 客户端和 APIv3 的 wxPayClient 共用
+     * 加上连接超时要远小于 RefundIntentTask 重新提交退款的1分钟，否则卡住的请求还没返回，退款单就被重新提交
+     */
+    private int httpReadTimeout = 5000;
+
+    /**
+     * 下载的账单文件保存目录
+     */
+    private String billDir = "bills";
+
+    /**
+     * 下载账单时是否请求 GZIP 压缩包，边下载边解压
+     */
+    private boolean billGzip = true;
+
     /**
      * 获取商户私钥
      * https://github.com/wechatpay-apiv3/wechatpay-apache-httpclient
@@ -69,8 +108,10 @@ public class WxPayConfig {
      * https://github.com/wechatpay-apiv3/wechatpay-apache-httpclient 有定时更新平台证书功能
      * 平台证书：平台证书封装了微信的公钥，商户可以使用平台证书中的公钥进行验签。
      * 签名验证器：帮助我们进行验签工作，我们单独将它定义出来，方便后面的开发
+     * 创建时就要从微信下载平台证书，simulator 环境下改用测试代码中 SimulatorConfig 模拟平台证书的验证器
      */
     @Bean
+    @Profile("!simulator")
     public ScheduledUpdateCertificatesVerifier getVerifier(){
         log.info("获取签名验证器");
         // 获取商户私钥ß
@@ -92,7 +133,7 @@ public class WxPayConfig {
      * HttpClient 对象：是建立远程连接的基础，我们通过SDK创建这个对象
      */
     @Bean(name = "wxPayClient")
-    public CloseableHttpClient getWxPayClient(ScheduledUpdateCertificatesVerifier verifier){
+    public CloseableHttpClient getWxPayClient(Verifier verifier){
         log.info("获取httpClient");
         //获取商户私钥
         PrivateKey privateKey = getPrivateKey(privateKeyPath);
@@ -101,6 +142,15 @@ public class WxPayConfig {
                 .withMerchant(mchId, mchSerialNo, privateKey)
                 .withValidator(new WechatPay2Validator(verifier));
         // ... 接下来，你仍然可以通过builder设置各种参数，来配置你的HttpClient
+        // 默认每个目标地址只有2个连接，核实任务并行查单时会卡在取连接上
+        builder.setMaxConnTotal(httpMaxTotal);
+        builder.setMaxConnPerRoute(httpMaxPerRoute);
+        // 默认没有超时，微信无响应时请求会一直挂着，占着连接池和调用方的线程
+        builder.setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(httpConnectTimeout)
+                .setConnectionRequestTimeout(httpConnectTimeout)
+                .setSocketTimeout(httpReadTimeout)
+                .build());
         // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签，并进行证书自动更新
         CloseableHttpClient httpClient = builder.build();
         return httpClient;
@@ -108,7 +158,7 @@ public class WxPayConfig {
 
 
     @Bean(name = "zhangdanClient")
-    public CloseableHttpClient zhangdanClient(ScheduledUpdateCertificatesVerifier verifier){
+    public CloseableHttpClient zhangdanClient(Verifier verifier){
         log.info("获取httpClient");
         //获取商户私钥
         PrivateKey privateKey = getPrivateKey(privateKeyPath);
@@ -122,4 +172,27 @@ public class WxPayConfig {
         return httpClient;
     }
 
+    /**
+     * 回调通知解密器，密钥和 Cipher 只初始化一次
+     * 解密耗时通过 /actuator/metrics/payment.notify.decrypt 查看
+     */
+    @Bean(name = "wxNotifyDecryptor")
+    public AesGcmDecryptor wxNotifyDecryptor(MeterRegistry meterRegistry) {
+        Timer timer = Timer.builder("payment.notify.decrypt")
+                .description("微信回调通知解密耗时")
+                .register(meterRegistry);
+        return new AesGcmDecryptor(apiV3Key.getBytes(StandardCharsets.UTF_8), timer);
+    }
+
+    /**
+     * APIv2（统一下单等xml接口）使用的客户端
+     * 带连接池、长连接复用，证书按系统默认信任库校验，整个应用共用一个
+     */
+    @Bean(name = "wxPayV2Client", destroyMethod = "close")
+    public CloseableHttpClient getWxPayV2Client() {
+        log.info("获取APIv2 httpClient");
+        return HttpClientUtils.createPooledClient(SSLContexts.createSystemDefault(),
+                httpMaxTotal, httpMaxPerRoute, httpConnectTimeout, httpReadTimeout);
+    }
+
 }
\ No newline at end of file
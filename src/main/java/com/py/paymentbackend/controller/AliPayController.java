@@ -3,9 +3,13 @@ package com.py.paymentbackend.controller;
 import com.alipay.api.AlipayApiException;
 import com.alipay.api.AlipayConstants;
 import com.alipay.api.internal.util.AlipaySignature;
+import com.py.paymentbackend.config.NotifyInboxConfig;
 import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.NotifyType;
 import com.py.paymentbackend.service.AliPayService;
+import com.py.paymentbackend.service.NotifyInboxService;
 import com.py.paymentbackend.service.OrderInfoService;
+import com.py.paymentbackend.util.JsonUtils;
 import com.py.paymentbackend.vo.R;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -35,6 +39,12 @@ public class AliPayController {
     @Resource
     private OrderInfoService orderInfoService;
 
+    @Resource
+    private NotifyInboxService notifyInboxService;
+
+    @Resource
+    private NotifyInboxConfig notifyInboxConfig;
+
 
     /**
      * 1.统一收单下单并支付页面接口的调用
@@ -107,7 +117,12 @@ public class AliPayController {
                     return result;
                 }
                 //处理业务 修改订单状态 记录支付日志
-                aliPayService.processOrder(params);
+                if (notifyInboxConfig.isEnabled()) {
+                    // 只落库，立即应答，由后台线程处理
+                    notifyInboxService.enqueue(NotifyType.ALI_PAY, params.get("notify_id"), JsonUtils.toJson(params));
+                } else {
+                    aliPayService.processOrder(params);
+                }
 
                 // 业务处理完，可以返回支付宝success了
                 result = "success";
@@ -156,7 +171,9 @@ public class AliPayController {
     @PostMapping("/trade/refund/{orderNo}/{reason}")
     public R refunds(@PathVariable String orderNo, @PathVariable String reason){
         log.info("申请退款...");
-        aliPayService.refund(orderNo, reason);
+        if (!aliPayService.refund(orderNo, reason)) {
+            return R.ok().setMessage("退款已提交，结果待确认").data("pending", true);
+        }
         return R.ok().setMessage("退款成功");
     }
 
@@ -165,10 +182,10 @@ public class AliPayController {
      * 这个也是用来测试的，退款查询是要定时任务
      */
     @ApiOperation("统⼀收单交易退款查询")
-    @GetMapping("/trade/fastpay/refund/{orderNo}")
-    public R queryRefund(@PathVariable String orderNo){
+    @GetMapping("/trade/fastpay/refund/{orderNo}/{refundNo}")
+    public R queryRefund(@PathVariable String orderNo, @PathVariable String refundNo){
         log.info("退款查询");
-        String result = aliPayService.queryRefund(orderNo);
+        String result = aliPayService.queryRefund(orderNo, refundNo);
         return R.ok().setMessage("查询退款单成功").data("result", result);
     }
 
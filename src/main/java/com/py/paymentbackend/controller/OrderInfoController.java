@@ -3,13 +3,18 @@ package com.py.paymentbackend.controller;
 import com.py.paymentbackend.entity.OrderInfo;
 import com.py.paymentbackend.enums.OrderStatus;
 import com.py.paymentbackend.service.OrderInfoService;
+import com.py.paymentbackend.util.OrderStatusNotifier;
+import com.py.paymentbackend.vo.CursorPage;
+import com.py.paymentbackend.vo.OrderQuery;
 import com.py.paymentbackend.vo.R;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import org.springframework.core.env.Environment;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.Resource;
-import java.util.List;
+import java.util.function.Consumer;
 
 @Api(tags = "商品订单管理")
 @CrossOrigin
@@ -20,12 +25,22 @@ public class OrderInfoController {
     @Resource
     private OrderInfoService orderInfoService;
 
+    @Resource
+    private OrderStatusNotifier orderStatusNotifier;
+
+    @Resource
+    private Environment env;
 
+
+    /**
+     * 订单列表，按创建时间倒序分页
+     * 第一页不传cursor，之后每次把返回的 nextCursor 带上，nextCursor 为空表示没有下一页
+     */
     @ApiOperation("订单列表")
     @GetMapping("/list")
-    public R list() {
-        List<OrderInfo> orderInfoList = orderInfoService.listOrderByCreateTimeDesc();
-        return R.ok().data("list", orderInfoList);
+    public R list(OrderQuery query) {
+        CursorPage<OrderInfo> page = orderInfoService.listOrderPage(query);
+        return R.ok().data("list", page.getList()).data("nextCursor", page.getNextCursor());
     }
 
     /**
@@ -42,6 +57,42 @@ public class OrderInfoController {
         return R.ok().setCode(101).setMessage("支付中...");
     }
 
+    /**
+     * 等待订单状态变化（长轮询）
+     * 订单未支付时挂起请求，直到订单状态变化或超时才返回，前端收到后立即发起下一次请求即可，
+     * 不再需要每隔几秒查一次库
+     * 返回：0 支付成功；101 仍未支付（超时）；-1 订单已关闭、取消或不存在
+     */
+    @ApiOperation("等待订单状态变化（长轮询）")
+    @GetMapping("/wait-order-status/{orderNo}")
+    public DeferredResult<R> waitOrderStatus(@PathVariable String orderNo) {
+        long timeout = env.getProperty("payment.order-status.wait-timeout", Long.class, 30000L);
+        DeferredResult<R> result = new DeferredResult<>(timeout);
+        Consumer<OrderStatus> listener = status -> result.setResult(toStatusResult(status.getType()));
+
+        // 先登记再查库：查库之后、登记之前发生的状态变化也不会漏掉
+        orderStatusNotifier.await(orderNo, listener);
+        result.onCompletion(() -> orderStatusNotifier.remove(orderNo, listener));
+        // 超时再查一次库，其他节点上完成的支付在这里也能拿到
+        result.onTimeout(() -> result.setResult(toStatusResult(orderInfoService.getOrderStatus(orderNo))));
+
+        String orderStatus = orderInfoService.getOrderStatus(orderNo);
+        if (!OrderStatus.NOTPAY.getType().equals(orderStatus)) {
+            result.setResult(toStatusResult(orderStatus));
+        }
+        return result;
+    }
+
+    private R toStatusResult(String orderStatus) {
+        if (OrderStatus.SUCCESS.getType().equals(orderStatus)) {
+            return R.ok().setMessage("支付成功");
+        }
+        if (OrderStatus.NOTPAY.getType().equals(orderStatus)) {
+            return R.ok().setCode(101).setMessage("支付中...");
+        }
+        return R.error().setMessage(orderStatus == null ? "订单不存在" : orderStatus);
+    }
+
 
 }
 
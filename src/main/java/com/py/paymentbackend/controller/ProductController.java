@@ -31,7 +31,7 @@ public class ProductController {
 
     @GetMapping("/list")
     public R list(){
-        List<Product> list = productService.list();
+        List<Product> list = productService.listCached();
         return R.ok().data("productList",list);
     }
 }
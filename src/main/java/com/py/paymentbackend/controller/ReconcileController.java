@@ -0,0 +1,36 @@
+package com.py.paymentbackend.controller;
+
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.reconcile.ReconcileResult;
+import com.py.paymentbackend.service.ReconcileService;
+import com.py.paymentbackend.vo.R;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+
+@Slf4j
+@Api(tags = "账单对账")
+@CrossOrigin
+@RestController
+@RequestMapping("/api/reconcile")
+public class ReconcileController {
+
+    @Resource
+    private ReconcileService reconcileService;
+
+    /**
+     * 下载账单并与本地记录对账
+     * @param payType WXPAY 或 ALIPAY
+     * @param billDate 账单日期，格式yyyy-MM-dd
+     */
+    @ApiOperation("账单对账")
+    @PostMapping("/{payType}/{billDate}")
+    public R reconcile(@PathVariable PayType payType, @PathVariable String billDate) throws Exception {
+        log.info("账单对账");
+        ReconcileResult result = reconcileService.reconcile(payType, billDate);
+        return R.ok().setMessage("对账完成").data("result", result);
+    }
+}
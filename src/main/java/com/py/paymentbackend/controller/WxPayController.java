@@ -1,20 +1,29 @@
 package com.py.paymentbackend.controller;
 
-import com.google.gson.Gson;
+import com.py.paymentbackend.config.NotifyInboxConfig;
+import com.py.paymentbackend.enums.NotifyType;
+import com.py.paymentbackend.service.NotifyInboxService;
 import com.py.paymentbackend.util.HttpUtils;
+import com.py.paymentbackend.util.JsonUtils;
 import com.py.paymentbackend.service.WxPayService;
 import com.py.paymentbackend.util.WechatPay2ValidatorForRequest;
 import com.py.paymentbackend.vo.R;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
 import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,6 +46,12 @@ public class WxPayController {
     @Resource
     private Verifier verifier;
 
+    @Resource
+    private NotifyInboxService notifyInboxService;
+
+    @Resource
+    private NotifyInboxConfig notifyInboxConfig;
+
 
 
     /**
@@ -80,31 +95,35 @@ public class WxPayController {
     @ApiOperation("支付通知")
     @PostMapping("/native/notify")
     public String nativeNotify(HttpServletRequest request, HttpServletResponse response) {
-        Gson gson = new Gson();
         // 构造应答对象
         Map<String, String> map = new HashMap<>();
 
         try{
             // 1.处理通知参数
             String body = HttpUtils.readData(request);
-            Map<String, Object> bodyMap = gson.fromJson(body, HashMap.class);
-            log.info("支付通知的id:{}", bodyMap.get("id"));
+            WxNotify notify = JsonUtils.fromJson(body, WxNotify.class);
+            log.info("支付通知的id:{}", notify.getId());
             log.info("支付通知的完整数据:{}", body);
 
             // 2.签名验证
             WechatPay2ValidatorForRequest validator
-                    = new WechatPay2ValidatorForRequest(verifier, body, (String) bodyMap.get("id"));
+                    = new WechatPay2ValidatorForRequest(verifier, body, notify.getId());
             if (!validator.validate(request)) {
                 log.error("通知验签失败");
                 response.setStatus(500);
                 map.put("code", "ERROR");
                 map.put("message", "通知验签失败");
-                return gson.toJson(map);
+                return JsonUtils.toJson(map);
             }
             log.info("通知验签成功");
 
             // 3.处理订单 微信返回的通知数据是加密的
-            wxPayService.processOrder(bodyMap);
+            if (notifyInboxConfig.isEnabled()) {
+                // 只落库，立即应答，解密和更新订单由后台线程处理
+                notifyInboxService.enqueue(NotifyType.WX_PAY, notify.getId(), body);
+            } else {
+                wxPayService.processOrder(notify);
+            }
 
             // 测试超时应答：添加睡眠时间使应答超时
             // 模拟超时，微信会重复请求，需要排除已处理过的订单
@@ -112,14 +131,14 @@ public class WxPayController {
             response.setStatus(200);
             map.put("code", "SUCCESS");
             map.put("message", "成功");
-            return gson.toJson(map);
+            return JsonUtils.toJson(map);
         }catch (Exception e) {
             e.printStackTrace();
             // 测试错误应答
             response.setStatus(500);
             map.put("code", "ERROR");
             map.put("message", "系统错误");
-            return gson.toJson(map);
+            return JsonUtils.toJson(map);
         }
 
     }
@@ -167,7 +186,9 @@ public class WxPayController {
                      @PathVariable String reason) throws IOException {
         log.info("申请退款");
         // 保存退款记录，调用微信退款接口，更新订单状态，更新退款单
-        wxPayService.refund(orderNo, reason);
+        if (!wxPayService.refund(orderNo, reason)) {
+            return R.ok().setMessage("退款已提交，结果待确认").data("pending", true);
+        }
         return R.ok();
     }
 
@@ -206,16 +227,14 @@ public class WxPayController {
         log.info("处理退款通知...");
 
         // 2.获取请求参数
-        // 为了读返回的json字符串
-        Gson gson = new Gson();
         // 为了响应的数据
         Map<String, String> map = new HashMap<>();
         try {
             // 2.1处理通知参数
             String data = HttpUtils.readData(request);
-            Map<String, Object> dataMap = gson.fromJson(data, HashMap.class);
+            WxNotify notify = JsonUtils.fromJson(data, WxNotify.class);
             // 为了校验请求签名
-            String requestId = (String) dataMap.get("id");
+            String requestId = notify.getId();
             // 验证签名
             WechatPay2ValidatorForRequest wechatPay2ValidatorForRequest = new WechatPay2ValidatorForRequest(verifier, data, requestId);
             if (!wechatPay2ValidatorForRequest.validate(request)) {
@@ -224,23 +243,27 @@ public class WxPayController {
                 response.setStatus(500);
                 map.put("code", "FAIL");
                 map.put("message", "退款通知验签失败");
-                return gson.toJson(map);
+                return JsonUtils.toJson(map);
             }
             log.info("退款通知验签成功...");
             // 3.处理退款订单
-            wxPayService.processRefund(dataMap);
+            if (notifyInboxConfig.isEnabled()) {
+                notifyInboxService.enqueue(NotifyType.WX_REFUND, requestId, data);
+            } else {
+                wxPayService.processRefund(notify);
+            }
             // 成功应答
             response.setStatus(200);
             map.put("code", "SUCCESS");
             map.put("message", "成功");
-            return gson.toJson(map);
+            return JsonUtils.toJson(map);
         } catch (Exception e) {
             e.printStackTrace();
             // 4.设置响应参数
             response.setStatus(500);
             map.put("code", "FAIL");
             map.put("message", "失败");
-            return gson.toJson(map);
+            return JsonUtils.toJson(map);
         }
     }
 
@@ -267,8 +290,8 @@ public class WxPayController {
     /**
      * 下载账单API为通用接口，交易/资金账单都可以通过该接口获取到对应的账单。
      * 账单文件的下载地址的有效时间为30s
-     * 这个微信接口响应信息头不包含微信接口响应的签名值，因此需要跳过验签的流程，所以需要我们在获取下载地址的时候对url进行hash比较，但是都对响应验签了，还有必要吗
-     * 感觉不是文件啊，是个json
+     * 这个微信接口响应信息头不包含微信接口响应的签名值，因此需要跳过验签的流程，下载后用申请账单时返回的哈希值校验文件
+     * 账单先保存到本地，再以文件的形式返回，不放进JSON
      * @param billDate
      * @param type
      * @return
@@ -276,12 +299,15 @@ public class WxPayController {
      */
     @ApiOperation("下载账单")
     @GetMapping("/downloadbill/{billDate}/{type}")
-    public R downloadBill(
+    public ResponseEntity<FileSystemResource> downloadBill(
             @PathVariable String billDate,
             @PathVariable String type) throws Exception {
         log.info("下载账单");
-        String result = wxPayService.downloadBill(billDate, type);
-        return R.ok().data("result", result);
+        Path billFile = wxPayService.downloadBill(billDate, type);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("text/csv;charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + billFile.getFileName())
+                .body(new FileSystemResource(billFile.toFile()));
     }
 
 }
@@ -8,7 +8,9 @@ import com.py.paymentbackend.service.OrderInfoService;
 import com.py.paymentbackend.service.PaymentInfoService;
 import com.py.paymentbackend.service.WxPayService;
 import com.py.paymentbackend.util.HttpUtils;
+import com.py.paymentbackend.util.StripedLock;
 import com.py.paymentbackend.vo.R;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
@@ -18,7 +20,7 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
 
 @Slf4j
 @CrossOrigin
@@ -39,7 +41,8 @@ public class WxPayV2Controller {
     @Resource
     private PaymentInfoService paymentInfoService;
 
-    private final ReentrantLock lock = new ReentrantLock();
+    @Resource
+    private StripedLock orderLock;
 
     /**
      * native下单 v2
@@ -99,23 +102,20 @@ public class WxPayV2Controller {
             return WXPayUtil.mapToXml(returnMap);
         }
 
-        // 4.2处理订单
-        if(lock.tryLock()){
-            try {
-                // 处理重复的通知
-                // 接口调用的幂等性：无论接口被调用多少次，产生的结果是一致的。
-                String orderStatus = orderInfoService.getOrderStatus(orderNo);
-                if(OrderStatus.NOTPAY.getType().equals(orderStatus)){
-                    // 更新订单状态
-                    orderInfoService.updateStatusByOrderNo(orderNo,
-                            OrderStatus.SUCCESS);
-                    // 记录支付日志
-                    paymentInfoService.createPaymentInfo(body);
-                }
-            } finally {
-                // 要主动释放锁
-                lock.unlock();
+        // 4.2处理订单，按订单号加锁
+        Lock lock = orderLock.lock(orderNo);
+        try {
+            // 处理重复的通知
+            // 接口调用的幂等性：无论接口被调用多少次，产生的结果是一致的。
+            // 订单存在且未支付才入账，先记录支付日志（按交易号去重）再更新订单状态，
+            // 状态更新失败时重发的通知会补上，顺序同 WxPayServiceImpl.processOrder
+            if (orderInfoService.checkPayable(orderNo)) {
+                paymentInfoService.createPaymentInfo(toTransaction(notifyMap), body);
+                orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.SUCCESS);
             }
+        } finally {
+            // 要主动释放锁
+            lock.unlock();
         }
         // 4.3设置成功响应
         returnMap.put("return_code", "SUCCESS");
@@ -125,4 +125,20 @@ public class WxPayV2Controller {
         return returnXml;
     }
 
+    /**
+     * APIv2 的通知是xml，字段转成与APIv3一致的交易信息再记录支付日志
+     */
+    private WxTransaction toTransaction(Map<String, String> notifyMap) {
+        WxTransaction transaction = new WxTransaction();
+        transaction.setOutTradeNo(notifyMap.get("out_trade_no"));
+        transaction.setTransactionId(notifyMap.get("transaction_id"));
+        transaction.setTradeType(notifyMap.get("trade_type"));
+        transaction.setTradeState(notifyMap.get("result_code"));
+        WxTransaction.Amount amount = new WxTransaction.Amount();
+        amount.setTotal(Integer.valueOf(notifyMap.get("total_fee")));
+        amount.setPayerTotal(Integer.valueOf(notifyMap.get("cash_fee")));
+        transaction.setAmount(amount);
+        return transaction;
+    }
+
 }
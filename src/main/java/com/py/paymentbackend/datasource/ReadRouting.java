@@ -0,0 +1,52 @@
+package com.py.paymentbackend.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 在当前线程上指定读哪个库，不在事务中的查询用它来声明可以读从库，或者必须读主库
+ * 只读事务（@Transactional(readOnly = true)）不需要再声明，本身就会读从库
+ * 嵌套时主库优先：外层指定了主库，内层的从库声明不生效
+ */
+public class ReadRouting {
+
+    enum Route {
+        PRIMARY, REPLICA
+    }
+
+    private static final ThreadLocal<Route> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 在主库上执行，用于刚写过、必须读到自己写入的数据的查询
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        return with(Route.PRIMARY, action);
+    }
+
+    /**
+     * 允许在从库上执行，从库都不可用或延迟太大时仍然读主库
+     */
+    public static <T> T onReplica(Supplier<T> action) {
+        return with(Route.REPLICA, action);
+    }
+
+    static Route current() {
+        return CURRENT.get();
+    }
+
+    private static <T> T with(Route route, Supplier<T> action) {
+        Route previous = CURRENT.get();
+        if (previous == Route.PRIMARY) {
+            return action.get();
+        }
+        CURRENT.set(route);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
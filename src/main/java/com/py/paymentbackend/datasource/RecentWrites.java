@@ -0,0 +1,46 @@
+package com.py.paymentbackend.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.py.paymentbackend.util.TransactionUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * 最近写过的业务单号，这些单号在一段时间内只读主库，保证读到自己的写入
+ * 如订单状态更新后，被唤醒的长轮询马上回查状态，从库可能还没有同步到
+ * 粘滞时间要大于允许的最大从库延迟，超过延迟的从库不会被路由到，过了粘滞时间读从库也不会读到旧数据
+ * 只在本节点内有效，其他节点的写入靠从库延迟上限兜底
+ */
+public class RecentWrites {
+
+    private final Cache<String, Boolean> keys;
+
+    public RecentWrites(Duration sticky, long maximumSize) {
+        this.keys = Caffeine.newBuilder()
+                .expireAfterWrite(sticky)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * 写入时调用：立即开始粘滞，事务提交后重新计时
+     */
+    public void mark(String key) {
+        keys.put(key, Boolean.TRUE);
+        TransactionUtils.afterCommit(() -> keys.put(key, Boolean.TRUE));
+    }
+
+    public void markAll(Collection<String> keyList) {
+        keyList.forEach(this::mark);
+    }
+
+    /**
+     * 最近写过的单号在主库上读，其他的按当前的路由规则读
+     */
+    public <T> T read(String key, Supplier<T> reader) {
+        return keys.getIfPresent(key) != null ? ReadRouting.onPrimary(reader) : reader.get();
+    }
+}
@@ -0,0 +1,203 @@
+package com.py.paymentbackend.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离：写和读写事务走主库，只读的查询轮流分给延迟在上限以内的从库
+ *   1.路由在取连接时决定，外面要包一层 LazyConnectionDataSourceProxy，
+ *     事务开始时不取连接，执行第一条语句时才能看到事务是否只读
+ *   2.只读：@Transactional(readOnly = true) 的事务，或者不在事务中、用 ReadRouting.onReplica 声明的查询
+ *   3.从库延迟：主库上定时更新 t_replica_heartbeat 的时间，从库上读出来和当前时间比较；
+ *     查不到、延迟超过上限的从库不参与路由，全部不可用时读主库
+ * 监控指标：
+ *   payment.datasource.route            取连接的次数，target 为 primary 或从库名称
+ *   payment.datasource.replica.lag      从库延迟，毫秒，查不到时为 -1
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    /**
+     * 从库
+     */
+    public static class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        /**
+         * 最近一次测得的延迟，毫秒，-1 表示查不到
+         */
+        private volatile long lagMillis = -1;
+
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public long getLagMillis() {
+            return lagMillis;
+        }
+    }
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final long maxLagMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Map<String, Counter> routeCounters = new HashMap<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas, long maxLagMillis, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.maxLagMillis = maxLagMillis;
+
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        targets.put(PRIMARY, primary);
+        routeCounters.put(PRIMARY, routeCounter(meterRegistry, PRIMARY));
+        for (Replica replica : this.replicas) {
+            targets.put(replica.name, replica.dataSource);
+            routeCounters.put(replica.name, routeCounter(meterRegistry, replica.name));
+            Gauge.builder("payment.datasource.replica.lag", replica, Replica::getLagMillis)
+                    .description("从库延迟，毫秒，查不到时为-1")
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    private static Counter routeCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("payment.datasource.route")
+                .description("按读写分离规则取连接的次数")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String target = route();
+        routeCounters.get(target).increment();
+        return target;
+    }
+
+    private String route() {
+        if (replicas.isEmpty()) {
+            return PRIMARY;
+        }
+        ReadRouting.Route hint = ReadRouting.current();
+        if (hint == ReadRouting.Route.PRIMARY) {
+            return PRIMARY;
+        }
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                ? TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                : hint == ReadRouting.Route.REPLICA;
+        if (!readOnly) {
+            return PRIMARY;
+        }
+        // 从上次的下一个开始找第一个可用的从库
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            long lag = replica.lagMillis;
+            if (lag >= 0 && lag <= maxLagMillis) {
+                return replica.name;
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * 测量各个从库的延迟，由 ReplicaLagTask 定时调用
+     * 主库写入当前时间，从库读出复制过来的时间，差值包括复制延迟和距离上次写入的时间，所以检查间隔要比延迟上限小得多
+     */
+    public void checkLag() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE t_replica_heartbeat SET beat_time = NOW(3) WHERE id = 1");
+        } catch (Exception e) {
+            // 主库不可用时读写都会失败，从库的状态保持不变
+            log.error("更新从库心跳失败", e);
+            return;
+        }
+        for (Replica replica : replicas) {
+            long lag = measureLag(replica);
+            boolean wasAvailable = replica.lagMillis >= 0 && replica.lagMillis <= maxLagMillis;
+            boolean available = lag >= 0 && lag <= maxLagMillis;
+            replica.lagMillis = lag;
+            if (wasAvailable != available) {
+                if (available) {
+                    log.info("从库{}恢复，延迟{}ms", replica.name, lag);
+                } else {
+                    log.warn("从库{}不可用，延迟{}ms，只读查询改走主库", replica.name, lag);
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭从库连接池，主库由容器管理
+     */
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) replica.dataSource).close();
+                } catch (IOException e) {
+                    log.warn("关闭从库{}连接池失败", replica.name, e);
+                }
+            }
+        }
+    }
+
+    private long measureLag(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT TIMESTAMPDIFF(MICROSECOND, beat_time, NOW(3)) FROM t_replica_heartbeat WHERE id = 1")) {
+            return rs.next() ? Math.max(0, rs.getLong(1) / 1000) : -1;
+        } catch (Exception e) {
+            log.debug("查询从库{}延迟失败", replica.name, e);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.py.paymentbackend.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+@TableName("t_notify_inbox")
+public class NotifyInbox extends BaseEntity {
+
+    private String notifyType;//通知类型
+
+    private String notifyId;//支付平台的通知id
+
+    private String payload;//通知原文
+
+    private String status;//处理状态
+
+    private Integer retryCount;//已重试次数
+
+    private Date nextRetryTime;//下次可处理时间，处理中时为租约到期时间
+
+    private String lastError;//最后一次处理失败的原因
+}
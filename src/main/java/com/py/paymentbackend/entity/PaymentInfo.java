@@ -1,5 +1,6 @@
 package com.py.paymentbackend.entity;
 
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
 
@@ -19,5 +20,6 @@ public class PaymentInfo extends BaseEntity{
 
     private Integer payerTotal;//支付金额(分)
 
-    private String content;//通知参数
+    @TableField(exist = false)
+    private String content;//通知参数，压缩后存放在 t_raw_payload，读取见 RawPayloadService
 }
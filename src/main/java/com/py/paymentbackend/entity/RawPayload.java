@@ -0,0 +1,17 @@
+package com.py.paymentbackend.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+@Data
+@TableName("t_raw_payload")
+public class RawPayload extends BaseEntity {
+
+    private String recordType;//报文类型
+
+    private String recordNo;//业务单号：支付记录为交易号，退款记录为退款单号
+
+    private byte[] payload;//压缩后的报文，格式与MySQL的COMPRESS()一致
+
+    private Integer rawSize;//压缩前的字节数
+}
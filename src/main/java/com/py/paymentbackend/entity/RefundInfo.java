@@ -1,5 +1,6 @@
 package com.py.paymentbackend.entity;
 
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
 
@@ -21,9 +22,11 @@ public class RefundInfo extends BaseEntity{
 
     private String refundStatus;//退款单状态
 
-    private String contentReturn;//申请退款返回参数
+    @TableField(exist = false)
+    private String contentReturn;//申请退款返回参数，压缩后存放在 t_raw_payload
 
-    private String contentNotify;//退款结果通知参数
+    @TableField(exist = false)
+    private String contentNotify;//退款结果通知参数，压缩后存放在 t_raw_payload
 
     private String paymentType;
 }
@@ -0,0 +1,15 @@
+package com.py.paymentbackend.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+@TableName("t_sweep_node")
+public class SweepNode extends BaseEntity {
+
+    private String nodeId;//节点标识
+
+    private Date heartbeatTime;//最后一次心跳时间
+}
@@ -0,0 +1,36 @@
+package com.py.paymentbackend.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 收件箱中通知的处理状态
+ */
+@AllArgsConstructor
+@Getter
+public enum NotifyStatus {
+    /**
+     * 待处理（包括等待重试）
+     */
+    PENDING("待处理"),
+
+    /**
+     * 处理中
+     */
+    PROCESSING("处理中"),
+
+    /**
+     * 处理完成
+     */
+    DONE("处理完成"),
+
+    /**
+     * 超过重试次数，需要人工处理
+     */
+    FAILED("处理失败");
+
+    /**
+     * 类型
+     */
+    private final String type;
+}
@@ -0,0 +1,31 @@
+package com.py.paymentbackend.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 收件箱中的通知类型
+ */
+@AllArgsConstructor
+@Getter
+public enum NotifyType {
+    /**
+     * 微信支付通知
+     */
+    WX_PAY("微信支付通知"),
+
+    /**
+     * 微信退款通知
+     */
+    WX_REFUND("微信退款通知"),
+
+    /**
+     * 支付宝支付通知
+     */
+    ALI_PAY("支付宝支付通知");
+
+    /**
+     * 类型
+     */
+    private final String type;
+}
@@ -3,6 +3,11 @@ package com.py.paymentbackend.enums;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 @AllArgsConstructor
 @Getter
 public enum OrderStatus {
@@ -46,4 +51,28 @@ public enum OrderStatus {
      * 类型
      */
     private final String type;
+
+    /**
+     * 合法的状态流转，其余流转一律拒绝
+     */
+    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+
+    static {
+        TRANSITIONS.put(NOTPAY, EnumSet.of(SUCCESS, CLOSED, CANCEL));
+        // 微信、支付宝的退款都先保存退款意向、进入退款中，调用支付平台后再流转到成功或异常
+        TRANSITIONS.put(SUCCESS, EnumSet.of(REFUND_PROCESSING));
+        TRANSITIONS.put(CLOSED, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(CANCEL, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(REFUND_PROCESSING, EnumSet.of(REFUND_SUCCESS, REFUND_ABNORMAL));
+        TRANSITIONS.put(REFUND_SUCCESS, EnumSet.noneOf(OrderStatus.class));
+        // 退款异常可以重新发起退款
+        TRANSITIONS.put(REFUND_ABNORMAL, EnumSet.of(REFUND_PROCESSING));
+    }
+
+    /**
+     * 是否允许从当前状态流转到目标状态
+     */
+    public boolean canTransitTo(OrderStatus target) {
+        return TRANSITIONS.get(this).contains(target);
+    }
 }
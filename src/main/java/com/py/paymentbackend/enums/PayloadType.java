@@ -0,0 +1,31 @@
+package com.py.paymentbackend.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 支付平台原始报文的类型，与业务单号一起确定一条报文
+ */
+@AllArgsConstructor
+@Getter
+public enum PayloadType {
+    /**
+     * 支付通知或查单结果，按交易号（transaction_id）记录
+     */
+    PAYMENT("支付通知参数"),
+
+    /**
+     * 申请退款、查询退款的返回参数，按退款单号记录
+     */
+    REFUND_RETURN("申请退款返回参数"),
+
+    /**
+     * 退款结果通知参数，按退款单号记录
+     */
+    REFUND_NOTIFY("退款结果通知参数");
+
+    /**
+     * 类型
+     */
+    private final String type;
+}
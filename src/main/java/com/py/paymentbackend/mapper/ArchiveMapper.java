@@ -0,0 +1,56 @@
+package com.py.paymentbackend.mapper;
+
+import com.py.paymentbackend.entity.OrderInfo;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单、支付记录、退款单在热表和归档表之间的搬运，以及归档表的查询和分区维护
+ */
+public interface ArchiveMapper {
+
+    /**
+     * 找出一批可以归档的订单号，不加锁，按创建时间升序
+     */
+    List<String> selectCandidates(@Param("before") Date before, @Param("statuses") Collection<String> statuses,
+                                  @Param("limit") int limit);
+
+    /**
+     * 在事务中按订单号锁住仍然是已结束状态的订单，返回锁住的订单号
+     * 查候选到加锁之间状态变了（如发起了退款）的订单不会被锁住，也就不会被搬走
+     */
+    List<String> lockArchivable(@Param("orderNos") Collection<String> orderNos,
+                                @Param("statuses") Collection<String> statuses);
+
+    int copyOrders(@Param("orderNos") Collection<String> orderNos);
+
+    int copyPayments(@Param("orderNos") Collection<String> orderNos);
+
+    int copyRefunds(@Param("orderNos") Collection<String> orderNos);
+
+    int deleteOrders(@Param("orderNos") Collection<String> orderNos);
+
+    int deletePayments(@Param("orderNos") Collection<String> orderNos);
+
+    int deleteRefunds(@Param("orderNos") Collection<String> orderNos);
+
+    /**
+     * 按订单号查询已归档的订单
+     */
+    OrderInfo selectArchivedOrder(@Param("orderNo") String orderNo);
+
+    /**
+     * 表的分区（名称和上界），没有分区时为空
+     */
+    List<Map<String, Object>> selectPartitions(@Param("table") String table);
+
+    /**
+     * 把 p_max 拆成若干个月分区和一个新的 p_max
+     * @param months 每个月分区的名称（yyyyMM）和上界（下个月1号）
+     */
+    void splitMaxPartition(@Param("table") String table, @Param("months") List<Map<String, String>> months);
+}
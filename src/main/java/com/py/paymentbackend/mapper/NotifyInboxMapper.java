@@ -0,0 +1,13 @@
+package com.py.paymentbackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.py.paymentbackend.entity.NotifyInbox;
+
+public interface NotifyInboxMapper extends BaseMapper<NotifyInbox> {
+
+    /**
+     * 保存通知，同一类型同一通知id已存在时不插入
+     * @return 影响行数，0表示重复通知
+     */
+    int insertIfAbsent(NotifyInbox notifyInbox);
+}
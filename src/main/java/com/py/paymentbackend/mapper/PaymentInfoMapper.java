@@ -2,6 +2,22 @@ package com.py.paymentbackend.mapper;
 
 import com.py.paymentbackend.entity.PaymentInfo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.Date;
 
 public interface PaymentInfoMapper extends BaseMapper<PaymentInfo> {
+
+    /**
+     * 插入支付记录，transaction_id已存在时不插入
+     * @return 影响行数，0表示该交易已经记录过
+     */
+    int insertIfAbsent(PaymentInfo paymentInfo);
+
+    /**
+     * 流式读取一段时间内的支付记录（只有订单号和金额），逐条交给handler，不会把结果集整个放进内存
+     */
+    void scanForReconcile(@Param("paymentType") String paymentType, @Param("begin") Date begin,
+                          @Param("end") Date end, ResultHandler<PaymentInfo> handler);
 }
@@ -0,0 +1,27 @@
+package com.py.paymentbackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.py.paymentbackend.entity.RawPayload;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface RawPayloadMapper extends BaseMapper<RawPayload> {
+
+    /**
+     * 保存报文，同一类型同一单号已存在时覆盖（退款查询结果以最后一次为准）
+     */
+    int upsert(RawPayload rawPayload);
+
+    /**
+     * 批量保存报文，一条多行INSERT，已存在的同样覆盖
+     */
+    int upsertBatch(List<RawPayload> rawPayloads);
+
+    /**
+     * 删除一批早于指定时间的报文
+     * @return 删除条数，小于limit表示已经删完
+     */
+    int deleteCreatedBefore(@Param("before") Date before, @Param("limit") int limit);
+}
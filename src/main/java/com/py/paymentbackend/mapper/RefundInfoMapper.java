@@ -2,7 +2,24 @@ package com.py.paymentbackend.mapper;
 
 import com.py.paymentbackend.entity.RefundInfo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 public interface RefundInfoMapper extends BaseMapper<RefundInfo> {
 
+    /**
+     * 按退款单号批量回写核实结果（退款状态、支付端退款单号），一条update完成
+     * @return 影响行数
+     */
+    int updateConfirmBatch(List<RefundInfo> refundInfos);
+
+    /**
+     * 流式读取一段时间内指定状态的退款单（只有订单号、退款单号和退款金额），逐条交给handler
+     */
+    void scanForReconcile(@Param("paymentType") String paymentType, @Param("statuses") Collection<String> statuses,
+                          @Param("begin") Date begin, @Param("end") Date end, ResultHandler<RefundInfo> handler);
 }
@@ -0,0 +1,25 @@
+package com.py.paymentbackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.py.paymentbackend.entity.SweepNode;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface SweepNodeMapper extends BaseMapper<SweepNode> {
+
+    /**
+     * 登记心跳，节点不存在时插入，存在时更新心跳时间；心跳时间取数据库当前时间
+     */
+    int heartbeat(@Param("nodeId") String nodeId);
+
+    /**
+     * 按数据库当前时间查出ttlMillis内有心跳的节点，按节点标识排序
+     */
+    List<String> selectLiveNodeIds(@Param("ttlMillis") long ttlMillis);
+
+    /**
+     * 按数据库当前时间删除超过expireMillis没有心跳的节点
+     */
+    int deleteExpired(@Param("expireMillis") long expireMillis);
+}
@@ -0,0 +1,85 @@
+package com.py.paymentbackend.reconcile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 解析支付宝交易账单（bill_type=trade）
+ * 下载的是zip压缩包，里面有业务明细和汇总两个GBK编码的csv；
+ * 明细文件以 # 开头的说明行开始，然后是表头和明细，最后是 # 开头的结束行和合计
+ * 直接从压缩流中逐行读取，不解压到磁盘，也不把整个文件读进内存
+ */
+public class AliBillParser {
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private AliBillParser() {
+    }
+
+    public static void parse(InputStream in, Consumer<BillRecord> sink) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in, GBK);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (name.contains("业务明细") && !name.contains("汇总")) {
+                parseDetail(zip, sink);
+                return;
+            }
+        }
+        throw new IllegalStateException("支付宝账单中没有业务明细文件");
+    }
+
+    private static void parseDetail(InputStream in, Consumer<BillRecord> sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, GBK));
+        // 跳过开头的说明行
+        String line = reader.readLine();
+        while (line != null && line.startsWith("#")) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = line.split(",");
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim(), i);
+        }
+        int bizType = column(columns, "业务类型");
+        int orderNo = column(columns, "商户订单号");
+        int totalAmount = column(columns, "订单金额（元）");
+        int refundRequestNo = column(columns, "退款批次号/请求号");
+
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#")) {
+                break;
+            }
+            // 支付宝账单的字段后面常带有制表符和空格
+            String[] fields = line.split(",", -1);
+            String type = fields[bizType].trim();
+            if ("交易".equals(type)) {
+                sink.accept(BillRecord.pay(fields[orderNo].trim(), BillRecord.yuanToFen(fields[totalAmount])));
+            } else if ("退款".equals(type)) {
+                // 退款时没有传 out_request_no，支付宝以商户订单号作为退款请求号
+                String refundNo = fields[refundRequestNo].trim();
+                sink.accept(BillRecord.refund(refundNo.isEmpty() ? fields[orderNo].trim() : refundNo,
+                        BillRecord.yuanToFen(fields[totalAmount])));
+            }
+        }
+    }
+
+    private static int column(Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null) {
+            throw new IllegalStateException("支付宝账单缺少字段：" + name);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,56 @@
+package com.py.paymentbackend.reconcile;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 对账记录：账单中的一行或本地的一条支付/退款记录
+ * 落盘时每条一行 "key\tamount"，key 中不会出现制表符，按整行排序就是按 key 排序
+ */
+@Data
+@AllArgsConstructor
+public class BillRecord {
+
+    public static final String PAY = "PAY";
+
+    public static final String REFUND = "REFUND";
+
+    /**
+     * 业务类型:单号，支付用商户订单号，退款用商户退款单号
+     */
+    private String key;
+
+    /**
+     * 金额(分)
+     */
+    private long amount;
+
+    public static BillRecord pay(String orderNo, long amount) {
+        return new BillRecord(PAY + ":" + orderNo, amount);
+    }
+
+    public static BillRecord refund(String refundNo, long amount) {
+        return new BillRecord(REFUND + ":" + refundNo, amount);
+    }
+
+    /**
+     * 账单中的金额是元，转换为分，退款金额在支付宝账单中是负数，统一取绝对值
+     */
+    public static long yuanToFen(String yuan) {
+        return new BigDecimal(yuan.trim()).movePointRight(2).abs().longValueExact();
+    }
+
+    String toLine() {
+        return key + '\t' + amount;
+    }
+
+    static String keyOf(String line) {
+        return line.substring(0, line.indexOf('\t'));
+    }
+
+    static long amountOf(String line) {
+        return Long.parseLong(line.substring(line.indexOf('\t') + 1));
+    }
+}
@@ -0,0 +1,117 @@
+package com.py.paymentbackend.reconcile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 外部排序：每次读入chunkSize行在内存中排序后写成一个有序段，最后把所有有序段多路归并
+ * 内存中最多同时有chunkSize行
+ */
+class ExternalSorter {
+
+    private ExternalSorter() {
+    }
+
+    /**
+     * @return 排好序的文件
+     */
+    static Path sort(Path input, Path workDir, int chunkSize) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            List<String> chunk = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(line);
+                if (chunk.size() >= chunkSize) {
+                    runs.add(writeRun(chunk, workDir));
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty() || runs.isEmpty()) {
+                runs.add(writeRun(chunk, workDir));
+            }
+        }
+        if (runs.size() == 1) {
+            return runs.get(0);
+        }
+        Path output = Files.createTempFile(workDir, "sorted-", ".txt");
+        merge(runs, output);
+        for (Path run : runs) {
+            Files.delete(run);
+        }
+        return output;
+    }
+
+    private static Path writeRun(List<String> chunk, Path workDir) throws IOException {
+        Collections.sort(chunk);
+        Path run = Files.createTempFile(workDir, "run-", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (String line : chunk) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        return run;
+    }
+
+    private static void merge(List<Path> runs, Path output) throws IOException {
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>(runs.size());
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (Path run : runs) {
+                RunCursor cursor = new RunCursor(Files.newBufferedReader(run, StandardCharsets.UTF_8));
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunCursor cursor = queue.poll();
+                writer.write(cursor.line);
+                writer.newLine();
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+        } finally {
+            for (RunCursor cursor : queue) {
+                cursor.close();
+            }
+        }
+    }
+
+    private static class RunCursor implements Comparable<RunCursor> {
+
+        private final BufferedReader reader;
+
+        private String line;
+
+        RunCursor(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+
+        @Override
+        public int compareTo(RunCursor other) {
+            return line.compareTo(other.line);
+        }
+    }
+}
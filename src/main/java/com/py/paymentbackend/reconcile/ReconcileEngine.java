@@ -0,0 +1,203 @@
+package com.py.paymentbackend.reconcile;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 对账引擎：本地记录和账单记录按key做排序合并连接，找出三类差异
+ *   1.分区：两边的记录边读边按 key 的哈希写入各自的分区文件，同一个key两边一定落在同一分区
+ *   2.每个分区交给线程池：两边分别外部排序，再同时顺序读两个有序文件做合并连接，差异写入分区报告
+ *   3.按分区顺序把分区报告拼成最终报告
+ * 任何时候内存中最多有 线程数 * chunkSize 行，数据量再大也只是多写几个临时文件
+ */
+@Slf4j
+public class ReconcileEngine {
+
+    public static final String MISSING_LOCAL = "MISSING_LOCAL";
+
+    public static final String MISSING_REMOTE = "MISSING_REMOTE";
+
+    public static final String AMOUNT_MISMATCH = "AMOUNT_MISMATCH";
+
+    /**
+     * 一侧的数据来源，把记录逐条交给sink
+     */
+    @FunctionalInterface
+    public interface RecordSource {
+        void feed(Consumer<BillRecord> sink) throws IOException;
+    }
+
+    private final Path workDir;
+
+    private final int partitions;
+
+    private final int chunkSize;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param workDir 临时文件目录
+     * @param partitions 分区数，一般取CPU核数的几倍，让各线程的负载均匀一些
+     * @param chunkSize 外部排序时每个有序段的行数
+     */
+    public ReconcileEngine(Path workDir, int partitions, int chunkSize, ExecutorService executor) {
+        this.workDir = workDir;
+        this.partitions = partitions;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    public ReconcileResult run(RecordSource local, RecordSource remote, Path report) throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(workDir);
+        Path dir = Files.createTempDirectory(workDir, "reconcile-");
+        try {
+            ReconcileResult result = new ReconcileResult();
+            result.setLocalCount(partition(local, dir, "local"));
+            result.setRemoteCount(partition(remote, dir, "remote"));
+
+            List<Future<ReconcileResult>> futures = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                int partition = i;
+                futures.add(executor.submit(() -> joinPartition(dir, partition)));
+            }
+
+            try (OutputStream out = Files.newOutputStream(report)) {
+                out.write("差异类型,业务类型,单号,本地金额(分),支付平台金额(分)\n".getBytes(StandardCharsets.UTF_8));
+                for (int i = 0; i < partitions; i++) {
+                    result.add(futures.get(i).get());
+                    Files.copy(dir.resolve("report-" + i), out);
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("对账失败", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("对账被中断", e);
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+
+            result.setReportFile(report.toString());
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+            return result;
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * 把一侧的记录按 key 哈希写入各个分区文件
+     * @return 记录数
+     */
+    private long partition(RecordSource source, Path dir, String side) throws IOException {
+        BufferedWriter[] writers = new BufferedWriter[partitions];
+        long[] count = new long[1];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                writers[i] = Files.newBufferedWriter(dir.resolve(side + "-" + i), StandardCharsets.UTF_8);
+            }
+            source.feed(record -> {
+                try {
+                    BufferedWriter writer = writers[(record.getKey().hashCode() & Integer.MAX_VALUE) % partitions];
+                    writer.write(record.toLine());
+                    writer.newLine();
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * 对一个分区做排序合并连接
+     */
+    private ReconcileResult joinPartition(Path dir, int partition) throws IOException {
+        Path local = ExternalSorter.sort(dir.resolve("local-" + partition), dir, chunkSize);
+        Path remote = ExternalSorter.sort(dir.resolve("remote-" + partition), dir, chunkSize);
+        ReconcileResult result = new ReconcileResult();
+        try (BufferedReader localReader = Files.newBufferedReader(local, StandardCharsets.UTF_8);
+             BufferedReader remoteReader = Files.newBufferedReader(remote, StandardCharsets.UTF_8);
+             BufferedWriter report = Files.newBufferedWriter(dir.resolve("report-" + partition), StandardCharsets.UTF_8)) {
+            String localLine = localReader.readLine();
+            String remoteLine = remoteReader.readLine();
+            while (localLine != null || remoteLine != null) {
+                int cmp;
+                if (localLine == null) {
+                    cmp = 1;
+                } else if (remoteLine == null) {
+                    cmp = -1;
+                } else {
+                    cmp = BillRecord.keyOf(localLine).compareTo(BillRecord.keyOf(remoteLine));
+                }
+                if (cmp < 0) {
+                    result.setMissingRemote(result.getMissingRemote() + 1);
+                    writeDiff(report, MISSING_REMOTE, BillRecord.keyOf(localLine), BillRecord.amountOf(localLine), null);
+                    localLine = localReader.readLine();
+                } else if (cmp > 0) {
+                    result.setMissingLocal(result.getMissingLocal() + 1);
+                    writeDiff(report, MISSING_LOCAL, BillRecord.keyOf(remoteLine), null, BillRecord.amountOf(remoteLine));
+                    remoteLine = remoteReader.readLine();
+                } else {
+                    long localAmount = BillRecord.amountOf(localLine);
+                    long remoteAmount = BillRecord.amountOf(remoteLine);
+                    if (localAmount != remoteAmount) {
+                        result.setAmountMismatch(result.getAmountMismatch() + 1);
+                        writeDiff(report, AMOUNT_MISMATCH, BillRecord.keyOf(localLine), localAmount, remoteAmount);
+                    }
+                    localLine = localReader.readLine();
+                    remoteLine = remoteReader.readLine();
+                }
+            }
+        }
+        return result;
+    }
+
+    private void writeDiff(BufferedWriter report, String diffType, String key, Long localAmount, Long remoteAmount)
+            throws IOException {
+        int separator = key.indexOf(':');
+        report.write(diffType);
+        report.write(',');
+        report.write(key, 0, separator);
+        report.write(',');
+        report.write(key, separator + 1, key.length() - separator - 1);
+        report.write(',');
+        report.write(localAmount == null ? "" : localAmount.toString());
+        report.write(',');
+        report.write(remoteAmount == null ? "" : remoteAmount.toString());
+        report.write('\n');
+    }
+
+    private void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("清理对账临时文件失败：{}", dir, e);
+        }
+    }
+}
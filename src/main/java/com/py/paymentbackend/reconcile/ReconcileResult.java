@@ -0,0 +1,30 @@
+package com.py.paymentbackend.reconcile;
+
+import lombok.Data;
+
+/**
+ * 对账结果汇总，差异明细见报告文件
+ */
+@Data
+public class ReconcileResult {
+
+    private long localCount;//本地记录数
+
+    private long remoteCount;//账单记录数
+
+    private long missingLocal;//账单中有、本地没有
+
+    private long missingRemote;//本地有、账单中没有
+
+    private long amountMismatch;//两边都有但金额不一致
+
+    private String reportFile;//差异报告
+
+    private long elapsedMillis;//耗时
+
+    void add(ReconcileResult partition) {
+        missingLocal += partition.missingLocal;
+        missingRemote += partition.missingRemote;
+        amountMismatch += partition.amountMismatch;
+    }
+}
@@ -0,0 +1,72 @@
+package com.py.paymentbackend.reconcile;
+
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import com.py.paymentbackend.enums.wxpay.WxTradeState;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 解析微信支付交易账单（bill_type=ALL）
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_8.shtml
+ * 第一行是表头，之后每行一笔，每个字段前都有一个 ` ；明细之后是汇总行（不以 ` 开头）
+ * 逐行读取，不会把账单整个读进内存
+ */
+public class WxBillParser {
+
+    private WxBillParser() {
+    }
+
+    public static void parse(InputStream in, Consumer<BillRecord> sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+        // 去掉可能存在的 BOM
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = header.split(",");
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim(), i);
+        }
+        int tradeState = column(columns, "交易状态");
+        int orderNo = column(columns, "商户订单号");
+        int settlementTotal = column(columns, "应结订单金额");
+        int refundNo = column(columns, "商户退款单号");
+        int refundFee = column(columns, "退款金额");
+        int refundStatus = column(columns, "退款状态");
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("`")) {
+                break;
+            }
+            // 按 ",`" 切分，商品名称等字段中出现逗号也不会错位
+            String[] fields = line.substring(1).split(",`", -1);
+            String state = fields[tradeState].trim();
+            if (WxTradeState.SUCCESS.getType().equals(state)) {
+                sink.accept(BillRecord.pay(fields[orderNo].trim(), BillRecord.yuanToFen(fields[settlementTotal])));
+            } else if (WxTradeState.REFUND.getType().equals(state)
+                    && WxRefundStatus.SUCCESS.getType().equals(fields[refundStatus].trim())) {
+                sink.accept(BillRecord.refund(fields[refundNo].trim(), BillRecord.yuanToFen(fields[refundFee])));
+            }
+        }
+    }
+
+    private static int column(Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null) {
+            throw new IllegalStateException("微信账单缺少字段：" + name);
+        }
+        return index;
+    }
+}
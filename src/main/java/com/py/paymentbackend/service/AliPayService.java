@@ -1,6 +1,9 @@
 package com.py.paymentbackend.service;
 
 import com.alipay.api.AlipayApiException;
+import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.vo.RefundConfirm;
 
 import java.util.Map;
 
@@ -42,25 +45,48 @@ public interface AliPayService {
      */
     void checkOrderStatus(String orderNo);
 
+    /**
+     * 向支付宝核实订单状态，已支付的订单直接处理，未支付的订单调用关单接口
+     * @return CLOSED 表示支付宝端已关单或未创建订单，本地订单状态由调用方更新（定时任务批量更新）；
+     *         SUCCESS 表示已按支付成功处理；null 表示无需处理
+     */
+    OrderStatus confirmOrderStatus(String orderNo);
+
     /**
      * 根据订单号退款
      * @param orderNo
      * @param reason
+     * @return 已拿到退款结果时返回true；结果未知时返回false，退款单保持待提交，稍后重新提交
+     */
+    boolean refund(String orderNo, String reason);
+
+    /**
+     * 按已保存的退款单调用退款接口并回写结果，退款和恢复任务共用
+     * @param refundInfo 待提交的退款单
+     * @return 已拿到退款结果时返回true；结果未知时返回false，退款单保持待提交
      */
-    void refund(String orderNo, String reason);
+    boolean submitRefund(RefundInfo refundInfo);
 
     /**
-     * 根据订单号查询退款单
+     * 根据订单号和退款单号查询退款单
      * @param orderNo
-     * @return
+     * @param refundNo
+     * @return 查不到退款时返回null
      */
-    String queryRefund(String orderNo);
+    String queryRefund(String orderNo, String refundNo);
 
     /**
      * 检查退款状态，并做对应的处理
+     * @param orderNo
      * @param refundNo
      */
-    void checkRefundStatus(String refundNo);
+    void checkRefundStatus(String orderNo, String refundNo);
+
+    /**
+     * 向支付宝核实退款状态，只查询不更新
+     * @return 退款已有最终结果时返回要回写的内容；还在处理中或查不到退款时返回null
+     */
+    RefundConfirm confirmRefundStatus(String orderNo, String refundNo);
 
     /**
      * 查询账单地址
@@ -0,0 +1,45 @@
+package com.py.paymentbackend.service;
+
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 订单冷数据归档，订单连同它的支付记录、退款单一起搬到 *_archive 表
+ */
+public interface ArchiveService {
+
+    /**
+     * 可以归档的订单状态：已经不会再变化的订单
+     * 退款中、退款异常的订单还要核实或重新退款，不归档
+     */
+    Set<OrderStatus> ARCHIVABLE = Collections.unmodifiableSet(
+            EnumSet.of(OrderStatus.SUCCESS, OrderStatus.CLOSED, OrderStatus.CANCEL, OrderStatus.REFUND_SUCCESS));
+
+    /**
+     * 找出一批创建时间早于before、可以归档的订单号
+     */
+    List<String> selectCandidates(Date before, int limit);
+
+    /**
+     * 在一个事务中搬运一批订单：锁住仍可归档的订单，复制到归档表后从热表删除
+     * @return 实际归档的订单数
+     */
+    int archive(List<String> orderNos);
+
+    /**
+     * 按订单号查询已归档的订单，不存在时返回null
+     */
+    OrderInfo getArchivedOrder(String orderNo);
+
+    /**
+     * 保证归档表有到 through 为止的月分区；没有分区的表（如测试用的H2）跳过
+     */
+    void ensurePartitions(YearMonth through);
+}
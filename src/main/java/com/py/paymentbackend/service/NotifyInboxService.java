@@ -0,0 +1,43 @@
+package com.py.paymentbackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.py.paymentbackend.entity.NotifyInbox;
+import com.py.paymentbackend.enums.NotifyType;
+
+import java.util.List;
+
+public interface NotifyInboxService extends IService<NotifyInbox> {
+
+    /**
+     * 保存验签通过的通知，等待后台处理
+     * @return 是否新通知，重复通知返回false
+     */
+    boolean enqueue(NotifyType notifyType, String notifyId, String payload);
+
+    /**
+     * 领取一批到期的通知，领取后在租约时间内其他线程、其他节点不会再领取
+     * @param leaseMillis 租约时长，处理线程挂掉时过期后重新被领取
+     */
+    List<NotifyInbox> claimBatch(int batchSize, long leaseMillis);
+
+    /**
+     * 处理成功
+     */
+    void markDone(NotifyInbox notifyInbox);
+
+    /**
+     * 处理失败，按指数退避安排重试
+     * @return 是否还会重试，超过最大重试次数返回false
+     */
+    boolean markRetry(NotifyInbox notifyInbox, String error, int maxRetries, long retryBaseMillis);
+
+    /**
+     * 待处理和处理中的通知数
+     */
+    long countPending();
+
+    /**
+     * 最早一条未处理完的通知已经等待的毫秒数，没有则为0
+     */
+    long oldestPendingAgeMillis();
+}
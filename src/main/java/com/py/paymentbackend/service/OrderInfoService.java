@@ -3,6 +3,8 @@ package com.py.paymentbackend.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.py.paymentbackend.entity.OrderInfo;
 import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.vo.CursorPage;
+import com.py.paymentbackend.vo.OrderQuery;
 
 import java.util.List;
 
@@ -20,27 +22,47 @@ public interface OrderInfoService extends IService<OrderInfo> {
     void saveCodeUrl(String orderNo, String codeUrl);
 
     /**
-     * 查询订单列表并按照创建时间降序返回
+     * 按条件查询订单列表，按创建时间降序，游标分页
      */
-    List<OrderInfo> listOrderByCreateTimeDesc();
+    CursorPage<OrderInfo> listOrderPage(OrderQuery query);
 
     /**
      * 根据订单号获取订单状态
      */
     String getOrderStatus(String orderNo);
 
+    /**
+     * 收到支付成功的结果后，记录支付日志之前检查订单能否入账
+     * 只有未支付的订单可以入账；已支付、退款中等是重复通知，直接跳过；
+     * 订单不存在或已关闭、已取消时记错误日志不入账，对账时作为账单中有、本地没有的差异报出，人工退款
+     * 读主库且不走缓存，避免读到关单之前的旧状态
+     * @return 是否可以记录支付日志并流转为支付成功
+     */
+    boolean checkPayable(String orderNo);
+
     /**
      * 更新订单支付状态
+     * 只有订单当前状态为expect时才会更新为update，一条带条件的update完成，并发时只有一个调用方成功
+     * @return 是否由本次调用完成了状态流转
+     */
+    boolean updateStatusByOrderNo(String orderNo, OrderStatus expect, OrderStatus update);
+
+    /**
+     * 批量更新订单状态，只更新当前状态为expect的订单，一条 update ... where order_no in (...) 完成
+     * @return 由本次调用完成流转的订单数
      */
-    void updateStatusByOrderNo(String orderNo, OrderStatus orderStatus);
+    int updateStatusByOrderNos(List<String> orderNos, OrderStatus expect, OrderStatus update);
 
     /**
-     * 找出创建超过minutes分钟并且未支付的订单
+     * 找出创建超过minutes分钟并且未支付的订单，按创建时间升序分页
+     * @param shards 只查这些分片内的订单，分片号为 MOD(CRC32(order_no), SweepNodeService.SHARD_COUNT)
+     * @param after 上一页的最后一条，查第一页时传null
+     * @param limit 每页条数
      */
-    List<OrderInfo> getNoPayOrderByDuration(int minutes, String payType);
+    List<OrderInfo> getNoPayOrderByDuration(int minutes, String payType, List<Integer> shards, OrderInfo after, int limit);
 
     /**
-     * 根据订单号查订单
+     * 根据订单号查订单，先查订单缓存；返回的是副本，修改后不会影响缓存
      */
     OrderInfo getOrderByOrderNo(String orderNo);
 }
@@ -3,22 +3,29 @@ package com.py.paymentbackend.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.py.paymentbackend.entity.PaymentInfo;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
 
 import java.util.Map;
 
+/**
+ * 支付记录总是在自己的事务中提交，不加入调用方的事务（调用方的事务会被挂起）
+ */
 public interface PaymentInfoService extends IService<PaymentInfo> {
 
     /**
      * 创建支付信息，记录微信支付日志
-     * @param plainText
+     * @param transaction 解析后的交易信息
+     * @param content 通知明文或查单结果原文
+     * @return 是否新记录，同一交易号只会记录一次
      */
-    void createPaymentInfo(String plainText);
+    boolean createPaymentInfo(WxTransaction transaction, String content);
 
     /**
      * 创建支付宝支付日志
      * @param params
+     * @return 是否新记录，同一交易号只会记录一次
      */
-    void createPaymentInfoForAlipay(Map<String, String> params);
+    boolean createPaymentInfoForAlipay(Map<String, String> params);
 
 
 }
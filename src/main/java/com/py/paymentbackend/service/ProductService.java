@@ -3,6 +3,17 @@ package com.py.paymentbackend.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.py.paymentbackend.entity.Product;
 
+import java.util.List;
+
 public interface ProductService extends IService<Product> {
 
+    /**
+     * 从商品缓存中取商品，不存在时返回null
+     */
+    Product getCachedById(Long productId);
+
+    /**
+     * 从商品缓存中取全部商品
+     */
+    List<Product> listCached();
 }
@@ -0,0 +1,50 @@
+package com.py.paymentbackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.py.paymentbackend.entity.RawPayload;
+import com.py.paymentbackend.enums.PayloadType;
+import com.py.paymentbackend.util.PayloadCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 支付平台原始报文，压缩后单独存放在 t_raw_payload，支付记录表、退款单表中只保留查询要用的字段
+ */
+public interface RawPayloadService extends IService<RawPayload> {
+
+    /**
+     * 压缩报文
+     */
+    static RawPayload compress(PayloadType type, String recordNo, String text) {
+        RawPayload rawPayload = new RawPayload();
+        rawPayload.setRecordType(type.name());
+        rawPayload.setRecordNo(recordNo);
+        rawPayload.setPayload(PayloadCodec.compress(text));
+        rawPayload.setRawSize(text.getBytes(StandardCharsets.UTF_8).length);
+        return rawPayload;
+    }
+
+    /**
+     * 保存报文，同一类型同一单号已存在时覆盖；单号或报文为空时不保存
+     */
+    void save(PayloadType type, String recordNo, String text);
+
+    /**
+     * 批量保存已压缩的报文
+     */
+    void saveBatch(List<RawPayload> rawPayloads);
+
+    /**
+     * 读取报文，只有这里才会解压
+     * @return 报文原文，没有记录或已经过了保留期时返回null
+     */
+    String getText(PayloadType type, String recordNo);
+
+    /**
+     * 删除一批早于指定时间的报文
+     * @return 删除条数，小于batchSize表示已经删完
+     */
+    int purgeBefore(Date before, int batchSize);
+}
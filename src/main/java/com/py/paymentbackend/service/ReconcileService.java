@@ -0,0 +1,16 @@
+package com.py.paymentbackend.service;
+
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.reconcile.ReconcileResult;
+
+import java.io.IOException;
+
+public interface ReconcileService {
+
+    /**
+     * 下载指定日期的交易账单，与当天本地的支付记录、成功的退款单对账
+     * @param billDate 账单日期，格式yyyy-MM-dd
+     * @return 差异汇总，明细写在报告文件中
+     */
+    ReconcileResult reconcile(PayType payType, String billDate) throws IOException;
+}
@@ -2,17 +2,63 @@ package com.py.paymentbackend.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.vo.RefundConfirm;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
 
 import java.util.List;
 
 
 public interface RefundInfoService extends IService<RefundInfo> {
 
+    /**
+     * 退款意向：退款单已保存、订单已改为退款中，还没有确认支付平台受理
+     * 请求支付平台时进程退出或结果未知的退款单停在这个状态，由 RefundIntentTask 重新提交
+     */
+    String STATUS_SUBMITTING = "SUBMITTING";
+
     RefundInfo createRefundByOrderNo(String orderNo, String reason, String paymentType);
 
-    void updateRefund(String content);
+    /**
+     * 保存退款意向：订单由支付成功（或退款异常）改为退款中，插入待提交的退款单，在一个短事务中完成
+     * 事务提交后调用方再请求支付平台，网络请求期间不占用数据库连接；并发的重复退款只有一个能改到订单状态
+     */
+    RefundInfo createRefundIntent(String orderNo, String reason, String paymentType);
+
+    /**
+     * 支付平台受理或拒绝后回写退款意向，只更新仍是待提交的退款单，重复回写或退款通知先到时不覆盖
+     * 退款单、响应原文、订单状态在一个短事务中更新
+     * @param result 要回写的退款单字段，按 refundNo 更新，contentReturn 为响应原文
+     * @param orderStatus 订单由退款中流转到的状态，退款还在处理中时传null
+     * @return 是否由这次调用完成回写
+     */
+    boolean finishRefundIntent(RefundInfo result, OrderStatus orderStatus);
+
+    /**
+     * 找出创建超过minutes分钟仍是待提交的退款单，分页方式与 getNoRefundOrderByDuration 相同
+     */
+    List<RefundInfo> getRefundIntents(int minutes, String payType, List<Integer> shards, RefundInfo after, int limit);
+
+    /**
+     * 更新微信退款单
+     * @param refund 解析后的退款信息
+     * @param content 退款响应或退款通知明文原文
+     */
+    void updateRefund(WxRefund refund, String content);
+
+    /**
+     * 找出申请超过minutes分钟并且未成功的退款单，按创建时间升序分页
+     * @param shards 只查这些分片内的退款单，与订单一样按商品订单号分片
+     * @param after 上一页的最后一条，查第一页时传null
+     * @param limit 每页条数
+     */
+    List<RefundInfo> getNoRefundOrderByDuration(int minutes, String payType, List<Integer> shards, RefundInfo after, int limit);
 
-    List<RefundInfo> getNoRefundOrderByDuration(int i, String payType);
+    /**
+     * 回写一批退款单的核实结果：订单状态按目标状态分组各一条批量update，退款单一条批量update
+     * 订单和退款单在同一个事务中更新
+     */
+    void confirmRefunds(List<RefundConfirm> confirms);
 
     void updateRefundForAlipay(String refundNo, String body, String status);
 
@@ -0,0 +1,41 @@
+package com.py.paymentbackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.py.paymentbackend.entity.SweepNode;
+
+import java.util.List;
+
+public interface SweepNodeService extends IService<SweepNode> {
+
+    /**
+     * 订单按 MOD(CRC32(order_no), SHARD_COUNT) 分成固定数量的分片，再把分片分给存活节点
+     * 各节点必须一致，修改时要同时重启所有节点
+     */
+    int SHARD_COUNT = 64;
+
+    /**
+     * 订单表、退款单表中计算分片号的表达式（MySQL）
+     */
+    String SHARD_COLUMN = "MOD(CRC32(order_no), " + SHARD_COUNT + ")";
+
+    /**
+     * 登记本节点心跳
+     */
+    void heartbeat(String nodeId);
+
+    /**
+     * 最近ttlMillis毫秒内有心跳的节点，按节点标识排序，所有节点看到的顺序一致
+     */
+    List<String> listLiveNodes(long ttlMillis);
+
+    /**
+     * 节点下线，其他节点下次心跳时接管它的分片
+     */
+    void leave(String nodeId);
+
+    /**
+     * 清理心跳早已过期的节点记录
+     * @return 清理条数
+     */
+    int removeExpired(long expireMillis);
+}
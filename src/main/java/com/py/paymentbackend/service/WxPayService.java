@@ -1,6 +1,12 @@
 package com.py.paymentbackend.service;
 
+import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.vo.RefundConfirm;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.util.Map;
 
@@ -19,10 +25,10 @@ public interface WxPayService {
 
     /**
      * 支付通知中的订单处理
-     * @param bodyMap 支付通知参数
+     * @param notify 支付通知
      * @throws GeneralSecurityException
      */
-    void processOrder(Map<String, Object> bodyMap) throws GeneralSecurityException;
+    void processOrder(WxNotify notify) throws GeneralSecurityException;
 
     /**
      * 取消订单
@@ -41,12 +47,27 @@ public interface WxPayService {
      */
     void checkOrderStatus(String orderNo) throws IOException;
 
+    /**
+     * 向微信核实订单状态，已支付的订单直接处理，未支付的订单调用关单接口
+     * @return CLOSED 表示微信端已关单，本地订单状态由调用方更新（定时任务批量更新）；
+     *         SUCCESS 表示已按支付成功处理；null 表示无需处理
+     */
+    OrderStatus confirmOrderStatus(String orderNo) throws IOException;
+
     /**
      * 申请退款
      * @param orderNo
      * @param reason
+     * @return 微信已受理或已拒绝时返回true；结果未知时返回false，退款单保持待提交，稍后重新提交
      */
-    void refund(String orderNo, String reason) throws IOException;
+    boolean refund(String orderNo, String reason) throws IOException;
+
+    /**
+     * 按已保存的退款单调用退款接口并回写结果，退款和恢复任务共用
+     * @param refundInfo 待提交的退款单
+     * @return 微信已受理或已拒绝时返回true；结果未知时返回false，退款单保持待提交
+     */
+    boolean submitRefund(RefundInfo refundInfo) throws IOException;
 
     /**
      * 查询退款接口用
@@ -61,11 +82,17 @@ public interface WxPayService {
      */
     void checkRefundStatus(String refundNo) throws IOException;
 
+    /**
+     * 向微信核实退款状态，只查询不更新
+     * @return 退款已有最终结果时返回要回写的内容，否则返回null
+     */
+    RefundConfirm confirmRefundStatus(String refundNo) throws IOException;
+
     /**
      * 处理退款订单
-     * @param dataMap
+     * @param notify 退款通知
      */
-    void processRefund(Map<String, Object> dataMap) throws Exception;
+    void processRefund(WxNotify notify) throws Exception;
 
     /**
      * 获取交易账单URL
@@ -73,12 +100,12 @@ public interface WxPayService {
     String queryBill(String billDate, String type) throws IOException;
 
     /**
-     * 下载账单
+     * 下载账单到本地文件，已经下载过的直接返回
      * @param billDate
      * @param type
-     * @return
+     * @return 解压并校验过的账单文件
      */
-    String downloadBill(String billDate, String type) throws IOException;
+    Path downloadBill(String billDate, String type) throws IOException;
 
     /**
      * native下单V2
@@ -5,8 +5,6 @@ import com.alipay.api.AlipayApiException;
 import com.alipay.api.AlipayClient;
 import com.alipay.api.request.*;
 import com.alipay.api.response.*;
-import com.google.gson.Gson;
-import com.google.gson.internal.LinkedTreeMap;
 import com.py.paymentbackend.entity.OrderInfo;
 import com.py.paymentbackend.entity.RefundInfo;
 import com.py.paymentbackend.enums.OrderStatus;
@@ -16,22 +14,37 @@ import com.py.paymentbackend.service.AliPayService;
 import com.py.paymentbackend.service.OrderInfoService;
 import com.py.paymentbackend.service.PaymentInfoService;
 import com.py.paymentbackend.service.RefundInfoService;
+import com.py.paymentbackend.util.GatewayMetrics;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.util.StripedLock;
+import com.py.paymentbackend.vo.RefundConfirm;
+import com.py.paymentbackend.vo.alipay.AlipayRefundQueryResult;
+import com.py.paymentbackend.vo.alipay.AlipayTradeQueryResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.math.BigDecimal;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
 
 @Slf4j
 @Service
 public class AliPayServiceImpl implements AliPayService {
 
+    /**
+     * 支付宝网关的返回码：服务不可用，业务可能已经执行
+     */
+    private static final String ALIPAY_UNAVAILABLE = "20000";
+
+    /**
+     * 支付宝业务的错误码：系统错误，需要用相同的参数重新调用
+     */
+    private static final String ALIPAY_SYSTEM_ERROR = "ACQ.SYSTEM_ERROR";
+
     @Resource
     private OrderInfoService orderInfoService;
 
@@ -47,10 +60,20 @@ public class AliPayServiceImpl implements AliPayService {
     @Resource
     private RefundInfoService refundInfoService;
 
-    private final ReentrantLock lock = new ReentrantLock();
+    @Resource
+    private StripedLock orderLock;
 
+    /**
+     * 支付平台接口调用的监控指标；pageExecute 只在本地生成表单，不统计
+     */
+    @Resource
+    private GatewayMetrics gatewayMetrics;
+
+    /**
+     * 未支付订单先落库（单条插入，自动提交），再在本地生成支付表单，不在事务中签名
+     * 生成表单失败时订单保持未支付，由超时订单核实任务关单
+     */
     @Override
-    @Transactional // 允许回滚
     public String tradeCreate(Long productId) {
         try {
             // 1.日志记录
@@ -91,36 +114,34 @@ public class AliPayServiceImpl implements AliPayService {
 
     /**
      * 处理订单
-     *   1.更新订单状态
+     *   1.检查订单存在且未支付
      *   2.记录支付日志
+     *   3.更新订单状态
+     * 两步不在同一个事务中，顺序和原因见 WxPayServiceImpl.processOrder
      * @param params
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void processOrder(Map<String, String> params) {
 
         log.info("处理订单");
 
         String outTradeNo = params.get("out_trade_no");
 
-        // 数据并发问题，在业务处理时，应该加锁
-        if (lock.tryLock()) {
-            try{
+        // 数据并发问题，在业务处理时，应该加锁，按订单号分段
+        Lock lock = orderLock.lock(outTradeNo);
+        try{
 
-                // 处理重复通知
-                // 接口调用的幂等性：无论接口被调用多少次，以下业务执行一次
-                String orderStatus = orderInfoService.getOrderStatus(outTradeNo);
-                if (!OrderStatus.NOTPAY.getType().equals(orderStatus)) {
-                    return;
-                }
-
-                orderInfoService.updateStatusByOrderNo(outTradeNo, OrderStatus.SUCCESS);
-
-                paymentInfoService.createPaymentInfoForAlipay(params);
-
-            }finally {
-                lock.unlock();
+            // 处理重复通知
+            // 接口调用的幂等性：无论接口被调用多少次，以下业务执行一次
+            // 订单存在且未支付才入账，支付日志按交易号去重，状态只会从未支付改为支付成功一次
+            if (!orderInfoService.checkPayable(outTradeNo)) {
+                return;
             }
+            paymentInfoService.createPaymentInfoForAlipay(params);
+            orderInfoService.updateStatusByOrderNo(outTradeNo, OrderStatus.NOTPAY, OrderStatus.SUCCESS);
+
+        }finally {
+            lock.unlock();
         }
     }
 
@@ -133,7 +154,9 @@ public class AliPayServiceImpl implements AliPayService {
 
         this.closeOrder(orderNo);
 
-        orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.CANCEL);
+        if (!orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.CANCEL)) {
+            log.warn("订单不是未支付状态，无法取消，orderNo:{}", orderNo);
+        }
 
     }
 
@@ -148,7 +171,7 @@ public class AliPayServiceImpl implements AliPayService {
             JSONObject bizContent = new JSONObject();
             bizContent.put("out_trade_no", orderNo);
             request.setBizContent(bizContent.toString());
-            AlipayTradeCloseResponse response = alipayClient.execute(request);
+            AlipayTradeCloseResponse response = gatewayMetrics.alipay(request, () -> alipayClient.execute(request));
             if(response.isSuccess()){
                 log.info("关单接口调用成功");
             } else {
@@ -177,7 +200,7 @@ public class AliPayServiceImpl implements AliPayService {
             JSONObject bizContent = new JSONObject();
             bizContent.put("out_trade_no", orderNo);
             request.setBizContent(bizContent.toString());
-            AlipayTradeQueryResponse response = alipayClient.execute(request);
+            AlipayTradeQueryResponse response = gatewayMetrics.alipay(request, () -> alipayClient.execute(request));
             if(response.isSuccess()){
                 log.info("调用成功，返回结果:{}", response.getBody());
                 return response.getBody();
@@ -201,130 +224,195 @@ public class AliPayServiceImpl implements AliPayService {
      */
     @Override
     public void checkOrderStatus(String orderNo) {
+        if (this.confirmOrderStatus(orderNo) == OrderStatus.CLOSED) {
+            // 更新本地订单状态
+            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.CLOSED);
+        }
+    }
+
+    /**
+     * 核实订单状态，本地关单留给调用方
+     * @param orderNo
+     */
+    @Override
+    public OrderStatus confirmOrderStatus(String orderNo) {
         log.warn("根据订单号核实订单状态 orderNo:{}", orderNo);
-        // 1.调用微信支付查单接口
+        // 1.调用支付宝查单接口
         String result = this.queryOrder(orderNo);
         if (result == null) {
             log.warn("订单不存在，orderNo:{}", orderNo);
-            // 如果订单不存在，则更新本地订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.CLOSED);
-            return;
+            // 如果订单不存在，则关闭本地订单
+            return OrderStatus.CLOSED;
         }
 
         // 2.转换响应参数
-        Gson gson = new Gson();
-        HashMap<String, LinkedTreeMap> resultMap = gson.fromJson(result, HashMap.class);
+        AlipayTradeQueryResult.Trade trade = JsonUtils.fromJson(result, AlipayTradeQueryResult.class).getAlipayTradeQueryResponse();
 
-        // 3.获取微信支付端的订单状态
-        LinkedTreeMap alipayTradeQueryResponse = resultMap.get("alipay_trade_query_response");
-        String tradeStatus = (String)alipayTradeQueryResponse.get("trade_status");
+        // 3.获取支付宝端的订单状态
+        String tradeStatus = trade.getTradeStatus();
 
         // 4.判断订单状态 确认已支付则更新订单状态，否则关闭订单
         if (AliTradeState.SUCCESS.getStatus().equals(tradeStatus)) {
             log.warn("核实订单已支付，orderNo:{}", orderNo);
-            // 如果确认订单已支付则更新本地订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.SUCCESS);
-            // 记录支付日志
-            paymentInfoService.createPaymentInfoForAlipay(alipayTradeQueryResponse);
+            // 如果确认订单已支付则记录支付日志、更新本地订单状态，支付通知可能已经先处理过了，顺序同 processOrder
+            // 支付日志的字段与支付通知中的一致
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("out_trade_no", trade.getOutTradeNo());
+            params.put("trade_no", trade.getTradeNo());
+            params.put("trade_status", trade.getTradeStatus());
+            params.put("total_amount", trade.getTotalAmount());
+            if (orderInfoService.checkPayable(orderNo)) {
+                paymentInfoService.createPaymentInfoForAlipay(params);
+                orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.SUCCESS);
+            }
+            return OrderStatus.SUCCESS;
         }
 
         if (AliTradeState.NOTPAY.getStatus().equals(tradeStatus)) {
             log.warn("核实订单未支付，orderNo:{}", orderNo);
             // 订单未支付，则调用关单接口
             this.closeOrder(orderNo);
-            // 更新本地订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.CLOSED);
+            return OrderStatus.CLOSED;
         }
+        return null;
     }
 
     /**
      * 根据订单号退款
+     * 保存退款意向 -> 调用退款接口 -> 回写结果，两次数据库操作各是一个短事务，调用支付宝期间不占用数据库连接
      * @param orderNo
      * @param reason 退款原因
+     * @return 结果未知时返回false，退款单由 RefundIntentTask 重新提交
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void refund(String orderNo, String reason) {
-        try {
-            log.info("调用退款api");
-            // 1.创建退款订单
-            RefundInfo refundInfo = refundInfoService.createRefundByOrderNo(orderNo, reason, PayType.ALIPAY.getType());
+    public boolean refund(String orderNo, String reason) {
+        log.info("调用退款api");
+        // 1.订单改为退款中、保存待提交的退款单，事务提交后再调用支付宝
+        RefundInfo refundInfo = refundInfoService.createRefundIntent(orderNo, reason, PayType.ALIPAY.getType());
 
-            // 2.封装参数 调用退款接口
-            AlipayTradeRefundRequest request = new AlipayTradeRefundRequest();
-            //组装当前业务方法的请求参数
-            JSONObject bizContent = new JSONObject();
-            bizContent.put("out_trade_no", orderNo);
-            BigDecimal refund = new BigDecimal(refundInfo.getRefund().toString()).divide(new BigDecimal("100"));
-            //模拟退款失败
-            //BigDecimal refund = new BigDecimal("2").divide(new BigDecimal("100"));
-            bizContent.put("refund_amount", refund);//退款金额：不能大于支付金额
-            bizContent.put("refund_reason", reason);//退款原因(可选)
-            request.setBizContent(bizContent.toString());
+        // 2.调用退款接口并回写结果
+        return this.submitRefund(refundInfo);
+    }
 
-            //执行请求，调用支付宝接口
-            AlipayTradeRefundResponse response = alipayClient.execute(request);
-            if (response.isSuccess()) {
-                log.info("退款接口调用成功，退款内容是:{}", response.getBody());
-                // 更新订单状态
-                orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_SUCCESS);
-
-                // 更新退款单
-                refundInfoService.updateRefundForAlipay(refundInfo.getRefundNo(),
-                        response.getBody(),
-                        AliTradeState.SUCCESS.getStatus());
-            }
+    /**
+     * 调用支付宝退款接口并回写结果
+     * out_request_no 传退款单号，同一退款单重复提交不会重复退款，退款异常后重新发起的退款是新的请求
+     *   1.成功：退款单和订单改为退款成功
+     *   2.业务失败：退款单改为退款失败、订单改为退款异常并抛出异常，可以重新发起退款
+     *   3.结果未知（网络异常、服务不可用、系统错误）：退款单保持待提交，由 RefundIntentTask 重新提交
+     * @return 结果未知时返回false
+     */
+    @Override
+    public boolean submitRefund(RefundInfo refundInfo) {
+        // 封装参数 调用退款接口
+        AlipayTradeRefundRequest request = new AlipayTradeRefundRequest();
+        //组装当前业务方法的请求参数
+        JSONObject bizContent = new JSONObject();
+        bizContent.put("out_trade_no", refundInfo.getOrderNo());
+        bizContent.put("out_request_no", refundInfo.getRefundNo());
+        BigDecimal refund = new BigDecimal(refundInfo.getRefund().toString()).divide(new BigDecimal("100"));
+        //模拟退款失败
+        //BigDecimal refund = new BigDecimal("2").divide(new BigDecimal("100"));
+        bizContent.put("refund_amount", refund);//退款金额：不能大于支付金额
+        bizContent.put("refund_reason", refundInfo.getReason());//退款原因(可选)
+        request.setBizContent(bizContent.toString());
+
+        //执行请求，调用支付宝接口
+        AlipayTradeRefundResponse response;
+        try {
+            response = gatewayMetrics.alipay(request, () -> alipayClient.execute(request));
         } catch (AlipayApiException e) {
-            e.printStackTrace();
+            log.error("退款接口调用异常，稍后重新提交，refundNo:{}", refundInfo.getRefundNo(), e);
+            return false;
+        }
+        if (!response.isSuccess() && (ALIPAY_UNAVAILABLE.equals(response.getCode()) || ALIPAY_SYSTEM_ERROR.equals(response.getSubCode()))) {
+            log.warn("退款结果未知，稍后重新提交，refundNo:{}，返回码:{}，具体信息是:{}",
+                    refundInfo.getRefundNo(), response.getCode(), response.getSubMsg());
+            return false;
         }
+
+        RefundInfo result = new RefundInfo();
+        result.setOrderNo(refundInfo.getOrderNo());
+        result.setRefundNo(refundInfo.getRefundNo());
+        result.setContentReturn(response.getBody());
+        if (response.isSuccess()) {
+            log.info("退款接口调用成功，退款内容是:{}", response.getBody());
+            // 更新退款单和订单状态
+            result.setRefundStatus(AliTradeState.REFUND_SUCCESS.getStatus());
+            refundInfoService.finishRefundIntent(result, OrderStatus.REFUND_SUCCESS);
+        } else {
+            log.warn("退款接口调用失败，返回码:{}，具体信息是:{}", response.getCode(), response.getSubMsg());
+            result.setRefundStatus(AliTradeState.REFUND_ERROR.getStatus());
+            refundInfoService.finishRefundIntent(result, OrderStatus.REFUND_ABNORMAL);
+            throw new RuntimeException("退款异常, 返回码 = " + response.getCode() + ", 具体信息是 = " + response.getSubMsg());
+        }
+        return true;
     }
 
     @Override
-    public void checkRefundStatus(String refundNo) {
+    public void checkRefundStatus(String orderNo, String refundNo) {
+        RefundConfirm confirm = this.confirmRefundStatus(orderNo, refundNo);
+        if (confirm != null) {
+            // 更新订单状态和退款单
+            refundInfoService.confirmRefunds(Collections.singletonList(confirm));
+        }
+    }
+
+    @Override
+    public RefundConfirm confirmRefundStatus(String orderNo, String refundNo) {
         // 1.查询退款订单
-        String refund = this.queryRefund(refundNo);
+        String refund = this.queryRefund(orderNo, refundNo);
+        if (refund == null) {
+            // 查不到退款，这次不回写，下一轮再核实
+            log.warn("未查询到退款，refundNo:{}", refundNo);
+            return null;
+        }
 
         // 2.解析响应信息
-        Gson gson = new Gson();
-        Map<String, Object> refundMap = gson.fromJson(refund, HashMap.class);
+        AlipayRefundQueryResult.Refund refundResult = JsonUtils.fromJson(refund, AlipayRefundQueryResult.class)
+                .getAlipayTradeFastpayRefundQueryResponse();
         // 获取支付宝支付端退款状态
-        String refundStatus = (String) refundMap.get("refund_status");
-        String orderNo = (String) refundMap.get("out_trade_no");
+        String refundStatus = refundResult.getRefundStatus();
+        OrderStatus orderStatus;
         if (AliTradeState.REFUND_SUCCESS.getStatus().equals(refundStatus)) {
             // 已经成功退款
             log.info("核实订单已经成功退款，orderNo:{}, refundNo:{}", orderNo, refundNo);
-            // 3.更新订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_SUCCESS);
-            // 4.更新退款单
-            refundInfoService.updateRefund(refund);
-        }
-        if (AliTradeState.REFUND_ERROR.getStatus().equals(refundStatus)) {
+            orderStatus = OrderStatus.REFUND_SUCCESS;
+        } else if (AliTradeState.REFUND_ERROR.getStatus().equals(refundStatus)) {
             // 退款异常
             log.warn("退款异常，orderNo:{}, refundNo:{}", orderNo, refundNo);
-            // 3.更新订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_ABNORMAL);
-            // 4.更新退款单
-            refundInfoService.updateRefund(refund);
+            orderStatus = OrderStatus.REFUND_ABNORMAL;
+        } else {
+            return null;
         }
+
+        // 3.要回写的退款单字段，与 RefundInfoService.updateRefundForAlipay 一致
+        RefundInfo refundInfo = new RefundInfo();
+        refundInfo.setOrderNo(orderNo);
+        refundInfo.setRefundNo(refundNo);
+        refundInfo.setRefundStatus(refundStatus);
+        refundInfo.setContentReturn(refund);
+        return new RefundConfirm(orderStatus, refundInfo);
     }
 
     /**
-     * 根据订单号查退款单信息
+     * 根据订单号和退款单号查退款单信息
      * @param orderNo
+     * @param refundNo 提交退款时传的 out_request_no
      * @return
      */
     @Override
-    public String queryRefund(String orderNo) {
+    public String queryRefund(String orderNo, String refundNo) {
 
         try {
-            log.info("查询退款接口调用：{}", orderNo);
+            log.info("查询退款接口调用：{}, {}", orderNo, refundNo);
             AlipayTradeFastpayRefundQueryRequest request = new AlipayTradeFastpayRefundQueryRequest();
             JSONObject bizContent = new JSONObject();
             bizContent.put("out_trade_no", orderNo);
-            bizContent.put("out_request_no", orderNo);
+            bizContent.put("out_request_no", refundNo);
             request.setBizContent(bizContent.toString());
 
-            AlipayTradeFastpayRefundQueryResponse response = alipayClient.execute(request);
+            AlipayTradeFastpayRefundQueryResponse response = gatewayMetrics.alipay(request, () -> alipayClient.execute(request));
             if(response.isSuccess()){
                 log.info("调用成功，返回结果:" + response.getBody());
                 return response.getBody();
@@ -355,15 +443,11 @@ public class AliPayServiceImpl implements AliPayService {
             bizContent.put("bill_type", type);
             bizContent.put("bill_date", billDate);
             request.setBizContent(bizContent.toString());
-            AlipayDataDataserviceBillDownloadurlQueryResponse response = alipayClient.execute(request);
+            AlipayDataDataserviceBillDownloadurlQueryResponse response = gatewayMetrics.alipay(request, () -> alipayClient.execute(request));
             if(response.isSuccess()) {
                 log.info("调用成功，返回结果:" + response.getBody());
-                // 获取账单下载地址
-                Gson gson = new Gson();
-                // fixme 为什么是这个类型 linkedtreemap，换成map是否可行
-                HashMap<String, LinkedTreeMap> resultMap = gson.fromJson(response.getBody(), HashMap.class);
-                LinkedTreeMap billDownloadurlResponse = resultMap.get("alipay_data_dataservice_bill_downloadurl_query_response");
-                return (String)billDownloadurlResponse.get("bill_download_url");
+                // 获取账单下载地址，SDK已经把响应解析好了，不需要再解析一遍
+                return response.getBillDownloadUrl();
             }else {
                 log.info("调用失败，返回码:" + response.getCode() + ", 返回描述: " + response.getMsg() + response.getSubMsg());
                 throw new RuntimeException("申请账单失败");
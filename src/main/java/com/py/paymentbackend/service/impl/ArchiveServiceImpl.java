@@ -0,0 +1,113 @@
+package com.py.paymentbackend.service.impl;
+
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.mapper.ArchiveMapper;
+import com.py.paymentbackend.service.ArchiveService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.Resource;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+
+@Slf4j
+@Service
+public class ArchiveServiceImpl implements ArchiveService {
+
+    private static final String[] ARCHIVE_TABLES = {"t_order_info_archive", "t_payment_info_archive", "t_refund_info_archive"};
+
+    private static final String MAX_PARTITION = "p_max";
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final List<String> ARCHIVABLE_STATUSES = ARCHIVABLE.stream()
+            .map(OrderStatus::getType).collect(Collectors.toList());
+
+    @Resource
+    private ArchiveMapper archiveMapper;
+
+    @Override
+    public List<String> selectCandidates(Date before, int limit) {
+        return archiveMapper.selectCandidates(before, ARCHIVABLE_STATUSES, limit);
+    }
+
+    /**
+     * 先删子表再删订单，和回调、退款一样先锁订单行，不会互相死锁
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int archive(List<String> orderNos) {
+        if (orderNos.isEmpty()) {
+            return 0;
+        }
+        List<String> locked = archiveMapper.lockArchivable(orderNos, ARCHIVABLE_STATUSES);
+        if (locked.isEmpty()) {
+            return 0;
+        }
+        archiveMapper.copyOrders(locked);
+        archiveMapper.copyPayments(locked);
+        archiveMapper.copyRefunds(locked);
+        archiveMapper.deleteRefunds(locked);
+        archiveMapper.deletePayments(locked);
+        return archiveMapper.deleteOrders(locked);
+    }
+
+    @Override
+    public OrderInfo getArchivedOrder(String orderNo) {
+        return archiveMapper.selectArchivedOrder(orderNo);
+    }
+
+    /**
+     * 找出 p_max 之前最后一个分区的上界，从那个月开始补到 through 为止
+     * 多个节点同时补分区时后执行的会失败，记日志后跳过，下次执行时已经补好了
+     */
+    @Override
+    public void ensurePartitions(YearMonth through) {
+        for (String table : ARCHIVE_TABLES) {
+            List<Map<String, Object>> partitions = archiveMapper.selectPartitions(table);
+            if (partitions.isEmpty()) {
+                continue;
+            }
+            YearMonth next = null;
+            for (Map<String, Object> partition : partitions) {
+                if (!MAX_PARTITION.equals(partition.get("name"))) {
+                    next = YearMonth.from(parseBound(String.valueOf(partition.get("bound"))));
+                }
+            }
+            if (next == null || next.isAfter(through)) {
+                continue;
+            }
+            List<Map<String, String>> months = new ArrayList<>();
+            for (YearMonth month = next; !month.isAfter(through); month = month.plusMonths(1)) {
+                Map<String, String> partition = new HashMap<>();
+                partition.put("name", month.format(PARTITION_NAME));
+                partition.put("bound", month.plusMonths(1).atDay(1).toString());
+                months.add(partition);
+            }
+            try {
+                archiveMapper.splitMaxPartition(table, months);
+                log.info("归档表{}新增{}个月分区，到{}为止", table, months.size(), through);
+            } catch (RuntimeException e) {
+                log.warn("归档表{}新增分区失败", table, e);
+            }
+        }
+    }
+
+    /**
+     * RANGE COLUMNS 分区的上界形如 '2022-01-01' 或 '2022-01-01 00:00:00'
+     */
+    static LocalDate parseBound(String bound) {
+        String value = bound.startsWith("'") ? bound.substring(1) : bound;
+        return LocalDate.parse(value.substring(0, 10));
+    }
+}
@@ -0,0 +1,140 @@
+package com.py.paymentbackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.py.paymentbackend.entity.NotifyInbox;
+import com.py.paymentbackend.enums.NotifyStatus;
+import com.py.paymentbackend.enums.NotifyType;
+import com.py.paymentbackend.mapper.NotifyInboxMapper;
+import com.py.paymentbackend.service.NotifyInboxService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+
+@Slf4j
+@Service
+public class NotifyInboxServiceImpl extends ServiceImpl<NotifyInboxMapper, NotifyInbox> implements NotifyInboxService {
+
+    /**
+     * 重试间隔上限
+     */
+    private static final long MAX_RETRY_DELAY_MILLIS = 10 * 60 * 1000L;
+
+    @Override
+    public boolean enqueue(NotifyType notifyType, String notifyId, String payload) {
+        NotifyInbox notifyInbox = new NotifyInbox();
+        notifyInbox.setNotifyType(notifyType.name());
+        notifyInbox.setNotifyId(notifyId);
+        notifyInbox.setPayload(payload);
+        notifyInbox.setStatus(NotifyStatus.PENDING.name());
+        notifyInbox.setRetryCount(0);
+        notifyInbox.setNextRetryTime(new Date());
+        boolean inserted = baseMapper.insertIfAbsent(notifyInbox) > 0;
+        if (!inserted) {
+            log.warn("重复通知，收件箱中已存在：{} {}", notifyType, notifyId);
+        }
+        return inserted;
+    }
+
+    /**
+     * 先查出一批到期的通知，再逐条带条件更新为处理中：
+     * update t_notify_inbox set status = 'PROCESSING', next_retry_time = #{leaseUntil}
+     * where id = #{id} and status in ('PENDING', 'PROCESSING') and next_retry_time <= #{now}
+     * 更新成功的才算领取到，多个线程、多个节点同时拉取也不会重复处理
+     */
+    @Override
+    public List<NotifyInbox> claimBatch(int batchSize, long leaseMillis) {
+        Date now = new Date();
+        QueryWrapper<NotifyInbox> queryWrapper = new QueryWrapper<>();
+        queryWrapper.in("status", NotifyStatus.PENDING.name(), NotifyStatus.PROCESSING.name());
+        queryWrapper.le("next_retry_time", now);
+        queryWrapper.orderByAsc("next_retry_time");
+        queryWrapper.last("limit " + batchSize);
+        List<NotifyInbox> candidates = baseMapper.selectList(queryWrapper);
+
+        Date leaseUntil = new Date(now.getTime() + leaseMillis);
+        List<NotifyInbox> claimed = new ArrayList<>(candidates.size());
+        for (NotifyInbox candidate : candidates) {
+            QueryWrapper<NotifyInbox> claimWrapper = new QueryWrapper<>();
+            claimWrapper.eq("id", candidate.getId());
+            claimWrapper.in("status", NotifyStatus.PENDING.name(), NotifyStatus.PROCESSING.name());
+            claimWrapper.le("next_retry_time", now);
+
+            NotifyInbox update = new NotifyInbox();
+            update.setStatus(NotifyStatus.PROCESSING.name());
+            update.setNextRetryTime(leaseUntil);
+            if (baseMapper.update(update, claimWrapper) > 0) {
+                if (NotifyStatus.PROCESSING.name().equals(candidate.getStatus())) {
+                    log.warn("通知处理超时，重新领取：{} {}", candidate.getNotifyType(), candidate.getNotifyId());
+                }
+                candidate.setStatus(NotifyStatus.PROCESSING.name());
+                candidate.setNextRetryTime(leaseUntil);
+                claimed.add(candidate);
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public void markDone(NotifyInbox notifyInbox) {
+        QueryWrapper<NotifyInbox> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("id", notifyInbox.getId());
+        queryWrapper.eq("status", NotifyStatus.PROCESSING.name());
+
+        NotifyInbox update = new NotifyInbox();
+        update.setStatus(NotifyStatus.DONE.name());
+        baseMapper.update(update, queryWrapper);
+    }
+
+    /**
+     * 第n次重试在 retryBaseMillis * 2^(n-1) 之后，最长10分钟
+     */
+    @Override
+    public boolean markRetry(NotifyInbox notifyInbox, String error, int maxRetries, long retryBaseMillis) {
+        int retryCount = notifyInbox.getRetryCount() + 1;
+        boolean retry = retryCount <= maxRetries;
+        long delay = Math.min(retryBaseMillis << Math.min(retryCount - 1, 20), MAX_RETRY_DELAY_MILLIS);
+
+        QueryWrapper<NotifyInbox> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("id", notifyInbox.getId());
+        queryWrapper.eq("status", NotifyStatus.PROCESSING.name());
+
+        NotifyInbox update = new NotifyInbox();
+        update.setStatus(retry ? NotifyStatus.PENDING.name() : NotifyStatus.FAILED.name());
+        update.setRetryCount(retryCount);
+        update.setNextRetryTime(new Date(System.currentTimeMillis() + delay));
+        update.setLastError(error != null && error.length() > 512 ? error.substring(0, 512) : error);
+        baseMapper.update(update, queryWrapper);
+
+        if (retry) {
+            log.warn("通知处理失败，{}ms后第{}次重试：{} {}", delay, retryCount, notifyInbox.getNotifyType(), notifyInbox.getNotifyId());
+        } else {
+            log.error("通知处理失败且超过最大重试次数，需要人工处理：{} {}", notifyInbox.getNotifyType(), notifyInbox.getNotifyId());
+        }
+        return retry;
+    }
+
+    @Override
+    public long countPending() {
+        QueryWrapper<NotifyInbox> queryWrapper = new QueryWrapper<>();
+        queryWrapper.in("status", NotifyStatus.PENDING.name(), NotifyStatus.PROCESSING.name());
+        return baseMapper.selectCount(queryWrapper);
+    }
+
+    @Override
+    public long oldestPendingAgeMillis() {
+        QueryWrapper<NotifyInbox> queryWrapper = new QueryWrapper<>();
+        queryWrapper.in("status", NotifyStatus.PENDING.name(), NotifyStatus.PROCESSING.name());
+        queryWrapper.orderByAsc("id");
+        queryWrapper.last("limit 1");
+        NotifyInbox oldest = baseMapper.selectOne(queryWrapper);
+        if (oldest == null || oldest.getCreateTime() == null) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - oldest.getCreateTime().getTime());
+    }
+}
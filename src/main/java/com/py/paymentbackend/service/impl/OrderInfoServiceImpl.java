@@ -2,19 +2,33 @@ package com.py.paymentbackend.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.py.paymentbackend.cache.OrderCache;
+import com.py.paymentbackend.datasource.ReadRouting;
+import com.py.paymentbackend.datasource.RecentWrites;
 import com.py.paymentbackend.entity.OrderInfo;
 import com.py.paymentbackend.entity.Product;
 import com.py.paymentbackend.enums.OrderStatus;
 import com.py.paymentbackend.mapper.OrderInfoMapper;
-import com.py.paymentbackend.mapper.ProductMapper;
+import com.py.paymentbackend.service.ArchiveService;
 import com.py.paymentbackend.service.OrderInfoService;
+import com.py.paymentbackend.service.ProductService;
+import com.py.paymentbackend.service.SweepNodeService;
 import com.py.paymentbackend.util.OrderNoUtils;
+import com.py.paymentbackend.util.OrderStatusNotifier;
+import com.py.paymentbackend.util.TransactionUtils;
+import com.py.paymentbackend.vo.CursorPage;
+import com.py.paymentbackend.vo.OrderQuery;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 
@@ -23,8 +37,30 @@ import java.util.Objects;
 @Service
 public class OrderInfoServiceImpl extends ServiceImpl<OrderInfoMapper, OrderInfo> implements OrderInfoService {
 
+    /**
+     * 订单列表默认每页条数
+     */
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * 订单列表每页最多条数
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Resource
+    private ProductService productService;
+
     @Resource
-    private ProductMapper productMapper;
+    private OrderStatusNotifier orderStatusNotifier;
+
+    @Resource
+    private OrderCache orderCache;
+
+    @Resource
+    private ArchiveService archiveService;
+
+    @Resource
+    private RecentWrites recentWrites;
 
     @Override
     public OrderInfo createOrderByProductId(Long productId, String paymentType) {
@@ -36,7 +72,10 @@ public class OrderInfoServiceImpl extends ServiceImpl<OrderInfoMapper, OrderInfo
         }
 
         // 2.获取商品信息
-        Product product = productMapper.selectById(productId);
+        Product product = productService.getCachedById(productId);
+        if (product == null) {
+            throw new RuntimeException("商品不存在：" + productId);
+        }
 
         // 3.生成订单
         orderInfo = new OrderInfo();
@@ -47,7 +86,10 @@ public class OrderInfoServiceImpl extends ServiceImpl<OrderInfoMapper, OrderInfo
         orderInfo.setTotalFee(product.getPrice());
         orderInfo.setOrderStatus(OrderStatus.NOTPAY.getType());
         baseMapper.insert(orderInfo);
+        recentWrites.mark(orderInfo.getOrderNo());
         log.info("返回的订单id：{}", orderInfo.getId());
+        OrderInfo created = orderInfo;
+        TransactionUtils.afterCommit(() -> orderCache.put(created));
 
         return orderInfo;
     }
@@ -74,73 +116,241 @@ public class OrderInfoServiceImpl extends ServiceImpl<OrderInfoMapper, OrderInfo
         OrderInfo orderInfo = baseMapper.selectOne(queryWrapper);
         orderInfo.setCodeUrl(codeUrl);
         baseMapper.updateById(orderInfo);
+        recentWrites.mark(orderNo);
+        TransactionUtils.afterCommit(() -> orderCache.codeUrlChanged(orderNo, codeUrl));
     }
 
     /**
      * 查询订单列表并按照创建时间降序返回
      * 按理来说应该根据用户信息去获取的，这里简化了
+     *
+     * 使用游标（上一页最后一条的 create_time 和 id）而不是 offset 分页：
+     * where create_time <= ? and (create_time < ? or id < ?) order by create_time desc, id desc limit size + 1
+     * 每一页都是从索引上定位后顺序读 size 条，不管翻到第几页、表有多大，耗时都一样
+     * 只读事务，配置了从库时读从库
      */
     @Override
-    public List<OrderInfo> listOrderByCreateTimeDesc() {
+    @Transactional(readOnly = true)
+    public CursorPage<OrderInfo> listOrderPage(OrderQuery query) {
+        int size = query.getSize() == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(query.getSize(), MAX_PAGE_SIZE));
+
         QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.orderByDesc("create_time");
-        return baseMapper.selectList(queryWrapper);
+        queryWrapper.eq(query.getOrderStatus() != null, "order_status",
+                query.getOrderStatus() == null ? null : query.getOrderStatus().getType());
+        queryWrapper.eq(query.getPaymentType() != null, "payment_type",
+                query.getPaymentType() == null ? null : query.getPaymentType().getType());
+        queryWrapper.eq(query.getProductId() != null, "product_id", query.getProductId());
+        queryWrapper.ge(query.getBeginTime() != null, "create_time", query.getBeginTime());
+        queryWrapper.lt(query.getEndTime() != null, "create_time", query.getEndTime());
+        if (!StringUtils.isEmpty(query.getCursor())) {
+            OrderCursor cursor = OrderCursor.decode(query.getCursor());
+            // 冗余的 create_time <= ? 让数据库可以直接在索引上做范围扫描
+            queryWrapper.le("create_time", cursor.createTime);
+            queryWrapper.and(w -> w.lt("create_time", cursor.createTime)
+                    .or(w2 -> w2.eq("create_time", cursor.createTime).lt("id", cursor.id)));
+        }
+        queryWrapper.orderByDesc("create_time", "id");
+        // 多查一条用来判断是否还有下一页
+        queryWrapper.last("limit " + (size + 1));
+
+        List<OrderInfo> list = baseMapper.selectList(queryWrapper);
+        String nextCursor = null;
+        if (list.size() > size) {
+            list = list.subList(0, size);
+            OrderInfo last = list.get(size - 1);
+            nextCursor = new OrderCursor(last.getCreateTime(), Long.parseLong(last.getId())).encode();
+        }
+        return new CursorPage<>(list, nextCursor);
+    }
+
+    /**
+     * 分页游标：上一页最后一条订单的创建时间和id，base64编码后返回给前端
+     */
+    private static class OrderCursor {
+
+        private final Date createTime;
+
+        private final long id;
+
+        OrderCursor(Date createTime, long id) {
+            this.createTime = createTime;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = createTime.getTime() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static OrderCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int split = raw.indexOf(':');
+                return new OrderCursor(new Date(Long.parseLong(raw.substring(0, split))),
+                        Long.parseLong(raw.substring(split + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标：" + cursor, e);
+            }
+        }
     }
 
+    /**
+     * 不走订单缓存：其他节点处理的回调只清除那个节点的缓存，本节点缓存的未支付状态要到过期才会更新，
+     * 前端查状态、长轮询超时回查都要及时看到支付结果
+     */
     @Override
+    @Transactional(readOnly = true)
     public String getOrderStatus(String orderNo) {
-        QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("order_no", orderNo);
-        OrderInfo orderInfo = baseMapper.selectOne(queryWrapper);
+        OrderInfo orderInfo = selectByOrderNo(orderNo);
         if (Objects.isNull(orderInfo)) {
             return null;
         }
         return orderInfo.getOrderStatus();
     }
 
+    @Override
+    public boolean checkPayable(String orderNo) {
+        OrderInfo orderInfo = ReadRouting.onPrimary(() -> selectByOrderNo(orderNo));
+        if (orderInfo == null) {
+            log.error("收到支付成功的结果，但订单不存在，不记录支付日志，需人工处理，orderNo:{}", orderNo);
+            return false;
+        }
+        String status = orderInfo.getOrderStatus();
+        if (OrderStatus.NOTPAY.getType().equals(status)) {
+            return true;
+        }
+        if (OrderStatus.CLOSED.getType().equals(status) || OrderStatus.CANCEL.getType().equals(status)) {
+            log.error("收到支付成功的结果，但订单{}，不记录支付日志，需人工退款，orderNo:{}", status, orderNo);
+        } else {
+            log.info("订单已支付，重复的支付结果直接跳过，orderNo:{}，订单状态:{}", orderNo, status);
+        }
+        return false;
+    }
+
 
     /**
      * 更新订单支付状态
+     * update t_order_info set order_status = #{update} where order_no = #{orderNo} and order_status = #{expect}
+     * 先查状态再更新要两次数据库交互，而且只能靠JVM锁保证并发安全；
+     * 带条件更新时数据库行锁保证同一订单只有一个调用方能完成流转，多线程、多节点都适用
      */
     @Override
-    public void updateStatusByOrderNo(String orderNo, OrderStatus orderStatus) {
-        log.info("更新订单状态：{}", orderStatus.getType());
+    public boolean updateStatusByOrderNo(String orderNo, OrderStatus expect, OrderStatus update) {
+        if (!expect.canTransitTo(update)) {
+            throw new IllegalStateException("不允许的订单状态流转：" + expect + " -> " + update);
+        }
         QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
         queryWrapper.eq("order_no", orderNo);
+        queryWrapper.eq("order_status", expect.getType());
+
+        OrderInfo orderInfo = new OrderInfo();
+        orderInfo.setOrderStatus(update.getType());
+        // 先清除缓存，事务中再读到的是数据库中的值
+        OrderInfo cached = orderCache.evict(orderNo);
+        boolean success = baseMapper.update(orderInfo, queryWrapper) > 0;
+        if (success) {
+            // 之后一段时间内回查这笔订单读主库，被唤醒的长轮询不会从从库读到旧状态
+            recentWrites.mark(orderNo);
+        }
+        log.info("更新订单状态：{} {} -> {}，结果：{}", orderNo, expect.getType(), update.getType(), success);
+        if (success) {
+            // 事务提交后再写回缓存、唤醒，等待者拿到的状态一定已经落库
+            TransactionUtils.afterCommit(() -> {
+                orderCache.statusChanged(orderNo, cached, expect.getType(), update.getType());
+                orderStatusNotifier.signal(orderNo, update);
+            });
+        }
+        return success;
+    }
 
-        // 这里要两次数据库交互，可以试下直接更新
-        // OrderInfo orderInfo = baseMapper.selectOne(queryWrapper);
-        // orderInfo.setOrderStatus(orderStatus.getType());
-        // baseMapper.updateById(orderInfo);
+    /**
+     * 批量更新订单状态
+     * update t_order_info set order_status = #{update} where order_no in (...) and order_status = #{expect}
+     * 与单条更新一样带状态条件，期间被支付通知等改掉状态的订单不会被覆盖
+     */
+    @Override
+    public int updateStatusByOrderNos(List<String> orderNos, OrderStatus expect, OrderStatus update) {
+        if (!expect.canTransitTo(update)) {
+            throw new IllegalStateException("不允许的订单状态流转：" + expect + " -> " + update);
+        }
+        if (orderNos.isEmpty()) {
+            return 0;
+        }
+        QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
+        queryWrapper.in("order_no", orderNos);
+        queryWrapper.eq("order_status", expect.getType());
 
         OrderInfo orderInfo = new OrderInfo();
-        orderInfo.setOrderStatus(orderStatus.getType());
-        baseMapper.update(orderInfo, queryWrapper);
+        orderInfo.setOrderStatus(update.getType());
+        // 批量更新时不逐个写回，清除后下次查库；提交后再清除一次，去掉提交前被读进缓存的旧数据
+        orderCache.evictAll(orderNos);
+        TransactionUtils.afterCommit(() -> orderCache.evictAll(orderNos));
+        recentWrites.markAll(orderNos);
+        int updated = baseMapper.update(orderInfo, queryWrapper);
+        log.info("批量更新订单状态：{} -> {}，{}条中更新{}条", expect.getType(), update.getType(), orderNos.size(), updated);
+        if (updated > 0) {
+            // 影响行数看不出是哪些订单，按新状态查回来逐个唤醒等待者
+            QueryWrapper<OrderInfo> changedWrapper = new QueryWrapper<>();
+            changedWrapper.select("order_no");
+            changedWrapper.in("order_no", orderNos);
+            changedWrapper.eq("order_status", update.getType());
+            List<Object> changed = baseMapper.selectObjs(changedWrapper);
+            TransactionUtils.afterCommit(() -> changed.forEach(orderNo -> orderStatusNotifier.signal((String) orderNo, update)));
+        }
+        return updated;
     }
 
     /**
      * 找出创建超过minutes分钟并且未支付的订单
+     * 按 (create_time, id) 升序做游标分页，走 (order_status, payment_type, create_time) 索引的范围扫描，
+     * 每页只读limit条，不会像offset分页那样越翻越慢；分片条件在索引扫描到的行上过滤
+     * 读从库：超时订单之后还要向支付平台查单确认，从库延迟最多让这一笔晚一轮处理
      */
     @Override
-    public List<OrderInfo> getNoPayOrderByDuration(int minutes, String payType) {
+    @Transactional(readOnly = true)
+    public List<OrderInfo> getNoPayOrderByDuration(int minutes, String payType, List<Integer> shards, OrderInfo after, int limit) {
         // 比当前时间少五分钟
         Instant instant = Instant.now().minus(Duration.ofMinutes(minutes));
         QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
         queryWrapper.eq("order_status", OrderStatus.NOTPAY.getType());
         queryWrapper.le("create_time", instant);
         queryWrapper.eq("payment_type", payType);
+        queryWrapper.in(SweepNodeService.SHARD_COLUMN, shards);
+        if (after != null) {
+            // create_time >= ? 让索引从上一页的位置开始扫描，后面的条件再排除同一时刻已经读过的记录
+            Date afterTime = after.getCreateTime();
+            String afterId = after.getId();
+            queryWrapper.ge("create_time", afterTime);
+            queryWrapper.and(w -> w.gt("create_time", afterTime)
+                    .or(o -> o.eq("create_time", afterTime).gt("id", afterId)));
+        }
+        queryWrapper.orderByAsc("create_time", "id");
+        queryWrapper.last("limit " + limit);
         return baseMapper.selectList(queryWrapper);
     }
 
     /**
      * 根据订单号获取订单
+     * 热表中没有时回查归档表，已归档的订单状态不会再变化，同样可以缓存
+     * 未命中缓存时读从库，本节点最近写过的订单读主库；在写事务中调用时跟随事务读主库
      * @param orderNo
      * @return
      */
     @Override
+    @Transactional(readOnly = true)
     public OrderInfo getOrderByOrderNo(String orderNo) {
-        QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("order_no", orderNo);
-        return baseMapper.selectOne(queryWrapper);
+        return orderCache.get(orderNo, this::selectByOrderNo);
+    }
+
+    /**
+     * 查库，热表中没有时回查归档表；读从库，本节点最近写过的订单读主库
+     */
+    private OrderInfo selectByOrderNo(String orderNo) {
+        return recentWrites.read(orderNo, () -> {
+            QueryWrapper<OrderInfo> queryWrapper = new QueryWrapper<>();
+            queryWrapper.eq("order_no", orderNo);
+            OrderInfo orderInfo = baseMapper.selectOne(queryWrapper);
+            return orderInfo != null ? orderInfo : archiveService.getArchivedOrder(orderNo);
+        });
     }
 }
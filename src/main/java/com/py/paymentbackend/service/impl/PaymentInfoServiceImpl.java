@@ -2,16 +2,25 @@ package com.py.paymentbackend.service.impl;
 
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.google.gson.Gson;
+import com.py.paymentbackend.config.PaymentBatchConfig;
 import com.py.paymentbackend.entity.PaymentInfo;
 import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.enums.PayloadType;
 import com.py.paymentbackend.mapper.PaymentInfoMapper;
 import com.py.paymentbackend.service.PaymentInfoService;
+import com.py.paymentbackend.service.RawPayloadService;
+import com.py.paymentbackend.util.GroupCommitBuffer;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.Resource;
 import java.math.BigDecimal;
-import java.util.HashMap;
 import java.util.Map;
 
 
@@ -19,35 +28,39 @@ import java.util.Map;
 @Service
 public class PaymentInfoServiceImpl extends ServiceImpl<PaymentInfoMapper, PaymentInfo> implements PaymentInfoService {
 
+    @Resource
+    private PaymentBatchConfig paymentBatchConfig;
+
+    @Resource
+    private GroupCommitBuffer<PaymentInfo, Boolean> paymentInfoBuffer;
+
+    @Resource
+    private RawPayloadService rawPayloadService;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
     /**
      * 创建支付信息，记录微信支付日志
-     * @param plainText
+     * @param transaction 解析后的交易信息
+     * @param content 通知明文或查单结果原文
      */
     @Override
-    public void createPaymentInfo(String plainText) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean createPaymentInfo(WxTransaction transaction, String content) {
 
         log.info("记录微信支付日志");
 
-        Gson gson = new Gson();
-        Map<String, Object> plainTextMap = gson.fromJson(plainText, HashMap.class);
-
-        String orderNo = (String)plainTextMap.get("out_trade_no");
-        String transactionId = (String)plainTextMap.get("transaction_id");
-        String tradeType = (String)plainTextMap.get("trade_type");
-        String tradeState = (String)plainTextMap.get("trade_state");
-        Map<String, Object> amount = (Map)plainTextMap.get("amount");
-        Integer payerTotal = ((Double) amount.get("payer_total")).intValue();
-
         PaymentInfo paymentInfo = new PaymentInfo();
-        paymentInfo.setOrderNo(orderNo);
+        paymentInfo.setOrderNo(transaction.getOutTradeNo());
         paymentInfo.setPaymentType(PayType.WXPAY.getType());
-        paymentInfo.setTransactionId(transactionId);
-        paymentInfo.setTradeType(tradeType);
-        paymentInfo.setTradeState(tradeState);
-        paymentInfo.setPayerTotal(payerTotal);
-        paymentInfo.setContent(plainText);
+        paymentInfo.setTransactionId(transaction.getTransactionId());
+        paymentInfo.setTradeType(transaction.getTradeType());
+        paymentInfo.setTradeState(transaction.getTradeState());
+        paymentInfo.setPayerTotal(transaction.getAmount() == null ? null : transaction.getAmount().getPayerTotal());
+        paymentInfo.setContent(content);
 
-        baseMapper.insert(paymentInfo);
+        return insertIfAbsent(paymentInfo);
     }
 
     /**
@@ -55,7 +68,8 @@ public class PaymentInfoServiceImpl extends ServiceImpl<PaymentInfoMapper, Payme
      * @param params
      */
     @Override
-    public void createPaymentInfoForAlipay(Map<String, String> params) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean createPaymentInfoForAlipay(Map<String, String> params) {
 
         log.info("记录支付宝支付日志");
 
@@ -77,11 +91,35 @@ public class PaymentInfoServiceImpl extends ServiceImpl<PaymentInfoMapper, Payme
         paymentInfo.setTradeState(tradeStatus);
         paymentInfo.setPayerTotal(totalAmountInt);
 
-        Gson gson = new Gson();
-        String json = gson.toJson(params, HashMap.class);
-        paymentInfo.setContent(json);
+        paymentInfo.setContent(JsonUtils.toJson(params));
+
+        return insertIfAbsent(paymentInfo);
+    }
 
-        baseMapper.insert(paymentInfo);
+    /**
+     * 按交易号去重插入，不依赖JVM锁，重复通知、多节点并发都只会记录一次
+     * 开启批量写入时与其他回调的插入合成一批，等这一批提交后才返回
+     * 支付记录总是在自己的事务中提交，入口方法上是 NOT_SUPPORTED：调用方有事务时先挂起，调用方回滚也不会带走支付记录
+     * 挂起的事务仍占着连接，批量写入又要从连接池再取一个连接，所以回调路径上先记录支付记录再开事务更新订单状态
+     * 通知原文只在新记录时保存，与支付记录在同一个事务中
+     */
+    private boolean insertIfAbsent(PaymentInfo paymentInfo) {
+        boolean inserted;
+        if (paymentBatchConfig.isEnabled()) {
+            inserted = paymentInfoBuffer.submit(paymentInfo);
+        } else {
+            inserted = new TransactionTemplate(transactionManager).execute(status -> {
+                boolean isNew = baseMapper.insertIfAbsent(paymentInfo) > 0;
+                if (isNew) {
+                    rawPayloadService.save(PayloadType.PAYMENT, paymentInfo.getTransactionId(), paymentInfo.getContent());
+                }
+                return isNew;
+            });
+        }
+        if (!inserted) {
+            log.warn("支付日志已存在，交易号:{}", paymentInfo.getTransactionId());
+        }
+        return inserted;
     }
 
 }
@@ -1,13 +1,125 @@
 package com.py.paymentbackend.service.impl;
 
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.py.paymentbackend.cache.ProductCatalog;
 import com.py.paymentbackend.entity.Product;
 import com.py.paymentbackend.mapper.ProductMapper;
 import com.py.paymentbackend.service.ProductService;
+import com.py.paymentbackend.util.TransactionUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 商品的写操作在事务提交后清除商品缓存，读操作走 getCachedById、listCached
+ */
+@Slf4j
 @Service
 public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> implements ProductService {
 
+    @Resource
+    private ProductCatalog productCatalog;
+
+    /**
+     * 启动完成后预热，此时数据库版本脚本已经执行完
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            productCatalog.warmUp();
+        } catch (Exception e) {
+            // 预热失败不影响启动，用到时再加载
+            log.warn("商品缓存预热失败", e);
+        }
+    }
+
+    @Override
+    public Product getCachedById(Long productId) {
+        return productCatalog.get(productId);
+    }
+
+    @Override
+    public List<Product> listCached() {
+        return productCatalog.list();
+    }
+
+    @Override
+    public boolean save(Product entity) {
+        boolean saved = super.save(entity);
+        invalidateAfterCommit(entity.getId());
+        return saved;
+    }
+
+    @Override
+    public boolean updateById(Product entity) {
+        boolean updated = super.updateById(entity);
+        invalidateAfterCommit(entity.getId());
+        return updated;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean removed = super.removeById(id);
+        invalidateAfterCommit(id);
+        return removed;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<? extends Serializable> idList) {
+        boolean removed = super.removeByIds(idList);
+        invalidateAllAfterCommit();
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Wrapper<Product> queryWrapper) {
+        boolean removed = super.remove(queryWrapper);
+        invalidateAllAfterCommit();
+        return removed;
+    }
+
+    @Override
+    public boolean update(Product entity, Wrapper<Product> updateWrapper) {
+        boolean updated = super.update(entity, updateWrapper);
+        invalidateAllAfterCommit();
+        return updated;
+    }
+
+    @Override
+    public boolean saveBatch(Collection<Product> entityList, int batchSize) {
+        boolean saved = super.saveBatch(entityList, batchSize);
+        invalidateAllAfterCommit();
+        return saved;
+    }
+
+    @Override
+    public boolean updateBatchById(Collection<Product> entityList, int batchSize) {
+        boolean updated = super.updateBatchById(entityList, batchSize);
+        invalidateAllAfterCommit();
+        return updated;
+    }
+
+    /**
+     * 提交前清除的话，并发的读可能把还没提交的旧数据重新放进缓存
+     */
+    private void invalidateAfterCommit(Serializable id) {
+        if (id == null) {
+            invalidateAllAfterCommit();
+            return;
+        }
+        Long productId = Long.valueOf(id.toString());
+        TransactionUtils.afterCommit(() -> productCatalog.invalidate(productId));
+    }
+
+    private void invalidateAllAfterCommit() {
+        TransactionUtils.afterCommit(productCatalog::invalidateAll);
+    }
 }
@@ -0,0 +1,49 @@
+package com.py.paymentbackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.py.paymentbackend.entity.RawPayload;
+import com.py.paymentbackend.enums.PayloadType;
+import com.py.paymentbackend.mapper.RawPayloadMapper;
+import com.py.paymentbackend.service.RawPayloadService;
+import com.py.paymentbackend.util.PayloadCodec;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+
+
+@Service
+public class RawPayloadServiceImpl extends ServiceImpl<RawPayloadMapper, RawPayload> implements RawPayloadService {
+
+    @Override
+    public void save(PayloadType type, String recordNo, String text) {
+        if (recordNo == null || text == null) {
+            return;
+        }
+        baseMapper.upsert(RawPayloadService.compress(type, recordNo, text));
+    }
+
+    @Override
+    public void saveBatch(List<RawPayload> rawPayloads) {
+        if (rawPayloads.isEmpty()) {
+            return;
+        }
+        baseMapper.upsertBatch(rawPayloads);
+    }
+
+    @Override
+    public String getText(PayloadType type, String recordNo) {
+        QueryWrapper<RawPayload> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("payload");
+        queryWrapper.eq("record_type", type.name());
+        queryWrapper.eq("record_no", recordNo);
+        RawPayload rawPayload = baseMapper.selectOne(queryWrapper);
+        return rawPayload == null ? null : PayloadCodec.decompress(rawPayload.getPayload());
+    }
+
+    @Override
+    public int purgeBefore(Date before, int batchSize) {
+        return baseMapper.deleteCreatedBefore(before, batchSize);
+    }
+}
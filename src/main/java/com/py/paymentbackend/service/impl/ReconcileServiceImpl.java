@@ -0,0 +1,139 @@
+package com.py.paymentbackend.service.impl;
+
+import com.py.paymentbackend.config.ReconcileConfig;
+import com.py.paymentbackend.entity.PaymentInfo;
+import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.enums.alipay.AliTradeState;
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import com.py.paymentbackend.mapper.PaymentInfoMapper;
+import com.py.paymentbackend.mapper.RefundInfoMapper;
+import com.py.paymentbackend.reconcile.AliBillParser;
+import com.py.paymentbackend.reconcile.BillRecord;
+import com.py.paymentbackend.reconcile.ReconcileEngine;
+import com.py.paymentbackend.reconcile.ReconcileResult;
+import com.py.paymentbackend.reconcile.WxBillParser;
+import com.py.paymentbackend.service.AliPayService;
+import com.py.paymentbackend.service.ReconcileService;
+import com.py.paymentbackend.service.WxPayService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+@Slf4j
+@Service
+public class ReconcileServiceImpl implements ReconcileService {
+
+    /**
+     * 本地退款成功的状态：微信退款成功、支付宝查询退款成功、支付宝退款接口调用成功时记录的状态
+     */
+    private static final List<String> REFUND_SUCCESS_STATUSES = Arrays.asList(
+            WxRefundStatus.SUCCESS.getType(),
+            AliTradeState.REFUND_SUCCESS.getStatus(),
+            AliTradeState.SUCCESS.getStatus());
+
+    @Resource
+    private WxPayService wxPayService;
+
+    @Resource
+    private AliPayService aliPayService;
+
+    @Resource
+    private PaymentInfoMapper paymentInfoMapper;
+
+    @Resource
+    private RefundInfoMapper refundInfoMapper;
+
+    @Resource
+    private ReconcileEngine reconcileEngine;
+
+    @Resource
+    private ReconcileConfig reconcileConfig;
+
+    @Override
+    public ReconcileResult reconcile(PayType payType, String billDate) throws IOException {
+        log.info("开始对账，支付类型:{}，账单日期:{}", payType.getType(), billDate);
+        LocalDate date = LocalDate.parse(billDate, DateTimeFormatter.ISO_LOCAL_DATE);
+
+        // 1.下载账单
+        Path billFile = payType == PayType.WXPAY
+                ? wxPayService.downloadBill(billDate, "tradebill")
+                : downloadAliBill(billDate);
+
+        // 2.账单和当天的本地记录对账
+        Date begin = Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date end = Date.from(date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Path report = Paths.get(reconcileConfig.getWorkDir(), payType.name().toLowerCase() + "_" + billDate + "_report.csv");
+        ReconcileResult result = reconcileEngine.run(
+                sink -> scanLocal(payType, begin, end, sink),
+                sink -> {
+                    try (InputStream in = Files.newInputStream(billFile)) {
+                        if (payType == PayType.WXPAY) {
+                            WxBillParser.parse(in, sink);
+                        } else {
+                            AliBillParser.parse(in, sink);
+                        }
+                    }
+                },
+                report);
+        log.info("对账完成，支付类型:{}，账单日期:{}，结果:{}", payType.getType(), billDate, result);
+        return result;
+    }
+
+    /**
+     * 本地的支付记录和成功的退款单
+     * 微信退款按商户退款单号对账；支付宝退款没有传退款请求号，账单中的请求号就是商户订单号
+     */
+    private void scanLocal(PayType payType, Date begin, Date end, Consumer<BillRecord> sink) {
+        paymentInfoMapper.scanForReconcile(payType.getType(), begin, end, context -> {
+            PaymentInfo paymentInfo = context.getResultObject();
+            sink.accept(BillRecord.pay(paymentInfo.getOrderNo(),
+                    paymentInfo.getPayerTotal() == null ? 0 : paymentInfo.getPayerTotal()));
+        });
+        refundInfoMapper.scanForReconcile(payType.getType(), REFUND_SUCCESS_STATUSES, begin, end, context -> {
+            RefundInfo refundInfo = context.getResultObject();
+            String refundNo = payType == PayType.ALIPAY ? refundInfo.getOrderNo() : refundInfo.getRefundNo();
+            sink.accept(BillRecord.refund(refundNo, refundInfo.getRefund() == null ? 0 : refundInfo.getRefund()));
+        });
+    }
+
+    /**
+     * 下载支付宝交易账单压缩包，已经下载过的直接用
+     */
+    private Path downloadAliBill(String billDate) throws IOException {
+        Path billDir = Paths.get(reconcileConfig.getWorkDir());
+        Path billFile = billDir.resolve("ali_trade_" + billDate + ".zip");
+        if (Files.exists(billFile)) {
+            return billFile;
+        }
+        String downloadUrl = aliPayService.queryBill(billDate, "trade");
+        Files.createDirectories(billDir);
+        Path tempFile = Files.createTempFile(billDir, billFile.getFileName().toString(), ".tmp");
+        try {
+            try (InputStream in = new URL(downloadUrl).openStream()) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempFile, billFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("支付宝账单已保存到{}，大小{}字节", billFile, Files.size(billFile));
+            return billFile;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
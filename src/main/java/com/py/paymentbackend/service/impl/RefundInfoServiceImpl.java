@@ -2,22 +2,32 @@ package com.py.paymentbackend.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.google.gson.Gson;
 import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.entity.RawPayload;
 import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayloadType;
 import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
 import com.py.paymentbackend.mapper.RefundInfoMapper;
 import com.py.paymentbackend.service.OrderInfoService;
+import com.py.paymentbackend.service.RawPayloadService;
+import com.py.paymentbackend.service.SweepNodeService;
 import com.py.paymentbackend.service.RefundInfoService;
 import com.py.paymentbackend.util.OrderNoUtils;
+import com.py.paymentbackend.vo.RefundConfirm;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 
 @Service
@@ -26,6 +36,9 @@ public class RefundInfoServiceImpl extends ServiceImpl<RefundInfoMapper, RefundI
     @Resource
     private OrderInfoService orderInfoService;
 
+    @Resource
+    private RawPayloadService rawPayloadService;
+
     /**
      * 根据订单号创建退款订单
      * @param orderNo
@@ -45,39 +58,74 @@ public class RefundInfoServiceImpl extends ServiceImpl<RefundInfoMapper, RefundI
         refundInfo.setRefund(orderInfo.getTotalFee());//退款金额(分)
         refundInfo.setReason(reason);//退款原因
         refundInfo.setPaymentType(paymentType);
+        refundInfo.setRefundStatus(STATUS_SUBMITTING);//请求支付平台之前先落库，之后按退款单号回写结果
 
         //保存退款订单
         baseMapper.insert(refundInfo);
         return refundInfo;
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public RefundInfo createRefundIntent(String orderNo, String reason, String paymentType) {
+        // 先把订单改为退款中，并发的重复退款请求只有一个能成功，失败时整个事务回滚；退款异常的订单可以重新发起退款
+        if (!orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.SUCCESS, OrderStatus.REFUND_PROCESSING)
+                && !orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_ABNORMAL, OrderStatus.REFUND_PROCESSING)) {
+            throw new RuntimeException("订单不是支付成功状态，不能退款");
+        }
+        return this.createRefundByOrderNo(orderNo, reason, paymentType);
+    }
+
+    /**
+     * update t_refund_info set ... where refund_no = #{refundNo} and refund_status = 'SUBMITTING'
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean finishRefundIntent(RefundInfo result, OrderStatus orderStatus) {
+        QueryWrapper<RefundInfo> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("refund_no", result.getRefundNo());
+        queryWrapper.eq("refund_status", STATUS_SUBMITTING);
+
+        RefundInfo refundInfo = new RefundInfo();
+        refundInfo.setRefundId(result.getRefundId());
+        refundInfo.setRefundStatus(result.getRefundStatus());
+        if (baseMapper.update(refundInfo, queryWrapper) == 0) {
+            return false;
+        }
+        if (result.getContentReturn() != null) {
+            rawPayloadService.save(PayloadType.REFUND_RETURN, result.getRefundNo(), result.getContentReturn());
+        }
+        if (orderStatus != null) {
+            orderInfoService.updateStatusByOrderNo(result.getOrderNo(), OrderStatus.REFUND_PROCESSING, orderStatus);
+        }
+        return true;
+    }
+
     /**
      * 记录退款记录
-     * @param content
+     * @param refund 解析后的退款信息
+     * @param content 原文
      */
     @Override
-    public void updateRefund(String content) {
-        // 将json字符串转换成Map
-        Gson gson = new Gson();
-        Map<String, String> resultMap = gson.fromJson(content, HashMap.class);
+    public void updateRefund(WxRefund refund, String content) {
         // 根据退款单编号修改退款单
         QueryWrapper<RefundInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("refund_no", resultMap.get("out_refund_no"));
+        queryWrapper.eq("refund_no", refund.getOutRefundNo());
 
         // 设置要修改的字段
         RefundInfo refundInfo = new RefundInfo();
-        refundInfo.setRefundId(resultMap.get("refund_id"));//微信支付退款单号
+        refundInfo.setRefundId(refund.getRefundId());//微信支付退款单号
 
         // 查询退款或申请退款中的返回参数
-        if (resultMap.get("status") != null) {
-            refundInfo.setRefundStatus(resultMap.get("status"));
-            refundInfo.setContentReturn(content);
+        if (refund.getStatus() != null) {
+            refundInfo.setRefundStatus(refund.getStatus());
+            rawPayloadService.save(PayloadType.REFUND_RETURN, refund.getOutRefundNo(), content);
         }
 
         // 退款回调中的回调参数
-        if(resultMap.get("refund_status") != null){
-            refundInfo.setRefundStatus(resultMap.get("refund_status"));//退款状态
-            refundInfo.setContentNotify(content);//将全部响应结果存入数据库的content字段
+        if(refund.getRefundStatus() != null){
+            refundInfo.setRefundStatus(refund.getRefundStatus());//退款状态
+            rawPayloadService.save(PayloadType.REFUND_NOTIFY, refund.getOutRefundNo(), content);//全部响应结果压缩后存入 t_raw_payload
         }
 
         //更新退款单
@@ -86,19 +134,75 @@ public class RefundInfoServiceImpl extends ServiceImpl<RefundInfoMapper, RefundI
 
     /**
      * 查询一定时间范围内退款未成功的退款单
+     * 与未支付订单一样按 (create_time, id) 升序做游标分页，读从库
      * @param minutes
      * @return
      */
     @Override
-    public List<RefundInfo> getNoRefundOrderByDuration(int minutes, String payType) {
+    @Transactional(readOnly = true)
+    public List<RefundInfo> getNoRefundOrderByDuration(int minutes, String payType, List<Integer> shards, RefundInfo after, int limit) {
+        return this.listByStatusBefore(WxRefundStatus.PROCESSING.getType(), minutes, payType, shards, after, limit);
+    }
+
+    /**
+     * 与 getNoRefundOrderByDuration 走同一个 (refund_status, payment_type, create_time) 索引
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<RefundInfo> getRefundIntents(int minutes, String payType, List<Integer> shards, RefundInfo after, int limit) {
+        return this.listByStatusBefore(STATUS_SUBMITTING, minutes, payType, shards, after, limit);
+    }
+
+    private List<RefundInfo> listByStatusBefore(String refundStatus, int minutes, String payType, List<Integer> shards,
+                                                RefundInfo after, int limit) {
         Instant instant = Instant.now().minus(Duration.ofMinutes(minutes));
         QueryWrapper<RefundInfo> queryWrapper = new QueryWrapper<>();
-        queryWrapper.eq("refund_status", WxRefundStatus.PROCESSING.getType());
+        queryWrapper.eq("refund_status", refundStatus);
         queryWrapper.le("create_time", instant);
         queryWrapper.eq("payment_type", payType);
+        queryWrapper.in(SweepNodeService.SHARD_COLUMN, shards);
+        if (after != null) {
+            Date afterTime = after.getCreateTime();
+            String afterId = after.getId();
+            queryWrapper.ge("create_time", afterTime);
+            queryWrapper.and(w -> w.gt("create_time", afterTime)
+                    .or(o -> o.eq("create_time", afterTime).gt("id", afterId)));
+        }
+        queryWrapper.orderByAsc("create_time", "id");
+        queryWrapper.last("limit " + limit);
         return baseMapper.selectList(queryWrapper);
     }
 
+    /**
+     * 回写一批退款单的核实结果
+     * @param confirms
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void confirmRefunds(List<RefundConfirm> confirms) {
+        if (confirms.isEmpty()) {
+            return;
+        }
+        // 1.更新订单状态，成功和异常各一条
+        Map<OrderStatus, List<String>> orderNosByStatus = confirms.stream()
+                .collect(Collectors.groupingBy(RefundConfirm::getOrderStatus, () -> new EnumMap<>(OrderStatus.class),
+                        Collectors.mapping(confirm -> confirm.getRefundInfo().getOrderNo(), Collectors.toList())));
+        orderNosByStatus.forEach((status, orderNos) ->
+                orderInfoService.updateStatusByOrderNos(orderNos, OrderStatus.REFUND_PROCESSING, status));
+
+        // 2.更新退款单
+        List<RefundInfo> refundInfos = confirms.stream().map(RefundConfirm::getRefundInfo).collect(Collectors.toList());
+        baseMapper.updateConfirmBatch(refundInfos);
+
+        // 3.查询退款的响应原文，一条多行INSERT
+        List<RawPayload> payloads = new ArrayList<>(refundInfos.size());
+        for (RefundInfo refundInfo : refundInfos) {
+            if (refundInfo.getContentReturn() != null) {
+                payloads.add(RawPayloadService.compress(PayloadType.REFUND_RETURN, refundInfo.getRefundNo(), refundInfo.getContentReturn()));
+            }
+        }
+        rawPayloadService.saveBatch(payloads);
+    }
 
     /**
      * 更新退款记录
@@ -111,7 +215,6 @@ public class RefundInfoServiceImpl extends ServiceImpl<RefundInfoMapper, RefundI
         // 1.设置要修改的字段
         RefundInfo refundInfo = new RefundInfo();
         refundInfo.setRefundStatus(status);//退款状态
-        refundInfo.setContentReturn(body);//将全部响应结果存入数据库的content字段
 
         QueryWrapper<RefundInfo> queryWrapper = new QueryWrapper<>();
         queryWrapper.eq("refund_no", refundNo);
@@ -119,6 +222,9 @@ public class RefundInfoServiceImpl extends ServiceImpl<RefundInfoMapper, RefundI
         // 2.更新退款单
         baseMapper.update(refundInfo, queryWrapper);
 
+        // 3.全部响应结果压缩后存入 t_raw_payload
+        rawPayloadService.save(PayloadType.REFUND_RETURN, refundNo, body);
+
     }
 
 }
@@ -0,0 +1,40 @@
+package com.py.paymentbackend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.py.paymentbackend.entity.SweepNode;
+import com.py.paymentbackend.mapper.SweepNodeMapper;
+import com.py.paymentbackend.service.SweepNodeService;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+
+@Service
+public class SweepNodeServiceImpl extends ServiceImpl<SweepNodeMapper, SweepNode> implements SweepNodeService {
+
+    /**
+     * 心跳时间由数据库写入，判断存活时也和数据库当前时间比较，不依赖各节点的时钟
+     */
+    @Override
+    public void heartbeat(String nodeId) {
+        baseMapper.heartbeat(nodeId);
+    }
+
+    @Override
+    public List<String> listLiveNodes(long ttlMillis) {
+        return baseMapper.selectLiveNodeIds(ttlMillis);
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        QueryWrapper<SweepNode> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("node_id", nodeId);
+        baseMapper.delete(queryWrapper);
+    }
+
+    @Override
+    public int removeExpired(long expireMillis) {
+        return baseMapper.deleteExpired(expireMillis);
+    }
+}
@@ -1,7 +1,6 @@
 package com.py.paymentbackend.service.impl;
 
 import com.github.wxpay.sdk.WXPayUtil;
-import com.google.gson.Gson;
 import com.py.paymentbackend.config.WxPayConfig;
 import com.py.paymentbackend.entity.OrderInfo;
 import com.py.paymentbackend.entity.RefundInfo;
@@ -15,8 +14,20 @@ import com.py.paymentbackend.service.OrderInfoService;
 import com.py.paymentbackend.service.PaymentInfoService;
 import com.py.paymentbackend.service.RefundInfoService;
 import com.py.paymentbackend.service.WxPayService;
+import com.py.paymentbackend.util.AesGcmDecryptor;
+import com.py.paymentbackend.util.GatewayMetrics;
 import com.py.paymentbackend.util.HttpClientUtils;
-import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.util.StripedLock;
+import com.py.paymentbackend.vo.RefundConfirm;
+import com.py.paymentbackend.vo.wxpay.WxBillResponse;
+import com.py.paymentbackend.vo.wxpay.WxCloseOrderRequest;
+import com.py.paymentbackend.vo.wxpay.WxNativePayRequest;
+import com.py.paymentbackend.vo.wxpay.WxNativePayResponse;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
+import com.py.paymentbackend.vo.wxpay.WxRefundRequest;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -30,12 +41,24 @@ import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author yangjiewei
@@ -73,7 +96,29 @@ public class WxPayServiceImpl implements WxPayService {
     @Resource
     private CloseableHttpClient zhangdanClient;
 
-    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * APIv2 使用的连接池客户端
+     */
+    @Resource
+    private CloseableHttpClient wxPayV2Client;
+
+    /**
+     * 回调通知解密，用APIv3密钥
+     */
+    @Resource
+    private AesGcmDecryptor wxNotifyDecryptor;
+
+    /**
+     * 按订单号/退款单号分段的锁，不同订单的回调可以并行处理
+     */
+    @Resource
+    private StripedLock orderLock;
+
+    /**
+     * 支付平台接口调用的监控指标
+     */
+    @Resource
+    private GatewayMetrics gatewayMetrics;
 
 
     /**
@@ -126,24 +171,21 @@ public class WxPayServiceImpl implements WxPayService {
 
         // 构造请求参数
         // 这里请求参数很多，只传必填项就可以了，请求和响应都是json格式
-        // gson是处理json的
-        Gson gson = new Gson();
         // 你怎么知道要这些参数，参考文档啊 https://pay.weixin.qq.com/wiki/doc/apiv3_partner/apis/chapter4_4_1.shtml
-        Map paramsMap = new HashMap();
-        paramsMap.put("appid", wxPayConfig.getAppid());
-        paramsMap.put("mchid", wxPayConfig.getMchId());
-        paramsMap.put("description", orderInfo.getTitle());
-        paramsMap.put("out_trade_no", orderInfo.getOrderNo());
-        paramsMap.put("notify_url", wxPayConfig.getNotifyDomain().concat(WxNotifyType.NATIVE_NOTIFY.getType()));
+        WxNativePayRequest payRequest = new WxNativePayRequest();
+        payRequest.setAppid(wxPayConfig.getAppid());
+        payRequest.setMchid(wxPayConfig.getMchId());
+        payRequest.setDescription(orderInfo.getTitle());
+        payRequest.setOutTradeNo(orderInfo.getOrderNo());
+        payRequest.setNotifyUrl(wxPayConfig.getNotifyDomain().concat(WxNotifyType.NATIVE_NOTIFY.getType()));
         // 订单金额对象
-        Map amountMap = new HashMap();
-        amountMap.put("total", orderInfo.getTotalFee());
-        amountMap.put("currency", "CNY");
-
-        paramsMap.put("amount", amountMap);
+        WxNativePayRequest.Amount amount = new WxNativePayRequest.Amount();
+        amount.setTotal(orderInfo.getTotalFee());
+        amount.setCurrency("CNY");
+        payRequest.setAmount(amount);
 
         // 将参数转化成json字符串
-        String requestJson = gson.toJson(paramsMap);
+        String requestJson = JsonUtils.toJson(payRequest);
         log.info("3.构造请求参数");
         log.info("请求参数：{}", requestJson);
 
@@ -154,26 +196,20 @@ public class WxPayServiceImpl implements WxPayService {
         httpPost.setHeader("Accept", "application/json");
 
         // 完成签名并执行请求 wxPayClient会自动的处理签名和验签，并进行证书自动更新
-        CloseableHttpResponse nativePayResponse = wxPayClient.execute(httpPost);
+        CloseableHttpResponse nativePayResponse = gatewayMetrics.wxpay(WxApiType.NATIVE_PAY, () -> wxPayClient.execute(httpPost));
         log.info("4.解析微信native下单响应");
         try{
-            // 获取响应体并转为字符串和响应状态码
-            String response = EntityUtils.toString(nativePayResponse.getEntity());
             int statusCode = nativePayResponse.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                // 处理成功
-                log.info("成功, 返回结果 = " + response);
-            } else if (statusCode == 204) {
-                // 处理成功，无返回Body
-                log.info("成功");
-            } else {
+            if (statusCode != 200) {
+                String response = EntityUtils.toString(nativePayResponse.getEntity());
                 log.info("Native下单失败,响应码 = " + statusCode+ ",返回结果 = " + response);
                 throw new IOException("request failed");
             }
-            // 响应结果 json字符串转对象
-            Map<String, String> resultMap = gson.fromJson(response, HashMap.class);
+            // 响应结果直接从响应流解析成对象
+            WxNativePayResponse payResponse = JsonUtils.fromJson(nativePayResponse.getEntity().getContent(), WxNativePayResponse.class);
+            log.info("成功, 返回结果 = " + payResponse);
             // 获取二维码并保存
-            codeUrl = resultMap.get("code_url");
+            codeUrl = payResponse.getCodeUrl();
             String orderNo = orderInfo.getOrderNo();
             orderInfoService.saveCodeUrl(orderNo, codeUrl);
 
@@ -190,50 +226,40 @@ public class WxPayServiceImpl implements WxPayService {
 
     /**
      * 处理订单
-     * @param bodyMap 支付通知参数
+     * @param notify 支付通知
      * @throws GeneralSecurityException
      */
     @Override
-    public void processOrder(Map<String, Object> bodyMap) throws GeneralSecurityException {
+    public void processOrder(WxNotify notify) throws GeneralSecurityException {
         log.info("处理订单");
 
         // 1.密文解密
-        String plainText = decryptFromResource(bodyMap);
+        String plainText = decryptFromResource(notify.getResource());
 
         // 2.转换明文 https://pay.weixin.qq.com/wiki/doc/apiv3_partner/apis/chapter4_4_5.shtml
-        Gson gson = new Gson();
-        Map<String, Object> plainTextMap = gson.fromJson(plainText, HashMap.class);
-        String orderNo = (String) plainTextMap.get("out_trade_no");
+        WxTransaction transaction = JsonUtils.fromJson(plainText, WxTransaction.class);
+        String orderNo = transaction.getOutTradeNo();
 
         /**
-         * 在对业务数据进行状态检查和处理之前，这里要使用数据锁进行并发控制，以避免函数重入导致的数据混乱
-         * 尝试获取锁成功之后才去处理数据，相比于同步锁，这里不会去等待，获取不到则直接返回
+         * 处理重复通知 出于接口幂等性考虑（无论接口被调用多少次，产生的结果都是一致的）
+         * 支付日志按交易号去重插入，状态流转是一条带条件的update，这两步的正确性由数据库保证，多线程、多节点都适用
+         * 先记录支付日志再更新状态，不放在同一个事务中：批量写入时要等后台线程提交，不能占着事务的连接等；
+         * 状态更新失败时支付日志已经落库，重发的通知按交易号跳过插入，再次更新状态
+         * 分段锁只是让本机同一订单的重复通知排队，减少数据库行锁等待
          */
-        if (lock.tryLock()) {
-            try {
-                // 处理重复通知 出于接口幂等性考虑（无论接口被调用多少次，产生的结果都是一致的）
-                String orderStatus = orderInfoService.getOrderStatus(orderNo);
-                if (!OrderStatus.NOTPAY.getType().equals(orderStatus)) {
-                    return ;
-                }
-
-/*                // 模拟通知并发 try catch快捷键是 ctrl+wins+alt+t
-                // 虽然前面处理了重复通知，但是这里是并发导致，这里要使用数据锁进行并发控制，以避免函数重入导致的数据混乱
-                try {
-                    TimeUnit.SECONDS.sleep(5);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }*/
-
-                // 3.更新订单状态
-                orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.SUCCESS);
-
-                // 4.记录支付日志
-                paymentInfoService.createPaymentInfo(plainText);
-            } finally {
-                // 要主动释放锁
-                lock.unlock();
+        Lock lock = orderLock.lock(orderNo);
+        try {
+            // 3.订单存在且未支付才入账
+            if (!orderInfoService.checkPayable(orderNo)) {
+                return;
             }
+            // 4.记录支付日志
+            paymentInfoService.createPaymentInfo(transaction, plainText);
+            // 5.更新订单状态
+            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.SUCCESS);
+        } finally {
+            // 要主动释放锁
+            lock.unlock();
         }
 
     }
@@ -243,30 +269,14 @@ public class WxPayServiceImpl implements WxPayService {
      * 为了保证安全性，微信支付在回调通知和平台证书下载接口中，对关键信息进行了AES-256-GCM加密。
      * 证书和回调报文使用的加密密钥为APIv3密钥，32字节 https://wechatpay-api.gitbook.io/wechatpay-api-v3/ren-zheng/api-v3-mi-yao
      */
-    private String decryptFromResource(Map<String, Object> bodyMap) throws GeneralSecurityException {
+    private String decryptFromResource(WxNotify.Resource resource) throws GeneralSecurityException {
         log.info("密文解密");
-        // 获取通知数据中的resource，这部分有加密数据
-        Map<String, String> resourceMap = (Map) bodyMap.get("resource");
-        // 数据密文
-        String ciphertext = resourceMap.get("ciphertext");
-        // 随机串
-        String nonce = resourceMap.get("nonce");
-        // 附加数据
-        String associatedData = resourceMap.get("associated_data");
-
-        log.info("密文数据：{}", ciphertext);
-
-        // 用APIv3密钥去解密
-        AesUtil aesUtil = new AesUtil(wxPayConfig.getApiV3Key().getBytes(StandardCharsets.UTF_8));
-
-        // 使用封装好的工具类去解密
-        String plainText = aesUtil.decryptToString(
-                associatedData.getBytes(StandardCharsets.UTF_8),
-                nonce.getBytes(StandardCharsets.UTF_8),
-                ciphertext);
-
-        log.info("明文：{}", plainText);
-        return plainText;
+        // 通知数据中的resource，这部分有加密数据
+        // 明文包含支付用户信息，不打印密文和明文
+        return wxNotifyDecryptor.decryptToString(
+                resource.getAssociatedData(),
+                resource.getNonce(),
+                resource.getCiphertext());
     }
 
     /**
@@ -277,7 +287,9 @@ public class WxPayServiceImpl implements WxPayService {
         // 调用微信支付的关单接口
         this.closeOrder(orderNo);
         //更新商户端的订单状态
-        orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.CANCEL);
+        if (!orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.CANCEL)) {
+            log.warn("订单不是未支付状态，无法取消，orderNo:{}", orderNo);
+        }
     }
 
     /**
@@ -296,11 +308,8 @@ public class WxPayServiceImpl implements WxPayService {
         HttpPost httpPost = new HttpPost(url);
 
         // 组装json请求体
-        Gson gson = new Gson();
-        Map<String, String> paramsMap = new HashMap<>();
         // todo 目前文档是有 服务商务号、子商户号，如果是 JSAPI则对得上
-        paramsMap.put("mchid", wxPayConfig.getMchId());
-        String jsonParams = gson.toJson(paramsMap);
+        String jsonParams = JsonUtils.toJson(new WxCloseOrderRequest(wxPayConfig.getMchId()));
         log.info("请求参数：{}", jsonParams);
 
         // 将请求参数设置到请求对象中
@@ -310,7 +319,7 @@ public class WxPayServiceImpl implements WxPayService {
         httpPost.setHeader("Accept", "application/json");
 
         // 完成签名并执行请求
-        CloseableHttpResponse response = wxPayClient.execute(httpPost);
+        CloseableHttpResponse response = gatewayMetrics.wxpay(WxApiType.CLOSE_ORDER_BY_NO, () -> wxPayClient.execute(httpPost));
 
         try {
             int statusCode = response.getStatusLine().getStatusCode();
@@ -345,7 +354,7 @@ public class WxPayServiceImpl implements WxPayService {
         httpGet.setHeader("Accept", "application/json");
 
         // 完成签名并执行请求
-        CloseableHttpResponse response = wxPayClient.execute(httpGet);
+        CloseableHttpResponse response = gatewayMetrics.wxpay(WxApiType.ORDER_QUERY_BY_NO, () -> wxPayClient.execute(httpGet));
 
         try {
             String bodyAsString = EntityUtils.toString(response.getEntity());
@@ -373,70 +382,93 @@ public class WxPayServiceImpl implements WxPayService {
      */
     @Override
     public void checkOrderStatus(String orderNo) throws IOException {
+        if (this.confirmOrderStatus(orderNo) == OrderStatus.CLOSED) {
+            // 更新本地订单状态
+            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.CLOSED);
+        }
+    }
+
+    /**
+     * 核实订单状态，本地关单留给调用方
+     * @param orderNo
+     */
+    @Override
+    public OrderStatus confirmOrderStatus(String orderNo) throws IOException {
         log.warn("根据订单号核实订单状态 orderNo:{}", orderNo);
         // 1.调用微信支付查单接口
         String result = this.queryOrder(orderNo);
 
         // 2.转换响应参数
-        Gson gson = new Gson();
-        Map resultMap = gson.fromJson(result, HashMap.class);
+        WxTransaction transaction = JsonUtils.fromJson(result, WxTransaction.class);
 
         // 3.获取微信支付端的订单状态
-        String tradeState = (String) resultMap.get("trade_state");
+        String tradeState = transaction.getTradeState();
 
         // 4.判断订单状态 确认已支付则更新订单状态，否则关闭订单
         if (WxTradeState.SUCCESS.getType().equals(tradeState)) {
             log.warn("核实订单已支付，orderNo:{}", orderNo);
-            // 如果确认订单已支付则更新本地订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.SUCCESS);
-            // 记录支付日志
-            paymentInfoService.createPaymentInfo(result);
+            // 如果确认订单已支付则记录支付日志、更新本地订单状态，支付通知可能已经先处理过了，顺序同 processOrder
+            if (orderInfoService.checkPayable(orderNo)) {
+                paymentInfoService.createPaymentInfo(transaction, result);
+                orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.SUCCESS);
+            }
+            return OrderStatus.SUCCESS;
         }
 
         if (WxTradeState.NOTPAY.getType().equals(tradeState)) {
             log.warn("核实订单未支付，orderNo:{}", orderNo);
             // 订单未支付，则调用关单接口
             this.closeOrder(orderNo);
-            // 更新本地订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.CLOSED);
+            return OrderStatus.CLOSED;
         }
-
+        return null;
     }
 
     /**
      * 申请退款，这个接口和文档不一样了，不知道能不能行呢
+     * 保存退款意向 -> 调用退款接口 -> 回写结果，两次数据库操作各是一个短事务，调用微信期间不占用数据库连接
      * @param orderNo
      * @param reason
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void refund(String orderNo, String reason) throws IOException {
+    public boolean refund(String orderNo, String reason) throws IOException {
 
         log.info("创建退款单记录");
-        // 根据订单号创建退款单
-        RefundInfo refundInfo = refundInfoService.createRefundByOrderNo(orderNo, reason, PayType.WXPAY.getType());
+        // 订单改为退款中、保存待提交的退款单，事务提交后再调用微信
+        RefundInfo refundInfo = refundInfoService.createRefundIntent(orderNo, reason, PayType.WXPAY.getType());
+
+        return this.submitRefund(refundInfo);
+    }
 
+    /**
+     * 调用微信退款接口并回写结果，同一退款单号重复提交时微信只退一次
+     *   1.受理：按返回的退款状态回写，处理中的等退款通知或核实任务
+     *   2.拒绝（4xx，频率限制除外）：退款单和订单改为退款异常并抛出异常，可以重新发起退款
+     *   3.结果未知（频率限制、5xx）：退款单保持待提交，由 RefundIntentTask 重新提交
+     * @return 结果未知时返回false
+     */
+    @Override
+    public boolean submitRefund(RefundInfo refundInfo) throws IOException {
         log.info("调用微信退款接口");
         String url = wxPayConfig.getDomain().concat(WxApiType.DOMESTIC_REFUNDS.getType());
         HttpPost httpPost = new HttpPost(url);
         // 请求参数封装
-        Gson gson = new Gson();
-        Map paramsMap = new HashMap();
-        paramsMap.put("out_trade_no", orderNo);//订单编号
-        paramsMap.put("out_refund_no", refundInfo.getRefundNo());//退款单编号
-        paramsMap.put("reason",reason);//退款原因
+        WxRefundRequest refundRequest = new WxRefundRequest();
+        refundRequest.setOutTradeNo(refundInfo.getOrderNo());//订单编号
+        refundRequest.setOutRefundNo(refundInfo.getRefundNo());//退款单编号
+        refundRequest.setReason(refundInfo.getReason());//退款原因
         // 退款通知地址，退款也进行了回调通知，类似下单处理？
-        paramsMap.put("notify_url", wxPayConfig.getNotifyDomain().concat(WxNotifyType.REFUND_NOTIFY.getType()));
+        refundRequest.setNotifyUrl(wxPayConfig.getNotifyDomain().concat(WxNotifyType.REFUND_NOTIFY.getType()));
 
-        Map amountMap = new HashMap();
-        amountMap.put("refund", refundInfo.getRefund());//退款金额
-        amountMap.put("total", refundInfo.getTotalFee());//原订单金额
-        amountMap.put("currency", "CNY");//退款币种
-        paramsMap.put("amount", amountMap);
+        WxRefundRequest.Amount amount = new WxRefundRequest.Amount();
+        amount.setRefund(refundInfo.getRefund());//退款金额
+        amount.setTotal(refundInfo.getTotalFee());//原订单金额
+        amount.setCurrency("CNY");//退款币种
+        refundRequest.setAmount(amount);
 
         //将参数转换成json字符串
-        String jsonParams = gson.toJson(paramsMap);
-        log.info("请求参数:{}" + jsonParams);
+        String jsonParams = JsonUtils.toJson(refundRequest);
+        log.info("请求参数:{}", jsonParams);
 
         // 封装到请求中，并设置请求格式和响应格式
         StringEntity entity = new StringEntity(jsonParams, "utf-8");
@@ -445,29 +477,50 @@ public class WxPayServiceImpl implements WxPayService {
         httpPost.setHeader("Accept", "application/json");
 
         // 发起退款请求，内部对请求做了签名，响应也验签了
-        CloseableHttpResponse response = wxPayClient.execute(httpPost);
+        CloseableHttpResponse response = gatewayMetrics.wxpay(WxApiType.DOMESTIC_REFUNDS, () -> wxPayClient.execute(httpPost));
 
         // 解析响应
         try {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             int statusCode = response.getStatusLine().getStatusCode();
+            RefundInfo result = new RefundInfo();
+            result.setOrderNo(refundInfo.getOrderNo());
+            result.setRefundNo(refundInfo.getRefundNo());
+            result.setContentReturn(bodyAsString);
             if (statusCode == 200) {
                 log.info("成功, 退款返回结果 = " + bodyAsString);
-            } else if (statusCode == 204) {
-                log.info("成功");
-            } else {
-                throw new RuntimeException("退款异常, 响应码 = " + statusCode+ ", 退款返回结果 = " + bodyAsString);
+                WxRefund wxRefund = JsonUtils.fromJson(bodyAsString, WxRefund.class);
+                result.setRefundId(wxRefund.getRefundId());
+                result.setRefundStatus(wxRefund.getStatus());
+                refundInfoService.finishRefundIntent(result, toOrderStatus(wxRefund.getStatus()));
+                return true;
             }
-            // 更新订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_PROCESSING);
-
-            // 更新退款单
-            refundInfoService.updateRefund(bodyAsString);
+            if (statusCode == 429 || statusCode >= 500) {
+                log.warn("退款结果未知，稍后重新提交，refundNo:{}，响应码:{}，退款返回结果:{}",
+                        refundInfo.getRefundNo(), statusCode, bodyAsString);
+                return false;
+            }
+            result.setRefundStatus(WxRefundStatus.ABNORMAL.getType());
+            refundInfoService.finishRefundIntent(result, OrderStatus.REFUND_ABNORMAL);
+            throw new RuntimeException("退款异常, 响应码 = " + statusCode+ ", 退款返回结果 = " + bodyAsString);
         } finally {
             response.close();
         }
     }
 
+    /**
+     * 申请退款返回的退款状态对应的订单状态，处理中时为null
+     */
+    private static OrderStatus toOrderStatus(String refundStatus) {
+        if (WxRefundStatus.SUCCESS.getType().equals(refundStatus)) {
+            return OrderStatus.REFUND_SUCCESS;
+        }
+        if (WxRefundStatus.ABNORMAL.getType().equals(refundStatus) || WxRefundStatus.CLOSED.getType().equals(refundStatus)) {
+            return OrderStatus.REFUND_ABNORMAL;
+        }
+        return null;
+    }
+
     /**
      * 查询退款使用
      * @param refundNo
@@ -479,7 +532,7 @@ public class WxPayServiceImpl implements WxPayService {
         String url = wxPayConfig.getDomain().concat(String.format(WxApiType.DOMESTIC_REFUNDS_QUERY.getType(), refundNo));
         HttpGet httpGet = new HttpGet(url);
         httpGet.setHeader("Accept", "application/json");
-        CloseableHttpResponse response = wxPayClient.execute(httpGet);
+        CloseableHttpResponse response = gatewayMetrics.wxpay(WxApiType.DOMESTIC_REFUNDS_QUERY, () -> wxPayClient.execute(httpGet));
         // 解析响应
         try {
             String bodyAsString = EntityUtils.toString(response.getEntity());
@@ -503,63 +556,74 @@ public class WxPayServiceImpl implements WxPayService {
      */
     @Override
     public void checkRefundStatus(String refundNo) throws IOException {
+        RefundConfirm confirm = this.confirmRefundStatus(refundNo);
+        if (confirm != null) {
+            // 更新订单状态和退款单
+            refundInfoService.confirmRefunds(Collections.singletonList(confirm));
+        }
+    }
+
+    /**
+     * 核实退款状态，只查询不更新
+     * @param refundNo
+     */
+    @Override
+    public RefundConfirm confirmRefundStatus(String refundNo) throws IOException {
         // 1.查询退款订单
         String refund = this.queryRefund(refundNo);
 
         // 2.解析响应信息
-        Gson gson = new Gson();
-        Map<String, Object> refundMap = gson.fromJson(refund, HashMap.class);
+        WxRefund wxRefund = JsonUtils.fromJson(refund, WxRefund.class);
         // 获取微信支付端退款状态
-        String status = (String) refundMap.get("status");
-        String orderNo = (String) refundMap.get("out_trade_no");
+        String status = wxRefund.getStatus();
+        String orderNo = wxRefund.getOutTradeNo();
+        OrderStatus orderStatus;
         if (WxRefundStatus.SUCCESS.getType().equals(status)) {
             // 已经成功退款
             log.info("核实订单已经成功退款，orderNo:{}, refundNo:{}", orderNo, refundNo);
-            // 3.更新订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_SUCCESS);
-            // 4.更新退款单
-            refundInfoService.updateRefund(refund);
-        }
-        if (WxRefundStatus.ABNORMAL.getType().equals(status)) {
+            orderStatus = OrderStatus.REFUND_SUCCESS;
+        } else if (WxRefundStatus.ABNORMAL.getType().equals(status)) {
             // 退款异常
             log.warn("退款异常，orderNo:{}, refundNo:{}", orderNo, refundNo);
-            // 3.更新订单状态
-            orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_ABNORMAL);
-            // 4.更新退款单
-            refundInfoService.updateRefund(refund);
+            orderStatus = OrderStatus.REFUND_ABNORMAL;
+        } else {
+            return null;
         }
 
+        // 3.要回写的退款单字段，与 RefundInfoService.updateRefund 处理查询退款响应时一致
+        RefundInfo refundInfo = new RefundInfo();
+        refundInfo.setOrderNo(orderNo);
+        refundInfo.setRefundNo(refundNo);
+        refundInfo.setRefundId(wxRefund.getRefundId());
+        refundInfo.setRefundStatus(status);
+        refundInfo.setContentReturn(refund);
+        return new RefundConfirm(orderStatus, refundInfo);
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public void processRefund(Map<String, Object> dataMap) throws Exception {
+    public void processRefund(WxNotify notify) throws Exception {
         // 1.日志记录、上可重入锁
         log.info("处理退款订单...");
 
         // 2.转换响应中的密文
-        String plainText = decryptFromResource(dataMap);
-        // 将明文转换成map
-        Gson gson = new Gson();
-        HashMap plainTextMap = gson.fromJson(plainText, HashMap.class);
-        String orderNo = (String)plainTextMap.get("out_trade_no");
-
-        // 3.根据退款情况处理订单
-        if (lock.tryLock()) {
-            try {
-                String orderStatus = orderInfoService.getOrderStatus(orderNo);
-                // 订单状态不是退款中，则直接返回 fixme 不是特别理解 不是退款中，那么就是退款成功或者退款异常，状态不变即可。
-                if (!OrderStatus.REFUND_PROCESSING.getType().equals(orderStatus)) {
-                    return;
-                }
-                // 3.更新订单状态
-                orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_SUCCESS);
+        String plainText = decryptFromResource(notify.getResource());
+        // 将明文转换成对象
+        WxRefund wxRefund = JsonUtils.fromJson(plainText, WxRefund.class);
+        String orderNo = wxRefund.getOutTradeNo();
+        String refundNo = wxRefund.getOutRefundNo();
+
+        // 3.根据退款情况处理订单，按退款单号加锁
+        Lock lock = orderLock.lock(refundNo);
+        try {
+            // 3.更新订单状态，订单状态不是退款中（已经是退款成功或者退款异常）时不会更新，状态不变即可
+            if (orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.REFUND_PROCESSING, OrderStatus.REFUND_SUCCESS)) {
                 // 4.更新退款单
-                refundInfoService.updateRefund(plainText);
-            } finally {
-                // 5.要主动释放锁
-                lock.unlock();
+                refundInfoService.updateRefund(wxRefund, plainText);
             }
+        } finally {
+            // 5.要主动释放锁
+            lock.unlock();
         }
     }
 
@@ -568,71 +632,108 @@ public class WxPayServiceImpl implements WxPayService {
      */
     @Override
     public String queryBill(String billDate, String type) throws IOException {
+        return this.applyBill(billDate, type, false).getDownloadUrl();
+    }
+
+    /**
+     * 申请账单，返回下载地址和账单原文的哈希值
+     * @param gzip 是否请求 GZIP 压缩包
+     */
+    private WxBillResponse applyBill(String billDate, String type, boolean gzip) throws IOException {
         // 1.日志记录
         log.info("请求微信获取交易账单下载地址...，日期是:{}", billDate);
 
         // 2.构造参数和请求
-        String url = "";
+        WxApiType api;
         if("tradebill".equals(type)){
-            url = WxApiType.TRADE_BILLS.getType();
+            api = WxApiType.TRADE_BILLS;
         }else if("fundflowbill".equals(type)){
-            url = WxApiType.FUND_FLOW_BILLS.getType();
+            api = WxApiType.FUND_FLOW_BILLS;
         }else{
             throw new RuntimeException("不支持的账单类型");
         }
 
         // 3.处理响应获取需要的url
-        url = wxPayConfig.getDomain().concat(url).concat("?bill_date=").concat(billDate);
+        String url = wxPayConfig.getDomain().concat(api.getType()).concat("?bill_date=").concat(billDate);
+        if (gzip) {
+            url = url.concat("&tar_type=GZIP");
+        }
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader("Accept", "application/json");
-        CloseableHttpResponse response = wxPayClient.execute(httpGet);
+        CloseableHttpResponse response = gatewayMetrics.wxpay(api, () -> wxPayClient.execute(httpGet));
         try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
             int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                log.info("成功, 申请账单返回结果 = " + bodyAsString);
-            } else if (statusCode == 204) {
-                log.info("成功");
-            } else {
+            if (statusCode != 200) {
+                String bodyAsString = EntityUtils.toString(response.getEntity());
                 throw new RuntimeException("申请账单异常, 响应码 = " + statusCode+ ", 申请账单返回结果 = " + bodyAsString);
             }
             // 获取账单下载地址
-            Gson gson = new Gson();
-            Map<String, String> resultMap = gson.fromJson(bodyAsString, HashMap.class);
-            return resultMap.get("download_url");
+            WxBillResponse billResponse = JsonUtils.fromJson(response.getEntity().getContent(), WxBillResponse.class);
+            log.info("成功, 申请账单返回结果 = " + billResponse);
+            return billResponse;
         } finally {
             response.close();
         }
     }
 
+    /**
+     * 下载账单到本地文件
+     * 响应体直接写入文件，不在内存中拼成字符串；开启GZIP时边下载边解压，
+     * 同时对解压后的内容计算SHA1，与申请账单时返回的哈希值比对，不一致的文件不保留
+     */
     @Override
-    public String downloadBill(String billDate, String type) throws IOException {
+    public Path downloadBill(String billDate, String type) throws IOException {
         // 1.日志记录
         log.info("下载{}的账单，类型是{}", billDate, type);
 
-        // 2.获取交易账单URL
-        String downloadUrl = this.queryBill(billDate, type);
-
+        // 参数会拼进文件名，先校验，避免访问到账单目录之外
+        if (!"tradebill".equals(type) && !"fundflowbill".equals(type)) {
+            throw new RuntimeException("不支持的账单类型");
+        }
+        LocalDate.parse(billDate, DateTimeFormatter.ISO_LOCAL_DATE);
+
+        // 历史账单不会再变化，下载过就直接用
+        Path billDir = Paths.get(wxPayConfig.getBillDir());
+        Path billFile = billDir.resolve("wx_" + type + "_" + billDate + ".csv");
+        if (Files.exists(billFile)) {
+            log.info("账单已下载：{}", billFile);
+            return billFile;
+        }
 
+        // 2.获取交易账单URL，下载地址30秒内有效，拿到就下载
+        boolean gzip = wxPayConfig.isBillGzip();
+        WxBillResponse bill = this.applyBill(billDate, type, gzip);
 
         // 3.下载账单
-        HttpGet httpGet = new HttpGet(downloadUrl);
-        httpGet.addHeader("Accept", "application/json");
-        // todo https://github.com/wechatpay-apiv3/wechatpay-apache-httpclient#%E5%A6%82%E4%BD%95%E4%B8%8B%E8%BD%BD%E8%B4%A6%E5%8D%95
-        CloseableHttpResponse response = zhangdanClient.execute(httpGet);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
+        // SDK 对成功的应答会先把响应体缓存到内存再验签，请求压缩包可以让这部分小很多
+        HttpGet httpGet = new HttpGet(bill.getDownloadUrl());
+        Files.createDirectories(billDir);
+        Path tempFile = Files.createTempFile(billDir, billFile.getFileName().toString(), ".tmp");
+        try (CloseableHttpResponse response = gatewayMetrics.record(GatewayMetrics.WXPAY, "BILL_DOWNLOAD",
+                () -> zhangdanClient.execute(httpGet), r -> String.valueOf(r.getStatusLine().getStatusCode()))) {
             int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                log.info("成功, 下载账单返回结果 = " + bodyAsString);
-            } else if (statusCode == 204) {
-                log.info("成功");
-            } else {
+            if (statusCode != 200) {
+                String bodyAsString = EntityUtils.toString(response.getEntity());
                 throw new RuntimeException("下载账单异常, 响应码 = " + statusCode+ ", 下载账单返回结果 = " + bodyAsString);
             }
-            return bodyAsString;
+            MessageDigest digest = MessageDigest.getInstance(bill.getHashType());
+            try (InputStream content = response.getEntity().getContent();
+                 InputStream in = new DigestInputStream(gzip ? new GZIPInputStream(content) : content, digest)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            // 4.校验哈希值，微信返回的是账单原文（解压后）的哈希
+            String hash = String.format("%040x", new BigInteger(1, digest.digest()));
+            if (!hash.equalsIgnoreCase(bill.getHashValue())) {
+                throw new RuntimeException("账单文件校验失败, 期望 = " + bill.getHashValue() + ", 实际 = " + hash);
+            }
+            Files.move(tempFile, billFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("成功, 账单已保存到{}，大小{}字节", billFile, Files.size(billFile));
+            return billFile;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持的账单哈希类型：" + bill.getHashType(), e);
         } finally {
-            response.close();
+            Files.deleteIfExists(tempFile);
         }
     }
 
@@ -675,7 +776,7 @@ public class WxPayServiceImpl implements WxPayService {
 
         params.put("spbill_create_ip", remoteAddr);
         params.put("notify_url",
-                wxPayConfig.getNotifyDomain().concat(WxNotifyType.NATIVE_NOTIFY.getType()));
+                wxPayConfig.getNotifyDomain().concat(WxNotifyType.NATIVE_NOTIFY_V2.getType()));
         params.put("trade_type", "NATIVE");
 
         // 将参数转换成xml字符串格式：生成带有签名的xml格式字符串
@@ -683,10 +784,14 @@ public class WxPayServiceImpl implements WxPayService {
         log.info("\n xmlParams：\n" + xmlParams);
 
         // 4.统一下单
-        HttpClientUtils client = new HttpClientUtils("https://api.mch.weixin.qq.com/pay/unifiedorder");
+        HttpClientUtils client = new HttpClientUtils(wxPayV2Client,
+                wxPayConfig.getDomain().concat(WxApiType.NATIVE_PAY_V2.getType()));
         client.setXmlParam(xmlParams);//将参数放入请求对象的方法体
-        client.setHttps(true);//使用https形式发送
-        client.post();//发送请求
+        //发送请求，复用连接池中的长连接
+        gatewayMetrics.record(GatewayMetrics.WXPAY, WxApiType.NATIVE_PAY_V2.name(), () -> {
+            client.post();
+            return client;
+        }, c -> String.valueOf(c.getStatusCode()));
         String resultXml = client.getContent();//得到响应结果
         log.info("\n resultXml：\n" + resultXml);
 
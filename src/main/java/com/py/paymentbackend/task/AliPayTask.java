@@ -2,6 +2,7 @@ package com.py.paymentbackend.task;
 
 import com.py.paymentbackend.entity.OrderInfo;
 import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
 import com.py.paymentbackend.enums.PayType;
 import com.py.paymentbackend.service.AliPayService;
 import com.py.paymentbackend.service.OrderInfoService;
@@ -33,37 +34,57 @@ public class AliPayTask {
     @Resource
     private RefundInfoService refundInfoService;
 
+    @Resource
+    private ReconcileSweeper reconcileSweeper;
+
+    @Resource
+    private SweepLeaseTask sweepLeaseTask;
+
     /**
      * 定时查找超时订单
      * 从第0秒开始每隔30秒执行1次，查询创建超过5分钟，并且未支付的订单
+     * 分页读取，每页并行查单，支付端已关单的订单每页一条批量update
+     * 多个节点时每个节点只核实自己分片内的订单，见 SweepLeaseTask
      */
     @Scheduled(cron = "0/30 * * * * ?")
-    public void orderConfirm() throws Exception {
+    public void orderConfirm() {
         log.info("orderConfirm执行，定时查找超时订单...");
-        List<OrderInfo> orderInfoList = orderInfoService.getNoPayOrderByDuration(5, PayType.ALIPAY.getType());
-        for (OrderInfo orderInfo : orderInfoList) {
-            String orderNo = orderInfo.getOrderNo();
-            log.warn("超时订单:{}", orderNo);
-            // 核实订单状态：调用微信支付查单接口
-            aliPayService.checkOrderStatus(orderNo);
+        // 只核实分给本节点的分片，还没分到分片时跳过
+        List<Integer> shards = sweepLeaseTask.getShards();
+        if (shards.isEmpty()) {
+            return;
         }
+        reconcileSweeper.sweep("alipay-order-confirm",
+                (OrderInfo after, int limit) -> orderInfoService.getNoPayOrderByDuration(5, PayType.ALIPAY.getType(), shards, after, limit),
+                orderInfo -> {
+                    String orderNo = orderInfo.getOrderNo();
+                    log.warn("超时订单:{}", orderNo);
+                    // 核实订单状态：调用支付宝查单接口
+                    return aliPayService.confirmOrderStatus(orderNo) == OrderStatus.CLOSED ? orderNo : null;
+                },
+                orderNos -> orderInfoService.updateStatusByOrderNos(orderNos, OrderStatus.NOTPAY, OrderStatus.CLOSED));
     }
 
     /**
      * 从第0秒开始每隔30秒执行1次，查询创建超过5分钟，并且未成功的退款单
      */
     @Scheduled(cron = "0/30 * * * * ?")
-    public void refundConfirm() throws Exception {
+    public void refundConfirm() {
         log.info("refundConfirm 被执行......");
-        // 找出申请退款超过5分钟并且未成功的退款单
-        List<RefundInfo> refundInfos = refundInfoService.getNoRefundOrderByDuration(5, PayType.ALIPAY.getType());
-        for (RefundInfo refundInfo : refundInfos) {
-            // 核实订单状态：调用微信支付查询退款接口
-            String refundNo = refundInfo.getRefundNo();
-            log.warn("超时未退款的退款单号:{}", refundNo);
-            aliPayService.checkRefundStatus(refundNo);
+        // 只核实分给本节点的分片，还没分到分片时跳过
+        List<Integer> shards = sweepLeaseTask.getShards();
+        if (shards.isEmpty()) {
+            return;
         }
+        // 找出申请退款超过5分钟并且未成功的退款单
+        reconcileSweeper.sweep("alipay-refund-confirm",
+                (RefundInfo after, int limit) -> refundInfoService.getNoRefundOrderByDuration(5, PayType.ALIPAY.getType(), shards, after, limit),
+                refundInfo -> {
+                    // 核实退款状态：调用支付宝查询退款接口
+                    String refundNo = refundInfo.getRefundNo();
+                    log.warn("超时未退款的退款单号:{}", refundNo);
+                    return aliPayService.confirmRefundStatus(refundInfo.getOrderNo(), refundNo);
+                },
+                refundInfoService::confirmRefunds);
     }
-
-
 }
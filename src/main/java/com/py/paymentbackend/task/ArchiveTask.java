@@ -0,0 +1,72 @@
+package com.py.paymentbackend.task;
+
+import com.py.paymentbackend.config.ArchiveConfig;
+import com.py.paymentbackend.service.ArchiveService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把超过保留月数的已结束订单搬到归档表
+ *   1.先补齐归档表的月分区，p_max 中不会有数据
+ *   2.每批找出 batchSize 个候选订单，在一个短事务中锁住、复制、删除，批与批之间暂停
+ *   3.超出时间预算后停止，剩下的第二天继续
+ * 多个节点同时执行时，同一订单只会被先锁住它的节点搬走，另一个节点锁不到就跳过
+ */
+@Slf4j
+@Component
+public class ArchiveTask {
+
+    @Resource
+    private ArchiveService archiveService;
+
+    @Resource
+    private ArchiveConfig archiveConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每天凌晨2点半执行
+     */
+    @Scheduled(cron = "${payment.archive.cron:0 30 2 * * ?}")
+    public void archive() throws InterruptedException {
+        if (!archiveConfig.isEnabled()) {
+            return;
+        }
+        archiveService.ensurePartitions(YearMonth.now().plusMonths(1));
+
+        LocalDateTime cutoff = LocalDateTime.now().minusMonths(archiveConfig.getAfterMonths());
+        Date before = Date.from(cutoff.atZone(ZoneId.systemDefault()).toInstant());
+        int batchSize = archiveConfig.getBatchSize();
+        long start = System.currentTimeMillis();
+        long deadline = start + archiveConfig.getTimeBudgetMillis();
+        long archived = 0;
+        List<String> candidates;
+        do {
+            candidates = archiveService.selectCandidates(before, batchSize);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            long batchStart = System.nanoTime();
+            int moved = archiveService.archive(candidates);
+            meterRegistry.timer("payment.archive.batch").record(System.nanoTime() - batchStart, TimeUnit.NANOSECONDS);
+            meterRegistry.counter("payment.archive.orders").increment(moved);
+            archived += moved;
+            if (candidates.size() == batchSize) {
+                Thread.sleep(archiveConfig.getPauseMillis());
+            }
+        } while (candidates.size() == batchSize && System.currentTimeMillis() < deadline);
+        log.info("归档{}之前的订单{}条，耗时{}ms{}", cutoff, archived, System.currentTimeMillis() - start,
+                candidates.size() == batchSize ? "，超出时间预算，剩下的下次继续" : "");
+    }
+}
@@ -0,0 +1,162 @@
+package com.py.paymentbackend.task;
+
+import com.py.paymentbackend.config.NotifyInboxConfig;
+import com.py.paymentbackend.entity.NotifyInbox;
+import com.py.paymentbackend.enums.NotifyType;
+import com.py.paymentbackend.service.AliPayService;
+import com.py.paymentbackend.service.NotifyInboxService;
+import com.py.paymentbackend.service.WxPayService;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 处理回调收件箱中的通知
+ * 不管收件箱是否开启都会拉取，关闭开关之前已经落库的通知也能处理完
+ */
+@Slf4j
+@Component
+public class NotifyInboxTask {
+
+    @Resource
+    private NotifyInboxService notifyInboxService;
+
+    @Resource
+    private WxPayService wxPayService;
+
+    @Resource
+    private AliPayService aliPayService;
+
+    @Resource
+    private NotifyInboxConfig notifyInboxConfig;
+
+    @Resource
+    private ThreadPoolExecutor notifyExecutor;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 从落库到处理完成的耗时
+     */
+    private Timer lagTimer;
+
+    private Counter retryCounter;
+
+    private Counter failedCounter;
+
+    /**
+     * 积压指标的缓存值，由 refreshMetrics 定时刷新，Prometheus 每次采集不再查库
+     */
+    private final AtomicLong depth = new AtomicLong();
+
+    private final AtomicLong oldestAgeMillis = new AtomicLong();
+
+    @PostConstruct
+    public void registerMetrics() {
+        lagTimer = Timer.builder("payment.notify.inbox.lag")
+                .description("通知从落库到处理完成的耗时")
+                .register(meterRegistry);
+        retryCounter = Counter.builder("payment.notify.inbox.retries")
+                .description("通知处理失败后安排重试的次数")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("payment.notify.inbox.failed")
+                .description("超过最大重试次数的通知数")
+                .register(meterRegistry);
+        Gauge.builder("payment.notify.inbox.depth", depth, AtomicLong::get)
+                .description("待处理和处理中的通知数")
+                .register(meterRegistry);
+        Gauge.builder("payment.notify.inbox.oldest.age", oldestAgeMillis, age -> age.get() / 1000.0)
+                .description("最早一条未处理完的通知已等待的秒数")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 刷新积压指标，两条查询按配置的间隔执行，与采集频率无关
+     */
+    @Scheduled(fixedDelayString = "${payment.notify-inbox.metrics-interval-millis:15000}")
+    public void refreshMetrics() {
+        depth.set(notifyInboxService.countPending());
+        oldestAgeMillis.set(notifyInboxService.oldestPendingAgeMillis());
+    }
+
+    /**
+     * 每次执行把到期的通知处理完：一批交给线程池并行处理，等这一批都完成再领下一批
+     */
+    @Scheduled(fixedDelayString = "${payment.notify-inbox.poll-interval:500}")
+    public void drain() throws InterruptedException {
+        int batchSize = notifyInboxConfig.getBatchSize();
+        List<NotifyInbox> batch;
+        do {
+            batch = notifyInboxService.claimBatch(batchSize, notifyInboxConfig.getLeaseMillis());
+            if (batch.isEmpty()) {
+                return;
+            }
+            CountDownLatch done = new CountDownLatch(batch.size());
+            for (NotifyInbox notifyInbox : batch) {
+                notifyExecutor.execute(() -> {
+                    try {
+                        handle(notifyInbox);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        } while (batch.size() == batchSize);
+    }
+
+    private void handle(NotifyInbox notifyInbox) {
+        try {
+            dispatch(notifyInbox);
+            notifyInboxService.markDone(notifyInbox);
+            if (notifyInbox.getCreateTime() != null) {
+                lagTimer.record(System.currentTimeMillis() - notifyInbox.getCreateTime().getTime(), TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            log.error("处理通知失败：{} {}", notifyInbox.getNotifyType(), notifyInbox.getNotifyId(), e);
+            boolean retry = notifyInboxService.markRetry(notifyInbox, e.toString(),
+                    notifyInboxConfig.getMaxRetries(), notifyInboxConfig.getRetryBaseMillis());
+            if (retry) {
+                retryCounter.increment();
+            } else {
+                failedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * 调用与同步模式相同的处理逻辑，处理逻辑本身是幂等的，重复处理不会重复记账
+     */
+    private void dispatch(NotifyInbox notifyInbox) throws Exception {
+        String payload = notifyInbox.getPayload();
+        switch (NotifyType.valueOf(notifyInbox.getNotifyType())) {
+            case WX_PAY:
+                wxPayService.processOrder(JsonUtils.fromJson(payload, WxNotify.class));
+                break;
+            case WX_REFUND:
+                wxPayService.processRefund(JsonUtils.fromJson(payload, WxNotify.class));
+                break;
+            case ALI_PAY:
+                aliPayService.processOrder(JsonUtils.toStringMap(payload));
+                break;
+            default:
+                throw new IllegalStateException("未知的通知类型：" + notifyInbox.getNotifyType());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.py.paymentbackend.task;
+
+import com.py.paymentbackend.config.PayloadConfig;
+import com.py.paymentbackend.service.RawPayloadService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * 按保留期清理支付平台原始报文
+ * 每批按 create_time 索引删除 purgeBatchSize 条，批与批之间暂停，不会长时间锁表；
+ * 多个节点同时执行只会各自删掉一部分，不需要分片
+ */
+@Slf4j
+@Component
+public class PayloadRetentionTask {
+
+    @Resource
+    private RawPayloadService rawPayloadService;
+
+    @Resource
+    private PayloadConfig payloadConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每天凌晨3点执行
+     */
+    @Scheduled(cron = "${payment.payload.purge-cron:0 0 3 * * ?}")
+    public void purge() throws InterruptedException {
+        int retentionDays = payloadConfig.getRetentionDays();
+        if (retentionDays <= 0) {
+            return;
+        }
+        Date before = Date.from(Instant.now().minus(Duration.ofDays(retentionDays)));
+        int batchSize = payloadConfig.getPurgeBatchSize();
+        long start = System.currentTimeMillis();
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = rawPayloadService.purgeBefore(before, batchSize);
+            purged += deleted;
+            if (deleted == batchSize) {
+                Thread.sleep(payloadConfig.getPurgePauseMillis());
+            }
+        } while (deleted == batchSize);
+        meterRegistry.counter("payment.payload.purged").increment(purged);
+        log.info("清理{}之前的原始报文{}条，耗时{}ms", before, purged, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,125 @@
+package com.py.paymentbackend.task;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 核实任务的通用流程：
+ *   1.按游标分页读取待核实的记录，每页pageSize条
+ *   2.一页中的记录交给线程池并行向支付端查询，并发数由线程池大小限制
+ *   3.一页查完后把需要回写的结果交给writer批量更新
+ *   4.超出时间预算后不再读取下一页，没查完的留到下一次执行
+ * 每次执行结束打印核实条数、耗时和吞吐量，并记录到监控指标
+ */
+@Slf4j
+public class ReconcileSweeper {
+
+    /**
+     * 读取下一页
+     */
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        /**
+         * @param after 上一页的最后一条，第一页为null
+         */
+        List<T> load(T after, int limit);
+    }
+
+    /**
+     * 核实一条记录，返回需要批量回写的结果，不需要回写时返回null
+     */
+    @FunctionalInterface
+    public interface Checker<T, R> {
+        R check(T item) throws Exception;
+    }
+
+    private final ExecutorService executor;
+
+    private final int pageSize;
+
+    private final long timeBudgetMillis;
+
+    private final MeterRegistry meterRegistry;
+
+    public ReconcileSweeper(ExecutorService executor, int pageSize, long timeBudgetMillis, MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 执行一次核实
+     * @param name 任务名，用于日志和指标标签
+     * @return 本次核实完成的记录数（不含失败和超时的）
+     */
+    public <T, R> int sweep(String name, PageLoader<T> loader, Checker<T, R> checker, Consumer<List<R>> writer) {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeBudgetMillis;
+        int checked = 0;
+        int failed = 0;
+        int written = 0;
+        boolean expired = false;
+        T after = null;
+        List<T> page;
+        do {
+            page = loader.load(after, pageSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            List<Future<R>> futures = new ArrayList<>(page.size());
+            for (T item : page) {
+                futures.add(executor.submit(() -> checker.check(item)));
+            }
+            List<R> results = new ArrayList<>();
+            for (Future<R> future : futures) {
+                try {
+                    R result = future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                    checked++;
+                    if (result != null) {
+                        results.add(result);
+                    }
+                } catch (ExecutionException e) {
+                    // 单条失败不影响同一页的其他记录，下一次执行会再查到它
+                    failed++;
+                    log.error("{} 核实失败", name, e.getCause());
+                } catch (TimeoutException e) {
+                    expired = true;
+                    future.cancel(true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    expired = true;
+                    future.cancel(true);
+                }
+            }
+            if (!results.isEmpty()) {
+                writer.accept(results);
+                written += results.size();
+            }
+            after = page.get(page.size() - 1);
+            if (System.currentTimeMillis() >= deadline) {
+                expired = true;
+            }
+        } while (!expired && page.size() == pageSize);
+
+        long elapsed = System.currentTimeMillis() - start;
+        meterRegistry.timer("payment.sweep.duration", "task", name).record(elapsed, TimeUnit.MILLISECONDS);
+        meterRegistry.counter("payment.sweep.checked", "task", name).increment(checked);
+        meterRegistry.counter("payment.sweep.failed", "task", name).increment(failed);
+        if (checked > 0 || failed > 0 || expired) {
+            log.info("{} 核实{}条，失败{}条，回写{}条，耗时{}ms，{}条/秒{}", name, checked, failed, written, elapsed,
+                    elapsed == 0 ? checked : checked * 1000L / elapsed,
+                    expired ? "，超出时间预算，剩余记录留到下一次" : "");
+        }
+        return checked;
+    }
+}
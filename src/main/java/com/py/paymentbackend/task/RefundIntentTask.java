@@ -0,0 +1,66 @@
+package com.py.paymentbackend.task;
+
+import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.service.AliPayService;
+import com.py.paymentbackend.service.RefundInfoService;
+import com.py.paymentbackend.service.WxPayService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 恢复没有完成的退款意向：退款单已保存为待提交，但调用支付平台时进程退出、网络超时或支付平台返回系统错误
+ * 用原来的退款单重新提交，微信按 out_refund_no、支付宝按 out_request_no 去重，两者都传退款单号，不会重复退款
+ * 只处理创建超过1分钟的退款单，不会和正在提交的请求撞在一起；多个节点按分片各自处理，见 SweepLeaseTask
+ */
+@Slf4j
+@Component
+public class RefundIntentTask {
+
+    @Resource
+    private RefundInfoService refundInfoService;
+
+    @Resource
+    private WxPayService wxPayService;
+
+    @Resource
+    private AliPayService aliPayService;
+
+    @Resource
+    private ReconcileSweeper reconcileSweeper;
+
+    @Resource
+    private SweepLeaseTask sweepLeaseTask;
+
+    /**
+     * 每分钟第15秒执行，与30秒一次的核实任务错开
+     */
+    @Scheduled(cron = "15 * * * * ?")
+    public void resubmit() {
+        List<Integer> shards = sweepLeaseTask.getShards();
+        if (shards.isEmpty()) {
+            return;
+        }
+        // 提交后由 submitRefund 自己回写，不需要批量回写
+        reconcileSweeper.sweep("wx-refund-intent",
+                (RefundInfo after, int limit) -> refundInfoService.getRefundIntents(1, PayType.WXPAY.getType(), shards, after, limit),
+                refundInfo -> {
+                    log.warn("重新提交微信退款，refundNo:{}", refundInfo.getRefundNo());
+                    wxPayService.submitRefund(refundInfo);
+                    return null;
+                },
+                results -> { });
+        reconcileSweeper.sweep("alipay-refund-intent",
+                (RefundInfo after, int limit) -> refundInfoService.getRefundIntents(1, PayType.ALIPAY.getType(), shards, after, limit),
+                refundInfo -> {
+                    log.warn("重新提交支付宝退款，refundNo:{}", refundInfo.getRefundNo());
+                    aliPayService.submitRefund(refundInfo);
+                    return null;
+                },
+                results -> { });
+    }
+}
@@ -0,0 +1,26 @@
+package com.py.paymentbackend.task;
+
+import com.py.paymentbackend.datasource.ReplicaRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * 定时测量从库延迟，决定只读查询能不能路由到从库
+ * 没有配置从库时什么也不做
+ */
+@Component
+public class ReplicaLagTask {
+
+    @Resource
+    private ReplicaRoutingDataSource routingDataSource;
+
+    /**
+     * 默认每500毫秒执行一次，要比允许的最大延迟小得多
+     */
+    @Scheduled(fixedDelayString = "${payment.datasource.lag-check-interval:500}")
+    public void checkLag() {
+        routingDataSource.checkLag();
+    }
+}
@@ -0,0 +1,105 @@
+package com.py.paymentbackend.task;
+
+import com.py.paymentbackend.config.SweepConfig;
+import com.py.paymentbackend.service.SweepNodeService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 核实任务的分片分配
+ * 每个节点定时向 t_sweep_node 登记心跳，再按节点标识排序取出存活节点，
+ * 第i个节点负责 shard % 节点数 == i 的分片。节点增减后，各节点在下一次心跳时重新计算，
+ * 分片自动重新分配；切换的几秒内可能有分片被两个节点同时核实，订单状态是带条件更新的，不会重复处理
+ */
+@Slf4j
+@Component
+public class SweepLeaseTask {
+
+    @Resource
+    private SweepNodeService sweepNodeService;
+
+    @Resource
+    private SweepConfig sweepConfig;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 本节点负责的分片，还没有登记成功时为空，这期间不核实
+     */
+    private volatile List<Integer> shards = Collections.emptyList();
+
+    private volatile int liveNodes;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("payment.sweep.shards", this, task -> task.getShards().size())
+                .description("本节点负责核实的订单分片数")
+                .register(meterRegistry);
+        Gauge.builder("payment.sweep.nodes", this, task -> task.liveNodes)
+                .description("参与核实任务的存活节点数")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.sweep.heartbeat-interval:5000}")
+    public void heartbeat() {
+        String nodeId = sweepConfig.getNodeId();
+        try {
+            sweepNodeService.heartbeat(nodeId);
+            List<String> nodes = sweepNodeService.listLiveNodes(sweepConfig.getNodeTtlMillis());
+            int index = nodes.indexOf(nodeId);
+            List<Integer> assigned = index < 0
+                    ? Collections.<Integer>emptyList()
+                    : assign(index, nodes.size(), SweepNodeService.SHARD_COUNT);
+            if (!assigned.equals(shards)) {
+                log.info("核实任务分片变化，节点:{}，存活节点:{}，负责分片数:{}", nodeId, nodes, assigned.size());
+            }
+            shards = assigned;
+            liveNodes = nodes.size();
+            // 顺便清理早已下线的节点，不影响分配结果
+            sweepNodeService.removeExpired(sweepConfig.getNodeTtlMillis() * 10);
+        } catch (Exception e) {
+            // 登记不上心跳时其他节点会认为本节点下线并接管分片，本节点也要停止核实，避免长时间重复
+            log.error("核实任务心跳失败，节点:{}", nodeId, e);
+            shards = Collections.emptyList();
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        // 主动下线，其他节点下一次心跳就能接管，不用等心跳过期
+        try {
+            sweepNodeService.leave(sweepConfig.getNodeId());
+        } catch (Exception e) {
+            log.warn("核实任务节点下线失败，节点:{}", sweepConfig.getNodeId(), e);
+        }
+    }
+
+    /**
+     * 本节点负责的分片，为空时不要核实
+     */
+    public List<Integer> getShards() {
+        return shards;
+    }
+
+    /**
+     * 第index个节点（共nodes个）负责的分片
+     */
+    static List<Integer> assign(int index, int nodes, int shardCount) {
+        List<Integer> assigned = new ArrayList<>(shardCount / nodes + 1);
+        for (int shard = index; shard < shardCount; shard += nodes) {
+            assigned.add(shard);
+        }
+        return Collections.unmodifiableList(assigned);
+    }
+}
@@ -0,0 +1,95 @@
+package com.py.paymentbackend.util;
+
+import io.micrometer.core.instrument.Timer;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AES-256-GCM 解密，用于微信支付回调通知中的 resource
+ * 密钥只初始化一次，Cipher 每个线程一个并复用；SDK 的 AesUtil 每次回调都要新建密钥和 Cipher
+ *
+ * 线程安全
+ */
+public class AesGcmDecryptor {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int TAG_LENGTH_BIT = 128;
+
+    private static final int KEY_LENGTH_BYTE = 32;
+
+    private final SecretKeySpec key;
+
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(AesGcmDecryptor::newCipher);
+
+    /**
+     * 解密耗时，为空则不记录
+     */
+    private final Timer timer;
+
+    /**
+     * @param apiV3Key APIv3密钥，32字节
+     * @param timer 解密耗时指标，可以为空
+     */
+    public AesGcmDecryptor(byte[] apiV3Key, Timer timer) {
+        if (apiV3Key.length != KEY_LENGTH_BYTE) {
+            throw new IllegalArgumentException("无效的ApiV3Key，长度必须为32个字节");
+        }
+        this.key = new SecretKeySpec(apiV3Key, "AES");
+        this.timer = timer;
+    }
+
+    /**
+     * @param associatedData 附加数据
+     * @param nonce 随机串
+     * @param ciphertext 密文（未做base64编码）
+     * @return 明文
+     */
+    public byte[] decrypt(byte[] associatedData, byte[] nonce, byte[] ciphertext) throws GeneralSecurityException {
+        long start = System.nanoTime();
+        try {
+            Cipher c = cipher.get();
+            // 解密模式下同一个 Cipher 可以用不同的随机串反复初始化
+            c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BIT, nonce));
+            if (associatedData != null) {
+                c.updateAAD(associatedData);
+            }
+            return c.doFinal(ciphertext);
+        } finally {
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 解密通知 resource 中的字段
+     * @param associatedData 附加数据，可能为空
+     * @param nonce 随机串
+     * @param ciphertext base64编码的密文
+     * @return utf-8 明文
+     */
+    public String decryptToString(String associatedData, String nonce, String ciphertext) throws GeneralSecurityException {
+        byte[] plain = decrypt(
+                associatedData == null ? null : associatedData.getBytes(StandardCharsets.UTF_8),
+                nonce.getBytes(StandardCharsets.UTF_8),
+                Base64.getDecoder().decode(ciphertext));
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
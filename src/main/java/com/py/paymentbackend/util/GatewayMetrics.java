@@ -0,0 +1,98 @@
+package com.py.paymentbackend.util;
+
+import com.alipay.api.AlipayRequest;
+import com.alipay.api.AlipayResponse;
+import com.py.paymentbackend.enums.wxpay.WxApiType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 支付平台接口调用的监控指标，按平台（gateway）和接口（api）区分：
+ *   payment.gateway.requests  调用耗时直方图，status 为HTTP状态码（微信）或业务返回码（支付宝），抛异常时为 EXCEPTION
+ *   payment.gateway.errors    抛出异常的次数，exception 为异常类名
+ *   payment.gateway.inflight  正在进行中的调用数
+ * 通过 /actuator/prometheus 采集，histogram_quantile 即可看出哪个接口的长尾耗时最高
+ */
+@Component
+public class GatewayMetrics {
+
+    public static final String WXPAY = "wxpay";
+
+    public static final String ALIPAY = "alipay";
+
+    private static final String EXCEPTION = "EXCEPTION";
+
+    /**
+     * 一次支付平台接口调用
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T execute() throws E;
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, AtomicInteger> inflight = new ConcurrentHashMap<>();
+
+    public GatewayMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        // 微信的接口是固定的，启动时就注册，没有调用过的接口也能看到0
+        for (WxApiType api : WxApiType.values()) {
+            inflight(WXPAY, api.name());
+        }
+    }
+
+    /**
+     * 微信支付接口，按HTTP状态码统计
+     */
+    public <E extends Exception> CloseableHttpResponse wxpay(WxApiType api, Call<CloseableHttpResponse, E> call) throws E {
+        return record(WXPAY, api.name(), call, response -> String.valueOf(response.getStatusLine().getStatusCode()));
+    }
+
+    /**
+     * 支付宝接口，按业务返回码统计，接口名取请求的 method，如 alipay.trade.query
+     */
+    public <T extends AlipayResponse, E extends Exception> T alipay(AlipayRequest<T> request, Call<T, E> call) throws E {
+        return record(ALIPAY, request.getApiMethodName(), call, AlipayResponse::getCode);
+    }
+
+    /**
+     * @param statusOf 从返回结果中取出状态码
+     */
+    public <T, E extends Exception> T record(String gateway, String api, Call<T, E> call, Function<T, String> statusOf) throws E {
+        AtomicInteger running = inflight(gateway, api);
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        String status = EXCEPTION;
+        try {
+            T result = call.execute();
+            status = result == null ? "" : String.valueOf(statusOf.apply(result));
+            return result;
+        } catch (Exception e) {
+            meterRegistry.counter("payment.gateway.errors",
+                    "gateway", gateway, "api", api, "exception", e.getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            running.decrementAndGet();
+            Timer.builder("payment.gateway.requests")
+                    .description("支付平台接口调用耗时")
+                    .tags("gateway", gateway, "api", api, "status", status)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private AtomicInteger inflight(String gateway, String api) {
+        return inflight.computeIfAbsent(gateway + ':' + api, key -> meterRegistry.gauge("payment.gateway.inflight",
+                Tags.of("gateway", gateway, "api", api), new AtomicInteger()));
+    }
+}
@@ -0,0 +1,241 @@
+package com.py.paymentbackend.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 组提交缓冲：多个线程提交的写入由一个后台线程攒成一批，在一个事务中写入，提交后再唤醒各个提交线程
+ *   1.攒批：取到第一条后继续等，直到凑满 maxBatchSize 条或第一条已等待 maxDelayMillis
+ *   2.持久性：submit 一直等到这一批提交成功才返回，不是写完就走；这一批失败时每个提交线程都会收到异常，
+ *     单条失败（写入返回 Result.failed）只有这一条的提交线程收到异常，同一批的其他记录照常提交
+ *   3.吞吐：写入一批的时候新的提交在队列中排队，并发越高每批越大，一次提交的开销被整批分摊
+ * 监控指标（tag name 区分不同的缓冲）：
+ *   payment.group-commit.batch.size   每批条数
+ *   payment.group-commit.flush        每批写入并提交的耗时
+ *   payment.group-commit.wait         提交线程从入队到写入成功的耗时
+ *   payment.group-commit.queue        队列中等待写入的条数
+ *
+ * @param <T> 待写入的记录
+ * @param <R> 每条记录的写入结果
+ */
+@Slf4j
+public class GroupCommitBuffer<T, R> {
+
+    private final String name;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    private final long commitTimeoutMillis;
+
+    private final Function<List<T>, List<Result<R>>> writer;
+
+    private final BlockingQueue<Pending<T, R>> queue;
+
+    private final Thread flusher;
+
+    private final DistributionSummary batchSize;
+
+    private final Timer flushTimer;
+
+    private final Timer waitTimer;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param writer 在一个事务中写入一批记录，按顺序返回每条的结果；抛出异常表示整批失败
+     */
+    public GroupCommitBuffer(String name, int maxBatchSize, long maxDelayMillis, int queueCapacity,
+                             long commitTimeoutMillis, Function<List<T>, List<Result<R>>> writer, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.commitTimeoutMillis = commitTimeoutMillis;
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.batchSize = DistributionSummary.builder("payment.group-commit.batch.size")
+                .description("每批写入的条数")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("payment.group-commit.flush")
+                .description("每批写入并提交的耗时")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("payment.group-commit.wait")
+                .description("提交线程等待写入成功的耗时")
+                .tag("name", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("payment.group-commit.queue", queue, BlockingQueue::size)
+                .description("等待写入的条数")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        this.flusher = new Thread(this::flushLoop, "group-commit-" + name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 提交一条记录，等到它所在的批次提交后返回写入结果
+     * 队列满时阻塞，让回调线程自然减速，而不是无限堆积
+     */
+    public R submit(T item) {
+        if (!running) {
+            throw new IllegalStateException("写入缓冲已关闭：" + name);
+        }
+        long start = System.nanoTime();
+        Pending<T, R> pending = new Pending<>(item);
+        try {
+            if (!queue.offer(pending, commitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("写入缓冲已满：" + name);
+            }
+            R result = pending.future.get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待批量写入时被中断：" + name, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("批量写入失败：" + name, e.getCause());
+        } catch (TimeoutException e) {
+            // 超时不代表没有写入，这一批之后仍可能提交；调用方的处理是幂等的，重试即可
+            throw new IllegalStateException("等待批量写入超时：" + name, e);
+        }
+    }
+
+    /**
+     * 停止接收新的记录，把队列中已有的写完再返回
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(commitTimeoutMillis);
+    }
+
+    private void flushLoop() {
+        List<Pending<T, R>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                // 关闭时不再等待凑批，队列中剩下的直接写
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<Pending<T, R>> batch) throws InterruptedException {
+        Pending<T, R> first = queue.take();
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            // 先把已经排队的一次取完，队列空了再等到截止时间
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            Pending<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<Pending<T, R>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T, R> pending : batch) {
+            items.add(pending.item);
+        }
+        long start = System.nanoTime();
+        try {
+            List<Result<R>> results = writer.apply(items);
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("写入结果条数不一致：" + results.size() + " != " + batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Result<R> result = results.get(i);
+                if (result.error != null) {
+                    batch.get(i).future.completeExceptionally(result.error);
+                } else {
+                    batch.get(i).future.complete(result.value);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("批量写入失败：{}，{}条", name, batch.size(), e);
+            for (Pending<T, R> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        } finally {
+            batchSize.record(batch.size());
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 一条记录的写入结果，成功时是返回值，失败时是异常
+     */
+    public static final class Result<R> {
+
+        private final R value;
+
+        private final Throwable error;
+
+        private Result(R value, Throwable error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        public static <R> Result<R> ok(R value) {
+            return new Result<>(value, null);
+        }
+
+        public static <R> Result<R> failed(Throwable error) {
+            return new Result<>(null, error);
+        }
+
+        public R getValue() {
+            return value;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    private static class Pending<T, R> {
+
+        private final T item;
+
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private Pending(T item) {
+            this.item = item;
+        }
+    }
+}
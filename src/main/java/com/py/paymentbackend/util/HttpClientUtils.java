@@ -4,45 +4,41 @@ import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.*;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLContextBuilder;
-import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.text.ParseException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * http请求客户端
  */
 public class HttpClientUtils {
+	private final CloseableHttpClient httpClient;
 	private String url;
 	private Map<String, String> param;
 	private int statusCode;
 	private String content;
 	private String xmlParam;
-	private boolean isHttps;
-
-	public boolean isHttps() {
-		return isHttps;
-	}
-
-	public void setHttps(boolean isHttps) {
-		this.isHttps = isHttps;
-	}
 
 	public String getXmlParam() {
 		return xmlParam;
@@ -52,15 +48,58 @@ public class HttpClientUtils {
 		this.xmlParam = xmlParam;
 	}
 
-	public HttpClientUtils(String url, Map<String, String> param) {
+	/**
+	 * @param httpClient 共享的连接池客户端，由调用方（Spring容器）管理，这里不会关闭
+	 */
+	public HttpClientUtils(CloseableHttpClient httpClient, String url, Map<String, String> param) {
+		this.httpClient = httpClient;
 		this.url = url;
 		this.param = param;
 	}
 
-	public HttpClientUtils(String url) {
+	public HttpClientUtils(CloseableHttpClient httpClient, String url) {
+		this.httpClient = httpClient;
 		this.url = url;
 	}
 
+	/**
+	 * 创建带连接池的客户端，整个应用共用一个
+	 * 之前每次请求都新建 SSLContext 和 HttpClient 并在用完后关闭，每次都要重新建立TCP连接、完整TLS握手，
+	 * 而且信任所有证书；现在连接保持长连接复用，证书按传入的 sslContext 正常校验
+	 * @param sslContext 证书校验用的 SSLContext，一般为 SSLContexts.createSystemDefault()
+	 * @param maxTotal 连接池最大连接数
+	 * @param maxPerRoute 每个目标地址（域名+端口）最大连接数
+	 * @param connectTimeout 建立连接超时，毫秒
+	 * @param socketTimeout 读超时，毫秒
+	 */
+	public static CloseableHttpClient createPooledClient(SSLContext sslContext, int maxTotal, int maxPerRoute,
+														 int connectTimeout, int socketTimeout) {
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", new SSLConnectionSocketFactory(sslContext))
+				.build();
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		// 空闲超过2秒的连接在复用前先检查是否已被服务端断开
+		connectionManager.setValidateAfterInactivity(2000);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				// 从连接池获取连接的等待时间
+				.setConnectionRequestTimeout(connectTimeout)
+				.build();
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				// 服务端没有返回 Keep-Alive 超时时间时，默认连接一直可复用，由下面的空闲清理兜底
+				.setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+				.evictExpiredConnections()
+				.evictIdleConnections(30, TimeUnit.SECONDS)
+				.build();
+	}
+
 	public void setParameter(Map<String, String> map) {
 		param = map;
 	}
@@ -119,41 +158,13 @@ public class HttpClientUtils {
 
 	private void execute(HttpUriRequest http) throws ClientProtocolException,
 			IOException {
-		CloseableHttpClient httpClient = null;
-		try {
-			if (isHttps) {
-				SSLContext sslContext = new SSLContextBuilder()
-						.loadTrustMaterial(null, new TrustStrategy() {
-							// 信任所有
-							public boolean isTrusted(X509Certificate[] chain,
-									String authType)
-									throws CertificateException {
-								return true;
-							}
-						}).build();
-				SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(
-						sslContext);
-				httpClient = HttpClients.custom().setSSLSocketFactory(sslsf)
-						.build();
-			} else {
-				httpClient = HttpClients.createDefault();
-			}
-			CloseableHttpResponse response = httpClient.execute(http);
-			try {
-				if (response != null) {
-					if (response.getStatusLine() != null)
-						statusCode = response.getStatusLine().getStatusCode();
-					HttpEntity entity = response.getEntity();
-					// 响应内容
-					content = EntityUtils.toString(entity, Consts.UTF_8);
-				}
-			} finally {
-				response.close();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			httpClient.close();
+		// 响应体读完后连接归还连接池，供下次请求复用
+		try (CloseableHttpResponse response = httpClient.execute(http)) {
+			if (response.getStatusLine() != null)
+				statusCode = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+			// 响应内容
+			content = entity == null ? null : EntityUtils.toString(entity, Consts.UTF_8);
 		}
 	}
 
@@ -0,0 +1,83 @@
+package com.py.paymentbackend.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 雪花算法的编号生成器，64位编号：
+ *   1位符号位（0） | 41位时间戳（距 EPOCH 的毫秒数，约69年） | 10位节点id | 12位序列号
+ * 每个节点每毫秒最多4096个编号，节点id不同的两个节点不会生成相同的编号
+ *
+ * 时间戳和序列号合在一个 AtomicLong 中，用 CAS 推进，不加锁，每次生成不分配对象：
+ *   1.当前时间大于上次的时间戳：时间戳取当前时间，序列号从0开始
+ *   2.否则（同一毫秒内，或者时钟回拨）：在上一个值上加1，序列号用完时自然进位到下一毫秒
+ * 时钟回拨时不等待也不报错，继续沿用上次的时间戳递增，直到系统时间追上来；
+ * 本节点生成的编号始终递增，不会重复
+ */
+public class IdGenerator {
+
+    /**
+     * 起始时间 2022-01-01 00:00:00 +08:00
+     */
+    public static final long EPOCH = 1640966400000L;
+
+    public static final int NODE_BITS = 10;
+
+    public static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+
+    private final LongSupplier clock;
+
+    /**
+     * (时间戳 << SEQUENCE_BITS) | 序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public IdGenerator(long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    IdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("节点id必须在0到" + MAX_NODE_ID + "之间：" + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        long now = clock.getAsLong() - EPOCH;
+        long prev;
+        long next;
+        do {
+            prev = state.get();
+            next = now > (prev >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : prev + 1;
+        } while (!state.compareAndSet(prev, next));
+        return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                | nodeId << SEQUENCE_BITS
+                | (next & SEQUENCE_MASK);
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 编号中的生成时间（毫秒时间戳）
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    /**
+     * 编号中的节点id
+     */
+    public static long nodeIdOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
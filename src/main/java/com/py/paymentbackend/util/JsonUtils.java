@@ -0,0 +1,58 @@
+package com.py.paymentbackend.util;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * JSON编解码，全局共用一个 Gson 实例
+ * Gson 是线程安全的，并且按类型缓存解析器；之前每次调用都 new Gson() 再解析成 HashMap，
+ * 每次都要重新反射，数字还会被解析成 Double
+ * 字段名按下划线风格映射：outTradeNo <-> out_trade_no
+ */
+public class JsonUtils {
+
+    private static final Gson GSON = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .disableHtmlEscaping()
+            .create();
+
+    private static final Type STRING_MAP_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+
+    public static String toJson(Object src) {
+        return GSON.toJson(src);
+    }
+
+    public static <T> T fromJson(String json, Class<T> type) {
+        return GSON.fromJson(json, type);
+    }
+
+    /**
+     * 直接从输入流解析，不需要先把响应体读成字符串
+     * 不关闭输入流，由调用方负责
+     */
+    public static <T> T fromJson(InputStream in, Class<T> type) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        T result = GSON.fromJson(reader, type);
+        if (result == null) {
+            throw new IOException("响应体为空");
+        }
+        return result;
+    }
+
+    /**
+     * 值都是字符串的扁平json，如支付宝通知参数
+     */
+    public static Map<String, String> toStringMap(String json) {
+        return GSON.fromJson(json, STRING_MAP_TYPE);
+    }
+}
@@ -1,23 +1,44 @@
 package com.py.paymentbackend.util;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
 
 /**
  * 订单号工具类
+ * 编号由 IdGenerator 生成（时间戳 + 节点id + 序列号），多线程、多节点都不会重复；
+ * 节点id由 IdConfig 在启动时按 payment.id.node-id 设置，多节点部署时每个节点要配置不同的值
  *
  * @author qy
  * @since 1.0
  */
+@Slf4j
 public class OrderNoUtils {
 
+    private static final String ORDER_PREFIX = "ORDER_";
+
+    private static final String REFUND_PREFIX = "REFUND_";
+
+    /**
+     * 没有配置节点id时（单元测试、单机运行）按进程名散列出一个，不保证多节点不重复
+     */
+    private static volatile IdGenerator idGenerator = new IdGenerator(
+            (ManagementFactory.getRuntimeMXBean().getName().hashCode() & Integer.MAX_VALUE) % (IdGenerator.MAX_NODE_ID + 1));
+
+    /**
+     * 设置本节点的节点id，启动时调用
+     */
+    public static void setNodeId(long nodeId) {
+        idGenerator = new IdGenerator(nodeId);
+        log.info("订单号生成器节点id：{}", nodeId);
+    }
+
     /**
      * 获取订单编号
      * @return
      */
     public static String getOrderNo() {
-        return "ORDER_" + getNo();
+        return withPrefix(ORDER_PREFIX, getNo());
     }
 
     /**
@@ -25,22 +46,19 @@ public class OrderNoUtils {
      * @return
      */
     public static String getRefundNo() {
-        return "REFUND_" + getNo();
+        return withPrefix(REFUND_PREFIX, getNo());
     }
 
     /**
-     * 获取编号
+     * 获取编号，最多19位数字
      * @return
      */
-    public static String getNo() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
-        String newDate = sdf.format(new Date());
-        String result = "";
-        Random random = new Random();
-        for (int i = 0; i < 3; i++) {
-            result += random.nextInt(10);
-        }
-        return newDate + result;
+    public static long getNo() {
+        return idGenerator.nextId();
     }
 
+    private static String withPrefix(String prefix, long no) {
+        // 前缀加最多19位数字，不超过微信 out_trade_no 的32位限制
+        return new StringBuilder(prefix.length() + 19).append(prefix).append(no).toString();
+    }
 }
@@ -0,0 +1,72 @@
+package com.py.paymentbackend.util;
+
+import com.py.paymentbackend.enums.OrderStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 订单状态变化通知（进程内）
+ * 查询订单状态的长轮询请求在这里登记，订单状态更新成功后唤醒对应订单的所有等待者
+ *
+ * 只能唤醒本节点上的等待者；多节点部署时其他节点上的请求等到超时后会重新查库，不会丢结果
+ */
+@Slf4j
+@Component
+public class OrderStatusNotifier {
+
+    private final ConcurrentHashMap<String, Set<Consumer<OrderStatus>>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 登记等待者，订单状态变化时以新状态回调
+     * 每个等待者最多被回调一次，回调后自动移除
+     */
+    public void await(String orderNo, Consumer<OrderStatus> listener) {
+        // compute 与 signal 中的 remove 对同一个key是原子的，登记不会落在已经被取走的集合里
+        waiters.compute(orderNo, (key, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+            }
+            set.add(listener);
+            return set;
+        });
+    }
+
+    /**
+     * 取消登记（请求超时或连接断开）
+     */
+    public void remove(String orderNo, Consumer<OrderStatus> listener) {
+        waiters.computeIfPresent(orderNo, (key, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * 订单状态已变化，唤醒该订单的所有等待者
+     */
+    public void signal(String orderNo, OrderStatus status) {
+        Set<Consumer<OrderStatus>> set = waiters.remove(orderNo);
+        if (set == null) {
+            return;
+        }
+        log.info("订单状态变化，唤醒等待者 ===> {} {} 个数：{}", orderNo, status.getType(), set.size());
+        for (Consumer<OrderStatus> listener : set) {
+            try {
+                listener.accept(status);
+            } catch (RuntimeException e) {
+                log.warn("订单状态通知失败 ===> {}", orderNo, e);
+            }
+        }
+    }
+
+    /**
+     * 当前等待中的订单数
+     */
+    public int getWaitingOrders() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,79 @@
+package com.py.paymentbackend.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 支付平台原始报文的压缩格式，与MySQL的 COMPRESS() / UNCOMPRESS() 一致：
+ *   4字节压缩前长度（低位在前） + zlib压缩数据；空字符串压缩后为空
+ * 库里的报文可以直接用 SELECT UNCOMPRESS(payload) 查看，迁移脚本也可以用 COMPRESS() 搬运旧数据
+ * JSON报文重复的键名很多，一般能压缩到原来的 1/3 以下
+ */
+public class PayloadCodec {
+
+    private static final int HEADER = 4;
+
+    public static byte[] compress(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        if (raw.length == 0) {
+            return new byte[0];
+        }
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER + raw.length / 2 + 64);
+            out.write(raw.length);
+            out.write(raw.length >>> 8);
+            out.write(raw.length >>> 16);
+            out.write(raw.length >>> 24);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decompress(byte[] compressed) {
+        if (compressed == null) {
+            return null;
+        }
+        if (compressed.length == 0) {
+            return "";
+        }
+        if (compressed.length < HEADER) {
+            throw new IllegalArgumentException("报文压缩数据不完整，长度:" + compressed.length);
+        }
+        int length = (compressed[0] & 0xff)
+                | (compressed[1] & 0xff) << 8
+                | (compressed[2] & 0xff) << 16
+                | (compressed[3] & 0xff) << 24;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, HEADER, compressed.length - HEADER);
+            byte[] raw = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = inflater.inflate(raw, read, length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new IllegalArgumentException("报文压缩数据不完整，期望" + length + "字节，实际" + read + "字节");
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("报文压缩数据格式错误", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
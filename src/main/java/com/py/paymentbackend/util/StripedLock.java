@@ -0,0 +1,87 @@
+package com.py.paymentbackend.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段锁：按业务单号（订单号、退款单号）哈希到固定数量的锁上
+ * 不同订单的回调可以并行处理，同一订单的回调仍然互斥
+ *
+ * 用法：
+ * <pre>
+ * Lock lock = orderLock.lock(orderNo);
+ * try {
+ *     ...
+ * } finally {
+ *     lock.unlock();
+ * }
+ * </pre>
+ */
+public class StripedLock {
+
+    private final ReentrantLock[] stripes;
+
+    private final int mask;
+
+    /**
+     * 加锁次数
+     */
+    private final LongAdder acquired = new LongAdder();
+
+    /**
+     * 加锁时发生竞争（需要等待）的次数
+     */
+    private final LongAdder contended = new LongAdder();
+
+    /**
+     * @param stripes 分段数，会向上取整为2的幂
+     */
+    public StripedLock(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 获取key对应的锁并加锁，返回已持有的锁，调用方负责在finally中释放
+     * 与之前的tryLock不同，这里拿不到锁会等待：不同订单可能落在同一分段，直接放弃会丢失通知
+     */
+    public Lock lock(String key) {
+        ReentrantLock lock = stripes[indexFor(key)];
+        if (!lock.tryLock()) {
+            contended.increment();
+            lock.lock();
+        }
+        acquired.increment();
+        return lock;
+    }
+
+    private int indexFor(String key) {
+        int h = key.hashCode();
+        // 高位扰动，避免单号只有低位不同时集中在少数分段
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    public long getContendedCount() {
+        return contended.sum();
+    }
+}
@@ -0,0 +1,21 @@
+package com.py.paymentbackend.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ */
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> list;
+
+    /**
+     * 下一页的游标，为空表示没有下一页
+     */
+    private String nextCursor;
+}
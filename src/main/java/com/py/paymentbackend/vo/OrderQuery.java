@@ -0,0 +1,31 @@
+package com.py.paymentbackend.vo;
+
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.util.Date;
+
+/**
+ * 订单列表查询条件，均为可选
+ */
+@Data
+public class OrderQuery {
+
+    private OrderStatus orderStatus;//订单状态，传枚举名，如 NOTPAY
+
+    private PayType paymentType;//支付类型，传枚举名，如 WXPAY
+
+    private Long productId;//商品id
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date beginTime;//创建时间起（包含）
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private Date endTime;//创建时间止（不包含）
+
+    private String cursor;//上一页返回的 nextCursor，第一页不传
+
+    private Integer size;//每页条数
+}
@@ -0,0 +1,24 @@
+package com.py.paymentbackend.vo;
+
+import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 向支付端核实退款单的结果，退款已有最终结果时才会生成，由调用方统一回写
+ */
+@Data
+@AllArgsConstructor
+public class RefundConfirm {
+
+    /**
+     * 订单应流转到的状态：REFUND_SUCCESS 或 REFUND_ABNORMAL
+     */
+    private OrderStatus orderStatus;
+
+    /**
+     * 要回写的退款单字段，按 refundNo 更新，orderNo 为对应的商品订单号
+     */
+    private RefundInfo refundInfo;
+}
@@ -0,0 +1,29 @@
+package com.py.paymentbackend.vo.alipay;
+
+import lombok.Data;
+
+/**
+ * 统一收单交易退款查询的响应体，只取用到的字段
+ * https://opendocs.alipay.com/open/028sma
+ */
+@Data
+public class AlipayRefundQueryResult {
+
+    private Refund alipayTradeFastpayRefundQueryResponse;
+
+    @Data
+    public static class Refund {
+
+        private String code;
+
+        private String msg;
+
+        private String outTradeNo;//商户订单号
+
+        private String outRequestNo;//退款请求号
+
+        private String refundStatus;//退款状态
+
+        private String refundAmount;//退款金额(元)
+    }
+}
@@ -0,0 +1,29 @@
+package com.py.paymentbackend.vo.alipay;
+
+import lombok.Data;
+
+/**
+ * 统一收单交易查询的响应体，只取用到的字段
+ * https://opendocs.alipay.com/open/028woa
+ */
+@Data
+public class AlipayTradeQueryResult {
+
+    private Trade alipayTradeQueryResponse;
+
+    @Data
+    public static class Trade {
+
+        private String code;
+
+        private String msg;
+
+        private String outTradeNo;//商户订单号
+
+        private String tradeNo;//支付宝交易号
+
+        private String tradeStatus;//交易状态
+
+        private String totalAmount;//交易金额(元)
+    }
+}
@@ -0,0 +1,17 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * 申请交易账单/资金账单的响应
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_6.shtml
+ */
+@Data
+public class WxBillResponse {
+
+    private String hashType;//哈希类型，SHA1
+
+    private String hashValue;//账单文件的哈希值
+
+    private String downloadUrl;//账单下载地址，30秒内有效
+}
@@ -0,0 +1,14 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 关单请求
+ */
+@Data
+@AllArgsConstructor
+public class WxCloseOrderRequest {
+
+    private String mchid;//直连商户号
+}
@@ -0,0 +1,31 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * native下单请求，只传必填项
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_1.shtml
+ */
+@Data
+public class WxNativePayRequest {
+
+    private String appid;
+
+    private String mchid;
+
+    private String description;//商品描述
+
+    private String outTradeNo;//商户订单号
+
+    private String notifyUrl;//通知地址
+
+    private Amount amount;
+
+    @Data
+    public static class Amount {
+
+        private Integer total;//订单总金额(分)
+
+        private String currency;
+    }
+}
@@ -0,0 +1,12 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * native下单响应
+ */
+@Data
+public class WxNativePayResponse {
+
+    private String codeUrl;//二维码链接
+}
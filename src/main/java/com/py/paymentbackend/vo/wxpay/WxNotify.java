@@ -0,0 +1,37 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * 微信支付/退款通知
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_5.shtml
+ */
+@Data
+public class WxNotify {
+
+    private String id;//通知id
+
+    private String createTime;//通知创建时间
+
+    private String eventType;//通知类型，如 TRANSACTION.SUCCESS、REFUND.SUCCESS
+
+    private String resourceType;//通知数据类型
+
+    private String summary;//回调摘要
+
+    private Resource resource;//加密的通知数据
+
+    @Data
+    public static class Resource {
+
+        private String algorithm;//加密算法，AEAD_AES_256_GCM
+
+        private String ciphertext;//数据密文
+
+        private String associatedData;//附加数据
+
+        private String originalType;//原始类型
+
+        private String nonce;//随机串
+    }
+}
@@ -0,0 +1,48 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * 申请退款、查询退款的响应，以及退款通知解密后的明文
+ * 申请/查询退款返回 status，退款通知返回 refund_status
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_9.shtml
+ */
+@Data
+public class WxRefund {
+
+    private String refundId;//微信支付退款单号
+
+    private String outRefundNo;//商户退款单号
+
+    private String transactionId;//微信支付订单号
+
+    private String outTradeNo;//商户订单号
+
+    private String channel;//退款渠道
+
+    private String userReceivedAccount;//退款入账账户
+
+    private String successTime;//退款成功时间
+
+    private String createTime;//退款创建时间
+
+    private String status;//退款状态（申请/查询退款）
+
+    private String refundStatus;//退款状态（退款通知）
+
+    private Amount amount;
+
+    @Data
+    public static class Amount {
+
+        private Integer total;//订单金额(分)
+
+        private Integer refund;//退款金额(分)
+
+        private Integer payerTotal;//用户支付金额(分)
+
+        private Integer payerRefund;//用户退款金额(分)
+
+        private String currency;
+    }
+}
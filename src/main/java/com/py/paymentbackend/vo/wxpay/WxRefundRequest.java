@@ -0,0 +1,31 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * 申请退款请求
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_9.shtml
+ */
+@Data
+public class WxRefundRequest {
+
+    private String outTradeNo;//订单编号
+
+    private String outRefundNo;//退款单编号
+
+    private String reason;//退款原因
+
+    private String notifyUrl;//退款通知地址
+
+    private Amount amount;
+
+    @Data
+    public static class Amount {
+
+        private Integer refund;//退款金额(分)
+
+        private Integer total;//原订单金额(分)
+
+        private String currency;//退款币种
+    }
+}
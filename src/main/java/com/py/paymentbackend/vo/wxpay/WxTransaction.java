@@ -0,0 +1,53 @@
+package com.py.paymentbackend.vo.wxpay;
+
+import lombok.Data;
+
+/**
+ * 支付通知解密后的明文，以及查单接口的响应
+ * https://pay.weixin.qq.com/wiki/doc/apiv3/apis/chapter3_4_2.shtml
+ */
+@Data
+public class WxTransaction {
+
+    private String appid;
+
+    private String mchid;
+
+    private String outTradeNo;//商户订单号
+
+    private String transactionId;//微信支付订单号
+
+    private String tradeType;//交易类型
+
+    private String tradeState;//交易状态
+
+    private String tradeStateDesc;//交易状态描述
+
+    private String bankType;//付款银行
+
+    private String attach;//附加数据
+
+    private String successTime;//支付完成时间
+
+    private Payer payer;
+
+    private Amount amount;
+
+    @Data
+    public static class Payer {
+
+        private String openid;
+    }
+
+    @Data
+    public static class Amount {
+
+        private Integer total;//订单总金额(分)
+
+        private Integer payerTotal;//用户支付金额(分)
+
+        private String currency;
+
+        private String payerCurrency;
+    }
+}
@@ -0,0 +1,8 @@
+/* 从库心跳：主库定时更新 beat_time，从库上读出复制过来的值与当前时间比较，得到复制延迟 */
+CREATE TABLE `t_replica_heartbeat` (
+    `id` int(11) NOT NULL COMMENT '只有一行，id = 1',
+    `beat_time` datetime(3) NOT NULL COMMENT '主库最近一次写入的时间',
+    PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+INSERT INTO `t_replica_heartbeat` (`id`, `beat_time`) VALUES (1, NOW(3));
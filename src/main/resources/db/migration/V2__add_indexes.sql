@@ -0,0 +1,21 @@
+/*
+ * 热点查询的索引
+ * 索引名在 MySQL 中按表区分，这里仍然保持全局唯一，方便在 H2 上跑执行计划测试
+ */
+
+/* 订单：按订单号查询、更新状态 */
+CREATE UNIQUE INDEX `uk_order_no` ON `t_order_info` (`order_no`);
+/* 订单：定时任务查找超时未支付的订单 order_status = ? and payment_type = ? and create_time <= ? */
+CREATE INDEX `idx_order_status_type_time` ON `t_order_info` (`order_status`, `payment_type`, `create_time`);
+/* 订单：下单时查找同一商品已存在但未支付的订单 */
+CREATE INDEX `idx_order_product_status_type` ON `t_order_info` (`product_id`, `order_status`, `payment_type`);
+
+/* 支付日志：同一笔交易只记录一次 */
+CREATE UNIQUE INDEX `uk_transaction_id` ON `t_payment_info` (`transaction_id`);
+CREATE INDEX `idx_payment_order_no` ON `t_payment_info` (`order_no`);
+
+/* 退款单：按退款单号更新 */
+CREATE UNIQUE INDEX `uk_refund_no` ON `t_refund_info` (`refund_no`);
+CREATE INDEX `idx_refund_order_no` ON `t_refund_info` (`order_no`);
+/* 退款单：定时任务查找超时未成功的退款单 refund_status = ? and payment_type = ? and create_time <= ? */
+CREATE INDEX `idx_refund_status_type_time` ON `t_refund_info` (`refund_status`, `payment_type`, `create_time`);
@@ -0,0 +1,2 @@
+/* 订单列表按 (create_time, id) 倒序做游标分页 */
+CREATE INDEX `idx_order_create_time` ON `t_order_info` (`create_time` DESC, `id` DESC);
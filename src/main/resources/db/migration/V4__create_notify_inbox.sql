@@ -0,0 +1,19 @@
+/* 回调收件箱：验签通过的支付/退款通知先落库再异步处理 */
+CREATE TABLE `t_notify_inbox` (
+    `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '收件箱id',
+    `notify_type` varchar(20) NOT NULL COMMENT '通知类型',
+    `notify_id` varchar(64) NOT NULL COMMENT '支付平台的通知id',
+    `payload` text COMMENT '通知原文',
+    `status` varchar(20) NOT NULL COMMENT '处理状态',
+    `retry_count` int(11) NOT NULL DEFAULT 0 COMMENT '已重试次数',
+    `next_retry_time` datetime NOT NULL COMMENT '下次可处理时间，处理中时为租约到期时间',
+    `last_error` varchar(512) DEFAULT NULL COMMENT '最后一次处理失败的原因',
+    `create_time` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;
+
+/* 支付平台重复发送的同一条通知只保存一次 */
+CREATE UNIQUE INDEX `uk_notify_type_id` ON `t_notify_inbox` (`notify_type`, `notify_id`);
+/* 拉取待处理的通知 status in (?, ?) and next_retry_time <= ? */
+CREATE INDEX `idx_notify_status_next` ON `t_notify_inbox` (`status`, `next_retry_time`);
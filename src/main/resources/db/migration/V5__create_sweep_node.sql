@@ -0,0 +1,14 @@
+/* 核实任务节点：各节点定时心跳，按存活节点分配订单分片，每个节点只核实自己分片内的订单 */
+CREATE TABLE `t_sweep_node` (
+    `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '节点记录id',
+    `node_id` varchar(128) NOT NULL COMMENT '节点标识',
+    `heartbeat_time` datetime NOT NULL COMMENT '最后一次心跳时间',
+    `create_time` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;
+
+/* 心跳按节点标识覆盖更新 */
+CREATE UNIQUE INDEX `uk_sweep_node_id` ON `t_sweep_node` (`node_id`);
+/* 查找存活节点 heartbeat_time >= ? */
+CREATE INDEX `idx_sweep_node_heartbeat` ON `t_sweep_node` (`heartbeat_time`);
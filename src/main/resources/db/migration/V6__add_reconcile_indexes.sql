@@ -0,0 +1,4 @@
+/* 对账：按支付类型读取一天内的支付记录 payment_type = ? and create_time >= ? and create_time < ? */
+CREATE INDEX `idx_payment_type_time` ON `t_payment_info` (`payment_type`, `create_time`);
+/* 对账：按支付类型读取一天内的退款单 payment_type = ? and create_time >= ? and create_time < ? and refund_status in (...) */
+CREATE INDEX `idx_refund_type_time` ON `t_refund_info` (`payment_type`, `create_time`);
@@ -0,0 +1,39 @@
+/*
+ * 支付平台原始报文从支付记录表、退款单表中拆出来，压缩后单独存放
+ * 热点查询扫描的数据页里不再有几KB的JSON，一页能放下更多行
+ */
+CREATE TABLE `t_raw_payload` (
+    `id` bigint(20) unsigned NOT NULL AUTO_INCREMENT COMMENT '报文id',
+    `record_type` varchar(20) NOT NULL COMMENT '报文类型',
+    `record_no` varchar(50) NOT NULL COMMENT '业务单号：支付记录为交易号，退款记录为退款单号',
+    `payload` mediumblob COMMENT '压缩后的报文，UNCOMPRESS(payload) 即原文',
+    `raw_size` int(11) DEFAULT NULL COMMENT '压缩前的字节数',
+    `create_time` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`)
+) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8mb4;
+
+/* 按类型和单号读取、覆盖 */
+CREATE UNIQUE INDEX `uk_payload_type_no` ON `t_raw_payload` (`record_type`, `record_no`);
+/* 保留期清理 create_time < ? */
+CREATE INDEX `idx_payload_create_time` ON `t_raw_payload` (`create_time`);
+
+/* 搬运已有的报文，保留原来的创建时间，清理时按原来的时间计算保留期 */
+INSERT INTO `t_raw_payload` (`record_type`, `record_no`, `payload`, `raw_size`, `create_time`)
+SELECT 'PAYMENT', `transaction_id`, COMPRESS(`content`), LENGTH(`content`), `create_time`
+FROM `t_payment_info`
+WHERE `content` IS NOT NULL AND `transaction_id` IS NOT NULL;
+
+INSERT INTO `t_raw_payload` (`record_type`, `record_no`, `payload`, `raw_size`, `create_time`)
+SELECT 'REFUND_RETURN', `refund_no`, COMPRESS(`content_return`), LENGTH(`content_return`), `create_time`
+FROM `t_refund_info`
+WHERE `content_return` IS NOT NULL AND `refund_no` IS NOT NULL;
+
+INSERT INTO `t_raw_payload` (`record_type`, `record_no`, `payload`, `raw_size`, `create_time`)
+SELECT 'REFUND_NOTIFY', `refund_no`, COMPRESS(`content_notify`), LENGTH(`content_notify`), `create_time`
+FROM `t_refund_info`
+WHERE `content_notify` IS NOT NULL AND `refund_no` IS NOT NULL;
+
+ALTER TABLE `t_payment_info` DROP COLUMN `content`;
+ALTER TABLE `t_refund_info` DROP COLUMN `content_return`;
+ALTER TABLE `t_refund_info` DROP COLUMN `content_notify`;
@@ -0,0 +1,52 @@
+/*
+ * 冷数据归档表：已结束的订单超过保留月数后，连同支付记录、退款单一起由 ArchiveTask 搬到这里
+ * 列与热表一致，id 沿用热表的值；主键带上 create_time，MySQL 上按月分区（见 db/vendor/mysql）
+ * 归档表只由搬运任务写入，不需要热表上那些去重用的唯一索引
+ */
+CREATE TABLE `t_order_info_archive` (
+    `id` bigint(11) unsigned NOT NULL COMMENT '订单id',
+    `title` varchar(256) DEFAULT NULL COMMENT '订单标题',
+    `order_no` varchar(50) DEFAULT NULL COMMENT '商户订单编号',
+    `user_id` bigint(20) DEFAULT NULL COMMENT '用户id',
+    `product_id` bigint(20) DEFAULT NULL COMMENT '支付产品id',
+    `total_fee` int(11) DEFAULT NULL COMMENT '订单金额(分)',
+    `code_url` varchar(50) DEFAULT NULL COMMENT '订单二维码连接',
+    `order_status` varchar(10) DEFAULT NULL COMMENT '订单状态',
+    `payment_type` varchar(20) DEFAULT NULL COMMENT '支付类型',
+    `create_time` datetime NOT NULL COMMENT '创建时间',
+    `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`id`, `create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `t_payment_info_archive` (
+    `id` bigint(20) unsigned NOT NULL COMMENT '支付记录id',
+    `order_no` varchar(50) DEFAULT NULL COMMENT '商户订单编号',
+    `transaction_id` varchar(50) DEFAULT NULL COMMENT '支付系统交易编号',
+    `payment_type` varchar(20) DEFAULT NULL COMMENT '支付类型',
+    `trade_type` varchar(20) DEFAULT NULL COMMENT '交易类型',
+    `trade_state` varchar(50) DEFAULT NULL COMMENT '交易状态',
+    `payer_total` int(11) DEFAULT NULL COMMENT '支付金额(分)',
+    `create_time` datetime NOT NULL COMMENT '创建时间',
+    `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`id`, `create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE `t_refund_info_archive` (
+    `id` bigint(20) unsigned NOT NULL COMMENT '退款单id',
+    `order_no` varchar(50) DEFAULT NULL COMMENT '商户订单编号',
+    `refund_no` varchar(50) DEFAULT NULL COMMENT '商户退款单编号',
+    `refund_id` varchar(50) DEFAULT NULL COMMENT '支付系统退款单号',
+    `total_fee` int(11) DEFAULT NULL COMMENT '原订单金额(分)',
+    `refund` int(11) DEFAULT NULL COMMENT '退款金额(分)',
+    `reason` varchar(50) DEFAULT NULL COMMENT '退款原因',
+    `refund_status` varchar(50) DEFAULT NULL COMMENT '退款状态',
+    `payment_type` varchar(20) DEFAULT NULL COMMENT '支付类型',
+    `create_time` datetime NOT NULL COMMENT '创建时间',
+    `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`id`, `create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+/* 按订单号查不到热表中的订单时回查归档表 */
+CREATE INDEX `idx_order_archive_order_no` ON `t_order_info_archive` (`order_no`);
+CREATE INDEX `idx_payment_archive_order_no` ON `t_payment_info_archive` (`order_no`);
+CREATE INDEX `idx_refund_archive_order_no` ON `t_refund_info_archive` (`order_no`);
@@ -0,0 +1,86 @@
+package com.py.paymentbackend.benchmark;
+
+import com.alipay.api.AlipayConstants;
+import com.alipay.api.internal.util.AlipaySignature;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付宝异步通知验签 AlipaySignature.rsaCheckV1，与 AliPayController.tradeNotify 的参数一致：
+ * RSA2（SHA256withRSA），2048 位密钥（支付宝公钥的长度），UTF-8
+ * 开启了 GC profiler，结果中的 gc.alloc.rate.norm 即每次验签的内存分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AlipayNotifyBenchmark {
+
+    private Map<String, String> params;
+
+    private String publicKey;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+        String privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+
+        // 一条真实的电脑网站支付成功通知的参数
+        params = new HashMap<>();
+        params.put("gmt_create", "2022-08-29 10:00:00");
+        params.put("charset", "UTF-8");
+        params.put("gmt_payment", "2022-08-29 10:00:05");
+        params.put("notify_time", "2022-08-29 10:00:06");
+        params.put("subject", "Java课程");
+        params.put("buyer_id", "2088622987898412");
+        params.put("invoice_amount", "0.01");
+        params.put("version", "1.0");
+        params.put("notify_id", "2022082900222100005098410519856735");
+        params.put("fund_bill_list", "[{\"amount\":\"0.01\",\"fundChannel\":\"ALIPAYACCOUNT\"}]");
+        params.put("notify_type", "trade_status_sync");
+        params.put("out_trade_no", "ORDER_20220829100000123");
+        params.put("total_amount", "0.01");
+        params.put("trade_status", "TRADE_SUCCESS");
+        params.put("trade_no", "2022082922001498410501893208");
+        params.put("auth_app_id", "2021000121657426");
+        params.put("receipt_amount", "0.01");
+        params.put("point_amount", "0.00");
+        params.put("buyer_pay_amount", "0.01");
+        params.put("app_id", "2021000121657426");
+        params.put("seller_id", "2088621987890145");
+        params.put("sign_type", AlipayConstants.SIGN_TYPE_RSA2);
+        params.put("sign", AlipaySignature.rsaSign(AlipaySignature.getSignCheckContentV1(params), privateKey,
+                AlipayConstants.CHARSET_UTF8, AlipayConstants.SIGN_TYPE_RSA2));
+    }
+
+    @Benchmark
+    public boolean rsaCheckV1() throws Exception {
+        // 与控制器中一样每个通知一个新的参数Map，复制的开销也算在内
+        return AlipaySignature.rsaCheckV1(new HashMap<>(params), publicKey,
+                AlipayConstants.CHARSET_UTF8, AlipayConstants.SIGN_TYPE_RSA2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(AlipayNotifyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
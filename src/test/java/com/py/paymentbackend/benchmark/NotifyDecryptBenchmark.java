@@ -0,0 +1,88 @@
+package com.py.paymentbackend.benchmark;
+
+import com.py.paymentbackend.util.AesGcmDecryptor;
+import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回调通知解密：每次新建 AesUtil（原实现） vs 复用密钥和 Cipher 的 AesGcmDecryptor
+ * 开启了 GC profiler，结果中的 gc.alloc.rate.norm 即每次回调的内存分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class NotifyDecryptBenchmark {
+
+    private static final String API_V3_KEY = "UDuLFDcmy5Eb6o0nTNZdu6ek4DDh4K8B";
+
+    private static final String ASSOCIATED_DATA = "transaction";
+
+    private static final String NONCE = "fdasflkja484";
+
+    /**
+     * 一条真实大小的支付通知明文
+     */
+    private static final String PLAIN_TEXT = "{\"amount\":{\"currency\":\"CNY\",\"payer_currency\":\"CNY\",\"payer_total\":1,\"total\":1},"
+            + "\"appid\":\"wx74862e0dfcf69954\",\"attach\":\"\",\"bank_type\":\"OTHERS\",\"mchid\":\"1558950191\","
+            + "\"out_trade_no\":\"ORDER_20220828172344338\",\"payer\":{\"openid\":\"oHwsHuCgDFPyqFo2Sawg6yA0Pu4A\"},"
+            + "\"promotion_detail\":[],\"success_time\":\"2022-08-28T17:23:59+08:00\",\"trade_state\":\"SUCCESS\","
+            + "\"trade_state_desc\":\"支付成功\",\"trade_type\":\"NATIVE\",\"transaction_id\":\"4200001550202208284738686219\"}";
+
+    private String ciphertext;
+
+    private AesGcmDecryptor decryptor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        byte[] key = API_V3_KEY.getBytes(StandardCharsets.UTF_8);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"),
+                new GCMParameterSpec(128, NONCE.getBytes(StandardCharsets.UTF_8)));
+        cipher.updateAAD(ASSOCIATED_DATA.getBytes(StandardCharsets.UTF_8));
+        ciphertext = Base64.getEncoder().encodeToString(cipher.doFinal(PLAIN_TEXT.getBytes(StandardCharsets.UTF_8)));
+        decryptor = new AesGcmDecryptor(key, null);
+    }
+
+    /**
+     * 原实现：每次回调新建 AesUtil
+     */
+    @Benchmark
+    public String newAesUtilPerCall() throws Exception {
+        AesUtil aesUtil = new AesUtil(API_V3_KEY.getBytes(StandardCharsets.UTF_8));
+        return aesUtil.decryptToString(
+                ASSOCIATED_DATA.getBytes(StandardCharsets.UTF_8),
+                NONCE.getBytes(StandardCharsets.UTF_8),
+                ciphertext);
+    }
+
+    /**
+     * 现实现：共享的解密器
+     */
+    @Benchmark
+    public String sharedDecryptor() throws Exception {
+        return decryptor.decryptToString(ASSOCIATED_DATA, NONCE, ciphertext);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(NotifyDecryptBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
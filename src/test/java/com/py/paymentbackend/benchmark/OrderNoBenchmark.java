@@ -0,0 +1,66 @@
+package com.py.paymentbackend.benchmark;
+
+import com.py.paymentbackend.util.OrderNoUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成：每次新建 SimpleDateFormat、Random 的原实现 vs 雪花算法的 IdGenerator
+ * 开启了 GC profiler，结果中的 gc.alloc.rate.norm 即每个订单号的内存分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class OrderNoBenchmark {
+
+    /**
+     * 原实现：日期 + 3位随机数
+     */
+    @Benchmark
+    public String dateAndRandom() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
+        String newDate = sdf.format(new Date());
+        String result = "";
+        Random random = new Random();
+        for (int i = 0; i < 3; i++) {
+            result += random.nextInt(10);
+        }
+        return "ORDER_" + newDate + result;
+    }
+
+    /**
+     * 现实现：订单号字符串
+     */
+    @Benchmark
+    public String orderNo() {
+        return OrderNoUtils.getOrderNo();
+    }
+
+    /**
+     * 现实现：只生成编号，不拼字符串
+     */
+    @Benchmark
+    public long nextId() {
+        return OrderNoUtils.getNo();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(OrderNoBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
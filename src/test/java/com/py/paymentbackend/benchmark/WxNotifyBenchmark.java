@@ -0,0 +1,175 @@
+package com.py.paymentbackend.benchmark;
+
+import com.py.paymentbackend.simulator.GatewaySimulator;
+import com.py.paymentbackend.util.HttpUtils;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.util.WechatPay2ValidatorForRequest;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
+import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static com.wechat.pay.contrib.apache.httpclient.constant.WechatPayHttpHeaders.*;
+
+/**
+ * APIv3 支付通知中 CPU 密集的几步，按 WxPayController.nativeNotify 中的顺序：
+ *   读请求体 -> 解析通知 -> 验签 -> （解密，见 NotifyDecryptBenchmark）-> 解析交易，记录支付日志
+ * 验签用模拟器的平台证书和私钥（2048 位 RSA），与微信平台证书的长度一致
+ * 开启了 GC profiler，结果中的 gc.alloc.rate.norm 即每次回调这一步的内存分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class WxNotifyBenchmark {
+
+    private static final String SERIAL = "5157F09EFDC096DE15EBE81A47057A7232F1B8E1";
+
+    /**
+     * 一条真实大小的支付通知
+     */
+    private static final String BODY = "{\"id\":\"EV-2018022511223320873\",\"create_time\":\"2022-08-28T17:23:59+08:00\","
+            + "\"resource_type\":\"encrypt-resource\",\"event_type\":\"TRANSACTION.SUCCESS\",\"summary\":\"支付成功\","
+            + "\"resource\":{\"original_type\":\"transaction\",\"algorithm\":\"AEAD_AES_256_GCM\","
+            + "\"ciphertext\":\"sBx0EK2cuxxeaDSx46PeNLGmJQE9kSrNnD7H6dXmo2ktgDKiUx0dCGUOWHRtm6tbsZnJ9kTFiXQZgqXfYYWXD1aWaS8AsmbW6AI4Ml3V0YHJjmvCf1mWIJBXrJbkHxO+AjRCXKD3k0GH8vTn1Af/y6+3jOYHNlnoMTRwQ4dBhtXGvh2YpMFx9z6F+Bz8y0u6vcC4knnH3nVv9pGOoFFtlSo+R1iIU2xPlXxXcCfnTfFzBmtgRu6VRa9LMCsLqW6kdR0kEJMUAJQzKV7uL0GfJbR0r+QbfRzFmE6LTXf2E2xrOSuxE6XL3gW9N1FSVBsX7QzKtrOY3NMJiqfpAzXA4JOzLbgNmI8AS2m0m6EI5YqTLdIHbGykBsLjsl+UmrDMn9RZIBB1GwF4dVUzJ0iD3aqO6p3vBGqGkx47zrUGJ5VN9BwHUpTa4Lc7mMJd9lWMZCNbmN8jzhgOlHPqYArhB7h7Oy9dSnMUmQJHrhzBhBDgXYWh9hF1CM0oUM/ZZi8EnxA+nAfBYqz+KIq2rhLjiTx4bSh5BpaHoIUM0IJL71cfJvZ3ZIYw0kF+JEXszlY=\","
+            + "\"associated_data\":\"transaction\",\"nonce\":\"fdasflkja484\"}}";
+
+    /**
+     * 解密后的交易
+     */
+    private static final String PLAIN_TEXT = "{\"amount\":{\"currency\":\"CNY\",\"payer_currency\":\"CNY\",\"payer_total\":1,\"total\":1},"
+            + "\"appid\":\"wx74862e0dfcf69954\",\"attach\":\"\",\"bank_type\":\"OTHERS\",\"mchid\":\"1558950191\","
+            + "\"out_trade_no\":\"ORDER_20220828172344338\",\"payer\":{\"openid\":\"oHwsHuCgDFPyqFo2Sawg6yA0Pu4A\"},"
+            + "\"promotion_detail\":[],\"success_time\":\"2022-08-28T17:23:59+08:00\",\"trade_state\":\"SUCCESS\","
+            + "\"trade_state_desc\":\"支付成功\",\"trade_type\":\"NATIVE\",\"transaction_id\":\"4200001550202208284738686219\"}";
+
+    private ReplayRequest request;
+
+    private Verifier verifier;
+
+    /**
+     * 每次读取都返回新的 Reader，与容器中每个请求读一次请求体一致
+     */
+    private static class ReplayRequest extends MockHttpServletRequest {
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(getContentAsByteArray()),
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 用模拟器的平台证书验签，代替从微信下载的平台证书
+     */
+    private static class KeyVerifier implements Verifier {
+
+        private final X509Certificate certificate;
+
+        KeyVerifier(X509Certificate certificate) {
+            this.certificate = certificate;
+        }
+
+        @Override
+        public boolean verify(String serialNumber, byte[] message, String signature) {
+            try {
+                Signature sign = Signature.getInstance("SHA256withRSA");
+                sign.initVerify(certificate.getPublicKey());
+                sign.update(message);
+                return sign.verify(Base64.getDecoder().decode(signature));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Deprecated
+        @Override
+        public X509Certificate getValidCertificate() {
+            return getLatestCertificate();
+        }
+
+        @Override
+        public X509Certificate getLatestCertificate() {
+            return certificate;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        PrivateKey platformKey;
+        try (InputStream in = new ClassPathResource("simulator/wxpay_platform_key.pem").getInputStream()) {
+            platformKey = PemUtil.loadPrivateKey(in);
+        }
+        verifier = new KeyVerifier(GatewaySimulator.platformCertificate());
+
+        // 时间戳5分钟内有效，一次运行远小于这个时间
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        String nonce = "fdasflkja484";
+        Signature sign = Signature.getInstance("SHA256withRSA");
+        sign.initSign(platformKey);
+        sign.update((timestamp + "\n" + nonce + "\n" + BODY + "\n").getBytes(StandardCharsets.UTF_8));
+
+        request = new ReplayRequest();
+        request.setMethod("POST");
+        request.setContentType("application/json");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        request.addHeader(WECHAT_PAY_SERIAL, SERIAL);
+        request.addHeader(WECHAT_PAY_SIGNATURE, Base64.getEncoder().encodeToString(sign.sign()));
+        request.addHeader(WECHAT_PAY_NONCE, nonce);
+        request.addHeader(WECHAT_PAY_TIMESTAMP, timestamp);
+    }
+
+    @Benchmark
+    public String readData() {
+        return HttpUtils.readData(request);
+    }
+
+    @Benchmark
+    public WxNotify parseNotify() {
+        return JsonUtils.fromJson(BODY, WxNotify.class);
+    }
+
+    @Benchmark
+    public boolean validate() throws Exception {
+        return new WechatPay2ValidatorForRequest(verifier, BODY, "EV-2018022511223320873").validate(request);
+    }
+
+    /**
+     * processOrder 中解析解密后的交易，之后 createPaymentInfo 从中取字段
+     */
+    @Benchmark
+    public WxTransaction parseTransaction() {
+        return JsonUtils.fromJson(PLAIN_TEXT, WxTransaction.class);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(WxNotifyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
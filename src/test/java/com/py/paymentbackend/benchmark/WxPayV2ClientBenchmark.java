@@ -0,0 +1,167 @@
+package com.py.paymentbackend.benchmark;
+
+import com.py.paymentbackend.util.HttpClientUtils;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.apache.http.Consts;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * APIv2 统一下单的HTTP传输吞吐：每次新建客户端（原实现） vs 共享连接池客户端
+ * 本地起一个HTTPS服务模拟 /pay/unifiedorder，不访问微信
+ *
+ * 运行：在IDE中直接运行 main 方法，或 mvn -P jmh test -Djmh.include=WxPayV2ClientBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(8)
+@Fork(1)
+public class WxPayV2ClientBenchmark {
+
+    private static final String PASSWORD = "changeit";
+
+    private static final String REQUEST_XML = "<xml><appid>wx74862e0dfcf69954</appid><mch_id>1558950191</mch_id>"
+            + "<nonce_str>5K8264ILTKCH16CQ2502SI8ZNMTM67VS</nonce_str><body>Java课程</body>"
+            + "<out_trade_no>ORDER_20220829120000123</out_trade_no><total_fee>1</total_fee>"
+            + "<trade_type>NATIVE</trade_type><sign>C380BEC2BFD727A4B6845133519F3AD6</sign></xml>";
+
+    private static final byte[] RESPONSE_XML = ("<xml><return_code><![CDATA[SUCCESS]]></return_code>"
+            + "<result_code><![CDATA[SUCCESS]]></result_code>"
+            + "<code_url><![CDATA[weixin://wxpay/bizpayurl?pr=JiLa01azz]]></code_url></xml>")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private File keystore;
+
+    private HttpsServer server;
+
+    private ExecutorService serverExecutor;
+
+    private String url;
+
+    private CloseableHttpClient pooledClient;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // 用JDK自带的keytool生成自签名证书，服务端和客户端都用它
+        keystore = File.createTempFile("wxpay-bench", ".jks");
+        keystore.delete();
+        Process keytool = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+                "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "1",
+                "-keystore", keystore.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .inheritIO().start();
+        if (keytool.waitFor() != 0) {
+            throw new IllegalStateException("keytool执行失败");
+        }
+        KeyStore ks = KeyStore.getInstance("JKS");
+        try (InputStream in = new FileInputStream(keystore)) {
+            ks.load(in, PASSWORD.toCharArray());
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, PASSWORD.toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.createContext("/pay/unifiedorder", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // 读完请求体
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, RESPONSE_XML.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE_XML);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "https://localhost:" + server.getAddress().getPort() + "/pay/unifiedorder";
+
+        // 与 WxPayConfig.getWxPayV2Client 相同的配置，只是信任库换成上面的自签名证书
+        SSLContext trustContext = SSLContextBuilder.create().loadTrustMaterial(ks, null).build();
+        pooledClient = HttpClientUtils.createPooledClient(trustContext, 200, 200, 2000, 5000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pooledClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        Files.deleteIfExists(keystore.toPath());
+    }
+
+    /**
+     * 原实现：每次调用都新建信任所有证书的 SSLContext 和 HttpClient，用完关闭
+     */
+    @Benchmark
+    public String perCallClient() throws Exception {
+        SSLContext sslContext = new SSLContextBuilder()
+                .loadTrustMaterial(null, (chain, authType) -> true)
+                .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext))
+                .build();
+        try {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new StringEntity(REQUEST_XML, Consts.UTF_8));
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                return EntityUtils.toString(response.getEntity(), Consts.UTF_8);
+            }
+        } finally {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * 现实现：共享连接池客户端，长连接复用
+     */
+    @Benchmark
+    public String pooledClient() throws Exception {
+        HttpClientUtils client = new HttpClientUtils(pooledClient, url);
+        client.setXmlParam(REQUEST_XML);
+        client.post();
+        return client.getContent();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(WxPayV2ClientBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
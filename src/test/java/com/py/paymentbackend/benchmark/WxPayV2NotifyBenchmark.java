@@ -0,0 +1,71 @@
+package com.py.paymentbackend.benchmark;
+
+import com.github.wxpay.sdk.WXPayUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * APIv2 支付通知，与 WxPayV2Controller.wxNotify 的顺序一致：先 isSignatureValid 验签，再 xmlToMap 解析
+ * 两者都要完整解析一次XML，验签还要算一次MD5
+ * 开启了 GC profiler，结果中的 gc.alloc.rate.norm 即每次调用的内存分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class WxPayV2NotifyBenchmark {
+
+    private static final String PARTNER_KEY = "T6m9iK73b0kn9g5v426MKfHQH7X8rKwb";
+
+    private String xml;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // 一条真实的 Native 支付结果通知的字段
+        Map<String, String> params = new HashMap<>();
+        params.put("appid", "wx74862e0dfcf69954");
+        params.put("bank_type", "OTHERS");
+        params.put("cash_fee", "1");
+        params.put("fee_type", "CNY");
+        params.put("is_subscribe", "N");
+        params.put("mch_id", "1558950191");
+        params.put("nonce_str", WXPayUtil.generateNonceStr());
+        params.put("openid", "oHwsHuCgDFPyqFo2Sawg6yA0Pu4A");
+        params.put("out_trade_no", "ORDER_20220829100000123");
+        params.put("result_code", "SUCCESS");
+        params.put("return_code", "SUCCESS");
+        params.put("time_end", "20220829100005");
+        params.put("total_fee", "1");
+        params.put("trade_type", "NATIVE");
+        params.put("transaction_id", "4200001550202208294738686219");
+        xml = WXPayUtil.generateSignedXml(params, PARTNER_KEY);
+    }
+
+    @Benchmark
+    public boolean isSignatureValid() throws Exception {
+        return WXPayUtil.isSignatureValid(xml, PARTNER_KEY);
+    }
+
+    @Benchmark
+    public Map<String, String> xmlToMap() throws Exception {
+        return WXPayUtil.xmlToMap(xml);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(WxPayV2NotifyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
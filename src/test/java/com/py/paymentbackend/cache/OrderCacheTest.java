@@ -0,0 +1,144 @@
+package com.py.paymentbackend.cache;
+
+import com.py.paymentbackend.entity.OrderInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 用内存中的 Map 模拟 t_order_info，单独验证缓存在各种调用顺序下的行为
+ * 状态流转本身和缓存随之更新的效果见 service.OrderInfoServiceTest，那里用的是真实的服务和数据库
+ */
+class OrderCacheTest {
+
+    private final Map<String, OrderInfo> table = new ConcurrentHashMap<>();
+
+    private final AtomicInteger selects = new AtomicInteger();
+
+    private final Function<String, OrderInfo> loader = orderNo -> {
+        selects.incrementAndGet();
+        OrderInfo row = table.get(orderNo);
+        if (row == null) {
+            return null;
+        }
+        OrderInfo copy = order(orderNo, row.getOrderStatus());
+        copy.setCodeUrl(row.getCodeUrl());
+        return copy;
+    };
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private OrderCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new OrderCache(100, Duration.ofMinutes(10), meterRegistry);
+        table.put("ORDER_1", order("ORDER_1", "未支付"));
+    }
+
+    private static OrderInfo order(String orderNo, String status) {
+        OrderInfo orderInfo = new OrderInfo();
+        orderInfo.setOrderNo(orderNo);
+        orderInfo.setOrderStatus(status);
+        orderInfo.setTotalFee(1);
+        return orderInfo;
+    }
+
+    /**
+     * 按先清除、更新、提交后写回的顺序调用缓存，beforeCommit 用来在提交前插入其他线程的读
+     */
+    private void updateStatus(String orderNo, String expect, String update, Runnable beforeCommit) {
+        OrderInfo cached = cache.evict(orderNo);
+        table.get(orderNo).setOrderStatus(update);
+        beforeCommit.run();
+        cache.statusChanged(orderNo, cached, expect, update);
+    }
+
+    @Test
+    void repeatedReadsHitTheCache() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("未支付", cache.get("ORDER_1", loader).getOrderStatus());
+        }
+        assertEquals(1, selects.get());
+        assertEquals(4, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void returnsCopiesSoCallersCannotCorruptTheCache() {
+        OrderInfo first = cache.get("ORDER_1", loader);
+        first.setOrderStatus("支付成功");
+
+        OrderInfo second = cache.get("ORDER_1", loader);
+        assertNotSame(first, second);
+        assertEquals("未支付", second.getOrderStatus());
+    }
+
+    @Test
+    void statusChangeIsWrittenThrough() {
+        cache.get("ORDER_1", loader);
+        updateStatus("ORDER_1", "未支付", "支付成功", () -> {
+        });
+
+        assertEquals("支付成功", cache.get("ORDER_1", loader).getOrderStatus());
+        assertEquals(1, selects.get());
+    }
+
+    @Test
+    void staleReadBeforeCommitIsReplaced() {
+        cache.get("ORDER_1", loader);
+        // 提交前另一个线程查库，读到的还是旧状态
+        updateStatus("ORDER_1", "未支付", "支付成功",
+                () -> cache.put(order("ORDER_1", "未支付")));
+
+        assertEquals("支付成功", cache.get("ORDER_1", loader).getOrderStatus());
+    }
+
+    @Test
+    void unexpectedStatusIsDroppedAndReloaded() {
+        cache.get("ORDER_1", loader);
+        updateStatus("ORDER_1", "未支付", "支付成功",
+                () -> cache.put(order("ORDER_1", "退款中")));
+
+        assertEquals("支付成功", cache.get("ORDER_1", loader).getOrderStatus());
+        assertEquals(2, selects.get());
+    }
+
+    @Test
+    void codeUrlIsWrittenThroughOnlyWhenCached() {
+        cache.codeUrlChanged("ORDER_1", "weixin://1");
+        assertEquals(0, selects.get());
+
+        cache.get("ORDER_1", loader);
+        cache.codeUrlChanged("ORDER_1", "weixin://2");
+        assertEquals("weixin://2", cache.get("ORDER_1", loader).getCodeUrl());
+    }
+
+    @Test
+    void missingOrderIsNotCached() {
+        assertNull(cache.get("ORDER_404", loader));
+        assertNull(cache.get("ORDER_404", loader));
+        assertEquals(2, selects.get());
+    }
+
+    @Test
+    void batchUpdateEvictsOrders() {
+        cache.get("ORDER_1", loader);
+        cache.evictAll(Collections.singletonList("ORDER_1"));
+        table.get("ORDER_1").setOrderStatus("已关闭");
+
+        assertEquals("已关闭", cache.get("ORDER_1", loader).getOrderStatus());
+        assertEquals(2, selects.get());
+    }
+}
@@ -0,0 +1,139 @@
+package com.py.paymentbackend.cache;
+
+import com.py.paymentbackend.entity.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 用内存中的 Map 模拟 t_product，计数器记录查库次数
+ */
+class ProductCatalogTest {
+
+    private final Map<Long, Product> table = new ConcurrentHashMap<>();
+
+    private final AtomicInteger selectById = new AtomicInteger();
+
+    private final AtomicInteger selectList = new AtomicInteger();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ProductCatalog catalog;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        for (long id = 1; id <= 4; id++) {
+            table.put(id, product(id, "课程" + id, (int) id * 100));
+        }
+        meterRegistry = new SimpleMeterRegistry();
+        catalog = new ProductCatalog(
+                id -> {
+                    selectById.incrementAndGet();
+                    sleep(50);
+                    return table.get(id);
+                },
+                () -> {
+                    selectList.incrementAndGet();
+                    return new ArrayList<>(table.values());
+                },
+                100, Duration.ofMinutes(5), meterRegistry);
+        executor = Executors.newFixedThreadPool(32);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static Product product(long id, String title, int price) {
+        Product product = new Product();
+        product.setId(String.valueOf(id));
+        product.setTitle(title);
+        product.setPrice(price);
+        return product;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void warmUpServesBothPathsWithoutFurtherQueries() {
+        catalog.warmUp();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(4, catalog.list().size());
+            assertEquals("课程2", catalog.get(2L).getTitle());
+        }
+
+        assertEquals(0, selectById.get());
+        assertEquals(1, selectList.get());
+        assertEquals(200, meterRegistry.get("cache.gets").tag("result", "hit").functionCounters().stream()
+                .mapToDouble(counter -> counter.count()).sum());
+    }
+
+    @Test
+    void concurrentMissesForSameProductQueryOnce() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Product>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return catalog.get(3L);
+            }));
+        }
+        start.countDown();
+
+        Product first = futures.get(0).get();
+        for (Future<Product> future : futures) {
+            assertSame(first, future.get());
+        }
+        assertEquals(1, selectById.get());
+    }
+
+    @Test
+    void invalidateReloadsChangedProduct() {
+        catalog.warmUp();
+        table.put(1L, product(1, "课程1", 9900));
+
+        assertEquals(100, catalog.get(1L).getPrice());
+        catalog.invalidate(1L);
+
+        assertEquals(9900, catalog.get(1L).getPrice());
+        assertEquals(9900, catalog.list().stream()
+                .filter(product -> "1".equals(product.getId()))
+                .findFirst().get().getPrice());
+        assertEquals(2, selectList.get());
+    }
+
+    @Test
+    void missingProductIsNotCached() {
+        assertNull(catalog.get(404L));
+        table.put(404L, product(404, "新课程", 1));
+
+        assertEquals("新课程", catalog.get(404L).getTitle());
+    }
+}
@@ -0,0 +1,89 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.entity.PaymentInfo;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.mapper.PaymentInfoMapper;
+import com.py.paymentbackend.mapper.RawPayloadMapper;
+import com.py.paymentbackend.service.ServiceTestSupport;
+import com.py.paymentbackend.util.GroupCommitBuffer;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 一批支付记录在一个事务中写入：是否新记录取每条 INSERT 的影响行数，单条失败不影响同一批的其他记录
+ */
+class PaymentBatchConfigTest extends ServiceTestSupport {
+
+    @Resource
+    private PaymentInfoMapper paymentInfoMapper;
+
+    @Resource
+    private RawPayloadMapper rawPayloadMapper;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    private static PaymentInfo payment(String orderNo, String transactionId) {
+        PaymentInfo paymentInfo = new PaymentInfo();
+        paymentInfo.setOrderNo(orderNo);
+        paymentInfo.setTransactionId(transactionId);
+        paymentInfo.setPaymentType(PayType.WXPAY.getType());
+        paymentInfo.setTradeType("NATIVE");
+        paymentInfo.setTradeState("SUCCESS");
+        paymentInfo.setPayerTotal(1);
+        paymentInfo.setContent("{\"transaction_id\":\"" + transactionId + "\"}");
+        return paymentInfo;
+    }
+
+    private List<GroupCommitBuffer.Result<Boolean>> insertBatch(PaymentInfo... batch) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                PaymentBatchConfig.insertBatch(paymentInfoMapper, rawPayloadMapper, Arrays.asList(batch)));
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    @Test
+    void onlyTheFirstInsertOfATransactionIdIsNew() {
+        assertEquals(Boolean.TRUE, insertBatch(payment("ORDER_1", "TX_1")).get(0).getValue());
+
+        List<GroupCommitBuffer.Result<Boolean>> results = insertBatch(
+                payment("ORDER_1", "TX_1"), payment("ORDER_2", "TX_2"), payment("ORDER_2", "TX_2"));
+        assertEquals(Boolean.FALSE, results.get(0).getValue());
+        assertEquals(Boolean.TRUE, results.get(1).getValue());
+        assertEquals(Boolean.FALSE, results.get(2).getValue());
+
+        assertEquals(2, count("t_payment_info"));
+        assertEquals(2, count("t_raw_payload"));
+    }
+
+    @Test
+    void badRowFailsOnlyItself() {
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            tooLong.append('X');
+        }
+        List<GroupCommitBuffer.Result<Boolean>> results = insertBatch(
+                payment("ORDER_1", "TX_1"), payment(tooLong.toString(), "TX_BAD"), payment("ORDER_3", "TX_3"));
+
+        assertEquals(Boolean.TRUE, results.get(0).getValue());
+        assertNull(results.get(0).getError());
+        assertTrue(results.get(1).getError() instanceof DataIntegrityViolationException);
+        assertEquals(Boolean.TRUE, results.get(2).getValue());
+
+        // 失败的那条没有写入，同一批的其他两条和它们的原文都提交了
+        assertEquals(2, count("t_payment_info"));
+        assertEquals(2, count("t_raw_payload"));
+    }
+}
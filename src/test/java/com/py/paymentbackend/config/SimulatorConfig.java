@@ -0,0 +1,103 @@
+package com.py.paymentbackend.config;
+
+import com.py.paymentbackend.simulator.GatewaySimulator;
+import com.wechat.pay.contrib.apache.httpclient.auth.CertificatesVerifier;
+import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * 支付平台模拟器，只在 simulator 环境下启用，和模拟的平台密钥一起放在测试代码中，不打进应用的jar
+ * 启动方式见 simulator.SimulatorApplication
+ * application-simulator.yml 把微信支付、支付宝的地址指向模拟器，通知地址指向本应用
+ */
+@Data
+@Configuration
+@Profile("simulator")
+@ConfigurationProperties(prefix = "payment.simulator")
+public class SimulatorConfig {
+
+    /**
+     * 模拟器监听的地址和端口，端口为0时随机分配
+     */
+    private String host = "127.0.0.1";
+
+    private int port = 18090;
+
+    /**
+     * 处理请求的线程数，模拟的响应延迟会占住线程，压测时要足够大
+     */
+    private int threads = 64;
+
+    /**
+     * 响应延迟，实际延迟为 latency + [0, jitter) 的随机值，毫秒
+     */
+    private long latencyMillis = 50;
+
+    private long latencyJitterMillis = 50;
+
+    /**
+     * 接口返回系统错误的比例，0 ~ 1
+     */
+    private double errorRate = 0;
+
+    /**
+     * 下单后是否自动支付；关闭时调用 /simulator/pay?out_trade_no= 模拟支付
+     */
+    private boolean autoPay = true;
+
+    /**
+     * 下单后多久自动支付，毫秒
+     */
+    private long payDelayMillis = 3000;
+
+    /**
+     * 微信退款申请后多久退款成功，毫秒
+     */
+    private long refundDelayMillis = 2000;
+
+    /**
+     * 每条通知额外重复发送的次数，几份同时发出，用来检验幂等处理
+     */
+    private int duplicateNotifies = 0;
+
+    /**
+     * 商户没有正确应答时的重试次数和间隔，第n次重试等待 n * 间隔
+     */
+    private int notifyRetries = 3;
+
+    private long notifyRetryIntervalMillis = 2000;
+
+    /**
+     * 发送通知的线程数
+     */
+    private int notifyThreads = 8;
+
+    /**
+     * 模拟的支付宝私钥，签名响应和通知；对应的公钥配置在 alipay.alipay-public-key
+     */
+    private String alipayPrivateKey;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public GatewaySimulator gatewaySimulator(WxPayConfig wxPayConfig, Environment env) throws IOException {
+        return new GatewaySimulator(this, wxPayConfig,
+                env.getProperty("alipay.app-id"),
+                env.getProperty("alipay.seller-id"),
+                env.getProperty("alipay.merchant-private-key"));
+    }
+
+    /**
+     * 代替 WxPayConfig 中定时从微信下载平台证书的验证器，使用模拟的平台证书
+     */
+    @Bean
+    public Verifier simulatorVerifier() throws IOException {
+        return new CertificatesVerifier(Collections.singletonList(GatewaySimulator.platformCertificate()));
+    }
+}
@@ -0,0 +1,158 @@
+package com.py.paymentbackend.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 主库和两个从库各用一个内存数据库，从库的心跳时间手动设置来模拟复制延迟，
+ * 通过取到的连接属于哪个库验证路由
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        routing = new ReplicaRoutingDataSource(database("primary"), Arrays.asList(
+                new ReplicaRoutingDataSource.Replica("r1", database("r1")),
+                new ReplicaRoutingDataSource.Replica("r2", database("r2"))), 1500, meterRegistry);
+        routing.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clear();
+        }
+    }
+
+    private static DataSource database(String name) throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:routing_" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS t_replica_heartbeat");
+            statement.execute("CREATE TABLE t_replica_heartbeat (id int PRIMARY KEY, beat_time datetime(3) NOT NULL)");
+            statement.execute("INSERT INTO t_replica_heartbeat VALUES (1, NOW(3))");
+        }
+        return dataSource;
+    }
+
+    /**
+     * 把从库的心跳时间设为若干毫秒之前，相当于复制落后了这么久
+     */
+    private void replicaBehind(String name, long millis) throws Exception {
+        for (ReplicaRoutingDataSource.Replica replica : routing.getReplicas()) {
+            if (replica.getName().equals(name)) {
+                try (Connection connection = replica.getDataSource().getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("UPDATE t_replica_heartbeat SET beat_time = DATEADD(MILLISECOND, -" + millis + ", NOW(3)) WHERE id = 1");
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前线程取连接时路由到的库
+     */
+    private String target() throws Exception {
+        try (Connection connection = routing.getConnection()) {
+            String url = connection.getMetaData().getURL();
+            String name = url.substring(url.indexOf("routing_") + "routing_".length());
+            return name.contains(";") ? name.substring(0, name.indexOf(';')) : name;
+        }
+    }
+
+    private String targetUnchecked() {
+        try {
+            return target();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String targetOnReplica() {
+        return ReadRouting.onReplica(this::targetUnchecked);
+    }
+
+    @Test
+    void readsStayOnPrimaryUntilLagIsMeasured() throws Exception {
+        assertEquals("primary", target());
+        assertEquals("primary", targetOnReplica());
+    }
+
+    @Test
+    void declaredReadsAreSpreadOverFreshReplicas() throws Exception {
+        routing.checkLag();
+        // 不声明的查询和写一样走主库
+        assertEquals("primary", target());
+        Set<String> targets = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            targets.add(targetOnReplica());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("r1", "r2")), targets);
+        assertTrue(meterRegistry.get("payment.datasource.route").tag("target", "r1").counter().count() > 0);
+    }
+
+    @Test
+    void laggingReplicaIsSkipped() throws Exception {
+        replicaBehind("r1", 10_000);
+        routing.checkLag();
+        assertTrue(routing.getReplicas().get(0).getLagMillis() > 1500);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("r2", targetOnReplica());
+        }
+
+        replicaBehind("r2", 10_000);
+        routing.checkLag();
+        assertEquals("primary", targetOnReplica());
+    }
+
+    @Test
+    void primaryWinsWhenNested() throws Exception {
+        routing.checkLag();
+        assertEquals("primary", ReadRouting.onReplica(() -> ReadRouting.onPrimary(this::targetUnchecked)));
+    }
+
+    @Test
+    void transactionDecidesByReadOnlyFlag() throws Exception {
+        routing.checkLag();
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertTrue(target().startsWith("r"));
+
+        // 读写事务中即使声明了从库也读主库，能看到事务中自己的写入
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        assertEquals("primary", targetOnReplica());
+    }
+
+    @Test
+    void recentWritesReadFromPrimary() throws Exception {
+        routing.checkLag();
+        RecentWrites recentWrites = new RecentWrites(Duration.ofSeconds(5), 100);
+        recentWrites.mark("ORDER_1");
+        assertEquals("primary", ReadRouting.onReplica(() -> recentWrites.read("ORDER_1", this::targetUnchecked)));
+        assertTrue(ReadRouting.onReplica(() -> recentWrites.read("ORDER_2", this::targetUnchecked)).startsWith("r"));
+    }
+}
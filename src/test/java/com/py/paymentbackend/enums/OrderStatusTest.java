@@ -0,0 +1,34 @@
+package com.py.paymentbackend.enums;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderStatusTest {
+
+    /**
+     * 逐一检查每一对状态，表外的流转都要被拒绝
+     */
+    @Test
+    void onlyListedTransitionsAreAllowed() {
+        Map<OrderStatus, Set<OrderStatus>> expected = new EnumMap<>(OrderStatus.class);
+        for (OrderStatus status : OrderStatus.values()) {
+            expected.put(status, EnumSet.noneOf(OrderStatus.class));
+        }
+        expected.put(OrderStatus.NOTPAY, EnumSet.of(OrderStatus.SUCCESS, OrderStatus.CLOSED, OrderStatus.CANCEL));
+        expected.put(OrderStatus.SUCCESS, EnumSet.of(OrderStatus.REFUND_PROCESSING));
+        expected.put(OrderStatus.REFUND_PROCESSING, EnumSet.of(OrderStatus.REFUND_SUCCESS, OrderStatus.REFUND_ABNORMAL));
+        expected.put(OrderStatus.REFUND_ABNORMAL, EnumSet.of(OrderStatus.REFUND_PROCESSING));
+
+        for (OrderStatus from : OrderStatus.values()) {
+            for (OrderStatus to : OrderStatus.values()) {
+                assertEquals(expected.get(from).contains(to), from.canTransitTo(to), from + " -> " + to);
+            }
+        }
+    }
+}
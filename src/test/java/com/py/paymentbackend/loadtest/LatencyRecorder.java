@@ -0,0 +1,53 @@
+package com.py.paymentbackend.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录每个请求的耗时（纳秒），结束后排序求分位数
+ * 一次压测的请求数已知，按请求数预分配，记录时没有锁也不分配内存，超出容量的样本丢弃
+ */
+class LatencyRecorder {
+
+    private final long[] samples;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    void record(long nanos) {
+        int index = count.getAndIncrement();
+        if (index < samples.length) {
+            samples[index] = nanos;
+        }
+    }
+
+    int count() {
+        return Math.min(count.get(), samples.length);
+    }
+
+    /**
+     * 所有线程记录完之后调用
+     * @return 按从小到大排序的样本
+     */
+    long[] snapshot() {
+        long[] sorted = Arrays.copyOf(samples, count());
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * 最近秩法：不小于 quantile 比例样本的最小值
+     * @param sorted snapshot() 的结果
+     * @param quantile 0 ~ 1，如 0.99
+     */
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
@@ -0,0 +1,58 @@
+package com.py.paymentbackend.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyRecorderTest {
+
+    @Test
+    void percentilesUseNearestRank() {
+        LatencyRecorder recorder = new LatencyRecorder(1000);
+        for (int i = 1000; i >= 1; i--) {
+            recorder.record(i);
+        }
+        long[] sorted = recorder.snapshot();
+        assertEquals(500, LatencyRecorder.percentile(sorted, 0.5));
+        assertEquals(990, LatencyRecorder.percentile(sorted, 0.99));
+        assertEquals(999, LatencyRecorder.percentile(sorted, 0.999));
+        assertEquals(1000, LatencyRecorder.percentile(sorted, 1));
+        assertEquals(1, LatencyRecorder.percentile(sorted, 0));
+        assertEquals(0, LatencyRecorder.percentile(new long[0], 0.99));
+    }
+
+    @Test
+    void dropsSamplesBeyondCapacity() {
+        LatencyRecorder recorder = new LatencyRecorder(3);
+        for (int i = 5; i >= 1; i--) {
+            recorder.record(i);
+        }
+        assertEquals(3, recorder.count());
+        assertArrayEquals(new long[]{3, 4, 5}, recorder.snapshot());
+    }
+
+    @Test
+    void recordsFromManyThreads() throws Exception {
+        LatencyRecorder recorder = new LatencyRecorder(80000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    recorder.record(1);
+                }
+                done.countDown();
+            });
+        }
+        done.await(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertEquals(80000, recorder.count());
+        assertEquals(1, LatencyRecorder.percentile(recorder.snapshot(), 0.999));
+    }
+}
@@ -0,0 +1,310 @@
+package com.py.paymentbackend.loadtest;
+
+import com.alipay.api.AlipayConstants;
+import com.alipay.api.internal.util.AlipaySignature;
+import com.github.wxpay.sdk.WXPayUtil;
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import com.py.paymentbackend.enums.wxpay.WxTradeState;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import org.springframework.core.io.ClassPathResource;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.wechat.pay.contrib.apache.httpclient.constant.WechatPayHttpHeaders.*;
+
+/**
+ * 生成能通过商户端验签的回调通知，密钥与支付平台模拟器相同（simulator 环境）：
+ *   微信 APIv3：模拟平台私钥签名，APIv3 密钥 AES-256-GCM 加密
+ *   微信 APIv2：APIv2 密钥签名的 xml
+ *   支付宝：模拟的支付宝私钥 RSA2 签名的表单
+ */
+class NotifyFactory {
+
+    private static final String PLATFORM_KEY = "simulator/wxpay_platform_key.pem";
+
+    private static final String PLATFORM_CERT = "simulator/wxpay_platform_cert.pem";
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+
+    private static final DateTimeFormatter ALIPAY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final DateTimeFormatter V2_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private static final String OPENID = "oStormOpenId0000000000000000";
+
+    private static final String BUYER_ID = "2088000000000002";
+
+    private final PrivateKey platformKey;
+
+    private final String platformSerial;
+
+    private final SecretKeySpec apiV3Key;
+
+    private final String appid;
+
+    private final String mchId;
+
+    private final String partnerKey;
+
+    private final String alipayPrivateKey;
+
+    private final String alipayAppId;
+
+    private final String alipaySellerId;
+
+    NotifyFactory(Properties settings) throws IOException {
+        try (InputStream in = new ClassPathResource(PLATFORM_KEY).getInputStream()) {
+            this.platformKey = PemUtil.loadPrivateKey(in);
+        }
+        try (InputStream in = new ClassPathResource(PLATFORM_CERT).getInputStream()) {
+            this.platformSerial = PemUtil.loadCertificate(in).getSerialNumber().toString(16).toUpperCase();
+        }
+        this.apiV3Key = new SecretKeySpec(required(settings, "wxpay.api-v3-key").getBytes(StandardCharsets.UTF_8), "AES");
+        this.appid = required(settings, "wxpay.appid");
+        this.mchId = required(settings, "wxpay.mch-id");
+        this.partnerKey = required(settings, "wxpay.partnerKey");
+        this.alipayPrivateKey = required(settings, "payment.simulator.alipay-private-key");
+        this.alipayAppId = required(settings, "alipay.app-id");
+        this.alipaySellerId = required(settings, "alipay.seller-id");
+    }
+
+    /**
+     * APIv3 支付成功通知 TRANSACTION.SUCCESS
+     */
+    StormRequest wxPay(String orderNo, int totalFee) {
+        WxTransaction transaction = new WxTransaction();
+        transaction.setAppid(appid);
+        transaction.setMchid(mchId);
+        transaction.setOutTradeNo(orderNo);
+        transaction.setTransactionId(tradeNo("42"));
+        transaction.setTradeType("NATIVE");
+        transaction.setTradeState(WxTradeState.SUCCESS.getType());
+        transaction.setTradeStateDesc("支付成功");
+        transaction.setBankType("OTHERS");
+        transaction.setAttach("");
+        transaction.setSuccessTime(now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        WxTransaction.Payer payer = new WxTransaction.Payer();
+        payer.setOpenid(OPENID);
+        transaction.setPayer(payer);
+        WxTransaction.Amount amount = new WxTransaction.Amount();
+        amount.setTotal(totalFee);
+        amount.setPayerTotal(totalFee);
+        amount.setCurrency("CNY");
+        amount.setPayerCurrency("CNY");
+        transaction.setAmount(amount);
+        return wxV3("wx-pay", orderNo, "/api/wx-pay/native/notify", "TRANSACTION.SUCCESS", "支付成功",
+                "transaction", JsonUtils.toJson(transaction));
+    }
+
+    /**
+     * APIv3 退款成功通知 REFUND.SUCCESS
+     */
+    StormRequest wxRefund(String orderNo, String refundNo, int refundFee, int totalFee) {
+        String now = now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        WxRefund refund = new WxRefund();
+        refund.setOutTradeNo(orderNo);
+        refund.setOutRefundNo(refundNo);
+        refund.setTransactionId(tradeNo("42"));
+        refund.setRefundId(tradeNo("50"));
+        refund.setRefundStatus(WxRefundStatus.SUCCESS.getType());
+        refund.setUserReceivedAccount("支付用户零钱");
+        refund.setCreateTime(now);
+        refund.setSuccessTime(now);
+        WxRefund.Amount amount = new WxRefund.Amount();
+        amount.setTotal(totalFee);
+        amount.setRefund(refundFee);
+        amount.setPayerTotal(totalFee);
+        amount.setPayerRefund(refundFee);
+        refund.setAmount(amount);
+        return wxV3("wx-refund", refundNo, "/api/wx-pay/refunds/notify", "REFUND.SUCCESS", "退款成功",
+                "refund", JsonUtils.toJson(refund));
+    }
+
+    /**
+     * APIv2 支付结果通知，商户应答 return_code=SUCCESS 表示收到
+     */
+    StormRequest wxPayV2(String orderNo, int totalFee) {
+        Map<String, String> params = new HashMap<>();
+        params.put("return_code", "SUCCESS");
+        params.put("result_code", "SUCCESS");
+        params.put("appid", appid);
+        params.put("mch_id", mchId);
+        params.put("nonce_str", WXPayUtil.generateNonceStr());
+        params.put("openid", OPENID);
+        params.put("trade_type", "NATIVE");
+        params.put("bank_type", "OTHERS");
+        params.put("fee_type", "CNY");
+        params.put("total_fee", String.valueOf(totalFee));
+        params.put("cash_fee", String.valueOf(totalFee));
+        params.put("transaction_id", tradeNo("42"));
+        params.put("out_trade_no", orderNo);
+        params.put("time_end", now().format(V2_TIME));
+        String body;
+        try {
+            body = WXPayUtil.generateSignedXml(params, partnerKey);
+        } catch (Exception e) {
+            throw new IllegalStateException("生成APIv2支付通知失败", e);
+        }
+        return new StormRequest("wx-pay-v2", orderNo, "/api/wx-pay-v2/native/notify", "text/xml",
+                body.getBytes(StandardCharsets.UTF_8), Collections::emptyMap, (status, response) -> {
+            try {
+                return status == 200 && "SUCCESS".equals(WXPayUtil.xmlToMap(response).get("return_code"));
+            } catch (Exception e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 支付宝异步通知 TRADE_SUCCESS，签名不含 sign 和 sign_type，与商户端 rsaCheckV1 对应；商户应答 success 表示收到
+     */
+    StormRequest aliPay(String orderNo, int totalFee) {
+        String amount = BigDecimal.valueOf(totalFee, 2).toPlainString();
+        String now = now().format(ALIPAY_TIME);
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("gmt_create", now);
+        params.put("gmt_payment", now);
+        params.put("notify_time", now);
+        params.put("notify_type", "trade_status_sync");
+        params.put("notify_id", UUID.randomUUID().toString().replace("-", ""));
+        params.put("app_id", alipayAppId);
+        params.put("charset", AlipayConstants.CHARSET_UTF8);
+        params.put("version", "1.0");
+        params.put("trade_no", tradeNo("2022"));
+        params.put("out_trade_no", orderNo);
+        params.put("trade_status", "TRADE_SUCCESS");
+        params.put("total_amount", amount);
+        params.put("receipt_amount", amount);
+        params.put("buyer_pay_amount", amount);
+        params.put("invoice_amount", amount);
+        params.put("seller_id", alipaySellerId);
+        params.put("buyer_id", BUYER_ID);
+        params.put("subject", "压测订单");
+        try {
+            params.put("sign", AlipaySignature.rsaSign(AlipaySignature.getSignCheckContentV1(new HashMap<>(params)),
+                    alipayPrivateKey, AlipayConstants.CHARSET_UTF8, AlipayConstants.SIGN_TYPE_RSA2));
+        } catch (Exception e) {
+            throw new IllegalStateException("生成支付宝通知签名失败", e);
+        }
+        params.put("sign_type", AlipayConstants.SIGN_TYPE_RSA2);
+
+        StringBuilder form = new StringBuilder();
+        try {
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                if (form.length() > 0) {
+                    form.append('&');
+                }
+                form.append(param.getKey()).append('=').append(URLEncoder.encode(param.getValue(), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return new StormRequest("ali-pay", orderNo, "/api/ali-pay/trade/notify",
+                "application/x-www-form-urlencoded;charset=utf-8", form.toString().getBytes(StandardCharsets.UTF_8),
+                Collections::emptyMap, (status, response) -> status == 200 && "success".equals(response.trim()));
+    }
+
+    /**
+     * 通知报文只生成一次，重复发送的是同一个通知id；签名头带时间戳，每次发送时重新签名
+     */
+    private StormRequest wxV3(String channel, String key, String path, String eventType, String summary,
+                              String originalType, String plainText) {
+        String nonce = WXPayUtil.generateNonceStr().substring(0, 12);
+        WxNotify.Resource resource = new WxNotify.Resource();
+        resource.setAlgorithm("AEAD_AES_256_GCM");
+        resource.setOriginalType(originalType);
+        resource.setAssociatedData(originalType);
+        resource.setNonce(nonce);
+        resource.setCiphertext(encrypt(originalType, nonce, plainText));
+
+        WxNotify notify = new WxNotify();
+        notify.setId(UUID.randomUUID().toString());
+        notify.setCreateTime(now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        notify.setEventType(eventType);
+        notify.setResourceType("encrypt-resource");
+        notify.setSummary(summary);
+        notify.setResource(resource);
+        String body = JsonUtils.toJson(notify);
+        return new StormRequest(channel, key, path, "application/json", body.getBytes(StandardCharsets.UTF_8),
+                () -> signatureHeaders(body), (status, response) -> status == 200 || status == 204);
+    }
+
+    /**
+     * SHA256withRSA(时间戳\n随机串\n报文主体\n)，商户端只接受5分钟内的时间戳
+     */
+    private Map<String, String> signatureHeaders(String body) {
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        String nonce = WXPayUtil.generateNonceStr();
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(REQUEST_ID, UUID.randomUUID().toString());
+        headers.put(WECHAT_PAY_SERIAL, platformSerial);
+        headers.put(WECHAT_PAY_TIMESTAMP, timestamp);
+        headers.put(WECHAT_PAY_NONCE, nonce);
+        try {
+            Signature signer = Signature.getInstance("SHA256withRSA");
+            signer.initSign(platformKey);
+            signer.update((timestamp + "\n" + nonce + "\n" + body + "\n").getBytes(StandardCharsets.UTF_8));
+            headers.put(WECHAT_PAY_SIGNATURE, Base64.getEncoder().encodeToString(signer.sign()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("通知签名失败", e);
+        }
+        return headers;
+    }
+
+    private String encrypt(String associatedData, String nonce, String plainText) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, apiV3Key, new GCMParameterSpec(128, nonce.getBytes(StandardCharsets.UTF_8)));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("通知加密失败", e);
+        }
+    }
+
+    private static ZonedDateTime now() {
+        return ZonedDateTime.now(ZONE).truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    /**
+     * 支付平台的交易号、退款单号，只要求不重复
+     */
+    private static String tradeNo(String prefix) {
+        return prefix + System.currentTimeMillis() + String.format("%010d", ThreadLocalRandom.current().nextLong(10000000000L));
+    }
+
+    private static String required(Properties settings, String name) {
+        String value = settings.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalStateException("缺少配置：" + name);
+        }
+        return value;
+    }
+}
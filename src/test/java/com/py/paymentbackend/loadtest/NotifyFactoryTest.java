@@ -0,0 +1,138 @@
+package com.py.paymentbackend.loadtest;
+
+import com.alipay.api.AlipayConstants;
+import com.alipay.api.internal.util.AlipaySignature;
+import com.github.wxpay.sdk.WXPayUtil;
+import com.py.paymentbackend.simulator.GatewaySimulator;
+import com.py.paymentbackend.util.AesGcmDecryptor;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.util.WechatPay2ValidatorForRequest;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import com.wechat.pay.contrib.apache.httpclient.auth.CertificatesVerifier;
+import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.wechat.pay.contrib.apache.httpclient.constant.WechatPayHttpHeaders.WECHAT_PAY_NONCE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 压测生成的通知要能通过商户端 simulator 环境下的验签，否则测到的只是验签失败的速度
+ */
+class NotifyFactoryTest {
+
+    private Properties settings;
+
+    private NotifyFactory factory;
+
+    private Verifier verifier;
+
+    private AesGcmDecryptor decryptor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        settings = NotifyStorm.loadSettings();
+        factory = new NotifyFactory(settings);
+        verifier = new CertificatesVerifier(Collections.singletonList(GatewaySimulator.platformCertificate()));
+        decryptor = new AesGcmDecryptor(settings.getProperty("wxpay.api-v3-key").getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    @Test
+    void wxPayNotifyPassesValidationAndDecrypts() throws Exception {
+        StormRequest request = factory.wxPay("STORM_1", 123);
+        assertEquals("/api/wx-pay/native/notify", request.getPath());
+
+        String body = new String(request.getBody(), StandardCharsets.UTF_8);
+        WxNotify notify = JsonUtils.fromJson(body, WxNotify.class);
+        assertTrue(validate(request, notify.getId()));
+
+        WxNotify.Resource resource = notify.getResource();
+        WxTransaction transaction = JsonUtils.fromJson(decryptor.decryptToString(
+                resource.getAssociatedData(), resource.getNonce(), resource.getCiphertext()), WxTransaction.class);
+        assertEquals("STORM_1", transaction.getOutTradeNo());
+        assertEquals("SUCCESS", transaction.getTradeState());
+        assertEquals(123, transaction.getAmount().getPayerTotal());
+
+        assertTrue(request.getAck().test(200, ""));
+        assertFalse(request.getAck().test(500, "{\"code\":\"FAIL\"}"));
+    }
+
+    @Test
+    void duplicatesAreSignedAgain() throws Exception {
+        StormRequest request = factory.wxPay("STORM_2", 1);
+        String nonce = request.getHeaders().get().get(WECHAT_PAY_NONCE);
+        assertNotEquals(nonce, request.getHeaders().get().get(WECHAT_PAY_NONCE));
+        String id = JsonUtils.fromJson(new String(request.getBody(), StandardCharsets.UTF_8), WxNotify.class).getId();
+        assertTrue(validate(request, id));
+        assertTrue(validate(request, id));
+    }
+
+    @Test
+    void wxRefundNotifyPassesValidationAndDecrypts() throws Exception {
+        StormRequest request = factory.wxRefund("STORM_3", "RSTORM_3", 50, 100);
+        assertEquals("/api/wx-pay/refunds/notify", request.getPath());
+        assertEquals("RSTORM_3", request.getKey());
+
+        WxNotify notify = JsonUtils.fromJson(new String(request.getBody(), StandardCharsets.UTF_8), WxNotify.class);
+        assertTrue(validate(request, notify.getId()));
+        WxNotify.Resource resource = notify.getResource();
+        WxRefund refund = JsonUtils.fromJson(decryptor.decryptToString(
+                resource.getAssociatedData(), resource.getNonce(), resource.getCiphertext()), WxRefund.class);
+        assertEquals("STORM_3", refund.getOutTradeNo());
+        assertEquals("RSTORM_3", refund.getOutRefundNo());
+        assertEquals("SUCCESS", refund.getRefundStatus());
+        assertEquals(50, refund.getAmount().getRefund());
+    }
+
+    @Test
+    void wxPayV2NotifyIsSigned() throws Exception {
+        StormRequest request = factory.wxPayV2("STORM_4", 88);
+        String body = new String(request.getBody(), StandardCharsets.UTF_8);
+        assertTrue(WXPayUtil.isSignatureValid(body, settings.getProperty("wxpay.partnerKey")));
+        Map<String, String> params = WXPayUtil.xmlToMap(body);
+        assertEquals("STORM_4", params.get("out_trade_no"));
+        assertEquals("88", params.get("total_fee"));
+
+        assertTrue(request.getAck().test(200, "<xml><return_code><![CDATA[SUCCESS]]></return_code></xml>"));
+        assertFalse(request.getAck().test(200, "<xml><return_code><![CDATA[FAIL]]></return_code></xml>"));
+    }
+
+    @Test
+    void aliPayNotifyPassesRsaCheck() throws Exception {
+        StormRequest request = factory.aliPay("STORM_5", 1234);
+        Map<String, String> params = new HashMap<>();
+        for (String pair : new String(request.getBody(), StandardCharsets.UTF_8).split("&")) {
+            int index = pair.indexOf('=');
+            params.put(pair.substring(0, index), URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+        }
+        assertTrue(AlipaySignature.rsaCheckV1(params, settings.getProperty("alipay.alipay-public-key"),
+                AlipayConstants.CHARSET_UTF8, AlipayConstants.SIGN_TYPE_RSA2));
+        assertEquals("STORM_5", params.get("out_trade_no"));
+        assertEquals("12.34", params.get("total_amount"));
+        assertEquals(settings.getProperty("alipay.app-id"), params.get("app_id"));
+        assertEquals(settings.getProperty("alipay.seller-id"), params.get("seller_id"));
+
+        assertTrue(request.getAck().test(200, "success"));
+        assertFalse(request.getAck().test(200, "failure"));
+    }
+
+    private boolean validate(StormRequest request, String requestId) throws Exception {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+        request.getHeaders().get().forEach(servletRequest::addHeader);
+        String body = new String(request.getBody(), StandardCharsets.UTF_8);
+        return new WechatPay2ValidatorForRequest(verifier, body, requestId).validate(servletRequest);
+    }
+}
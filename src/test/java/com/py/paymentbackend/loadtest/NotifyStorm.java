@@ -0,0 +1,444 @@
+package com.py.paymentbackend.loadtest;
+
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 回调通知风暴压测：测量四个回调接口每秒能消化多少通知，并检查重复、乱序通知下订单是否正确
+ *   /api/wx-pay/native/notify、/api/wx-pay/refunds/notify、/api/wx-pay-v2/native/notify、/api/ali-pay/trade/notify
+ *
+ * 1. 以 simulator 环境启动应用，通知的验签密钥与模拟器相同；关闭模拟器的自动支付，通知只来自压测：
+ *    mvn -P simulator test -Dpayment.simulator.auto-pay=false
+ * 2. 运行压测：mvn -P notify-storm test -Dstorm.orders=3000 -Dstorm.rate=1000
+ *
+ * 过程：
+ *   直接在库中插入未支付订单 -> 按目标速率发送支付通知（含重复、乱序）-> 等待处理完
+ *   -> 把一部分 APIv3 订单改为退款中并插入退款单 -> 发送退款通知 -> 等待处理完 -> 检查
+ * 速率是开环的：第 i 条在 开始时间 + i / rate 发出，耗时从计划发出的时间算起，服务端处理不过来时排队的时间也计入，
+ * 不会因为发送端被拖慢而低估延迟
+ * 检查：已应答的通知对应的订单都到了目标状态（没有丢失更新），每个订单最多一条支付记录（没有重复支付）
+ *
+ * 配置：先读 wxpay.properties、alipay-sandbox.properties、application.yml、application-simulator.yml，
+ * 再用 -D 覆盖，压测参数见 main 中的 storm.*；压测订单号以 STORM 开头，可以按前缀清理
+ */
+public class NotifyStorm {
+
+    private static final String[] CHANNELS = {"wx-pay", "wx-pay-v2", "ali-pay"};
+
+    private final Properties settings;
+
+    private final String target;
+
+    private final double rate;
+
+    private final int concurrency;
+
+    private final int timeoutMillis;
+
+    private final NotifyFactory factory;
+
+    private final String prefix = "STORM" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyMMddHHmmss"));
+
+    /**
+     * 一个通知类型的统计
+     */
+    private static class ChannelStats {
+        final LongAdder acked = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LatencyRecorder latency;
+
+        ChannelStats(int capacity) {
+            this.latency = new LatencyRecorder(capacity);
+        }
+    }
+
+    /**
+     * 一轮发送的结果：各类型的统计，以及至少收到一次正确应答的订单号/退款单号
+     */
+    private static class PhaseResult {
+        final Map<String, ChannelStats> channels = new LinkedHashMap<>();
+        final Set<String> ackedKeys = ConcurrentHashMap.newKeySet();
+        long elapsedNanos;
+    }
+
+    private static class StormOrder {
+        final String channel;
+        final String orderNo;
+        final int totalFee;
+
+        StormOrder(String channel, String orderNo, int totalFee) {
+            this.channel = channel;
+            this.orderNo = orderNo;
+            this.totalFee = totalFee;
+        }
+    }
+
+    NotifyStorm(Properties settings) throws IOException {
+        this.settings = settings;
+        this.target = settings.getProperty("storm.target", "http://127.0.0.1:" + settings.getProperty("server.port", "8090"));
+        this.rate = Double.parseDouble(settings.getProperty("storm.rate", "500"));
+        this.concurrency = Integer.parseInt(settings.getProperty("storm.concurrency", "64"));
+        this.timeoutMillis = Integer.parseInt(settings.getProperty("storm.timeout-millis", "10000"));
+        this.factory = new NotifyFactory(settings);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties settings = loadSettings();
+        NotifyStorm storm = new NotifyStorm(settings);
+        // HttpURLConnection 默认每个地址只保持5个长连接
+        System.setProperty("http.maxConnections", String.valueOf(storm.concurrency));
+        boolean passed = storm.run(
+                Integer.parseInt(settings.getProperty("storm.orders", "3000")),
+                Double.parseDouble(settings.getProperty("storm.duplicate-rate", "0.2")),
+                Integer.parseInt(settings.getProperty("storm.max-duplicates", "3")),
+                Double.parseDouble(settings.getProperty("storm.reorder-rate", "0.1")),
+                Integer.parseInt(settings.getProperty("storm.reorder-window", "100")),
+                Double.parseDouble(settings.getProperty("storm.refund-rate", "0.5")),
+                Long.parseLong(settings.getProperty("storm.settle-seconds", "60")));
+        if (!passed) {
+            // 在 maven 进程中运行，不能 System.exit，抛出异常让构建失败
+            throw new IllegalStateException("压测正确性检查未通过");
+        }
+    }
+
+    static Properties loadSettings() throws IOException {
+        Properties settings = new Properties();
+        settings.putAll(PropertiesLoaderUtils.loadProperties(new ClassPathResource("wxpay.properties")));
+        settings.putAll(PropertiesLoaderUtils.loadProperties(new ClassPathResource("alipay-sandbox.properties")));
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"), new ClassPathResource("application-simulator.yml"));
+        // yml 中的数字、布尔值不是字符串，统一转换
+        yaml.getObject().forEach((name, value) -> settings.setProperty(String.valueOf(name), String.valueOf(value)));
+        settings.putAll(System.getProperties());
+        return settings;
+    }
+
+    /**
+     * @return 没有丢失更新和重复支付时返回true
+     */
+    boolean run(int orders, double duplicateRate, int maxDuplicates, double reorderRate, int window,
+                double refundRate, long settleSeconds) throws Exception {
+        Random random = new Random();
+        System.out.printf("压测 %s，订单号前缀 %s，订单 %d，速率 %s/s，并发 %d，重复 %.0f%%（最多%d次），乱序 %.0f%%（窗口%d）%n",
+                target, prefix, orders, rate > 0 ? String.valueOf(rate) : "不限", concurrency,
+                duplicateRate * 100, maxDuplicates, reorderRate * 100, window);
+
+        try (Connection connection = connect()) {
+            // 1.预先插入未支付订单，三种通知平均分配
+            List<StormOrder> created = new ArrayList<>(orders);
+            for (int i = 0; i < orders; i++) {
+                String channel = CHANNELS[i % CHANNELS.length];
+                created.add(new StormOrder(channel, String.format("%s_%d%07d", prefix, i % CHANNELS.length, i),
+                        1 + random.nextInt(10000)));
+            }
+            insertOrders(connection, created);
+
+            // 2.支付通知
+            List<StormRequest> payNotifies = new ArrayList<>(orders);
+            for (StormOrder order : created) {
+                if ("wx-pay".equals(order.channel)) {
+                    payNotifies.add(factory.wxPay(order.orderNo, order.totalFee));
+                } else if ("wx-pay-v2".equals(order.channel)) {
+                    payNotifies.add(factory.wxPayV2(order.orderNo, order.totalFee));
+                } else {
+                    payNotifies.add(factory.aliPay(order.orderNo, order.totalFee));
+                }
+            }
+            PhaseResult pay = fire(StormPlan.arrange(payNotifies, duplicateRate, maxDuplicates, reorderRate, window, random));
+            report("支付通知", pay);
+            Map<String, String> expected = new HashMap<>();
+            pay.ackedKeys.forEach(orderNo -> expected.put(orderNo, OrderStatus.SUCCESS.getType()));
+            awaitSettled(connection, expected, settleSeconds);
+
+            // 3.退款通知：支付成功的 APIv3 订单中选一部分，按申请退款后的状态改库
+            List<StormOrder> refunding = new ArrayList<>();
+            for (StormOrder order : created) {
+                if ("wx-pay".equals(order.channel) && pay.ackedKeys.contains(order.orderNo) && random.nextDouble() < refundRate) {
+                    refunding.add(order);
+                }
+            }
+            refunding = prepareRefunds(connection, refunding);
+            List<StormRequest> refundNotifies = new ArrayList<>(refunding.size());
+            for (StormOrder order : refunding) {
+                refundNotifies.add(factory.wxRefund(order.orderNo, refundNo(order.orderNo), order.totalFee, order.totalFee));
+            }
+            PhaseResult refund = fire(StormPlan.arrange(refundNotifies, duplicateRate, maxDuplicates, reorderRate, window, random));
+            report("退款通知", refund);
+            for (StormOrder order : refunding) {
+                if (refund.ackedKeys.contains(refundNo(order.orderNo))) {
+                    expected.put(order.orderNo, OrderStatus.REFUND_SUCCESS.getType());
+                }
+            }
+            awaitSettled(connection, expected, settleSeconds);
+
+            // 4.检查
+            return verify(connection, expected, refund.ackedKeys);
+        }
+    }
+
+    /**
+     * 按目标速率把通知交给线程池发送，全部完成后返回
+     */
+    private PhaseResult fire(List<StormRequest> requests) throws InterruptedException {
+        PhaseResult result = new PhaseResult();
+        for (StormRequest request : requests) {
+            result.channels.computeIfAbsent(request.getChannel(), channel -> new ChannelStats(requests.size()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("notify-storm-"));
+        long start = System.nanoTime();
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        for (int i = 0; i < requests.size(); i++) {
+            StormRequest request = requests.get(i);
+            long scheduled = start + i * interval;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            executor.execute(() -> send(request, interval > 0 ? scheduled : System.nanoTime(),
+                    result.channels.get(request.getChannel()), result.ackedKeys));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void send(StormRequest request, long scheduled, ChannelStats stats, Set<String> ackedKeys) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(target + request.getPath()).openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(request.getBody().length);
+            connection.setRequestProperty("Content-Type", request.getContentType());
+            request.getHeaders().get().forEach(connection::setRequestProperty);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request.getBody());
+            }
+            int status = connection.getResponseCode();
+            String response;
+            // 读完响应体，连接才能回到长连接池中复用
+            try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                response = in == null ? "" : StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+            }
+            stats.latency.record(System.nanoTime() - scheduled);
+            if (request.getAck().test(status, response)) {
+                stats.acked.increment();
+                ackedKeys.add(request.getKey());
+            } else {
+                stats.rejected.increment();
+            }
+        } catch (IOException e) {
+            stats.latency.record(System.nanoTime() - scheduled);
+            stats.failed.increment();
+        }
+    }
+
+    private static void report(String phase, PhaseResult result) {
+        double seconds = result.elapsedNanos / 1e9;
+        System.out.printf("%n==== %s，用时 %.1fs ====%n", phase, seconds);
+        System.out.printf("%-10s %8s %8s %8s %8s %10s %9s %9s %9s %9s%n",
+                "类型", "发送", "应答", "拒绝", "异常", "吞吐/s", "p50/ms", "p99/ms", "p999/ms", "max/ms");
+        result.channels.forEach((channel, stats) -> {
+            long[] sorted = stats.latency.snapshot();
+            System.out.printf("%-10s %8d %8d %8d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    channel, sorted.length, stats.acked.sum(), stats.rejected.sum(), stats.failed.sum(),
+                    sorted.length / seconds,
+                    millis(LatencyRecorder.percentile(sorted, 0.5)), millis(LatencyRecorder.percentile(sorted, 0.99)),
+                    millis(LatencyRecorder.percentile(sorted, 0.999)), millis(LatencyRecorder.percentile(sorted, 1)));
+        });
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(settings.getProperty("spring.datasource.url"),
+                settings.getProperty("spring.datasource.username"), settings.getProperty("spring.datasource.password"));
+    }
+
+    private static void insertOrders(Connection connection, List<StormOrder> orders) throws SQLException {
+        String sql = "INSERT INTO t_order_info (title, order_no, product_id, total_fee, order_status, payment_type) "
+                + "VALUES (?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < orders.size(); i++) {
+                StormOrder order = orders.get(i);
+                statement.setString(1, "压测订单");
+                statement.setString(2, order.orderNo);
+                statement.setLong(3, 1L);
+                statement.setInt(4, order.totalFee);
+                statement.setString(5, OrderStatus.NOTPAY.getType());
+                statement.setString(6, "ali-pay".equals(order.channel) ? PayType.ALIPAY.getType() : PayType.WXPAY.getType());
+                statement.addBatch();
+                if ((i + 1) % 500 == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * 与申请退款后的数据一致：订单改为退款中，插入处理中的退款单
+     * @return 状态确实是支付成功、改为退款中的订单
+     */
+    private static List<StormOrder> prepareRefunds(Connection connection, List<StormOrder> orders) throws SQLException {
+        List<StormOrder> prepared = new ArrayList<>(orders.size());
+        String update = "UPDATE t_order_info SET order_status = ? WHERE order_no = ? AND order_status = ?";
+        String insert = "INSERT INTO t_refund_info (order_no, refund_no, total_fee, refund, reason, refund_status, payment_type) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement updateStatement = connection.prepareStatement(update);
+             PreparedStatement insertStatement = connection.prepareStatement(insert)) {
+            for (StormOrder order : orders) {
+                updateStatement.setString(1, OrderStatus.REFUND_PROCESSING.getType());
+                updateStatement.setString(2, order.orderNo);
+                updateStatement.setString(3, OrderStatus.SUCCESS.getType());
+                if (updateStatement.executeUpdate() == 0) {
+                    continue;
+                }
+                insertStatement.setString(1, order.orderNo);
+                insertStatement.setString(2, refundNo(order.orderNo));
+                insertStatement.setInt(3, order.totalFee);
+                insertStatement.setInt(4, order.totalFee);
+                insertStatement.setString(5, "压测退款");
+                insertStatement.setString(6, WxRefundStatus.PROCESSING.getType());
+                insertStatement.setString(7, PayType.WXPAY.getType());
+                insertStatement.executeUpdate();
+                prepared.add(order);
+            }
+        }
+        return prepared;
+    }
+
+    private static String refundNo(String orderNo) {
+        return "R" + orderNo;
+    }
+
+    /**
+     * 通知可能先落收件箱再异步处理，等到所有订单都到了目标状态或者超时
+     */
+    private void awaitSettled(Connection connection, Map<String, String> expected, long settleSeconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(settleSeconds);
+        int pending;
+        do {
+            Map<String, String> statuses = orderStatuses(connection);
+            pending = 0;
+            for (Map.Entry<String, String> entry : expected.entrySet()) {
+                if (!entry.getValue().equals(statuses.get(entry.getKey()))) {
+                    pending++;
+                }
+            }
+            if (pending == 0) {
+                return;
+            }
+            TimeUnit.SECONDS.sleep(1);
+        } while (System.nanoTime() < deadline);
+        System.out.printf("等待 %ds 后仍有 %d 个订单未到目标状态%n", settleSeconds, pending);
+    }
+
+    private boolean verify(Connection connection, Map<String, String> expected, Set<String> ackedRefunds) throws SQLException {
+        Map<String, String> statuses = orderStatuses(connection);
+        Map<String, Integer> payments = new HashMap<>();
+        String sql = "SELECT order_no, COUNT(*) FROM t_payment_info WHERE order_no LIKE ? GROUP BY order_no";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, prefix + "%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    payments.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        Map<String, String> refunds = new HashMap<>();
+        sql = "SELECT refund_no, refund_status FROM t_refund_info WHERE refund_no LIKE ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, refundNo(prefix) + "%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    refunds.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+
+        int lostStatus = 0;
+        int missingPayment = 0;
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            if (!entry.getValue().equals(statuses.get(entry.getKey()))) {
+                lostStatus++;
+            }
+            if (!payments.containsKey(entry.getKey())) {
+                missingPayment++;
+            }
+        }
+        int duplicatePayment = 0;
+        for (int count : payments.values()) {
+            if (count > 1) {
+                duplicatePayment++;
+            }
+        }
+        int lostRefund = 0;
+        for (String refundNo : ackedRefunds) {
+            if (!WxRefundStatus.SUCCESS.getType().equals(refunds.get(refundNo))) {
+                lostRefund++;
+            }
+        }
+
+        System.out.printf("%n==== 正确性 ====%n");
+        System.out.printf("已应答的订单 %d，未到目标状态 %d%n", expected.size(), lostStatus);
+        System.out.printf("已应答但没有支付记录的订单 %d，有多条支付记录的订单 %d%n", missingPayment, duplicatePayment);
+        System.out.printf("已应答的退款 %d，退款单未更新为 SUCCESS %d%n", ackedRefunds.size(), lostRefund);
+        boolean passed = lostStatus == 0 && missingPayment == 0 && duplicatePayment == 0 && lostRefund == 0;
+        System.out.println(passed ? "通过" : "失败");
+        return passed;
+    }
+
+    private Map<String, String> orderStatuses(Connection connection) throws SQLException {
+        Map<String, String> statuses = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT order_no, order_status FROM t_order_info WHERE order_no LIKE ?")) {
+            statement.setString(1, prefix + "%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    statuses.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+        return statuses;
+    }
+}
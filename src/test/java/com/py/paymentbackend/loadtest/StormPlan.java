@@ -0,0 +1,60 @@
+package com.py.paymentbackend.loadtest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 编排发送顺序：按比例加入重复通知、打乱顺序
+ * 每条通知给一个排序位置，原始位置为下标 i：
+ *   乱序的通知移到 i ± window 内的随机位置
+ *   重复的通知放在 i 之后 window 内的随机位置，模拟平台没收到应答后的重发，也可能和原通知同时到达
+ */
+class StormPlan {
+
+    private StormPlan() {
+    }
+
+    private static class Slot<T> {
+        final T item;
+        final double position;
+
+        Slot(T item, double position) {
+            this.item = item;
+            this.position = position;
+        }
+    }
+
+    /**
+     * @param duplicateRate 有重复通知的比例，0 ~ 1
+     * @param maxDuplicates 每条最多重复几次，实际次数在 [1, maxDuplicates] 中随机
+     * @param reorderRate 乱序的比例，0 ~ 1
+     * @param window 重复、乱序的最大距离，单位是条
+     */
+    static <T> List<T> arrange(List<T> items, double duplicateRate, int maxDuplicates,
+                               double reorderRate, int window, Random random) {
+        List<Slot<T>> slots = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            double position = i;
+            if (random.nextDouble() < reorderRate) {
+                position += (random.nextDouble() * 2 - 1) * window;
+            }
+            slots.add(new Slot<>(item, position));
+            if (maxDuplicates > 0 && random.nextDouble() < duplicateRate) {
+                int duplicates = 1 + random.nextInt(maxDuplicates);
+                for (int j = 0; j < duplicates; j++) {
+                    slots.add(new Slot<>(item, i + random.nextDouble() * window));
+                }
+            }
+        }
+        // 稳定排序，位置相同时保持加入的顺序
+        slots.sort(Comparator.comparingDouble(slot -> slot.position));
+        List<T> arranged = new ArrayList<>(slots.size());
+        for (Slot<T> slot : slots) {
+            arranged.add(slot.item);
+        }
+        return arranged;
+    }
+}
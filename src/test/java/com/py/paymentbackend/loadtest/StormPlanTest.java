@@ -0,0 +1,65 @@
+package com.py.paymentbackend.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StormPlanTest {
+
+    private static List<Integer> items(int size) {
+        List<Integer> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    void keepsOrderWithoutDuplicatesOrReordering() {
+        List<Integer> items = items(1000);
+        assertEquals(items, StormPlan.arrange(items, 0, 3, 0, 100, new Random(1)));
+    }
+
+    @Test
+    void everyItemIsSentAndDuplicatesStayInWindow() {
+        List<Integer> items = items(10000);
+        int window = 50;
+        List<Integer> arranged = StormPlan.arrange(items, 0.2, 3, 0.1, window, new Random(7));
+
+        Map<Integer, Integer> counts = new HashMap<>();
+        Map<Integer, Integer> first = new LinkedHashMap<>();
+        Map<Integer, Integer> last = new HashMap<>();
+        for (int i = 0; i < arranged.size(); i++) {
+            int item = arranged.get(i);
+            counts.merge(item, 1, Integer::sum);
+            first.putIfAbsent(item, i);
+            last.put(item, i);
+        }
+        assertEquals(items.size(), counts.size());
+        int duplicated = 0;
+        for (int count : counts.values()) {
+            assertTrue(count >= 1 && count <= 4);
+            if (count > 1) {
+                duplicated++;
+            }
+        }
+        // 约20%的通知有重复
+        assertTrue(duplicated > 1500 && duplicated < 2500, "duplicated: " + duplicated);
+        // 按第一次出现的顺序，已经不是原来的顺序
+        assertNotEquals(items, new ArrayList<>(first.keySet()));
+
+        // 重复、乱序都在窗口内：排序位置最多相差 2 * window，再算上中间插入的重复通知
+        for (int item : items) {
+            assertTrue(last.get(item) - first.get(item) <= 4 * window, "item: " + item);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.py.paymentbackend.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * 一条回调通知：重复发送时报文不变，签名头在每次发送时重新生成，与支付平台重发通知一致
+ */
+@Getter
+@AllArgsConstructor
+class StormRequest {
+
+    /**
+     * 通知类型，分类统计用，如 wx-pay、ali-pay
+     */
+    private final String channel;
+
+    /**
+     * 订单号，退款通知为退款单号
+     */
+    private final String key;
+
+    private final String path;
+
+    private final String contentType;
+
+    private final byte[] body;
+
+    private final Supplier<Map<String, String>> headers;
+
+    /**
+     * 按响应码和响应体判断商户是否正确应答
+     */
+    private final BiPredicate<Integer, String> ack;
+}
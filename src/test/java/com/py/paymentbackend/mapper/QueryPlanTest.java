@@ -0,0 +1,245 @@
+package com.py.paymentbackend.mapper;
+
+import com.py.paymentbackend.enums.NotifyStatus;
+import com.py.paymentbackend.enums.NotifyType;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.enums.PayloadType;
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在内存数据库（H2 MySQL兼容模式）上执行 db/migration 下的全部脚本，
+ * 然后对 mapper 发出的每一条查询做 EXPLAIN，出现全表扫描则失败
+ */
+@Slf4j
+class QueryPlanTest {
+
+    private static final String URL = "jdbc:h2:mem:payment_demo;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void migrate() throws Exception {
+        Flyway.configure().dataSource(URL, "sa", "").load().migrate();
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            // H2 没有 MySQL 的 CRC32，这里只看执行计划，用一个同样是 字符串 -> 整数 的函数代替
+            statement.execute("CREATE ALIAS IF NOT EXISTS CRC32 FOR \"java.util.Objects.hashCode\"");
+        }
+        seed();
+    }
+
+    @AfterAll
+    static void close() throws Exception {
+        connection.close();
+    }
+
+    /**
+     * 造一些数据，让优化器按真实的选择性估算代价
+     */
+    private static void seed() throws Exception {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        OrderStatus[] statuses = OrderStatus.values();
+        try (PreparedStatement order = connection.prepareStatement(
+                "INSERT INTO t_order_info (title, order_no, product_id, total_fee, order_status, payment_type, create_time) VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement payment = connection.prepareStatement(
+                "INSERT INTO t_payment_info (order_no, transaction_id, payment_type, payer_total) VALUES (?, ?, ?, ?)");
+             PreparedStatement refund = connection.prepareStatement(
+                "INSERT INTO t_refund_info (order_no, refund_no, refund_status, payment_type, create_time) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement notify = connection.prepareStatement(
+                "INSERT INTO t_notify_inbox (notify_type, notify_id, status, next_retry_time) VALUES (?, ?, ?, ?)");
+             PreparedStatement node = connection.prepareStatement(
+                "INSERT INTO t_sweep_node (node_id, heartbeat_time) VALUES (?, ?)");
+             PreparedStatement payload = connection.prepareStatement(
+                "INSERT INTO t_raw_payload (record_type, record_no, payload, raw_size, create_time) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement archive = connection.prepareStatement(
+                "INSERT INTO t_order_info_archive (id, order_no, order_status, create_time) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < 2000; i++) {
+                String orderNo = "ORDER_" + i;
+                String payType = i % 2 == 0 ? PayType.WXPAY.getType() : PayType.ALIPAY.getType();
+                order.setString(1, "Java课程");
+                order.setString(2, orderNo);
+                order.setLong(3, i % 4 + 1);
+                order.setInt(4, 1);
+                order.setString(5, statuses[i % statuses.length].getType());
+                order.setString(6, payType);
+                order.setTimestamp(7, new Timestamp(now.getTime() - i * 60_000L));
+                order.addBatch();
+
+                payment.setString(1, orderNo);
+                payment.setString(2, "TX_" + i);
+                payment.setString(3, payType);
+                payment.setInt(4, 1);
+                payment.addBatch();
+
+                refund.setString(1, orderNo);
+                refund.setString(2, "REFUND_" + i);
+                refund.setString(3, i % 3 == 0 ? WxRefundStatus.PROCESSING.getType() : WxRefundStatus.SUCCESS.getType());
+                refund.setString(4, payType);
+                refund.setTimestamp(5, new Timestamp(now.getTime() - i * 60_000L));
+                refund.addBatch();
+
+                notify.setString(1, NotifyType.WX_PAY.name());
+                notify.setString(2, "NOTIFY_" + i);
+                notify.setString(3, i % 10 == 0 ? NotifyStatus.PENDING.name() : NotifyStatus.DONE.name());
+                notify.setTimestamp(4, new Timestamp(now.getTime() - i * 1000L));
+                notify.addBatch();
+
+                payload.setString(1, PayloadType.PAYMENT.name());
+                payload.setString(2, "TX_" + i);
+                payload.setBytes(3, new byte[16]);
+                payload.setInt(4, 16);
+                payload.setTimestamp(5, new Timestamp(now.getTime() - i * 3_600_000L));
+                payload.addBatch();
+
+                archive.setLong(1, 100000L + i);
+                archive.setString(2, "ARCHIVED_" + i);
+                archive.setString(3, OrderStatus.SUCCESS.getType());
+                archive.setTimestamp(4, new Timestamp(now.getTime() - (400 + i) * 86_400_000L));
+                archive.addBatch();
+
+                if (i % 10 == 0) {
+                    node.setString(1, "NODE_" + i);
+                    node.setTimestamp(2, new Timestamp(now.getTime() - i * 1000L));
+                    node.addBatch();
+                }
+            }
+            order.executeBatch();
+            payment.executeBatch();
+            refund.executeBatch();
+            notify.executeBatch();
+            node.executeBatch();
+            payload.executeBatch();
+            archive.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    /**
+     * 与各个 service 中 QueryWrapper / mapper xml 生成的语句一一对应
+     */
+    private Map<String, String> mapperQueries() {
+        String notPay = OrderStatus.NOTPAY.getType();
+        String wxPay = PayType.WXPAY.getType();
+        String deadline = "'2022-08-29 12:00:00'";
+        String shards = " AND MOD(CRC32(order_no), 64) IN (0, 2, 4, 6)";
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("OrderInfoService.getNoPayOrderByProductId",
+                "SELECT * FROM t_order_info WHERE (product_id = 1 AND order_status = '" + notPay + "' AND payment_type = '" + wxPay + "')");
+        queries.put("OrderInfoService.getOrderByOrderNo / getOrderStatus / saveCodeUrl",
+                "SELECT * FROM t_order_info WHERE (order_no = 'ORDER_1')");
+        queries.put("OrderInfoService.saveCodeUrl updateById",
+                "UPDATE t_order_info SET code_url = 'weixin://wxpay/bizpayurl?pr=x' WHERE id = 1");
+        queries.put("OrderInfoService.updateStatusByOrderNo",
+                "UPDATE t_order_info SET order_status = '" + OrderStatus.SUCCESS.getType() + "' WHERE (order_no = 'ORDER_1' AND order_status = '" + notPay + "')");
+        queries.put("OrderInfoService.updateStatusByOrderNos",
+                "UPDATE t_order_info SET order_status = '" + OrderStatus.CLOSED.getType() + "' WHERE (order_no IN ('ORDER_1', 'ORDER_2') AND order_status = '" + notPay + "')");
+        queries.put("OrderInfoService.getNoPayOrderByDuration",
+                "SELECT * FROM t_order_info WHERE (order_status = '" + notPay + "' AND create_time <= " + deadline
+                        + " AND payment_type = '" + wxPay + "'" + shards + ") ORDER BY create_time ASC, id ASC limit 200");
+        queries.put("OrderInfoService.getNoPayOrderByDuration next page",
+                "SELECT * FROM t_order_info WHERE (order_status = '" + notPay + "' AND create_time <= " + deadline
+                        + " AND payment_type = '" + wxPay + "'" + shards + " AND create_time >= '2022-08-28 12:00:00' AND (create_time > '2022-08-28 12:00:00'"
+                        + " OR (create_time = '2022-08-28 12:00:00' AND id > 100))) ORDER BY create_time ASC, id ASC limit 200");
+        queries.put("ProductMapper.selectById",
+                "SELECT * FROM t_product WHERE id = 1");
+        queries.put("RefundInfoService.updateRefund / updateRefundForAlipay",
+                "UPDATE t_refund_info SET refund_status = 'SUCCESS' WHERE (refund_no = 'REFUND_1')");
+        queries.put("RefundInfoService.getNoRefundOrderByDuration",
+                "SELECT * FROM t_refund_info WHERE (refund_status = '" + WxRefundStatus.PROCESSING.getType() + "' AND create_time <= " + deadline
+                        + " AND payment_type = '" + wxPay + "'" + shards + ") ORDER BY create_time ASC, id ASC limit 200");
+        queries.put("RefundInfoService.getRefundIntents",
+                "SELECT * FROM t_refund_info WHERE (refund_status = 'SUBMITTING' AND create_time <= " + deadline
+                        + " AND payment_type = '" + wxPay + "'" + shards + ") ORDER BY create_time ASC, id ASC limit 200");
+        queries.put("RefundInfoService.finishRefundIntent",
+                "UPDATE t_refund_info SET refund_status = 'PROCESSING' WHERE (refund_no = 'REFUND_1' AND refund_status = 'SUBMITTING')");
+        queries.put("RefundInfoMapper.updateConfirmBatch",
+                "UPDATE t_refund_info SET refund_status = CASE refund_no WHEN 'REFUND_1' THEN 'SUCCESS' WHEN 'REFUND_2' THEN 'ABNORMAL' END"
+                        + " WHERE refund_no IN ('REFUND_1', 'REFUND_2')");
+        queries.put("OrderInfoService.listOrderPage",
+                "SELECT * FROM t_order_info WHERE (create_time <= " + deadline + " AND (create_time < " + deadline
+                        + " OR (create_time = " + deadline + " AND id < 100))) ORDER BY create_time DESC, id DESC limit 21");
+        queries.put("OrderInfoService.listOrderPage with filters",
+                "SELECT * FROM t_order_info WHERE (order_status = '" + notPay + "' AND payment_type = '" + wxPay
+                        + "' AND create_time <= " + deadline + " AND (create_time < " + deadline
+                        + " OR (create_time = " + deadline + " AND id < 100))) ORDER BY create_time DESC, id DESC limit 21");
+        String pending = "'" + NotifyStatus.PENDING.name() + "', '" + NotifyStatus.PROCESSING.name() + "'";
+        queries.put("NotifyInboxService.claimBatch",
+                "SELECT * FROM t_notify_inbox WHERE (status IN (" + pending + ") AND next_retry_time <= " + deadline + ") ORDER BY next_retry_time ASC limit 100");
+        queries.put("NotifyInboxService.claimBatch update",
+                "UPDATE t_notify_inbox SET status = 'PROCESSING', next_retry_time = " + deadline
+                        + " WHERE (id = 1 AND status IN (" + pending + ") AND next_retry_time <= " + deadline + ")");
+        queries.put("NotifyInboxService.countPending",
+                "SELECT COUNT(1) FROM t_notify_inbox WHERE (status IN (" + pending + "))");
+        queries.put("PaymentInfoMapper.scanForReconcile",
+                "SELECT order_no, payer_total FROM t_payment_info WHERE payment_type = '" + wxPay
+                        + "' AND create_time >= '2022-08-29 00:00:00' AND create_time < '2022-08-30 00:00:00'");
+        queries.put("RefundInfoMapper.scanForReconcile",
+                "SELECT order_no, refund_no, refund FROM t_refund_info WHERE payment_type = '" + wxPay
+                        + "' AND create_time >= '2022-08-29 00:00:00' AND create_time < '2022-08-30 00:00:00'"
+                        + " AND refund_status IN ('SUCCESS', 'REFUND_SUCCESS', 'TRADE_SUCCESS')");
+        queries.put("SweepNodeService.listLiveNodes",
+                "SELECT node_id FROM t_sweep_node WHERE heartbeat_time >= TIMESTAMPADD(MICROSECOND, -1000 * 30000, NOW(3)) ORDER BY node_id");
+        queries.put("SweepNodeService.removeExpired",
+                "DELETE FROM t_sweep_node WHERE heartbeat_time < TIMESTAMPADD(MICROSECOND, -1000 * 300000, NOW(3))");
+        String archivable = "'" + OrderStatus.SUCCESS.getType() + "', '" + OrderStatus.CLOSED.getType() + "', '"
+                + OrderStatus.CANCEL.getType() + "', '" + OrderStatus.REFUND_SUCCESS.getType() + "'";
+        queries.put("ArchiveMapper.selectCandidates",
+                "SELECT order_no FROM t_order_info WHERE create_time < " + deadline + " AND order_status IN (" + archivable + ")"
+                        + " ORDER BY create_time LIMIT 500");
+        queries.put("ArchiveMapper.lockArchivable",
+                "SELECT order_no FROM t_order_info WHERE order_no IN ('ORDER_1', 'ORDER_2') AND order_status IN (" + archivable + ")");
+        queries.put("ArchiveMapper.copyPayments / deletePayments",
+                "SELECT id FROM t_payment_info WHERE order_no IN ('ORDER_1', 'ORDER_2')");
+        queries.put("ArchiveMapper.copyRefunds / deleteRefunds",
+                "SELECT id FROM t_refund_info WHERE order_no IN ('ORDER_1', 'ORDER_2')");
+        queries.put("ArchiveMapper.selectArchivedOrder",
+                "SELECT * FROM t_order_info_archive WHERE order_no = 'ORDER_1' LIMIT 1");
+        queries.put("RawPayloadService.getText",
+                "SELECT payload FROM t_raw_payload WHERE (record_type = '" + PayloadType.PAYMENT.name() + "' AND record_no = 'TX_1')");
+        queries.put("RawPayloadMapper.deleteCreatedBefore",
+                "DELETE FROM t_raw_payload WHERE create_time < " + deadline + " LIMIT 1000");
+        queries.put("ReplicaRoutingDataSource.checkLag",
+                "UPDATE t_replica_heartbeat SET beat_time = NOW(3) WHERE id = 1");
+        return queries;
+    }
+
+    @Test
+    void everyMapperQueryUsesAnIndex() throws Exception {
+        List<String> fullScans = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, String> query : mapperQueries().entrySet()) {
+                try (ResultSet rs = statement.executeQuery("EXPLAIN " + query.getValue())) {
+                    assertTrue(rs.next());
+                    String plan = rs.getString(1);
+                    log.info("{}:\n{}", query.getKey(), plan);
+                    // H2 的执行计划中全表扫描显示为 /* public.t_xxx.tableScan */
+                    if (plan.contains(".tableScan")) {
+                        fullScans.add(query.getKey() + " => " + plan);
+                    }
+                }
+            }
+        }
+        assertTrue(fullScans.isEmpty(), "存在全表扫描的查询:\n" + String.join("\n", fullScans));
+    }
+}
@@ -0,0 +1,74 @@
+package com.py.paymentbackend.reconcile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BillParserTest {
+
+    private static final String WX_BILL = "\uFEFF交易时间,公众账号ID,商户号,特约商户号,设备号,微信订单号,商户订单号,用户标识,交易类型,交易状态,"
+            + "付款银行,货币种类,应结订单金额,代金券金额,微信退款单号,商户退款单号,退款金额,充值券退款金额,退款类型,退款状态,"
+            + "商品名称,商户数据包,手续费,费率,订单金额,申请退款金额,费率备注\n"
+            + "`2022-08-29 10:00:00,`wx74862e0dfcf69954,`1558950191,`0,`,`4200001,`ORDER_1,`oUpF8,`NATIVE,`SUCCESS,"
+            + "`OTHERS,`CNY,`0.01,`0.00,`0,`0,`0.00,`0.00,`,`,`Java课程,`,`0.00000,`0.60%,`0.01,`0.00,`\n"
+            + "`2022-08-29 11:00:00,`wx74862e0dfcf69954,`1558950191,`0,`,`4200002,`ORDER_2,`oUpF8,`NATIVE,`REFUND,"
+            + "`OTHERS,`CNY,`0.00,`0.00,`5030001,`REFUND_2,`1.50,`0.00,`ORIGINAL,`SUCCESS,`大数据课程,`,`0.00000,`0.60%,`1.50,`1.50,`\n"
+            + "`2022-08-29 12:00:00,`wx74862e0dfcf69954,`1558950191,`0,`,`4200003,`ORDER_3,`oUpF8,`NATIVE,`REFUND,"
+            + "`OTHERS,`CNY,`0.00,`0.00,`5030002,`REFUND_3,`0.01,`0.00,`ORIGINAL,`PROCESSING,`课程,含逗号,`,`0.00000,`0.60%,`0.01,`0.01,`\n"
+            + "总交易单数,应结订单总金额,退款总金额,充值券退款总金额,手续费总金额,订单总金额,申请退款总金额\n"
+            + "`3,`0.01,`1.51,`0.00,`0.00000,`1.52,`1.51\n";
+
+    private static final String ALI_DETAIL = "#支付宝业务明细查询\n"
+            + "#账号：[20880000000000000156]\n"
+            + "#起始日期：[2022年08月29日 00:00:00]   终止日期：[2022年08月30日 00:00:00]\n"
+            + "#-----------------------------------------业务明细列表----------------------------------------\n"
+            + "支付宝交易号,商户订单号,业务类型,商品名称,创建时间,完成时间,门店编号,门店名称,操作员,终端号,对方账户,订单金额（元）,"
+            + "商家实收（元）,支付宝红包（元）,集分宝（元）,支付宝优惠（元）,商家优惠（元）,券核销金额（元）,券名称,"
+            + "商家红包消费金额（元）,卡消费金额（元）,退款批次号/请求号,服务费（元）,分润（元）,备注\n"
+            + "2022082922001\t,ORDER_1\t,交易\t,Java课程\t,2022-08-29 10:00:00,2022-08-29 10:00:05,,,,,buyer,0.01,0.01,0.00,0.00,0.00,0.00,0.00,,0.00,0.00,\t,0.00,0.00,\n"
+            + "2022082922002\t,ORDER_2\t,退款\t,大数据课程\t,2022-08-29 11:00:00,2022-08-29 11:00:05,,,,,buyer,-2.00,-2.00,0.00,0.00,0.00,0.00,0.00,,0.00,0.00,\t,0.00,0.00,\n"
+            + "#-----------------------------------------业务明细列表结束------------------------------------\n"
+            + "#交易合计：1笔，商家实收共0.01元，商家优惠共0.00元\n";
+
+    @Test
+    void parsesWxTradeBill() throws Exception {
+        List<BillRecord> records = new ArrayList<>();
+        WxBillParser.parse(new ByteArrayInputStream(WX_BILL.getBytes(StandardCharsets.UTF_8)), records::add);
+
+        // 处理中的退款不参与对账，汇总行不会被当作明细
+        assertEquals(2, records.size());
+        assertEquals(BillRecord.pay("ORDER_1", 1), records.get(0));
+        assertEquals(BillRecord.refund("REFUND_2", 150), records.get(1));
+    }
+
+    @Test
+    void parsesAliTradeBillFromZip() throws Exception {
+        Charset gbk = Charset.forName("GBK");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes, gbk)) {
+            zip.putNextEntry(new ZipEntry("20880000000000000156_20220829_业务明细(汇总).csv"));
+            zip.write("#汇总\n".getBytes(gbk));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("20880000000000000156_20220829_业务明细.csv"));
+            zip.write(ALI_DETAIL.getBytes(gbk));
+            zip.closeEntry();
+        }
+
+        List<BillRecord> records = new ArrayList<>();
+        AliBillParser.parse(new ByteArrayInputStream(bytes.toByteArray()), records::add);
+
+        assertEquals(2, records.size());
+        assertEquals(BillRecord.pay("ORDER_1", 1), records.get(0));
+        // 没有退款请求号时使用商户订单号，金额取绝对值
+        assertEquals(BillRecord.refund("ORDER_2", 200), records.get(1));
+    }
+}
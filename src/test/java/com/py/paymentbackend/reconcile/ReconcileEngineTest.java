@@ -0,0 +1,112 @@
+package com.py.paymentbackend.reconcile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconcileEngineTest {
+
+    private ExecutorService executor;
+
+    @TempDir
+    Path workDir;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 20万笔，chunkSize 很小，每个分区都要写多个有序段再归并
+     * 本地少了 i % 1000 == 1 的，账单少了 i % 1000 == 2 的，i % 1000 == 3 的金额不一致
+     */
+    @Test
+    void findsEveryDiscrepancyWithSmallSortChunks() throws Exception {
+        int records = 200000;
+        ReconcileEngine engine = new ReconcileEngine(workDir, 8, 1000, executor);
+        Path report = workDir.resolve("report.csv");
+
+        // 本地按顺序、账单倒序给出，两边的顺序都不能依赖
+        ReconcileResult result = engine.run(
+                sink -> {
+                    for (int i = 0; i < records; i++) {
+                        if (i % 1000 != 1) {
+                            sink.accept(BillRecord.pay("ORDER_" + i, 100));
+                        }
+                    }
+                },
+                sink -> {
+                    for (int i = records - 1; i >= 0; i--) {
+                        if (i % 1000 != 2) {
+                            sink.accept(BillRecord.pay("ORDER_" + i, i % 1000 == 3 ? 99 : 100));
+                        }
+                    }
+                },
+                report);
+
+        assertEquals(records - 200, result.getLocalCount());
+        assertEquals(records - 200, result.getRemoteCount());
+        assertEquals(200, result.getMissingLocal());
+        assertEquals(200, result.getMissingRemote());
+        assertEquals(200, result.getAmountMismatch());
+
+        List<String> lines = Files.readAllLines(report, StandardCharsets.UTF_8);
+        assertEquals(601, lines.size());
+        assertTrue(lines.contains("MISSING_LOCAL,PAY,ORDER_1,,100"));
+        assertTrue(lines.contains("MISSING_REMOTE,PAY,ORDER_2,100,"));
+        assertTrue(lines.contains("AMOUNT_MISMATCH,PAY,ORDER_3,100,99"));
+    }
+
+    @Test
+    void paymentAndRefundWithSameNumberAreDifferentRecords() throws Exception {
+        ReconcileEngine engine = new ReconcileEngine(workDir, 4, 100, executor);
+        Path report = workDir.resolve("report.csv");
+
+        ReconcileResult result = engine.run(
+                sink -> sink.accept(BillRecord.pay("ORDER_1", 100)),
+                sink -> {
+                    sink.accept(BillRecord.pay("ORDER_1", 100));
+                    sink.accept(BillRecord.refund("ORDER_1", 100));
+                },
+                report);
+
+        assertEquals(1, result.getMissingLocal());
+        assertEquals(0, result.getMissingRemote());
+        List<String> diffs = Files.readAllLines(report, StandardCharsets.UTF_8).stream().skip(1).collect(Collectors.toList());
+        assertEquals(1, diffs.size());
+        assertEquals("MISSING_LOCAL,REFUND,ORDER_1,,100", diffs.get(0));
+    }
+
+    @Test
+    void temporaryFilesAreRemoved() throws Exception {
+        ReconcileEngine engine = new ReconcileEngine(workDir, 4, 10, executor);
+        Path report = workDir.resolve("report.csv");
+        engine.run(sink -> {
+            for (int i = 0; i < 100; i++) {
+                sink.accept(BillRecord.pay("ORDER_" + i, 1));
+            }
+        }, sink -> {
+        }, report);
+
+        List<Path> left = Files.list(workDir).collect(Collectors.toList());
+        assertEquals(1, left.size());
+        assertEquals(report, left.get(0));
+    }
+}
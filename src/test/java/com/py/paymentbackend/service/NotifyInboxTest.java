@@ -0,0 +1,176 @@
+package com.py.paymentbackend.service;
+
+import com.py.paymentbackend.entity.NotifyInbox;
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.NotifyStatus;
+import com.py.paymentbackend.enums.NotifyType;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.task.NotifyInboxTask;
+import com.py.paymentbackend.util.JsonUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Resource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 回调收件箱：领取、重试、后台处理
+ */
+class NotifyInboxTest extends ServiceTestSupport {
+
+    @Resource
+    private NotifyInboxService notifyInboxService;
+
+    @Resource
+    private NotifyInboxTask notifyInboxTask;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Map<String, Object> row(String notifyId) {
+        return jdbcTemplate.queryForMap("SELECT status, retry_count, next_retry_time, last_error FROM t_notify_inbox WHERE notify_id = ?", notifyId);
+    }
+
+    /**
+     * 模拟租约或重试间隔已经到期
+     */
+    private void makeDue(String notifyId) {
+        jdbcTemplate.update("UPDATE t_notify_inbox SET next_retry_time = DATEADD(SECOND, -1, CURRENT_TIMESTAMP) WHERE notify_id = ?", notifyId);
+    }
+
+    @Test
+    void claimBatchLeasesEachNotificationOnce() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(notifyInboxService.enqueue(NotifyType.WX_PAY, "N" + i, "{}"));
+        }
+        assertFalse(notifyInboxService.enqueue(NotifyType.WX_PAY, "N0", "{}"));
+
+        List<NotifyInbox> first = notifyInboxService.claimBatch(2, 60000);
+        assertEquals(2, first.size());
+        assertEquals(NotifyStatus.PROCESSING.name(), row(first.get(0).getNotifyId()).get("status"));
+
+        // 租约没到期的不会再被领取
+        List<NotifyInbox> second = notifyInboxService.claimBatch(10, 60000);
+        assertEquals(1, second.size());
+        assertTrue(notifyInboxService.claimBatch(10, 60000).isEmpty());
+
+        // 处理线程挂掉，租约到期后重新领取
+        makeDue(second.get(0).getNotifyId());
+        assertEquals(second.get(0).getNotifyId(), notifyInboxService.claimBatch(10, 60000).get(0).getNotifyId());
+    }
+
+    @Test
+    void concurrentClaimsNeverShareANotification() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            notifyInboxService.enqueue(NotifyType.WX_PAY, "N" + i, "{}");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<NotifyInbox>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Callable<List<NotifyInbox>> claim = () -> notifyInboxService.claimBatch(20, 60000);
+                futures.add(pool.submit(claim));
+            }
+            Set<String> claimed = new HashSet<>();
+            int total = 0;
+            for (Future<List<NotifyInbox>> future : futures) {
+                for (NotifyInbox notifyInbox : future.get()) {
+                    claimed.add(notifyInbox.getNotifyId());
+                    total++;
+                }
+            }
+            assertEquals(total, claimed.size());
+            // 抢输的线程这一轮领到的少，剩下的下一轮还能领到
+            for (NotifyInbox notifyInbox : notifyInboxService.claimBatch(50, 60000)) {
+                assertTrue(claimed.add(notifyInbox.getNotifyId()));
+            }
+            assertEquals(50, claimed.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void markRetryBacksOffThenFails() {
+        notifyInboxService.enqueue(NotifyType.WX_PAY, "N1", "{}");
+        long before = System.currentTimeMillis();
+
+        NotifyInbox claimed = notifyInboxService.claimBatch(10, 60000).get(0);
+        assertTrue(notifyInboxService.markRetry(claimed, "first", 2, 10000));
+        Map<String, Object> row = row("N1");
+        assertEquals(NotifyStatus.PENDING.name(), row.get("status"));
+        assertEquals(1, ((Number) row.get("retry_count")).intValue());
+        assertTrue(((Timestamp) row.get("next_retry_time")).getTime() >= before + 9000);
+        // 重试间隔没到不会被领取
+        assertTrue(notifyInboxService.claimBatch(10, 60000).isEmpty());
+
+        makeDue("N1");
+        claimed = notifyInboxService.claimBatch(10, 60000).get(0);
+        assertTrue(notifyInboxService.markRetry(claimed, "second", 2, 10000));
+        row = row("N1");
+        assertEquals(2, ((Number) row.get("retry_count")).intValue());
+        assertTrue(((Timestamp) row.get("next_retry_time")).getTime() >= before + 19000);
+
+        makeDue("N1");
+        claimed = notifyInboxService.claimBatch(10, 60000).get(0);
+        StringBuilder error = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            error.append('e');
+        }
+        assertFalse(notifyInboxService.markRetry(claimed, error.toString(), 2, 10000));
+        row = row("N1");
+        assertEquals(NotifyStatus.FAILED.name(), row.get("status"));
+        assertEquals(512, ((String) row.get("last_error")).length());
+        makeDue("N1");
+        assertTrue(notifyInboxService.claimBatch(10, 60000).isEmpty());
+    }
+
+    @Test
+    void drainProcessesNotificationsAndSchedulesRetries() throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.ALIPAY.getType());
+        Map<String, String> params = new HashMap<>();
+        params.put("out_trade_no", order.getOrderNo());
+        params.put("trade_no", "2022083022001400000000000001");
+        params.put("trade_status", "TRADE_SUCCESS");
+        params.put("total_amount", "0.01");
+        notifyInboxService.enqueue(NotifyType.ALI_PAY, "A1", JsonUtils.toJson(params));
+        // 收件箱里有不认识的通知类型时处理失败，安排重试
+        NotifyInbox unknown = new NotifyInbox();
+        unknown.setNotifyType("UNKNOWN");
+        unknown.setNotifyId("U1");
+        unknown.setPayload("{}");
+        unknown.setStatus(NotifyStatus.PENDING.name());
+        unknown.setRetryCount(0);
+        unknown.setNextRetryTime(new Timestamp(System.currentTimeMillis() - 1000));
+        notifyInboxService.save(unknown);
+
+        notifyInboxTask.drain();
+
+        assertEquals(NotifyStatus.DONE.name(), row("A1").get("status"));
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(order.getOrderNo()));
+        Map<String, Object> failed = row("U1");
+        assertEquals(NotifyStatus.PENDING.name(), failed.get("status"));
+        assertEquals(1, ((Number) failed.get("retry_count")).intValue());
+        assertTrue(((String) failed.get("last_error")).contains("UNKNOWN"));
+
+        // 积压指标读的是缓存值，刷新后才变
+        notifyInboxTask.refreshMetrics();
+        assertEquals(1.0, meterRegistry.get("payment.notify.inbox.depth").gauge().value());
+        assertEquals(1.0, meterRegistry.get("payment.notify.inbox.retries").counter().count());
+    }
+}
@@ -0,0 +1,110 @@
+package com.py.paymentbackend.service;
+
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单状态流转：带状态条件的update，只有当前状态与预期一致时才更新
+ */
+class OrderInfoServiceTest extends ServiceTestSupport {
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void updateSucceedsWhenStatusMatches() {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+
+        assertTrue(orderInfoService.updateStatusByOrderNo(order.getOrderNo(), OrderStatus.NOTPAY, OrderStatus.SUCCESS));
+
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    /**
+     * 支付通知已经把订单改为支付成功，超时关单按未支付去更新时不能覆盖
+     */
+    @Test
+    void updateIsSkippedWhenStatusDoesNotMatch() {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.WXPAY.getType());
+
+        assertFalse(orderInfoService.updateStatusByOrderNo(order.getOrderNo(), OrderStatus.NOTPAY, OrderStatus.CLOSED));
+
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void onlyOneOfRepeatedUpdatesWins() {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+
+        assertTrue(orderInfoService.updateStatusByOrderNo(order.getOrderNo(), OrderStatus.NOTPAY, OrderStatus.SUCCESS));
+        assertFalse(orderInfoService.updateStatusByOrderNo(order.getOrderNo(), OrderStatus.NOTPAY, OrderStatus.SUCCESS));
+        assertFalse(orderInfoService.updateStatusByOrderNo(order.getOrderNo(), OrderStatus.NOTPAY, OrderStatus.CANCEL));
+
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void illegalTransitionIsRejectedBeforeTouchingTheDatabase() {
+        OrderInfo order = saveOrder(OrderStatus.CLOSED, PayType.WXPAY.getType());
+
+        assertThrows(IllegalStateException.class,
+                () -> orderInfoService.updateStatusByOrderNo(order.getOrderNo(), OrderStatus.CLOSED, OrderStatus.SUCCESS));
+        assertThrows(IllegalStateException.class,
+                () -> orderInfoService.updateStatusByOrderNos(Collections.singletonList(order.getOrderNo()), OrderStatus.CLOSED, OrderStatus.SUCCESS));
+
+        assertEquals(OrderStatus.CLOSED.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void batchUpdateOnlyChangesOrdersInExpectedStatus() {
+        OrderInfo first = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+        OrderInfo paid = saveOrder(OrderStatus.SUCCESS, PayType.WXPAY.getType());
+        OrderInfo second = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+
+        int updated = orderInfoService.updateStatusByOrderNos(
+                Arrays.asList(first.getOrderNo(), paid.getOrderNo(), second.getOrderNo(), "NO_SUCH_ORDER"),
+                OrderStatus.NOTPAY, OrderStatus.CLOSED);
+
+        assertEquals(2, updated);
+        assertEquals(OrderStatus.CLOSED.getType(), orderStatus(first.getOrderNo()));
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(paid.getOrderNo()));
+        assertEquals(OrderStatus.CLOSED.getType(), orderStatus(second.getOrderNo()));
+        assertEquals(0, orderInfoService.updateStatusByOrderNos(Collections.emptyList(), OrderStatus.NOTPAY, OrderStatus.CLOSED));
+    }
+
+    /**
+     * 更新后从订单缓存读到的是新状态；回滚时缓存里不能留下没有提交的状态
+     */
+    @Test
+    void cachedOrderFollowsCommittedStatus() {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+        String orderNo = order.getOrderNo();
+        assertEquals(OrderStatus.NOTPAY.getType(), orderInfoService.getOrderByOrderNo(orderNo).getOrderStatus());
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            assertTrue(orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.CANCEL));
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals(OrderStatus.NOTPAY.getType(), orderInfoService.getOrderByOrderNo(orderNo).getOrderStatus());
+
+        assertTrue(orderInfoService.updateStatusByOrderNo(orderNo, OrderStatus.NOTPAY, OrderStatus.SUCCESS));
+        assertEquals(OrderStatus.SUCCESS.getType(), orderInfoService.getOrderByOrderNo(orderNo).getOrderStatus());
+
+        assertEquals(1, orderInfoService.updateStatusByOrderNos(Collections.singletonList(orderNo), OrderStatus.SUCCESS, OrderStatus.REFUND_PROCESSING));
+        assertEquals(OrderStatus.REFUND_PROCESSING.getType(), orderInfoService.getOrderByOrderNo(orderNo).getOrderStatus());
+    }
+}
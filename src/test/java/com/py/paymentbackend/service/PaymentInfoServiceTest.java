@@ -0,0 +1,85 @@
+package com.py.paymentbackend.service;
+
+import com.py.paymentbackend.config.PaymentBatchConfig;
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 支付记录的写入：按交易号去重，总是在自己的事务中提交
+ */
+class PaymentInfoServiceTest extends ServiceTestSupport {
+
+    @Resource
+    private PaymentInfoService paymentInfoService;
+
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    @Resource
+    private PaymentBatchConfig paymentBatchConfig;
+
+    private static Map<String, String> aliNotify(String orderNo, String tradeNo) {
+        Map<String, String> params = new HashMap<>();
+        params.put("out_trade_no", orderNo);
+        params.put("trade_no", tradeNo);
+        params.put("trade_status", "TRADE_SUCCESS");
+        params.put("total_amount", "0.01");
+        return params;
+    }
+
+    private int payments(String orderNo) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_payment_info WHERE order_no = ?", Integer.class, orderNo);
+    }
+
+    /**
+     * 批量写入时由后台线程用另一个连接提交；逐条写入时挂起调用方的事务，在新事务中提交
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void paymentCommitsWhenCallerTransactionRollsBack(boolean batched) {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.ALIPAY.getType());
+        paymentBatchConfig.setEnabled(batched);
+        Boolean inserted;
+        try {
+            inserted = new TransactionTemplate(transactionManager).execute(status -> {
+                // 调用方的事务已经拿到连接并锁住订单
+                jdbcTemplate.update("UPDATE t_order_info SET order_status = ? WHERE order_no = ?",
+                        OrderStatus.SUCCESS.getType(), order.getOrderNo());
+                boolean isNew = paymentInfoService.createPaymentInfoForAlipay(aliNotify(order.getOrderNo(), "TX_1"));
+                status.setRollbackOnly();
+                return isNew;
+            });
+        } finally {
+            paymentBatchConfig.setEnabled(true);
+        }
+
+        assertTrue(inserted);
+        // 调用方回滚，支付记录已经提交
+        assertEquals(OrderStatus.NOTPAY.getType(), orderStatus(order.getOrderNo()));
+        assertEquals(1, payments(order.getOrderNo()));
+    }
+
+    @Test
+    void duplicateNotificationIsRecordedOnce() {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.ALIPAY.getType());
+
+        assertTrue(paymentInfoService.createPaymentInfoForAlipay(aliNotify(order.getOrderNo(), "TX_1")));
+        assertFalse(paymentInfoService.createPaymentInfoForAlipay(aliNotify(order.getOrderNo(), "TX_1")));
+
+        assertEquals(1, payments(order.getOrderNo()));
+    }
+}
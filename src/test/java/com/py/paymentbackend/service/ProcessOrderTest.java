@@ -0,0 +1,104 @@
+package com.py.paymentbackend.service;
+
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 支付结果入账：只有存在且未支付的订单才记录支付日志、流转为支付成功
+ */
+class ProcessOrderTest extends ServiceTestSupport {
+
+    @Resource
+    private AliPayService aliPayService;
+
+    @Resource
+    private WxPayService wxPayService;
+
+    private static Map<String, String> aliNotify(String orderNo, String tradeNo) {
+        Map<String, String> params = new HashMap<>();
+        params.put("out_trade_no", orderNo);
+        params.put("trade_no", tradeNo);
+        params.put("trade_status", "TRADE_SUCCESS");
+        params.put("total_amount", "0.01");
+        return params;
+    }
+
+    private void wxNotify(String orderNo, String transactionId) throws Exception {
+        WxTransaction transaction = new WxTransaction();
+        transaction.setOutTradeNo(orderNo);
+        transaction.setTransactionId(transactionId);
+        transaction.setTradeType("NATIVE");
+        transaction.setTradeState("SUCCESS");
+        WxTransaction.Amount amount = new WxTransaction.Amount();
+        amount.setTotal(1);
+        amount.setPayerTotal(1);
+        transaction.setAmount(amount);
+        when(wxNotifyDecryptor.decryptToString(any(), any(), any())).thenReturn(JsonUtils.toJson(transaction));
+
+        WxNotify notify = new WxNotify();
+        notify.setResource(new WxNotify.Resource());
+        wxPayService.processOrder(notify);
+    }
+
+    private int payments(String orderNo) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_payment_info WHERE order_no = ?", Integer.class, orderNo);
+    }
+
+    @Test
+    void unpaidOrderIsRecordedAndPaid() throws Exception {
+        OrderInfo alipay = saveOrder(OrderStatus.NOTPAY, PayType.ALIPAY.getType());
+        OrderInfo wxpay = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+
+        aliPayService.processOrder(aliNotify(alipay.getOrderNo(), "ALI_TX_1"));
+        wxNotify(wxpay.getOrderNo(), "WX_TX_1");
+
+        assertEquals(1, payments(alipay.getOrderNo()));
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(alipay.getOrderNo()));
+        assertEquals(1, payments(wxpay.getOrderNo()));
+        assertEquals(OrderStatus.SUCCESS.getType(), orderStatus(wxpay.getOrderNo()));
+    }
+
+    @Test
+    void unknownOrderIsNotRecorded() throws Exception {
+        aliPayService.processOrder(aliNotify("NO_SUCH_ORDER_1", "ALI_TX_1"));
+        wxNotify("NO_SUCH_ORDER_2", "WX_TX_1");
+
+        assertEquals(0, payments("NO_SUCH_ORDER_1"));
+        assertEquals(0, payments("NO_SUCH_ORDER_2"));
+        assertNull(orderInfoService.getOrderStatus("NO_SUCH_ORDER_1"));
+    }
+
+    /**
+     * 已关闭、已取消的订单不入账；已支付、退款中的订单是重复通知，不再记录新的支付日志
+     */
+    @ParameterizedTest
+    @EnumSource(value = OrderStatus.class, names = "NOTPAY", mode = EnumSource.Mode.EXCLUDE)
+    void orderNotAwaitingPaymentIsNotRecorded(OrderStatus status) throws Exception {
+        OrderInfo alipay = saveOrder(status, PayType.ALIPAY.getType());
+        OrderInfo wxpay = saveOrder(status, PayType.WXPAY.getType());
+
+        aliPayService.processOrder(aliNotify(alipay.getOrderNo(), "ALI_TX_1"));
+        wxNotify(wxpay.getOrderNo(), "WX_TX_1");
+
+        assertEquals(0, payments(alipay.getOrderNo()));
+        assertEquals(status.getType(), orderStatus(alipay.getOrderNo()));
+        assertEquals(0, payments(wxpay.getOrderNo()));
+        assertEquals(status.getType(), orderStatus(wxpay.getOrderNo()));
+    }
+}
@@ -0,0 +1,223 @@
+package com.py.paymentbackend.service;
+
+import com.alipay.api.request.AlipayTradeRefundRequest;
+import com.alipay.api.response.AlipayTradeRefundResponse;
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.entity.RefundInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.enums.PayType;
+import com.py.paymentbackend.enums.alipay.AliTradeState;
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import com.py.paymentbackend.task.RefundIntentTask;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 退款意向：先保存待提交的退款单，再调用支付平台，按返回结果回写；结果未知时由 RefundIntentTask 重新提交
+ */
+class RefundIntentTest extends ServiceTestSupport {
+
+    @Resource
+    private RefundInfoService refundInfoService;
+
+    @Resource
+    private WxPayService wxPayService;
+
+    @Resource
+    private AliPayService aliPayService;
+
+    @Resource
+    private RefundIntentTask refundIntentTask;
+
+    @BeforeEach
+    void setUp() {
+        when(wxPayConfig.getDomain()).thenReturn("https://api.mch.weixin.qq.com");
+        when(wxPayConfig.getNotifyDomain()).thenReturn("https://example.com");
+        List<Integer> shards = IntStream.range(0, SweepNodeService.SHARD_COUNT).boxed().collect(Collectors.toList());
+        when(sweepLeaseTask.getShards()).thenReturn(shards);
+    }
+
+    private static CloseableHttpResponse wxResponse(int statusCode, String body) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+        when(response.getEntity()).thenReturn(new StringEntity(body, "utf-8"));
+        return response;
+    }
+
+    private static AlipayTradeRefundResponse aliResponse(String code, String subCode) {
+        AlipayTradeRefundResponse response = new AlipayTradeRefundResponse();
+        response.setCode(code);
+        response.setSubCode(subCode);
+        response.setBody("{\"alipay_trade_refund_response\":{\"code\":\"" + code + "\"}}");
+        return response;
+    }
+
+    private String refundStatus(String orderNo) {
+        return jdbcTemplate.queryForObject("SELECT refund_status FROM t_refund_info WHERE order_no = ?", String.class, orderNo);
+    }
+
+    /**
+     * 退款单创建超过1分钟后才会被 RefundIntentTask 重新提交
+     */
+    private void backdateRefunds(String orderNo) {
+        jdbcTemplate.update("UPDATE t_refund_info SET create_time = DATEADD(MINUTE, -2, create_time) WHERE order_no = ?", orderNo);
+    }
+
+    @Test
+    void wxAcceptedRefundIsWrittenBack() throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.WXPAY.getType());
+        CloseableHttpResponse ok = wxResponse(200, "{\"refund_id\":\"50302003012022083124382080035\",\"status\":\"SUCCESS\"}");
+        when(wxPayClient.execute(any(HttpUriRequest.class))).thenReturn(ok);
+
+        assertTrue(wxPayService.refund(order.getOrderNo(), "不想要了"));
+
+        assertEquals(WxRefundStatus.SUCCESS.getType(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {429, 500, 503})
+    void wxUnknownResultStaysSubmittingUntilResubmitted(int statusCode) throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.WXPAY.getType());
+        CloseableHttpResponse unknown = wxResponse(statusCode, "{\"code\":\"SYSTEM_ERROR\"}");
+        CloseableHttpResponse ok = wxResponse(200, "{\"refund_id\":\"50302003012022083124382080035\",\"status\":\"SUCCESS\"}");
+        when(wxPayClient.execute(any(HttpUriRequest.class))).thenReturn(unknown, ok);
+
+        assertFalse(wxPayService.refund(order.getOrderNo(), "不想要了"));
+        assertEquals(RefundInfoService.STATUS_SUBMITTING, refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_PROCESSING.getType(), orderStatus(order.getOrderNo()));
+
+        // 刚创建的退款单不会被重新提交
+        refundIntentTask.resubmit();
+        assertEquals(RefundInfoService.STATUS_SUBMITTING, refundStatus(order.getOrderNo()));
+
+        backdateRefunds(order.getOrderNo());
+        refundIntentTask.resubmit();
+
+        assertEquals(WxRefundStatus.SUCCESS.getType(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_SUCCESS.getType(), orderStatus(order.getOrderNo()));
+        verify(wxPayClient, times(2)).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    void wxRejectedRefundBecomesAbnormal() throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.WXPAY.getType());
+        CloseableHttpResponse rejected = wxResponse(400, "{\"code\":\"PARAM_ERROR\"}");
+        when(wxPayClient.execute(any(HttpUriRequest.class))).thenReturn(rejected);
+
+        assertThrows(RuntimeException.class, () -> wxPayService.refund(order.getOrderNo(), "不想要了"));
+
+        assertEquals(WxRefundStatus.ABNORMAL.getType(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_ABNORMAL.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void aliRefundSendsRefundNoAsOutRequestNo() throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.ALIPAY.getType());
+        when(alipayClient.execute(any(AlipayTradeRefundRequest.class))).thenReturn(aliResponse("10000", null));
+
+        assertTrue(aliPayService.refund(order.getOrderNo(), "不想要了"));
+
+        ArgumentCaptor<AlipayTradeRefundRequest> request = ArgumentCaptor.forClass(AlipayTradeRefundRequest.class);
+        verify(alipayClient).execute(request.capture());
+        String refundNo = jdbcTemplate.queryForObject("SELECT refund_no FROM t_refund_info WHERE order_no = ?",
+                String.class, order.getOrderNo());
+        assertTrue(request.getValue().getBizContent().contains("\"out_request_no\":\"" + refundNo + "\""));
+        assertEquals(AliTradeState.REFUND_SUCCESS.getStatus(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void aliUnknownResultIsPendingAndResubmitted() throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.ALIPAY.getType());
+        when(alipayClient.execute(any(AlipayTradeRefundRequest.class)))
+                .thenReturn(aliResponse("20000", "isp.unknow-error"), aliResponse("10000", null));
+
+        assertFalse(aliPayService.refund(order.getOrderNo(), "不想要了"));
+        assertEquals(RefundInfoService.STATUS_SUBMITTING, refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_PROCESSING.getType(), orderStatus(order.getOrderNo()));
+
+        backdateRefunds(order.getOrderNo());
+        refundIntentTask.resubmit();
+
+        assertEquals(AliTradeState.REFUND_SUCCESS.getStatus(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void aliRejectedRefundBecomesAbnormalAndCanBeRetried() throws Exception {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.ALIPAY.getType());
+        when(alipayClient.execute(any(AlipayTradeRefundRequest.class)))
+                .thenReturn(aliResponse("40004", "ACQ.TRADE_NOT_ALLOW"), aliResponse("10000", null));
+
+        assertThrows(RuntimeException.class, () -> aliPayService.refund(order.getOrderNo(), "不想要了"));
+        assertEquals(AliTradeState.REFUND_ERROR.getStatus(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_ABNORMAL.getType(), orderStatus(order.getOrderNo()));
+
+        // 重新发起的退款是新的退款单号，支付宝不会按上一次失败的请求去重
+        assertTrue(aliPayService.refund(order.getOrderNo(), "不想要了"));
+        List<String> refundNos = jdbcTemplate.queryForList("SELECT refund_no FROM t_refund_info WHERE order_no = ?",
+                String.class, order.getOrderNo());
+        assertEquals(2, refundNos.size());
+        assertNotEquals(refundNos.get(0), refundNos.get(1));
+        assertEquals(OrderStatus.REFUND_SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void finishRefundIntentIgnoresRowNoLongerSubmitting() {
+        OrderInfo order = saveOrder(OrderStatus.SUCCESS, PayType.WXPAY.getType());
+        RefundInfo intent = refundInfoService.createRefundIntent(order.getOrderNo(), "不想要了", PayType.WXPAY.getType());
+
+        RefundInfo success = new RefundInfo();
+        success.setOrderNo(order.getOrderNo());
+        success.setRefundNo(intent.getRefundNo());
+        success.setRefundStatus(WxRefundStatus.SUCCESS.getType());
+        assertTrue(refundInfoService.finishRefundIntent(success, OrderStatus.REFUND_SUCCESS));
+
+        // 重新提交的请求晚到，退款单已经不是待提交，不再回写
+        RefundInfo late = new RefundInfo();
+        late.setOrderNo(order.getOrderNo());
+        late.setRefundNo(intent.getRefundNo());
+        late.setRefundStatus(WxRefundStatus.ABNORMAL.getType());
+        assertFalse(refundInfoService.finishRefundIntent(late, OrderStatus.REFUND_ABNORMAL));
+
+        assertEquals(WxRefundStatus.SUCCESS.getType(), refundStatus(order.getOrderNo()));
+        assertEquals(OrderStatus.REFUND_SUCCESS.getType(), orderStatus(order.getOrderNo()));
+    }
+
+    @Test
+    void createRefundIntentRejectsOrderNotPaid() {
+        OrderInfo order = saveOrder(OrderStatus.NOTPAY, PayType.WXPAY.getType());
+
+        assertThrows(RuntimeException.class,
+                () -> refundInfoService.createRefundIntent(order.getOrderNo(), "不想要了", PayType.WXPAY.getType()));
+
+        assertEquals(OrderStatus.NOTPAY.getType(), orderStatus(order.getOrderNo()));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_refund_info WHERE order_no = ?",
+                Integer.class, order.getOrderNo()));
+    }
+}
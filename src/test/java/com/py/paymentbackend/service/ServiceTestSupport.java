@@ -0,0 +1,152 @@
+package com.py.paymentbackend.service;
+
+import com.alipay.api.AlipayClient;
+import com.baomidou.mybatisplus.autoconfigure.MybatisPlusAutoConfiguration;
+import com.py.paymentbackend.config.DataSourceConfig;
+import com.py.paymentbackend.config.LockConfig;
+import com.py.paymentbackend.config.MybatisPlusConfig;
+import com.py.paymentbackend.config.NotifyInboxConfig;
+import com.py.paymentbackend.config.OrderCacheConfig;
+import com.py.paymentbackend.config.PaymentBatchConfig;
+import com.py.paymentbackend.config.SweepConfig;
+import com.py.paymentbackend.config.WxPayConfig;
+import com.py.paymentbackend.entity.OrderInfo;
+import com.py.paymentbackend.enums.OrderStatus;
+import com.py.paymentbackend.service.impl.AliPayServiceImpl;
+import com.py.paymentbackend.service.impl.NotifyInboxServiceImpl;
+import com.py.paymentbackend.service.impl.OrderInfoServiceImpl;
+import com.py.paymentbackend.service.impl.PaymentInfoServiceImpl;
+import com.py.paymentbackend.service.impl.RawPayloadServiceImpl;
+import com.py.paymentbackend.service.impl.RefundInfoServiceImpl;
+import com.py.paymentbackend.service.impl.WxPayServiceImpl;
+import com.py.paymentbackend.task.NotifyInboxTask;
+import com.py.paymentbackend.task.RefundIntentTask;
+import com.py.paymentbackend.task.SweepLeaseTask;
+import com.py.paymentbackend.util.AesGcmDecryptor;
+import com.py.paymentbackend.util.GatewayMetrics;
+import com.py.paymentbackend.util.OrderNoUtils;
+import com.py.paymentbackend.util.OrderStatusNotifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 服务层测试：H2（MySQL 模式）上用 Flyway 建表，加载真实的服务、Mapper 和事务配置
+ * 支付平台客户端、商品等外部依赖用 @MockBean 替换；所有测试类共用这一套配置，Spring 只创建一次上下文
+ * 每个测试开始前清空业务表
+ */
+@SpringBootTest(classes = ServiceTestSupport.Config.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:service_test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "mybatis-plus.configuration.log-impl=org.apache.ibatis.logging.nologging.NoLoggingImpl",
+        "payment.payment-batch.max-delay-millis=0"
+})
+public abstract class ServiceTestSupport {
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({FlywayAutoConfiguration.class, MybatisPlusAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class, TransactionAutoConfiguration.class,
+            JdbcTemplateAutoConfiguration.class})
+    @Import({DataSourceConfig.class, MybatisPlusConfig.class, OrderCacheConfig.class, PaymentBatchConfig.class,
+            NotifyInboxConfig.class, LockConfig.class, SweepConfig.class, GatewayMetrics.class, OrderStatusNotifier.class,
+            OrderInfoServiceImpl.class, PaymentInfoServiceImpl.class, RefundInfoServiceImpl.class,
+            RawPayloadServiceImpl.class, NotifyInboxServiceImpl.class, WxPayServiceImpl.class, AliPayServiceImpl.class,
+            RefundIntentTask.class, NotifyInboxTask.class})
+    static class Config {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    private static final String[] TABLES = {
+            "t_order_info", "t_payment_info", "t_refund_info", "t_raw_payload", "t_notify_inbox"
+    };
+
+    @MockBean
+    protected ProductService productService;
+
+    @MockBean
+    protected ArchiveService archiveService;
+
+    @MockBean
+    protected SweepLeaseTask sweepLeaseTask;
+
+    @MockBean
+    protected WxPayConfig wxPayConfig;
+
+    @MockBean(name = "wxPayClient")
+    protected CloseableHttpClient wxPayClient;
+
+    @MockBean(name = "zhangdanClient")
+    protected CloseableHttpClient zhangdanClient;
+
+    @MockBean(name = "wxPayV2Client")
+    protected CloseableHttpClient wxPayV2Client;
+
+    @MockBean(name = "wxNotifyDecryptor")
+    protected AesGcmDecryptor wxNotifyDecryptor;
+
+    @MockBean
+    protected AlipayClient alipayClient;
+
+    @Resource
+    protected JdbcTemplate jdbcTemplate;
+
+    @Resource
+    protected OrderInfoService orderInfoService;
+
+    @BeforeEach
+    void cleanTables() {
+        for (String table : TABLES) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    /**
+     * MySQL CRC32 的 H2 实现，见 db/vendor/h2/afterMigrate.sql
+     */
+    public static long crc32(String value) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(value.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    protected OrderInfo saveOrder(OrderStatus status, String paymentType) {
+        OrderInfo orderInfo = new OrderInfo();
+        orderInfo.setTitle("Java课程");
+        orderInfo.setOrderNo(OrderNoUtils.getOrderNo());
+        orderInfo.setProductId(1L);
+        orderInfo.setTotalFee(1);
+        orderInfo.setOrderStatus(status.getType());
+        orderInfo.setPaymentType(paymentType);
+        orderInfoService.save(orderInfo);
+        return orderInfo;
+    }
+
+    /**
+     * 读库里的订单状态，不经过订单缓存
+     */
+    protected String orderStatus(String orderNo) {
+        return jdbcTemplate.queryForObject("SELECT order_status FROM t_order_info WHERE order_no = ?", String.class, orderNo);
+    }
+}
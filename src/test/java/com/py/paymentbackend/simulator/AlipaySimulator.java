@@ -0,0 +1,510 @@
+package com.py.paymentbackend.simulator;
+
+import com.alipay.api.AlipayApiException;
+import com.alipay.api.AlipayConstants;
+import com.alipay.api.internal.util.AlipaySignature;
+import com.py.paymentbackend.config.SimulatorConfig;
+import com.py.paymentbackend.enums.alipay.AliTradeState;
+import com.py.paymentbackend.util.JsonUtils;
+import com.sun.net.httpserver.HttpExchange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 模拟支付宝开放平台网关 /gateway.do
+ * 商户请求用商户应用公钥验签（由配置的应用私钥推出），响应和异步通知用模拟的支付宝私钥签名，
+ * 商户端把 alipay.alipay-public-key 配置成对应的公钥即可按正常流程验签
+ * 响应格式与网关一致：{"xxx_response":{...},"sign":"..."}，SDK 截取两者之间的原文验签
+ */
+@Slf4j
+class AlipaySimulator {
+
+    private static final String CHARSET = AlipayConstants.CHARSET_UTF8;
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final DateTimeFormatter NO_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String BUYER_ID = "2088000000000001";
+
+    private static final String BUYER_LOGON_ID = "sim***@example.com";
+
+    private final SimulatorConfig config;
+
+    private final String appId;
+
+    private final String sellerId;
+
+    private final String merchantPublicKey;
+
+    private final FaultInjector faults;
+
+    private final NotifySender notifySender;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final String baseUrl;
+
+    private final Map<String, SimulatedTrade> trades = new ConcurrentHashMap<>();
+
+    /**
+     * 按退款请求号保存，没有传退款请求号时支付宝以商户订单号作为退款请求号
+     */
+    private final Map<String, SimulatedRefund> refunds = new ConcurrentHashMap<>();
+
+    private final Map<String, byte[]> bills = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    AlipaySimulator(SimulatorConfig config, String appId, String sellerId, String merchantPrivateKey,
+                    FaultInjector faults, NotifySender notifySender, ScheduledExecutorService scheduler, String baseUrl) {
+        this.config = config;
+        this.appId = appId;
+        this.sellerId = sellerId;
+        this.merchantPublicKey = publicKeyOf(merchantPrivateKey);
+        this.faults = faults;
+        this.notifySender = notifySender;
+        this.scheduler = scheduler;
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * 由PKCS8格式的RSA私钥推出X509格式的公钥
+     */
+    private static String publicKeyOf(String privateKey) {
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            RSAPrivateCrtKey key = (RSAPrivateCrtKey) keyFactory.generatePrivate(
+                    new PKCS8EncodedKeySpec(Base64.getMimeDecoder().decode(privateKey)));
+            return Base64.getEncoder().encodeToString(keyFactory.generatePublic(
+                    new RSAPublicKeySpec(key.getModulus(), key.getPublicExponent())).getEncoded());
+        } catch (GeneralSecurityException | ClassCastException e) {
+            throw new IllegalStateException("无效的支付宝应用私钥", e);
+        }
+    }
+
+    void handleGateway(HttpExchange exchange) throws IOException {
+        // 系统参数在查询串中，biz_content 在表单中
+        Map<String, String> params = GatewaySimulator.parseParams(exchange.getRequestURI().getRawQuery());
+        params.putAll(GatewaySimulator.parseParams(new String(GatewaySimulator.readBody(exchange), StandardCharsets.UTF_8)));
+        String method = params.get("method");
+        if (method == null) {
+            GatewaySimulator.send(exchange, 400, "text/plain;charset=utf-8", "缺少method参数");
+            return;
+        }
+        String root = method.replace('.', '_') + "_response";
+        if (!verify(params)) {
+            respond(exchange, root, error("40002", "Invalid Arguments", "isv.invalid-signature", "验签出错"));
+            return;
+        }
+        if ("alipay.trade.page.pay".equals(method)) {
+            pagePay(exchange, params);
+            return;
+        }
+        if (faults.shouldFail()) {
+            respond(exchange, root, error("20000", "Service Currently Unavailable", "isp.unknow-error", "系统繁忙（模拟）"));
+            return;
+        }
+        String bizContent = params.get("biz_content");
+        Map<String, String> biz = bizContent == null ? Collections.<String, String>emptyMap() : JsonUtils.toStringMap(bizContent);
+        switch (method) {
+            case "alipay.trade.query":
+                respond(exchange, root, query(biz));
+                break;
+            case "alipay.trade.close":
+                respond(exchange, root, close(biz));
+                break;
+            case "alipay.trade.refund":
+                respond(exchange, root, refund(biz));
+                break;
+            case "alipay.trade.fastpay.refund.query":
+                respond(exchange, root, queryRefund(biz));
+                break;
+            case "alipay.data.dataservice.bill.downloadurl.query":
+                respond(exchange, root, billDownloadUrl(biz));
+                break;
+            default:
+                respond(exchange, root, error("40002", "Invalid Arguments", "isv.invalid-method", "模拟器不支持的接口：" + method));
+        }
+    }
+
+    /**
+     * 商户请求的签名覆盖除 sign 外的全部参数（含 sign_type）
+     */
+    private boolean verify(Map<String, String> params) {
+        try {
+            return AlipaySignature.rsaCheckV2(new HashMap<>(params), merchantPublicKey, CHARSET,
+                    params.getOrDefault("sign_type", AlipayConstants.SIGN_TYPE_RSA2));
+        } catch (AlipayApiException e) {
+            log.warn("支付宝请求验签失败：{}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 电脑网站支付：浏览器提交表单到网关，这里创建交易并返回模拟的收银台页面，按配置自动支付
+     */
+    private void pagePay(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Map<String, String> biz = JsonUtils.toStringMap(params.get("biz_content"));
+        String outTradeNo = biz.get("out_trade_no");
+        int total = new BigDecimal(biz.get("total_amount")).movePointRight(2).intValueExact();
+        ZonedDateTime now = GatewaySimulator.now();
+        SimulatedTrade created = new SimulatedTrade();
+        created.setOutTradeNo(outTradeNo);
+        created.setTradeNo(String.format("%s22001%010d", now.format(NO_DATE), sequence.incrementAndGet()));
+        created.setTotal(total);
+        created.setSubject(biz.get("subject"));
+        created.setNotifyUrl(params.get("notify_url"));
+        created.setState(AliTradeState.NOTPAY.getStatus());
+        created.setCreateTime(now);
+        SimulatedTrade trade = trades.putIfAbsent(outTradeNo, created);
+        if (trade == null) {
+            trade = created;
+            if (config.isAutoPay()) {
+                GatewaySimulator.schedule(scheduler, () -> pay(outTradeNo), config.getPayDelayMillis());
+            }
+        }
+        String html = "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>支付宝收银台（模拟）</title></head><body>"
+                + "<p>订单号：" + trade.getOutTradeNo() + "</p>"
+                + "<p>商品：" + trade.getSubject() + "</p>"
+                + "<p>金额：" + GatewaySimulator.yuan(trade.getTotal()) + " 元</p>"
+                + "<form method=\"post\" action=\"" + baseUrl + "/simulator/pay?out_trade_no=" + trade.getOutTradeNo()
+                + "\"><button type=\"submit\">确认付款</button></form>"
+                + "</body></html>";
+        GatewaySimulator.send(exchange, 200, "text/html;charset=utf-8", html);
+    }
+
+    /**
+     * 交易从等待付款变为支付成功，并发送异步通知
+     */
+    boolean pay(String outTradeNo) {
+        SimulatedTrade trade = trades.get(outTradeNo);
+        if (trade == null) {
+            return false;
+        }
+        Map<String, String> params = new HashMap<>();
+        synchronized (trade) {
+            if (!AliTradeState.NOTPAY.getStatus().equals(trade.getState())) {
+                return false;
+            }
+            trade.setState(AliTradeState.SUCCESS.getStatus());
+            trade.setSuccessTime(GatewaySimulator.now());
+            params.put("gmt_create", trade.getCreateTime().format(TIME));
+            params.put("gmt_payment", trade.getSuccessTime().format(TIME));
+        }
+        if (trade.getNotifyUrl() == null || trade.getNotifyUrl().isEmpty()) {
+            return true;
+        }
+        String amount = GatewaySimulator.yuan(trade.getTotal());
+        params.put("notify_time", GatewaySimulator.now().format(TIME));
+        params.put("notify_type", "trade_status_sync");
+        params.put("notify_id", UUID.randomUUID().toString().replace("-", ""));
+        params.put("app_id", appId);
+        params.put("charset", CHARSET);
+        params.put("version", "1.0");
+        params.put("trade_no", trade.getTradeNo());
+        params.put("out_trade_no", trade.getOutTradeNo());
+        params.put("trade_status", AliTradeState.SUCCESS.getStatus());
+        params.put("total_amount", amount);
+        params.put("receipt_amount", amount);
+        params.put("buyer_pay_amount", amount);
+        params.put("invoice_amount", amount);
+        params.put("seller_id", sellerId);
+        params.put("buyer_id", BUYER_ID);
+        if (trade.getSubject() != null) {
+            params.put("subject", trade.getSubject());
+        }
+        // 通知的签名不含 sign 和 sign_type，与商户端 rsaCheckV1 对应
+        params.put("sign", sign(AlipaySignature.getSignCheckContentV1(new HashMap<>(params))));
+        params.put("sign_type", AlipayConstants.SIGN_TYPE_RSA2);
+
+        StringBuilder body = new StringBuilder();
+        try {
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                if (body.length() > 0) {
+                    body.append('&');
+                }
+                body.append(param.getKey()).append('=').append(URLEncoder.encode(param.getValue(), CHARSET));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        notifySender.send(trade.getNotifyUrl(), "application/x-www-form-urlencoded;charset=utf-8", body.toString(),
+                Collections::emptyMap, (status, response) -> status == 200 && "success".equals(response.trim()));
+        return true;
+    }
+
+    private Map<String, Object> query(Map<String, String> biz) {
+        SimulatedTrade trade = trades.get(String.valueOf(biz.get("out_trade_no")));
+        if (trade == null) {
+            return error("40004", "Business Failed", "ACQ.TRADE_NOT_EXIST", "交易不存在");
+        }
+        Map<String, Object> result = success();
+        result.put("trade_no", trade.getTradeNo());
+        result.put("out_trade_no", trade.getOutTradeNo());
+        result.put("buyer_logon_id", BUYER_LOGON_ID);
+        result.put("total_amount", GatewaySimulator.yuan(trade.getTotal()));
+        synchronized (trade) {
+            result.put("trade_status", trade.getState());
+            if (trade.getSuccessTime() != null) {
+                result.put("buyer_pay_amount", GatewaySimulator.yuan(trade.getTotal()));
+                result.put("send_pay_date", trade.getSuccessTime().format(TIME));
+                result.put("buyer_user_id", BUYER_ID);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Object> close(Map<String, String> biz) {
+        SimulatedTrade trade = trades.get(String.valueOf(biz.get("out_trade_no")));
+        if (trade == null) {
+            return error("40004", "Business Failed", "ACQ.TRADE_NOT_EXIST", "交易不存在");
+        }
+        synchronized (trade) {
+            if (!AliTradeState.NOTPAY.getStatus().equals(trade.getState())) {
+                return error("40004", "Business Failed", "ACQ.TRADE_STATUS_ERROR", "交易状态不合法");
+            }
+            trade.setState(AliTradeState.CLOSED.getStatus());
+        }
+        Map<String, Object> result = success();
+        result.put("trade_no", trade.getTradeNo());
+        result.put("out_trade_no", trade.getOutTradeNo());
+        return result;
+    }
+
+    /**
+     * 退款同步完成；全额退款后交易关闭。同一个退款请求号重复退款返回成功，资金不再变动
+     */
+    private Map<String, Object> refund(Map<String, String> biz) {
+        SimulatedTrade trade = trades.get(String.valueOf(biz.get("out_trade_no")));
+        if (trade == null) {
+            return error("40004", "Business Failed", "ACQ.TRADE_NOT_EXIST", "交易不存在");
+        }
+        String outRequestNo = biz.get("out_request_no");
+        String key = outRequestNo == null || outRequestNo.isEmpty() ? trade.getOutTradeNo() : outRequestNo;
+        Map<String, Object> result = success();
+        synchronized (trade) {
+            if (refunds.containsKey(key)) {
+                result.put("fund_change", "N");
+            } else {
+                if (!AliTradeState.SUCCESS.getStatus().equals(trade.getState())) {
+                    return error("40004", "Business Failed", "ACQ.TRADE_STATUS_ERROR", "交易状态不合法");
+                }
+                int amount = new BigDecimal(String.valueOf(biz.get("refund_amount"))).movePointRight(2).intValueExact();
+                if (amount <= 0 || amount > trade.getTotal() - trade.getRefunded()) {
+                    return error("40004", "Business Failed", "ACQ.REFUND_AMT_NOT_EQUAL_TOTAL", "退款金额超限");
+                }
+                trade.setRefunded(trade.getRefunded() + amount);
+                if (trade.getRefunded() == trade.getTotal()) {
+                    trade.setState(AliTradeState.CLOSED.getStatus());
+                }
+                SimulatedRefund refund = new SimulatedRefund();
+                refund.setOutRefundNo(outRequestNo == null ? "" : outRequestNo);
+                refund.setOutTradeNo(trade.getOutTradeNo());
+                refund.setTradeNo(trade.getTradeNo());
+                refund.setRefund(amount);
+                refund.setTotal(trade.getTotal());
+                refund.setStatus(AliTradeState.REFUND_SUCCESS.getStatus());
+                refund.setCreateTime(GatewaySimulator.now());
+                refund.setSuccessTime(refund.getCreateTime());
+                refunds.put(key, refund);
+                result.put("fund_change", "Y");
+            }
+            result.put("refund_fee", GatewaySimulator.yuan(trade.getRefunded()));
+        }
+        result.put("trade_no", trade.getTradeNo());
+        result.put("out_trade_no", trade.getOutTradeNo());
+        result.put("buyer_logon_id", BUYER_LOGON_ID);
+        result.put("buyer_user_id", BUYER_ID);
+        result.put("gmt_refund_pay", GatewaySimulator.now().format(TIME));
+        return result;
+    }
+
+    /**
+     * 退款查询：退款不存在时与支付宝一致，返回成功但不带退款状态
+     */
+    private Map<String, Object> queryRefund(Map<String, String> biz) {
+        String outTradeNo = biz.get("out_trade_no");
+        String outRequestNo = biz.get("out_request_no");
+        Map<String, Object> result = success();
+        result.put("out_trade_no", outTradeNo);
+        result.put("out_request_no", outRequestNo);
+        SimulatedRefund refund = outRequestNo == null ? null : refunds.get(outRequestNo);
+        if (refund != null && refund.getOutTradeNo().equals(outTradeNo)) {
+            result.put("trade_no", refund.getTradeNo());
+            result.put("total_amount", GatewaySimulator.yuan(refund.getTotal()));
+            result.put("refund_amount", GatewaySimulator.yuan(refund.getRefund()));
+            result.put("refund_status", refund.getStatus());
+            result.put("gmt_refund_pay", refund.getSuccessTime().format(TIME));
+        }
+        return result;
+    }
+
+    private Map<String, Object> billDownloadUrl(Map<String, String> biz) throws IOException {
+        LocalDate billDate;
+        try {
+            billDate = LocalDate.parse(String.valueOf(biz.get("bill_date")));
+        } catch (DateTimeParseException e) {
+            return error("40004", "Business Failed", "isp.bill_not_exist", "账单日期格式不正确（模拟器只支持日账单）");
+        }
+        String token = UUID.randomUUID().toString().replace("-", "");
+        bills.put(token, tradeBill(billDate));
+        Map<String, Object> result = success();
+        result.put("bill_download_url", baseUrl + "/alipay/billdownload?token=" + token);
+        return result;
+    }
+
+    void handleBillDownload(HttpExchange exchange) throws IOException {
+        String token = GatewaySimulator.parseParams(exchange.getRequestURI().getRawQuery()).get("token");
+        byte[] bill = token == null ? null : bills.remove(token);
+        if (bill == null) {
+            GatewaySimulator.send(exchange, 404, "text/plain;charset=utf-8", "账单不存在或已过期");
+        } else {
+            GatewaySimulator.send(exchange, 200, "application/oct-stream", bill);
+        }
+    }
+
+    /**
+     * 交易账单：zip 中有业务明细和业务明细(汇总)两个GBK编码的csv，格式与 AliBillParser 解析的一致
+     */
+    private byte[] tradeBill(LocalDate billDate) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        int payCount = 0;
+        long payTotal = 0;
+        int refundCount = 0;
+        long refundTotal = 0;
+        for (SimulatedTrade trade : trades.values()) {
+            synchronized (trade) {
+                if (trade.getSuccessTime() == null || !billDate.equals(trade.getSuccessTime().toLocalDate())) {
+                    continue;
+                }
+                String amount = GatewaySimulator.yuan(trade.getTotal());
+                rows.add(detailRow(trade, "交易", trade.getSuccessTime(), amount, ""));
+                payCount++;
+                payTotal += trade.getTotal();
+            }
+        }
+        for (SimulatedRefund refund : refunds.values()) {
+            if (!billDate.equals(refund.getSuccessTime().toLocalDate())) {
+                continue;
+            }
+            SimulatedTrade trade = trades.get(refund.getOutTradeNo());
+            rows.add(detailRow(trade, "退款", refund.getSuccessTime(), "-" + GatewaySimulator.yuan(refund.getRefund()),
+                    refund.getOutRefundNo()));
+            refundCount++;
+            refundTotal += refund.getRefund();
+        }
+        rows.sort((a, b) -> a[5].compareTo(b[5]));
+
+        String date = billDate.format(NO_DATE);
+        StringBuilder detail = new StringBuilder("#支付宝业务明细查询\n")
+                .append("#账号：[").append(sellerId).append("0156]\n")
+                .append("#起始日期：[").append(billDate.format(DateTimeFormatter.ofPattern("yyyy年MM月dd日")))
+                .append(" 00:00:00]   终止日期：[").append(billDate.plusDays(1).format(DateTimeFormatter.ofPattern("yyyy年MM月dd日")))
+                .append(" 00:00:00]\n")
+                .append("#-----------------------------------------业务明细列表----------------------------------------\n")
+                .append("支付宝交易号,商户订单号,业务类型,商品名称,创建时间,完成时间,门店编号,门店名称,操作员,终端号,对方账户,订单金额（元）,")
+                .append("商家实收（元）,支付宝红包（元）,集分宝（元）,支付宝优惠（元）,商家优惠（元）,券核销金额（元）,券名称,")
+                .append("商家红包消费金额（元）,卡消费金额（元）,退款批次号/请求号,服务费（元）,分润（元）,备注\n");
+        for (String[] row : rows) {
+            detail.append(String.join(",", row)).append('\n');
+        }
+        detail.append("#-----------------------------------------业务明细列表结束------------------------------------\n")
+                .append("#交易合计：").append(payCount).append("笔，商家实收共").append(GatewaySimulator.yuan(payTotal))
+                .append("元，商家优惠共0.00元\n")
+                .append("#退款合计：").append(refundCount).append("笔，商家实收退款共-").append(GatewaySimulator.yuan(refundTotal))
+                .append("元，商家优惠退款共0.00元\n")
+                .append("#导出时间：[").append(GatewaySimulator.now().format(TIME)).append("]\n");
+
+        StringBuilder summary = new StringBuilder("#支付宝业务汇总查询\n")
+                .append("业务类型,交易笔数,商家实收（元）\n")
+                .append("交易,").append(payCount).append(',').append(GatewaySimulator.yuan(payTotal)).append('\n')
+                .append("退款,").append(refundCount).append(",-").append(GatewaySimulator.yuan(refundTotal)).append('\n');
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes, GBK)) {
+            zip.putNextEntry(new ZipEntry(sellerId + "0156_" + date + "_业务明细.csv"));
+            zip.write(detail.toString().getBytes(GBK));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry(sellerId + "0156_" + date + "_业务明细(汇总).csv"));
+            zip.write(summary.toString().getBytes(GBK));
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 明细行，字段中的逗号替换成全角，避免错列
+     */
+    private static String[] detailRow(SimulatedTrade trade, String type, ZonedDateTime finishTime, String amount,
+                                      String refundRequestNo) {
+        String subject = trade.getSubject() == null ? "" : trade.getSubject().replace(',', '，');
+        return new String[]{trade.getTradeNo() + "\t", trade.getOutTradeNo() + "\t", type + "\t", subject + "\t",
+                trade.getCreateTime().format(TIME), finishTime.format(TIME), "", "", "", "", BUYER_LOGON_ID, amount, amount,
+                "0.00", "0.00", "0.00", "0.00", "0.00", "", "0.00", "0.00", refundRequestNo + "\t", "0.00", "0.00", ""};
+    }
+
+    /**
+     * 响应原文用模拟的支付宝私钥签名，sign 与 xxx_response 同级
+     */
+    private void respond(HttpExchange exchange, String root, Map<String, Object> result) throws IOException {
+        String content = JsonUtils.toJson(result);
+        String body = "{\"" + root + "\":" + content + ",\"sign\":\"" + sign(content) + "\"}";
+        GatewaySimulator.send(exchange, 200, "text/html;charset=utf-8", body);
+    }
+
+    private String sign(String content) {
+        try {
+            return AlipaySignature.rsaSign(content, config.getAlipayPrivateKey(), CHARSET, AlipayConstants.SIGN_TYPE_RSA2);
+        } catch (AlipayApiException e) {
+            throw new IllegalStateException("模拟支付宝签名失败", e);
+        }
+    }
+
+    private static Map<String, Object> success() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("code", "10000");
+        result.put("msg", "Success");
+        return result;
+    }
+
+    private static Map<String, Object> error(String code, String msg, String subCode, String subMsg) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("code", code);
+        result.put("msg", msg);
+        result.put("sub_code", subCode);
+        result.put("sub_msg", subMsg);
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+package com.py.paymentbackend.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟支付平台的响应延迟和失败
+ * 延迟为 latency + [0, jitter) 的随机值；失败按比例随机发生，返回的是各平台的系统繁忙错误
+ */
+class FaultInjector {
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final double errorRate;
+
+    FaultInjector(long latencyMillis, long jitterMillis, double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+    }
+
+    void delay() throws InterruptedException {
+        long millis = latencyMillis;
+        if (jitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(jitterMillis);
+        }
+        if (millis > 0) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+
+    /**
+     * 本次请求是否要返回失败
+     */
+    boolean shouldFail() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+}
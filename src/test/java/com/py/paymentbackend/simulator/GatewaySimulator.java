@@ -0,0 +1,252 @@
+package com.py.paymentbackend.simulator;
+
+import com.py.paymentbackend.config.SimulatorConfig;
+import com.py.paymentbackend.config.WxPayConfig;
+import com.py.paymentbackend.util.JsonUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内嵌的支付平台模拟器，离线做端到端测试和压测时代替微信支付、支付宝
+ *   微信支付 APIv3：native下单、查单、关单、退款、查退款、申请/下载账单、平台证书
+ *   微信支付 APIv2：统一下单
+ *   支付宝网关：电脑网站支付、查单、关单、退款、查退款、账单下载地址
+ * 响应和回调通知都用测试密钥签名，商户端按正常流程验签；下单后按配置自动支付并回调商户的通知地址
+ * 响应延迟、失败比例、重复通知次数都可以配置，见 {@link SimulatorConfig}
+ *
+ * 使用 JDK 自带的 HttpServer，不依赖额外的组件，也不占用应用的 Web 容器
+ */
+@Slf4j
+public class GatewaySimulator {
+
+    static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+
+    private static final char[] ALPHANUMERIC = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final HttpServer server;
+
+    private final ExecutorService serverExecutor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final FaultInjector faults;
+
+    private final NotifySender notifySender;
+
+    private final WxPaySimulator wxPay;
+
+    private final AlipaySimulator alipay;
+
+    private final String baseUrl;
+
+    /**
+     * 创建后立即绑定端口，调用 start 开始处理请求
+     * @param alipayAppId 商户的支付宝应用id，回调通知中带回
+     * @param alipaySellerId 商户的支付宝PID，回调通知中带回
+     * @param merchantPrivateKey 商户的支付宝应用私钥，用来推出公钥校验商户请求的签名
+     */
+    public GatewaySimulator(SimulatorConfig config, WxPayConfig wxPayConfig,
+                            String alipayAppId, String alipaySellerId, String merchantPrivateKey) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(config.getHost(), config.getPort()), 0);
+        this.baseUrl = "http://" + config.getHost() + ":" + server.getAddress().getPort();
+        this.serverExecutor = Executors.newFixedThreadPool(config.getThreads(),
+                new CustomizableThreadFactory("gateway-simulator-"));
+        this.scheduler = Executors.newScheduledThreadPool(config.getNotifyThreads(),
+                new CustomizableThreadFactory("gateway-simulator-notify-"));
+        this.faults = new FaultInjector(config.getLatencyMillis(), config.getLatencyJitterMillis(), config.getErrorRate());
+        this.notifySender = new NotifySender(scheduler, config.getDuplicateNotifies(),
+                config.getNotifyRetries(), config.getNotifyRetryIntervalMillis());
+        this.wxPay = new WxPaySimulator(config, wxPayConfig, faults, notifySender, scheduler, baseUrl);
+        this.alipay = new AlipaySimulator(config, alipayAppId, alipaySellerId, merchantPrivateKey,
+                faults, notifySender, scheduler, baseUrl);
+
+        server.createContext("/v3/", exchange -> handle(exchange, wxPay::handleV3));
+        server.createContext("/v3/billdownload/", exchange -> handle(exchange, wxPay::handleBillDownload));
+        server.createContext("/pay/unifiedorder", exchange -> handle(exchange, wxPay::handleV2));
+        server.createContext("/gateway.do", exchange -> handle(exchange, alipay::handleGateway));
+        server.createContext("/alipay/billdownload", exchange -> handle(exchange, alipay::handleBillDownload));
+        server.createContext("/simulator/", this::handleControl);
+        server.setExecutor(serverExecutor);
+    }
+
+    public void start() {
+        server.start();
+        log.info("支付平台模拟器已启动：{}", baseUrl);
+    }
+
+    public void stop() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        scheduler.shutdownNow();
+        log.info("支付平台模拟器已停止");
+    }
+
+    /**
+     * 模拟器地址，如 http://127.0.0.1:18090，端口配置为0时为实际绑定的端口
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * 模拟的微信支付平台证书，商户端在模拟器环境下用它验证响应和通知的签名
+     */
+    public static X509Certificate platformCertificate() throws IOException {
+        return WxPaySimulator.loadPlatformCertificate();
+    }
+
+    /**
+     * 模拟用户完成支付，没有开启自动支付时使用
+     * @return 订单存在并且是从未支付变为支付成功时返回true
+     */
+    public boolean pay(String outTradeNo) {
+        return wxPay.pay(outTradeNo) || alipay.pay(outTradeNo);
+    }
+
+    /**
+     * 回调通知的统计：商户有应答的、正确应答的、重试用完被放弃的请求数
+     */
+    public Map<String, Long> getNotifyStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("delivered", notifySender.getDelivered());
+        stats.put("acknowledged", notifySender.getAcknowledged());
+        stats.put("abandoned", notifySender.getAbandoned());
+        return stats;
+    }
+
+    /**
+     * 模拟响应延迟，处理异常时返回500，最后关闭请求
+     */
+    private void handle(HttpExchange exchange, HttpHandler handler) {
+        try {
+            faults.delay();
+            handler.handle(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("模拟器处理请求失败：{}", exchange.getRequestURI(), e);
+            try {
+                send(exchange, 500, "text/plain;charset=utf-8", e.toString());
+            } catch (IOException ignored) {
+                // 响应头可能已经发出，只能关闭连接
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * /simulator/pay?out_trade_no= 模拟用户支付；/simulator/stats 回调通知统计
+     */
+    private void handleControl(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if ("/simulator/pay".equals(path)) {
+                String outTradeNo = parseParams(exchange.getRequestURI().getRawQuery()).get("out_trade_no");
+                boolean paid = outTradeNo != null && pay(outTradeNo);
+                send(exchange, paid ? 200 : 404, "text/plain;charset=utf-8", paid ? "SUCCESS" : "NOT_FOUND");
+            } else if ("/simulator/stats".equals(path)) {
+                send(exchange, 200, "application/json;charset=utf-8", JsonUtils.toJson(getNotifyStats()));
+            } else {
+                send(exchange, 404, "text/plain;charset=utf-8", "NOT_FOUND");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static byte[] readBody(HttpExchange exchange) throws IOException {
+        return StreamUtils.copyToByteArray(exchange.getRequestBody());
+    }
+
+    /**
+     * 解析 a=1&b=2 格式的查询串或表单，按 utf-8 解码
+     */
+    static Map<String, String> parseParams(String encoded) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return params;
+        }
+        try {
+            for (String pair : encoded.split("&")) {
+                int index = pair.indexOf('=');
+                if (index > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                            URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return params;
+    }
+
+    static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static ZonedDateTime now() {
+        return ZonedDateTime.now(ZONE).truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    static String randomString(int length) {
+        char[] chars = new char[length];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 分转元，保留两位小数
+     */
+    static String yuan(long fen) {
+        return BigDecimal.valueOf(fen, 2).toPlainString();
+    }
+
+    static void schedule(ScheduledExecutorService scheduler, Runnable task, long delayMillis) {
+        scheduler.schedule(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("模拟器定时任务执行失败", e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,376 @@
+package com.py.paymentbackend.simulator;
+
+import com.alipay.api.AlipayClient;
+import com.alipay.api.AlipayConfig;
+import com.alipay.api.AlipayConstants;
+import com.alipay.api.DefaultAlipayClient;
+import com.alipay.api.internal.util.AlipaySignature;
+import com.alipay.api.request.AlipayDataDataserviceBillDownloadurlQueryRequest;
+import com.alipay.api.request.AlipayTradeFastpayRefundQueryRequest;
+import com.alipay.api.request.AlipayTradePagePayRequest;
+import com.alipay.api.request.AlipayTradeQueryRequest;
+import com.alipay.api.request.AlipayTradeRefundRequest;
+import com.alipay.api.response.AlipayDataDataserviceBillDownloadurlQueryResponse;
+import com.alipay.api.response.AlipayTradeFastpayRefundQueryResponse;
+import com.alipay.api.response.AlipayTradeQueryResponse;
+import com.alipay.api.response.AlipayTradeRefundResponse;
+import com.py.paymentbackend.config.SimulatorConfig;
+import com.py.paymentbackend.config.WxPayConfig;
+import com.py.paymentbackend.reconcile.AliBillParser;
+import com.py.paymentbackend.reconcile.BillRecord;
+import com.py.paymentbackend.reconcile.WxBillParser;
+import com.py.paymentbackend.util.AesGcmDecryptor;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.util.WechatPay2ValidatorForRequest;
+import com.py.paymentbackend.vo.wxpay.WxBillResponse;
+import com.py.paymentbackend.vo.wxpay.WxNativePayRequest;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
+import com.py.paymentbackend.vo.wxpay.WxRefundRequest;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import com.sun.net.httpserver.HttpServer;
+import com.wechat.pay.contrib.apache.httpclient.auth.CertificatesVerifier;
+import com.wechat.pay.contrib.apache.httpclient.auth.Verifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模拟器和商户端的验签、解密、账单解析按真实流程对接：
+ * 微信的响应和通知用 CertificatesVerifier 验签，支付宝用 SDK 的客户端调用并验签
+ * 用一个 JDK HttpServer 充当商户的通知地址
+ */
+class GatewaySimulatorTest {
+
+    private static final String API_V3_KEY = "UDuLFDcmy5Eb6o0nTNZdu6ek4DDh4K8B";
+
+    private static final String APP_ID = "9021000125676341";
+
+    private static final String SELLER_ID = "2088721008944896";
+
+    /**
+     * 商户收到的通知
+     */
+    private static class Received {
+        final Map<String, List<String>> headers;
+        final String body;
+
+        Received(Map<String, List<String>> headers, String body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            List<String> values = headers.get(name);
+            return values == null ? null : values.get(0);
+        }
+    }
+
+    private final List<Received> wxNotifies = new CopyOnWriteArrayList<>();
+
+    private final List<Received> aliNotifies = new CopyOnWriteArrayList<>();
+
+    private HttpServer merchant;
+
+    private String notifyBase;
+
+    private GatewaySimulator simulator;
+
+    private String merchantPrivateKey;
+
+    private String alipayPublicKey;
+
+    private Verifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        merchant = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        merchant.createContext("/wx/notify", exchange -> {
+            wxNotifies.add(new Received(exchange.getRequestHeaders(),
+                    StreamUtils.copyToString(exchange.getRequestBody(), StandardCharsets.UTF_8)));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        merchant.createContext("/ali/notify", exchange -> {
+            aliNotifies.add(new Received(exchange.getRequestHeaders(),
+                    StreamUtils.copyToString(exchange.getRequestBody(), StandardCharsets.UTF_8)));
+            byte[] ack = "success".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, ack.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(ack);
+            }
+            exchange.close();
+        });
+        merchant.start();
+        notifyBase = "http://127.0.0.1:" + merchant.getAddress().getPort();
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair merchantKeys = generator.generateKeyPair();
+        KeyPair alipayKeys = generator.generateKeyPair();
+        merchantPrivateKey = Base64.getEncoder().encodeToString(merchantKeys.getPrivate().getEncoded());
+        alipayPublicKey = Base64.getEncoder().encodeToString(alipayKeys.getPublic().getEncoded());
+
+        SimulatorConfig config = new SimulatorConfig();
+        config.setPort(0);
+        config.setLatencyMillis(0);
+        config.setLatencyJitterMillis(0);
+        config.setPayDelayMillis(50);
+        config.setRefundDelayMillis(50);
+        config.setDuplicateNotifies(2);
+        config.setNotifyRetryIntervalMillis(50);
+        config.setAlipayPrivateKey(Base64.getEncoder().encodeToString(alipayKeys.getPrivate().getEncoded()));
+        start(config);
+
+        verifier = new CertificatesVerifier(Collections.singletonList(GatewaySimulator.platformCertificate()));
+    }
+
+    private void start(SimulatorConfig config) throws IOException {
+        if (simulator != null) {
+            simulator.stop();
+        }
+        WxPayConfig wxPayConfig = new WxPayConfig();
+        wxPayConfig.setMchId("1558950191");
+        wxPayConfig.setAppid("wx74862e0dfcf69954");
+        wxPayConfig.setApiV3Key(API_V3_KEY);
+        wxPayConfig.setPartnerKey("T6m9iK73b0kn9g5v426MKfHQH7X8rKwb");
+        simulator = new GatewaySimulator(config, wxPayConfig, APP_ID, SELLER_ID, merchantPrivateKey);
+        simulator.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.stop();
+        merchant.stop(0);
+    }
+
+    @Test
+    void wxNativePayIsSignedAndNotifiedWithDuplicates() throws Exception {
+        WxNativePayRequest request = new WxNativePayRequest();
+        request.setOutTradeNo("ORDER_1");
+        request.setDescription("Java课程");
+        request.setNotifyUrl(notifyBase + "/wx/notify");
+        WxNativePayRequest.Amount amount = new WxNativePayRequest.Amount();
+        amount.setTotal(1);
+        request.setAmount(amount);
+
+        HttpURLConnection connection = request("POST", simulator.getBaseUrl() + "/v3/pay/transactions/native",
+                JsonUtils.toJson(request));
+        assertEquals(200, connection.getResponseCode());
+        String body = StreamUtils.copyToString(connection.getInputStream(), StandardCharsets.UTF_8);
+        String message = connection.getHeaderField("Wechatpay-Timestamp") + "\n"
+                + connection.getHeaderField("Wechatpay-Nonce") + "\n" + body + "\n";
+        assertTrue(verifier.verify(connection.getHeaderField("Wechatpay-Serial"),
+                message.getBytes(StandardCharsets.UTF_8), connection.getHeaderField("Wechatpay-Signature")));
+        assertTrue(body.contains("weixin://wxpay/bizpayurl"));
+
+        // 一份通知加两份重复通知
+        await(() -> wxNotifies.size() == 3);
+        AesGcmDecryptor decryptor = new AesGcmDecryptor(API_V3_KEY.getBytes(StandardCharsets.UTF_8), null);
+        for (Received received : wxNotifies) {
+            WxNotify notify = JsonUtils.fromJson(received.body, WxNotify.class);
+            MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+            received.headers.forEach((name, values) -> servletRequest.addHeader(name, values.get(0)));
+            assertTrue(new WechatPay2ValidatorForRequest(verifier, received.body, notify.getId()).validate(servletRequest));
+            assertEquals(JsonUtils.fromJson(wxNotifies.get(0).body, WxNotify.class).getId(), notify.getId());
+
+            WxNotify.Resource resource = notify.getResource();
+            WxTransaction transaction = JsonUtils.fromJson(decryptor.decryptToString(
+                    resource.getAssociatedData(), resource.getNonce(), resource.getCiphertext()), WxTransaction.class);
+            assertEquals("ORDER_1", transaction.getOutTradeNo());
+            assertEquals("SUCCESS", transaction.getTradeState());
+            assertEquals(1, transaction.getAmount().getTotal());
+        }
+        await(() -> simulator.getNotifyStats().get("acknowledged") == 3);
+
+        WxTransaction queried = JsonUtils.fromJson(read(request("GET",
+                simulator.getBaseUrl() + "/v3/pay/transactions/out-trade-no/ORDER_1?mchid=1558950191", null)),
+                WxTransaction.class);
+        assertEquals("SUCCESS", queried.getTradeState());
+    }
+
+    @Test
+    void wxRefundShowsUpInTradeBill() throws Exception {
+        WxNativePayRequest request = new WxNativePayRequest();
+        request.setOutTradeNo("ORDER_2");
+        request.setDescription("大数据课程,含逗号");
+        WxNativePayRequest.Amount amount = new WxNativePayRequest.Amount();
+        amount.setTotal(200);
+        request.setAmount(amount);
+        read(request("POST", simulator.getBaseUrl() + "/v3/pay/transactions/native", JsonUtils.toJson(request)));
+        await(() -> "SUCCESS".equals(queryWxOrder("ORDER_2").getTradeState()));
+
+        WxRefundRequest refundRequest = new WxRefundRequest();
+        refundRequest.setOutTradeNo("ORDER_2");
+        refundRequest.setOutRefundNo("REFUND_2");
+        WxRefundRequest.Amount refundAmount = new WxRefundRequest.Amount();
+        refundAmount.setRefund(150);
+        refundAmount.setTotal(200);
+        refundRequest.setAmount(refundAmount);
+        WxRefund refund = JsonUtils.fromJson(read(request("POST",
+                simulator.getBaseUrl() + "/v3/refund/domestic/refunds", JsonUtils.toJson(refundRequest))), WxRefund.class);
+        assertEquals("PROCESSING", refund.getStatus());
+        await(() -> "SUCCESS".equals(JsonUtils.fromJson(read(request("GET",
+                simulator.getBaseUrl() + "/v3/refund/domestic/refunds/REFUND_2", null)), WxRefund.class).getStatus()));
+
+        WxBillResponse bill = JsonUtils.fromJson(read(request("GET", simulator.getBaseUrl()
+                + "/v3/bill/tradebill?bill_date=" + LocalDate.now(GatewaySimulator.ZONE) + "&tar_type=GZIP", null)),
+                WxBillResponse.class);
+        byte[] content;
+        try (InputStream in = new GZIPInputStream(request("GET", bill.getDownloadUrl(), null).getInputStream())) {
+            content = StreamUtils.copyToByteArray(in);
+        }
+        String hash = String.format("%040x", new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(content)));
+        assertEquals(bill.getHashValue(), hash);
+
+        List<BillRecord> records = new ArrayList<>();
+        WxBillParser.parse(new ByteArrayInputStream(content), records::add);
+        assertEquals(2, records.size());
+        assertTrue(records.contains(BillRecord.pay("ORDER_2", 200)));
+        assertTrue(records.contains(BillRecord.refund("REFUND_2", 150)));
+    }
+
+    @Test
+    void alipayClientVerifiesSimulatorResponses() throws Exception {
+        AlipayClient client = alipayClient();
+
+        AlipayTradeQueryRequest query = new AlipayTradeQueryRequest();
+        query.setBizContent("{\"out_trade_no\":\"ORDER_3\"}");
+        AlipayTradeQueryResponse notExist = client.execute(query);
+        assertFalse(notExist.isSuccess());
+        assertEquals("ACQ.TRADE_NOT_EXIST", notExist.getSubCode());
+
+        // 浏览器打开支付页面后交易才创建
+        AlipayTradePagePayRequest pagePay = new AlipayTradePagePayRequest();
+        pagePay.setNotifyUrl(notifyBase + "/ali/notify");
+        pagePay.setBizContent("{\"out_trade_no\":\"ORDER_3\",\"total_amount\":0.02,\"subject\":\"Java课程\","
+                + "\"product_code\":\"FAST_INSTANT_TRADE_PAY\"}");
+        String payUrl = client.pageExecute(pagePay, "GET").getBody();
+        assertEquals(200, request("GET", payUrl, null).getResponseCode());
+
+        await(() -> aliNotifies.size() == 3);
+        Map<String, String> params = GatewaySimulator.parseParams(aliNotifies.get(0).body);
+        assertTrue(AlipaySignature.rsaCheckV1(params, alipayPublicKey, AlipayConstants.CHARSET_UTF8, AlipayConstants.SIGN_TYPE_RSA2));
+        assertEquals("TRADE_SUCCESS", params.get("trade_status"));
+        assertEquals("0.02", params.get("total_amount"));
+        assertEquals(APP_ID, params.get("app_id"));
+        assertEquals(SELLER_ID, params.get("seller_id"));
+        assertEquals("TRADE_SUCCESS", client.execute(query).getTradeStatus());
+
+        AlipayTradeRefundRequest refundRequest = new AlipayTradeRefundRequest();
+        refundRequest.setBizContent("{\"out_trade_no\":\"ORDER_3\",\"refund_amount\":\"0.02\"}");
+        AlipayTradeRefundResponse refund = client.execute(refundRequest);
+        assertTrue(refund.isSuccess());
+        assertEquals("Y", refund.getFundChange());
+
+        // 退款时没有传退款请求号，以商户订单号查询
+        AlipayTradeFastpayRefundQueryRequest refundQuery = new AlipayTradeFastpayRefundQueryRequest();
+        refundQuery.setBizContent("{\"out_trade_no\":\"ORDER_3\",\"out_request_no\":\"ORDER_3\"}");
+        AlipayTradeFastpayRefundQueryResponse refunded = client.execute(refundQuery);
+        assertEquals("REFUND_SUCCESS", refunded.getRefundStatus());
+        assertEquals("TRADE_CLOSED", client.execute(query).getTradeStatus());
+
+        AlipayDataDataserviceBillDownloadurlQueryRequest billRequest = new AlipayDataDataserviceBillDownloadurlQueryRequest();
+        billRequest.setBizContent("{\"bill_type\":\"trade\",\"bill_date\":\"" + LocalDate.now(GatewaySimulator.ZONE) + "\"}");
+        AlipayDataDataserviceBillDownloadurlQueryResponse bill = client.execute(billRequest);
+        List<BillRecord> records = new ArrayList<>();
+        try (InputStream in = new URL(bill.getBillDownloadUrl()).openStream()) {
+            AliBillParser.parse(in, records::add);
+        }
+        assertEquals(2, records.size());
+        assertTrue(records.contains(BillRecord.pay("ORDER_3", 2)));
+        assertTrue(records.contains(BillRecord.refund("ORDER_3", 2)));
+    }
+
+    @Test
+    void injectsErrors() throws Exception {
+        SimulatorConfig config = new SimulatorConfig();
+        config.setPort(0);
+        config.setLatencyMillis(0);
+        config.setLatencyJitterMillis(0);
+        config.setErrorRate(1);
+        config.setAlipayPrivateKey(Base64.getEncoder().encodeToString(
+                KeyPairGenerator.getInstance("RSA").generateKeyPair().getPrivate().getEncoded()));
+        start(config);
+
+        assertEquals(500, request("GET", simulator.getBaseUrl()
+                + "/v3/pay/transactions/out-trade-no/ORDER_4?mchid=1558950191", null).getResponseCode());
+    }
+
+    private AlipayClient alipayClient() throws Exception {
+        AlipayConfig alipayConfig = new AlipayConfig();
+        alipayConfig.setServerUrl(simulator.getBaseUrl() + "/gateway.do");
+        alipayConfig.setAppId(APP_ID);
+        alipayConfig.setPrivateKey(merchantPrivateKey);
+        alipayConfig.setFormat(AlipayConstants.FORMAT_JSON);
+        alipayConfig.setCharset(AlipayConstants.CHARSET_UTF8);
+        alipayConfig.setAlipayPublicKey(alipayPublicKey);
+        alipayConfig.setSignType(AlipayConstants.SIGN_TYPE_RSA2);
+        return new DefaultAlipayClient(alipayConfig);
+    }
+
+    private WxTransaction queryWxOrder(String outTradeNo) {
+        try {
+            return JsonUtils.fromJson(read(request("GET", simulator.getBaseUrl()
+                    + "/v3/pay/transactions/out-trade-no/" + outTradeNo + "?mchid=1558950191", null)), WxTransaction.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static HttpURLConnection request(String method, String url, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (json != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+}
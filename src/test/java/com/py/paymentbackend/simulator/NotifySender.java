@@ -0,0 +1,126 @@
+package com.py.paymentbackend.simulator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 模拟支付平台向商户发送异步通知
+ *   1.每条通知同时发出 1 + duplicates 份内容完全相同的请求，模拟商户应答丢失后平台的重复通知，
+ *     几份请求并发到达，用来检验商户端的幂等处理
+ *   2.每一份在商户没有正确应答时按间隔重试，第n次重试等待 n * retryInterval，最多重试 retries 次
+ */
+@Slf4j
+class NotifySender {
+
+    /**
+     * 判断商户的应答是否表示已收到
+     */
+    @FunctionalInterface
+    interface Acknowledgement {
+        boolean accepted(int status, String body);
+    }
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int duplicates;
+
+    private final int retries;
+
+    private final long retryIntervalMillis;
+
+    /**
+     * 商户有应答的请求数（不论应答是否正确）
+     */
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * 商户正确应答的请求数
+     */
+    private final AtomicLong acknowledged = new AtomicLong();
+
+    /**
+     * 重试次数用完仍未被正确应答的请求数
+     */
+    private final AtomicLong abandoned = new AtomicLong();
+
+    NotifySender(ScheduledExecutorService scheduler, int duplicates, int retries, long retryIntervalMillis) {
+        this.scheduler = scheduler;
+        this.duplicates = duplicates;
+        this.retries = retries;
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    /**
+     * @param headers 每次发送前调用，需要带时间戳签名的通知每次重新签名
+     */
+    void send(String url, String contentType, String body, Supplier<Map<String, String>> headers, Acknowledgement ack) {
+        for (int i = 0; i <= duplicates; i++) {
+            scheduler.execute(() -> deliver(url, contentType, body, headers, ack, 0));
+        }
+    }
+
+    private void deliver(String url, String contentType, String body, Supplier<Map<String, String>> headers,
+                         Acknowledgement ack, int attempt) {
+        boolean accepted = false;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(2000);
+            connection.setReadTimeout(10000);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            headers.get().forEach(connection::setRequestProperty);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            String response = "";
+            try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (in != null) {
+                    response = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+                }
+            }
+            delivered.incrementAndGet();
+            accepted = ack.accepted(status, response);
+            if (!accepted) {
+                log.warn("模拟通知未被确认，地址:{}，响应码:{}，应答:{}", url, status, response);
+            }
+        } catch (IOException e) {
+            log.warn("模拟通知发送失败，地址:{}，{}", url, e.getMessage());
+        }
+
+        if (accepted) {
+            acknowledged.incrementAndGet();
+        } else if (attempt < retries) {
+            scheduler.schedule(() -> deliver(url, contentType, body, headers, ack, attempt + 1),
+                    retryIntervalMillis * (attempt + 1), TimeUnit.MILLISECONDS);
+        } else {
+            abandoned.incrementAndGet();
+            log.error("模拟通知重试{}次后仍未被确认，放弃，地址:{}", retries, url);
+        }
+    }
+
+    long getDelivered() {
+        return delivered.get();
+    }
+
+    long getAcknowledged() {
+        return acknowledged.get();
+    }
+
+    long getAbandoned() {
+        return abandoned.get();
+    }
+}
@@ -0,0 +1,32 @@
+package com.py.paymentbackend.simulator;
+
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+
+/**
+ * 模拟器中的一笔退款，状态相关字段的读写都在 synchronized (refund) 中进行
+ */
+@Data
+class SimulatedRefund {
+
+    private String outRefundNo;//商户退款单号，支付宝为退款请求号，没传时为空
+
+    private String refundId;//平台退款单号
+
+    private String outTradeNo;//商户订单号
+
+    private String tradeNo;//平台交易号
+
+    private int refund;//退款金额(分)
+
+    private int total;//订单金额(分)
+
+    private String notifyUrl;//退款结果通知地址
+
+    private String status;
+
+    private ZonedDateTime createTime;
+
+    private ZonedDateTime successTime;
+}
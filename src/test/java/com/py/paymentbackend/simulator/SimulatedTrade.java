@@ -0,0 +1,35 @@
+package com.py.paymentbackend.simulator;
+
+import lombok.Data;
+
+import java.time.ZonedDateTime;
+
+/**
+ * 模拟器中的一笔交易，状态取值与对应支付平台一致（微信 NOTPAY/SUCCESS/...，支付宝 WAIT_BUYER_PAY/TRADE_SUCCESS/...）
+ * 状态相关字段的读写都在 synchronized (trade) 中进行
+ */
+@Data
+class SimulatedTrade {
+
+    private String outTradeNo;//商户订单号
+
+    private String tradeNo;//平台交易号
+
+    private int total;//订单金额(分)
+
+    private String subject;//商品描述
+
+    private String notifyUrl;//支付结果通知地址
+
+    private String codeUrl;//二维码链接，只有微信有
+
+    private boolean v2;//是否是微信APIv2下的单，通知格式不同
+
+    private String state;
+
+    private int refunded;//已退款金额(分)
+
+    private ZonedDateTime createTime;
+
+    private ZonedDateTime successTime;
+}
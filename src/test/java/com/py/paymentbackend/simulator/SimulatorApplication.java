@@ -0,0 +1,49 @@
+package com.py.paymentbackend.simulator;
+
+import com.py.paymentbackend.PaymentBackendApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import java.io.IOException;
+
+/**
+ * 以 simulator 环境启动应用，内嵌支付平台模拟器，离线端到端测试、压测用：
+ *   mvn -P simulator test
+ * 模拟器和模拟的平台密钥只在测试代码中，所以要带上测试的classpath启动，-D 传入的参数覆盖配置，如 -Dpayment.simulator.auto-pay=false
+ */
+public class SimulatorApplication {
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(PaymentBackendApplication.class);
+        application.setAdditionalProfiles("simulator");
+        application.addInitializers(context ->
+                context.getBeanFactory().registerSingleton("testTypeExcludeFilter", new TestTypeExcludeFilter()));
+        application.run(args);
+    }
+
+    /**
+     * 测试的classpath上还有各个测试自己的配置类，组件扫描时跳过，只留下模拟器
+     */
+    static class TestTypeExcludeFilter extends TypeExcludeFilter {
+
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) throws IOException {
+            String enclosing = metadataReader.getClassMetadata().getEnclosingClassName();
+            return enclosing != null && metadataReaderFactory.getMetadataReader(enclosing)
+                    .getAnnotationMetadata().hasAnnotation(SpringBootTest.class.getName());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj != null && getClass() == obj.getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return getClass().hashCode();
+        }
+    }
+}
@@ -0,0 +1,777 @@
+package com.py.paymentbackend.simulator;
+
+import com.github.wxpay.sdk.WXPayUtil;
+import com.py.paymentbackend.config.SimulatorConfig;
+import com.py.paymentbackend.config.WxPayConfig;
+import com.py.paymentbackend.enums.wxpay.WxApiType;
+import com.py.paymentbackend.enums.wxpay.WxRefundStatus;
+import com.py.paymentbackend.enums.wxpay.WxTradeState;
+import com.py.paymentbackend.util.JsonUtils;
+import com.py.paymentbackend.vo.wxpay.WxBillResponse;
+import com.py.paymentbackend.vo.wxpay.WxNativePayRequest;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxRefund;
+import com.py.paymentbackend.vo.wxpay.WxRefundRequest;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import com.sun.net.httpserver.HttpExchange;
+import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 模拟微信支付 APIv3 和 APIv2 统一下单
+ * 响应带 Wechatpay-Serial/Timestamp/Nonce/Signature 头，用模拟平台证书的私钥签名；
+ * 回调通知的 resource 用商户的 APIv3 密钥做 AES-GCM 加密，APIv2 的通知用商户的 APIv2 密钥签名
+ * 商户的请求不验签：SDK 只对微信支付域名的请求签名
+ */
+@Slf4j
+class WxPaySimulator {
+
+    static final String PLATFORM_KEY = "simulator/wxpay_platform_key.pem";
+
+    static final String PLATFORM_CERT = "simulator/wxpay_platform_cert.pem";
+
+    private static final Pattern ORDER_QUERY = path(WxApiType.ORDER_QUERY_BY_NO);
+
+    private static final Pattern CLOSE_ORDER = path(WxApiType.CLOSE_ORDER_BY_NO);
+
+    private static final Pattern REFUND_QUERY = path(WxApiType.DOMESTIC_REFUNDS_QUERY);
+
+    private static final DateTimeFormatter BILL_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final DateTimeFormatter V2_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private static final DateTimeFormatter NO_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String JSON = "application/json;charset=utf-8";
+
+    private static final String OPENID = "oSimulatorOpenId000000000000";
+
+    private final SimulatorConfig config;
+
+    private final WxPayConfig wxPayConfig;
+
+    private final FaultInjector faults;
+
+    private final NotifySender notifySender;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final String baseUrl;
+
+    private final PrivateKey platformKey;
+
+    private final X509Certificate platformCert;
+
+    private final String platformSerial;
+
+    private final SecretKeySpec apiV3Key;
+
+    private final Map<String, SimulatedTrade> trades = new ConcurrentHashMap<>();
+
+    private final Map<String, SimulatedRefund> refunds = new ConcurrentHashMap<>();
+
+    /**
+     * 申请账单后生成的文件，下载一次后删除
+     */
+    private final Map<String, byte[]> bills = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    WxPaySimulator(SimulatorConfig config, WxPayConfig wxPayConfig, FaultInjector faults,
+                   NotifySender notifySender, ScheduledExecutorService scheduler, String baseUrl) throws IOException {
+        this.config = config;
+        this.wxPayConfig = wxPayConfig;
+        this.faults = faults;
+        this.notifySender = notifySender;
+        this.scheduler = scheduler;
+        this.baseUrl = baseUrl;
+        try (InputStream in = new ClassPathResource(PLATFORM_KEY).getInputStream()) {
+            this.platformKey = PemUtil.loadPrivateKey(in);
+        }
+        this.platformCert = loadPlatformCertificate();
+        this.platformSerial = platformCert.getSerialNumber().toString(16).toUpperCase();
+        this.apiV3Key = new SecretKeySpec(wxPayConfig.getApiV3Key().getBytes(StandardCharsets.UTF_8), "AES");
+    }
+
+    static X509Certificate loadPlatformCertificate() throws IOException {
+        try (InputStream in = new ClassPathResource(PLATFORM_CERT).getInputStream()) {
+            return PemUtil.loadCertificate(in);
+        }
+    }
+
+    private static Pattern path(WxApiType api) {
+        return Pattern.compile(String.format(api.getType(), "([^/]+)"));
+    }
+
+    void handleV3(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        if (faults.shouldFail()) {
+            reply(exchange, 500, error("SYSTEM_ERROR", "系统错误（模拟）"));
+            return;
+        }
+        Matcher matcher;
+        if ("POST".equals(method) && WxApiType.NATIVE_PAY.getType().equals(path)) {
+            nativePay(exchange);
+        } else if ("GET".equals(method) && (matcher = ORDER_QUERY.matcher(path)).matches()) {
+            queryOrder(exchange, matcher.group(1));
+        } else if ("POST".equals(method) && (matcher = CLOSE_ORDER.matcher(path)).matches()) {
+            closeOrder(exchange, matcher.group(1));
+        } else if ("POST".equals(method) && WxApiType.DOMESTIC_REFUNDS.getType().equals(path)) {
+            refund(exchange);
+        } else if ("GET".equals(method) && (matcher = REFUND_QUERY.matcher(path)).matches()) {
+            queryRefund(exchange, matcher.group(1));
+        } else if ("GET".equals(method) && WxApiType.TRADE_BILLS.getType().equals(path)) {
+            applyBill(exchange, true);
+        } else if ("GET".equals(method) && WxApiType.FUND_FLOW_BILLS.getType().equals(path)) {
+            applyBill(exchange, false);
+        } else if ("GET".equals(method) && "/v3/certificates".equals(path)) {
+            certificates(exchange);
+        } else {
+            reply(exchange, 404, error("NOT_FOUND", "模拟器不支持的接口：" + method + " " + path));
+        }
+    }
+
+    /**
+     * Native下单：同一个订单号重复下单返回同一个二维码
+     */
+    private void nativePay(HttpExchange exchange) throws IOException {
+        WxNativePayRequest request = JsonUtils.fromJson(
+                new String(GatewaySimulator.readBody(exchange), StandardCharsets.UTF_8), WxNativePayRequest.class);
+        if (request == null || request.getOutTradeNo() == null || request.getAmount() == null
+                || request.getAmount().getTotal() == null) {
+            reply(exchange, 400, error("PARAM_ERROR", "缺少必填参数"));
+            return;
+        }
+        SimulatedTrade trade = createTrade(request.getOutTradeNo(), request.getAmount().getTotal(),
+                request.getDescription(), request.getNotifyUrl(), false);
+        String state;
+        synchronized (trade) {
+            state = trade.getState();
+        }
+        if (WxTradeState.CLOSED.getType().equals(state)) {
+            reply(exchange, 400, error("ORDER_CLOSED", "订单已关闭"));
+        } else if (!WxTradeState.NOTPAY.getType().equals(state)) {
+            reply(exchange, 403, error("ORDERPAID", "该订单已支付"));
+        } else {
+            reply(exchange, 200, Collections.singletonMap("code_url", trade.getCodeUrl()));
+        }
+    }
+
+    /**
+     * APIv2统一下单，请求和响应都是带签名的xml
+     */
+    void handleV2(HttpExchange exchange) throws IOException {
+        String xml = new String(GatewaySimulator.readBody(exchange), StandardCharsets.UTF_8);
+        String partnerKey = wxPayConfig.getPartnerKey();
+        Map<String, String> result = new HashMap<>();
+        try {
+            if (!WXPayUtil.isSignatureValid(xml, partnerKey)) {
+                result.put("return_code", "FAIL");
+                result.put("return_msg", "签名错误");
+                GatewaySimulator.send(exchange, 200, "text/xml;charset=utf-8", WXPayUtil.mapToXml(result));
+                return;
+            }
+            Map<String, String> request = WXPayUtil.xmlToMap(xml);
+            result.put("return_code", "SUCCESS");
+            result.put("return_msg", "OK");
+            result.put("appid", request.get("appid"));
+            result.put("mch_id", request.get("mch_id"));
+            result.put("nonce_str", WXPayUtil.generateNonceStr());
+            if (faults.shouldFail()) {
+                result.put("result_code", "FAIL");
+                result.put("err_code", "SYSTEMERROR");
+                result.put("err_code_des", "系统错误（模拟）");
+            } else {
+                SimulatedTrade trade = createTrade(request.get("out_trade_no"),
+                        Integer.parseInt(request.get("total_fee")), request.get("body"), request.get("notify_url"), true);
+                String state;
+                synchronized (trade) {
+                    state = trade.getState();
+                }
+                if (WxTradeState.NOTPAY.getType().equals(state)) {
+                    result.put("result_code", "SUCCESS");
+                    result.put("trade_type", "NATIVE");
+                    result.put("prepay_id", "wx" + trade.getTradeNo());
+                    result.put("code_url", trade.getCodeUrl());
+                } else {
+                    result.put("result_code", "FAIL");
+                    result.put("err_code", WxTradeState.CLOSED.getType().equals(state) ? "ORDERCLOSED" : "ORDERPAID");
+                    result.put("err_code_des", "订单状态不允许下单");
+                }
+            }
+            GatewaySimulator.send(exchange, 200, "text/xml;charset=utf-8", WXPayUtil.generateSignedXml(result, partnerKey));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("处理统一下单请求失败", e);
+        }
+    }
+
+    /**
+     * 新订单按配置安排自动支付；订单已存在时返回已有的订单
+     */
+    private SimulatedTrade createTrade(String outTradeNo, int total, String subject, String notifyUrl, boolean v2) {
+        ZonedDateTime now = GatewaySimulator.now();
+        SimulatedTrade created = new SimulatedTrade();
+        created.setOutTradeNo(outTradeNo);
+        created.setTradeNo(String.format("4200%s%010d", now.format(NO_DATE), sequence.incrementAndGet()));
+        created.setTotal(total);
+        created.setSubject(subject);
+        created.setNotifyUrl(notifyUrl);
+        created.setCodeUrl("weixin://wxpay/bizpayurl?pr=" + GatewaySimulator.randomString(10));
+        created.setV2(v2);
+        created.setState(WxTradeState.NOTPAY.getType());
+        created.setCreateTime(now);
+        SimulatedTrade trade = trades.putIfAbsent(outTradeNo, created);
+        if (trade != null) {
+            return trade;
+        }
+        if (config.isAutoPay()) {
+            GatewaySimulator.schedule(scheduler, () -> pay(outTradeNo), config.getPayDelayMillis());
+        }
+        return created;
+    }
+
+    /**
+     * 订单从未支付变为支付成功，并通知商户
+     */
+    boolean pay(String outTradeNo) {
+        SimulatedTrade trade = trades.get(outTradeNo);
+        if (trade == null) {
+            return false;
+        }
+        synchronized (trade) {
+            if (!WxTradeState.NOTPAY.getType().equals(trade.getState())) {
+                return false;
+            }
+            trade.setState(WxTradeState.SUCCESS.getType());
+            trade.setSuccessTime(GatewaySimulator.now());
+        }
+        if (trade.getNotifyUrl() == null || trade.getNotifyUrl().isEmpty()) {
+            return true;
+        }
+        if (trade.isV2()) {
+            notifyV2(trade);
+        } else {
+            notifyV3(trade.getNotifyUrl(), "TRANSACTION.SUCCESS", "支付成功", "transaction",
+                    JsonUtils.toJson(toTransaction(trade)));
+        }
+        return true;
+    }
+
+    private void queryOrder(HttpExchange exchange, String outTradeNo) throws IOException {
+        SimulatedTrade trade = trades.get(outTradeNo);
+        if (trade == null) {
+            reply(exchange, 404, error("ORDER_NOT_EXIST", "订单不存在"));
+        } else {
+            reply(exchange, 200, toTransaction(trade));
+        }
+    }
+
+    private void closeOrder(HttpExchange exchange, String outTradeNo) throws IOException {
+        SimulatedTrade trade = trades.get(outTradeNo);
+        if (trade == null) {
+            reply(exchange, 404, error("ORDER_NOT_EXIST", "订单不存在"));
+            return;
+        }
+        boolean closed;
+        synchronized (trade) {
+            if (WxTradeState.NOTPAY.getType().equals(trade.getState())) {
+                trade.setState(WxTradeState.CLOSED.getType());
+            }
+            closed = WxTradeState.CLOSED.getType().equals(trade.getState());
+        }
+        if (closed) {
+            reply(exchange, 204, null);
+        } else {
+            reply(exchange, 400, error("ORDERPAID", "订单已支付"));
+        }
+    }
+
+    /**
+     * 申请退款：立即返回处理中，退款在 refundDelayMillis 后成功并通知商户
+     * 同一个退款单号重复申请返回已有的退款
+     */
+    private void refund(HttpExchange exchange) throws IOException {
+        WxRefundRequest request = JsonUtils.fromJson(
+                new String(GatewaySimulator.readBody(exchange), StandardCharsets.UTF_8), WxRefundRequest.class);
+        if (request == null || request.getOutTradeNo() == null || request.getOutRefundNo() == null
+                || request.getAmount() == null || request.getAmount().getRefund() == null) {
+            reply(exchange, 400, error("PARAM_ERROR", "缺少必填参数"));
+            return;
+        }
+        SimulatedTrade trade = trades.get(request.getOutTradeNo());
+        if (trade == null) {
+            reply(exchange, 404, error("RESOURCE_NOT_EXISTS", "订单不存在"));
+            return;
+        }
+        SimulatedRefund refund;
+        Map<String, String> rejected = null;
+        synchronized (trade) {
+            refund = refunds.get(request.getOutRefundNo());
+            int amount = request.getAmount().getRefund();
+            String state = trade.getState();
+            if (refund != null) {
+                // 重复申请，返回已有的退款
+            } else if (!WxTradeState.SUCCESS.getType().equals(state) && !WxTradeState.REFUND.getType().equals(state)) {
+                rejected = error("INVALID_REQUEST", "订单状态不允许退款");
+            } else if (amount <= 0 || amount > trade.getTotal() - trade.getRefunded()) {
+                rejected = error("NOT_ENOUGH", "可退金额不足");
+            } else {
+                trade.setRefunded(trade.getRefunded() + amount);
+                trade.setState(WxTradeState.REFUND.getType());
+
+                refund = new SimulatedRefund();
+                refund.setOutRefundNo(request.getOutRefundNo());
+                refund.setRefundId(String.format("5030%s%010d",
+                        GatewaySimulator.now().format(NO_DATE), sequence.incrementAndGet()));
+                refund.setOutTradeNo(trade.getOutTradeNo());
+                refund.setTradeNo(trade.getTradeNo());
+                refund.setRefund(amount);
+                refund.setTotal(trade.getTotal());
+                refund.setNotifyUrl(request.getNotifyUrl());
+                refund.setStatus(WxRefundStatus.PROCESSING.getType());
+                refund.setCreateTime(GatewaySimulator.now());
+                refunds.put(refund.getOutRefundNo(), refund);
+                SimulatedRefund accepted = refund;
+                GatewaySimulator.schedule(scheduler, () -> completeRefund(accepted), config.getRefundDelayMillis());
+            }
+        }
+        if (rejected != null) {
+            reply(exchange, 403, rejected);
+            return;
+        }
+        reply(exchange, 200, toRefund(refund, false));
+    }
+
+    private void completeRefund(SimulatedRefund refund) {
+        synchronized (refund) {
+            refund.setStatus(WxRefundStatus.SUCCESS.getType());
+            refund.setSuccessTime(GatewaySimulator.now());
+        }
+        if (refund.getNotifyUrl() != null && !refund.getNotifyUrl().isEmpty()) {
+            notifyV3(refund.getNotifyUrl(), "REFUND.SUCCESS", "退款成功", "refund", JsonUtils.toJson(toRefund(refund, true)));
+        }
+    }
+
+    private void queryRefund(HttpExchange exchange, String outRefundNo) throws IOException {
+        SimulatedRefund refund = refunds.get(outRefundNo);
+        if (refund == null) {
+            reply(exchange, 404, error("RESOURCE_NOT_EXISTS", "退款单不存在"));
+        } else {
+            reply(exchange, 200, toRefund(refund, false));
+        }
+    }
+
+    /**
+     * 申请账单：按当前的交易和退款生成账单，返回下载地址和账单原文的SHA1
+     */
+    private void applyBill(HttpExchange exchange, boolean tradeBill) throws IOException {
+        Map<String, String> params = GatewaySimulator.parseParams(exchange.getRequestURI().getRawQuery());
+        LocalDate billDate;
+        try {
+            billDate = LocalDate.parse(String.valueOf(params.get("bill_date")));
+        } catch (DateTimeParseException e) {
+            reply(exchange, 400, error("PARAM_ERROR", "账单日期格式不正确"));
+            return;
+        }
+        byte[] content = (tradeBill ? tradeBill(billDate) : fundFlowBill(billDate)).getBytes(StandardCharsets.UTF_8);
+        String token = UUID.randomUUID().toString().replace("-", "");
+        bills.put(token, "GZIP".equals(params.get("tar_type")) ? gzip(content) : content);
+
+        WxBillResponse response = new WxBillResponse();
+        response.setHashType("SHA1");
+        response.setHashValue(sha1(content));
+        response.setDownloadUrl(baseUrl + "/v3/billdownload/file?token=" + token);
+        reply(exchange, 200, response);
+    }
+
+    void handleBillDownload(HttpExchange exchange) throws IOException {
+        String token = GatewaySimulator.parseParams(exchange.getRequestURI().getRawQuery()).get("token");
+        byte[] bill = token == null ? null : bills.remove(token);
+        if (bill == null) {
+            GatewaySimulator.send(exchange, 404, JSON, JsonUtils.toJson(error("RESOURCE_NOT_EXISTS", "账单不存在或已过期")));
+        } else {
+            GatewaySimulator.send(exchange, 200, "application/octet-stream", bill);
+        }
+    }
+
+    /**
+     * 交易账单（bill_type=ALL），格式与 WxBillParser 解析的一致：支付成功的交易一行，成功的退款一行
+     */
+    private String tradeBill(LocalDate billDate) {
+        List<String[]> rows = new ArrayList<>();
+        long settlementTotal = 0;
+        long refundTotal = 0;
+        long orderTotal = 0;
+        BigDecimal feeTotal = BigDecimal.ZERO;
+        for (SimulatedTrade trade : trades.values()) {
+            synchronized (trade) {
+                if (trade.getSuccessTime() == null || !billDate.equals(trade.getSuccessTime().toLocalDate())) {
+                    continue;
+                }
+                BigDecimal fee = fee(trade.getTotal());
+                rows.add(new String[]{trade.getSuccessTime().format(BILL_TIME), wxPayConfig.getAppid(),
+                        wxPayConfig.getMchId(), "0", "", trade.getTradeNo(), trade.getOutTradeNo(), OPENID, "NATIVE",
+                        WxTradeState.SUCCESS.getType(), "OTHERS", "CNY", GatewaySimulator.yuan(trade.getTotal()),
+                        "0.00", "0", "0", "0.00", "0.00", "", "", trade.getSubject(), "", fee.toPlainString(),
+                        "0.60%", GatewaySimulator.yuan(trade.getTotal()), "0.00", ""});
+                settlementTotal += trade.getTotal();
+                orderTotal += trade.getTotal();
+                feeTotal = feeTotal.add(fee);
+            }
+        }
+        for (SimulatedRefund refund : refunds.values()) {
+            synchronized (refund) {
+                if (refund.getSuccessTime() == null || !billDate.equals(refund.getSuccessTime().toLocalDate())) {
+                    continue;
+                }
+                SimulatedTrade trade = trades.get(refund.getOutTradeNo());
+                BigDecimal fee = fee(refund.getRefund()).negate();
+                rows.add(new String[]{refund.getSuccessTime().format(BILL_TIME), wxPayConfig.getAppid(),
+                        wxPayConfig.getMchId(), "0", "", refund.getTradeNo(), refund.getOutTradeNo(), OPENID, "NATIVE",
+                        WxTradeState.REFUND.getType(), "OTHERS", "CNY", "0.00", "0.00", refund.getRefundId(),
+                        refund.getOutRefundNo(), GatewaySimulator.yuan(refund.getRefund()), "0.00", "ORIGINAL",
+                        WxRefundStatus.SUCCESS.getType(), trade == null ? "" : trade.getSubject(), "",
+                        fee.toPlainString(), "0.60%", GatewaySimulator.yuan(refund.getTotal()),
+                        GatewaySimulator.yuan(refund.getRefund()), ""});
+                refundTotal += refund.getRefund();
+                feeTotal = feeTotal.add(fee);
+            }
+        }
+        rows.sort((a, b) -> a[0].compareTo(b[0]));
+
+        StringBuilder bill = new StringBuilder("交易时间,公众账号ID,商户号,特约商户号,设备号,微信订单号,商户订单号,用户标识,"
+                + "交易类型,交易状态,付款银行,货币种类,应结订单金额,代金券金额,微信退款单号,商户退款单号,退款金额,充值券退款金额,"
+                + "退款类型,退款状态,商品名称,商户数据包,手续费,费率,订单金额,申请退款金额,费率备注\n");
+        rows.forEach(row -> appendBillRow(bill, row));
+        bill.append("总交易单数,应结订单总金额,退款总金额,充值券退款总金额,手续费总金额,订单总金额,申请退款总金额\n");
+        appendBillRow(bill, new String[]{String.valueOf(rows.size()), GatewaySimulator.yuan(settlementTotal),
+                GatewaySimulator.yuan(refundTotal), "0.00", feeTotal.toPlainString(),
+                GatewaySimulator.yuan(orderTotal), GatewaySimulator.yuan(refundTotal)});
+        return bill.toString();
+    }
+
+    /**
+     * 资金账单（基本账户），收入为支付成功的交易，支出为成功的退款
+     */
+    private String fundFlowBill(LocalDate billDate) {
+        List<String[]> rows = new ArrayList<>();
+        for (SimulatedTrade trade : trades.values()) {
+            synchronized (trade) {
+                if (trade.getSuccessTime() != null && billDate.equals(trade.getSuccessTime().toLocalDate())) {
+                    rows.add(new String[]{trade.getSuccessTime().format(BILL_TIME), trade.getTradeNo(),
+                            "", "交易", "交易", "收入", GatewaySimulator.yuan(trade.getTotal()), "", "system", "",
+                            trade.getOutTradeNo()});
+                }
+            }
+        }
+        for (SimulatedRefund refund : refunds.values()) {
+            synchronized (refund) {
+                if (refund.getSuccessTime() != null && billDate.equals(refund.getSuccessTime().toLocalDate())) {
+                    rows.add(new String[]{refund.getSuccessTime().format(BILL_TIME), refund.getRefundId(),
+                            "", "退款", "退款", "支出", GatewaySimulator.yuan(refund.getRefund()), "", "system", "",
+                            refund.getOutRefundNo()});
+                }
+            }
+        }
+        rows.sort((a, b) -> a[0].compareTo(b[0]));
+
+        long balance = 0;
+        long income = 0;
+        long expense = 0;
+        int incomeCount = 0;
+        StringBuilder bill = new StringBuilder("记账时间,微信支付业务单号,资金流水单号,业务名称,业务类型,收支类型,"
+                + "收支金额（元）,账户结余（元）,资金变更提交申请人,备注,业务凭证号\n");
+        for (String[] row : rows) {
+            long amount = new BigDecimal(row[6]).movePointRight(2).longValueExact();
+            if ("收入".equals(row[5])) {
+                balance += amount;
+                income += amount;
+                incomeCount++;
+            } else {
+                balance -= amount;
+                expense += amount;
+            }
+            row[2] = String.valueOf(sequence.incrementAndGet());
+            row[7] = GatewaySimulator.yuan(balance);
+            appendBillRow(bill, row);
+        }
+        bill.append("资金流水总笔数,收入笔数,收入金额,支出笔数,支出金额\n");
+        appendBillRow(bill, new String[]{String.valueOf(rows.size()), String.valueOf(incomeCount),
+                GatewaySimulator.yuan(income), String.valueOf(rows.size() - incomeCount), GatewaySimulator.yuan(expense)});
+        return bill.toString();
+    }
+
+    private static void appendBillRow(StringBuilder bill, String[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                bill.append(',');
+            }
+            bill.append('`').append(fields[i] == null ? "" : fields[i]);
+        }
+        bill.append('\n');
+    }
+
+    /**
+     * 手续费(元)，费率0.6%，保留5位小数
+     */
+    private static BigDecimal fee(int fen) {
+        return BigDecimal.valueOf(fen).multiply(new BigDecimal("0.00006")).setScale(5, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 平台证书，证书原文用商户的APIv3密钥加密
+     */
+    private void certificates(HttpExchange exchange) throws IOException {
+        String pem;
+        try (InputStream in = new ClassPathResource(PLATFORM_CERT).getInputStream()) {
+            pem = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+        String nonce = GatewaySimulator.randomString(12);
+        Map<String, String> encrypted = new LinkedHashMap<>();
+        encrypted.put("algorithm", "AEAD_AES_256_GCM");
+        encrypted.put("nonce", nonce);
+        encrypted.put("associated_data", "certificate");
+        encrypted.put("ciphertext", encrypt("certificate", nonce, pem));
+
+        Map<String, Object> certificate = new LinkedHashMap<>();
+        certificate.put("serial_no", platformSerial);
+        certificate.put("effective_time", ZonedDateTime.ofInstant(platformCert.getNotBefore().toInstant(), GatewaySimulator.ZONE)
+                .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        certificate.put("expire_time", ZonedDateTime.ofInstant(platformCert.getNotAfter().toInstant(), GatewaySimulator.ZONE)
+                .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        certificate.put("encrypt_certificate", encrypted);
+        reply(exchange, 200, Collections.singletonMap("data", Collections.singletonList(certificate)));
+    }
+
+    private WxTransaction toTransaction(SimulatedTrade trade) {
+        WxTransaction transaction = new WxTransaction();
+        transaction.setAppid(wxPayConfig.getAppid());
+        transaction.setMchid(wxPayConfig.getMchId());
+        transaction.setOutTradeNo(trade.getOutTradeNo());
+        transaction.setTradeType("NATIVE");
+        WxTransaction.Amount amount = new WxTransaction.Amount();
+        amount.setTotal(trade.getTotal());
+        amount.setCurrency("CNY");
+        amount.setPayerCurrency("CNY");
+        transaction.setAmount(amount);
+        synchronized (trade) {
+            transaction.setTradeState(trade.getState());
+            transaction.setTradeStateDesc(stateDesc(trade.getState()));
+            if (trade.getSuccessTime() != null) {
+                transaction.setTransactionId(trade.getTradeNo());
+                transaction.setBankType("OTHERS");
+                transaction.setSuccessTime(trade.getSuccessTime().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+                WxTransaction.Payer payer = new WxTransaction.Payer();
+                payer.setOpenid(OPENID);
+                transaction.setPayer(payer);
+                amount.setPayerTotal(trade.getTotal());
+            }
+        }
+        return transaction;
+    }
+
+    private static String stateDesc(String state) {
+        if (WxTradeState.SUCCESS.getType().equals(state)) {
+            return "支付成功";
+        } else if (WxTradeState.REFUND.getType().equals(state)) {
+            return "转入退款";
+        } else if (WxTradeState.CLOSED.getType().equals(state)) {
+            return "订单已关闭";
+        }
+        return "订单未支付";
+    }
+
+    /**
+     * @param notify 退款通知用 refund_status，申请/查询退款用 status
+     */
+    private WxRefund toRefund(SimulatedRefund refund, boolean notify) {
+        WxRefund result = new WxRefund();
+        result.setRefundId(refund.getRefundId());
+        result.setOutRefundNo(refund.getOutRefundNo());
+        result.setTransactionId(refund.getTradeNo());
+        result.setOutTradeNo(refund.getOutTradeNo());
+        result.setChannel("ORIGINAL");
+        result.setUserReceivedAccount("支付用户零钱");
+        WxRefund.Amount amount = new WxRefund.Amount();
+        amount.setTotal(refund.getTotal());
+        amount.setRefund(refund.getRefund());
+        amount.setPayerTotal(refund.getTotal());
+        amount.setPayerRefund(refund.getRefund());
+        amount.setCurrency("CNY");
+        result.setAmount(amount);
+        synchronized (refund) {
+            result.setCreateTime(refund.getCreateTime().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+            if (refund.getSuccessTime() != null) {
+                result.setSuccessTime(refund.getSuccessTime().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+            }
+            if (notify) {
+                result.setRefundStatus(refund.getStatus());
+            } else {
+                result.setStatus(refund.getStatus());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * APIv3回调通知：明文加密后放入 resource，请求头带平台证书签名
+     */
+    private void notifyV3(String url, String eventType, String summary, String originalType, String plainText) {
+        String nonce = GatewaySimulator.randomString(12);
+        WxNotify.Resource resource = new WxNotify.Resource();
+        resource.setAlgorithm("AEAD_AES_256_GCM");
+        resource.setOriginalType(originalType);
+        resource.setAssociatedData(originalType);
+        resource.setNonce(nonce);
+        resource.setCiphertext(encrypt(originalType, nonce, plainText));
+
+        WxNotify notify = new WxNotify();
+        notify.setId(UUID.randomUUID().toString());
+        notify.setCreateTime(GatewaySimulator.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        notify.setEventType(eventType);
+        notify.setResourceType("encrypt-resource");
+        notify.setSummary(summary);
+        notify.setResource(resource);
+        String body = JsonUtils.toJson(notify);
+        notifySender.send(url, "application/json", body, () -> signatureHeaders(body),
+                (status, response) -> status == 200 || status == 204);
+    }
+
+    /**
+     * APIv2支付通知：带签名的xml，商户应答 return_code=SUCCESS 表示收到
+     */
+    private void notifyV2(SimulatedTrade trade) {
+        Map<String, String> params = new HashMap<>();
+        params.put("return_code", "SUCCESS");
+        params.put("result_code", "SUCCESS");
+        params.put("appid", wxPayConfig.getAppid());
+        params.put("mch_id", wxPayConfig.getMchId());
+        params.put("nonce_str", WXPayUtil.generateNonceStr());
+        params.put("openid", OPENID);
+        params.put("trade_type", "NATIVE");
+        params.put("bank_type", "OTHERS");
+        params.put("fee_type", "CNY");
+        params.put("total_fee", String.valueOf(trade.getTotal()));
+        params.put("cash_fee", String.valueOf(trade.getTotal()));
+        params.put("transaction_id", trade.getTradeNo());
+        params.put("out_trade_no", trade.getOutTradeNo());
+        synchronized (trade) {
+            params.put("time_end", trade.getSuccessTime().format(V2_TIME));
+        }
+        String body;
+        try {
+            body = WXPayUtil.generateSignedXml(params, wxPayConfig.getPartnerKey());
+        } catch (Exception e) {
+            throw new IllegalStateException("生成支付通知失败", e);
+        }
+        notifySender.send(trade.getNotifyUrl(), "text/xml", body, Collections::emptyMap, (status, response) -> {
+            try {
+                return status == 200 && "SUCCESS".equals(WXPayUtil.xmlToMap(response).get("return_code"));
+            } catch (Exception e) {
+                return false;
+            }
+        });
+    }
+
+    private void reply(HttpExchange exchange, int status, Object body) throws IOException {
+        String json = body == null ? "" : JsonUtils.toJson(body);
+        signatureHeaders(json).forEach(exchange.getResponseHeaders()::set);
+        GatewaySimulator.send(exchange, status, JSON, json);
+    }
+
+    /**
+     * 应答和通知的签名：SHA256withRSA(时间戳\n随机串\n报文主体\n)
+     */
+    private Map<String, String> signatureHeaders(String body) {
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        String nonce = GatewaySimulator.randomString(32);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Request-ID", UUID.randomUUID().toString());
+        headers.put("Wechatpay-Serial", platformSerial);
+        headers.put("Wechatpay-Timestamp", timestamp);
+        headers.put("Wechatpay-Nonce", nonce);
+        try {
+            Signature signer = Signature.getInstance("SHA256withRSA");
+            signer.initSign(platformKey);
+            signer.update((timestamp + "\n" + nonce + "\n" + body + "\n").getBytes(StandardCharsets.UTF_8));
+            headers.put("Wechatpay-Signature", Base64.getEncoder().encodeToString(signer.sign()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("模拟平台签名失败", e);
+        }
+        return headers;
+    }
+
+    private String encrypt(String associatedData, String nonce, String plainText) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, apiV3Key, new GCMParameterSpec(128, nonce.getBytes(StandardCharsets.UTF_8)));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("模拟通知加密失败", e);
+        }
+    }
+
+    private static Map<String, String> error(String code, String message) {
+        Map<String, String> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", message);
+        return error;
+    }
+
+    private static String sha1(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            return String.format("%040x", new BigInteger(1, digest));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
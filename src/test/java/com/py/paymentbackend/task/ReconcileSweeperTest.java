@@ -0,0 +1,122 @@
+package com.py.paymentbackend.task;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用内存中的列表模拟待核实的订单，sleep 模拟查单耗时
+ */
+class ReconcileSweeperTest {
+
+    private static final int CONCURRENCY = 16;
+
+    private ExecutorService executor;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(CONCURRENCY);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 按游标分页，与 getNoPayOrderByDuration 的语义一致：返回大于after的前limit条
+     */
+    private ReconcileSweeper.PageLoader<Integer> loader(List<Integer> orders, AtomicInteger pages) {
+        return (after, limit) -> {
+            pages.incrementAndGet();
+            return orders.stream()
+                    .filter(order -> after == null || order > after)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        };
+    }
+
+    @Test
+    void checksEveryOrderInParallelAndWritesBackPerPage() {
+        List<Integer> orders = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        AtomicInteger pages = new AtomicInteger();
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        ReconcileSweeper sweeper = new ReconcileSweeper(executor, 100, 30000, meterRegistry);
+
+        long start = System.currentTimeMillis();
+        int checked = sweeper.sweep("test", loader(orders, pages),
+                order -> {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                    // 偶数订单需要回写
+                    return order % 2 == 0 ? order : null;
+                },
+                batches::add);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(1000, checked);
+        // 10页满页，再读一次空页结束
+        assertEquals(11, pages.get());
+        assertEquals(10, batches.size());
+        batches.forEach(batch -> assertEquals(50, batch.size()));
+        // 串行需要 1000 * 5ms = 5s
+        assertTrue(elapsed < 2500, "查单应当并行执行，耗时:" + elapsed);
+        assertEquals(1000, meterRegistry.counter("payment.sweep.checked", "task", "test").count());
+    }
+
+    @Test
+    void failedCheckDoesNotStopThePage() {
+        List<Integer> orders = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        List<Integer> written = Collections.synchronizedList(new ArrayList<>());
+        ReconcileSweeper sweeper = new ReconcileSweeper(executor, 100, 30000, meterRegistry);
+
+        int checked = sweeper.sweep("test", loader(orders, new AtomicInteger()),
+                order -> {
+                    if (order == 3) {
+                        throw new IllegalStateException("查单接口的调用失败");
+                    }
+                    return order;
+                },
+                written::addAll);
+
+        assertEquals(9, checked);
+        assertEquals(9, written.size());
+        assertEquals(1, meterRegistry.counter("payment.sweep.failed", "task", "test").count());
+    }
+
+    @Test
+    void stopsWhenTimeBudgetIsUsedUp() {
+        List<Integer> orders = IntStream.range(0, 100000).boxed().collect(Collectors.toList());
+        AtomicInteger pages = new AtomicInteger();
+        ReconcileSweeper sweeper = new ReconcileSweeper(executor, 100, 300, meterRegistry);
+
+        long start = System.currentTimeMillis();
+        int checked = sweeper.sweep("test", loader(orders, pages),
+                order -> {
+                    TimeUnit.MILLISECONDS.sleep(20);
+                    return null;
+                },
+                batch -> {
+                });
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(checked < orders.size());
+        assertTrue(elapsed < 1000, "超出时间预算后应当停止，耗时:" + elapsed);
+    }
+}
@@ -0,0 +1,52 @@
+package com.py.paymentbackend.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SweepLeaseTaskTest {
+
+    private static final int SHARD_COUNT = 64;
+
+    /**
+     * 任意节点数下，所有分片都恰好分给一个节点，且各节点分到的数量最多差1
+     */
+    @Test
+    void everyShardIsOwnedByExactlyOneNode() {
+        for (int nodes = 1; nodes <= 10; nodes++) {
+            Set<Integer> owned = new HashSet<>();
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int index = 0; index < nodes; index++) {
+                List<Integer> shards = SweepLeaseTask.assign(index, nodes, SHARD_COUNT);
+                for (Integer shard : shards) {
+                    assertTrue(owned.add(shard), "分片" + shard + "被分给了多个节点");
+                }
+                min = Math.min(min, shards.size());
+                max = Math.max(max, shards.size());
+            }
+            assertEquals(SHARD_COUNT, owned.size());
+            assertTrue(max - min <= 1);
+        }
+    }
+
+    /**
+     * 三个节点中有一个下线，剩下两个节点重新计算后接管全部分片
+     */
+    @Test
+    void remainingNodesTakeOverWhenANodeDisappears() {
+        List<Integer> before = new ArrayList<>(SweepLeaseTask.assign(0, 3, SHARD_COUNT));
+        before.addAll(SweepLeaseTask.assign(2, 3, SHARD_COUNT));
+        assertTrue(before.size() < SHARD_COUNT);
+
+        Set<Integer> after = new HashSet<>(SweepLeaseTask.assign(0, 2, SHARD_COUNT));
+        after.addAll(SweepLeaseTask.assign(1, 2, SHARD_COUNT));
+        assertEquals(SHARD_COUNT, after.size());
+    }
+}
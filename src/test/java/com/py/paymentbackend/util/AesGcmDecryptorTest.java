@@ -0,0 +1,90 @@
+package com.py.paymentbackend.util;
+
+import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AesGcmDecryptorTest {
+
+    private static final byte[] KEY = "UDuLFDcmy5Eb6o0nTNZdu6ek4DDh4K8B".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 按微信支付的方式加密：AES-256-GCM，结果base64编码
+     */
+    static String encrypt(String associatedData, String nonce, String plainText) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"),
+                new GCMParameterSpec(128, nonce.getBytes(StandardCharsets.UTF_8)));
+        cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void decryptsSameAsSdkAndRecordsLatency() throws Exception {
+        String plainText = "{\"out_trade_no\":\"ORDER_20220828172344338\",\"trade_state\":\"SUCCESS\",\"trade_state_desc\":\"支付成功\"}";
+        String ciphertext = encrypt("transaction", "fdasflkja484", plainText);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Timer timer = registry.timer("payment.notify.decrypt");
+        AesGcmDecryptor decryptor = new AesGcmDecryptor(KEY, timer);
+
+        String sdk = new AesUtil(KEY).decryptToString("transaction".getBytes(StandardCharsets.UTF_8),
+                "fdasflkja484".getBytes(StandardCharsets.UTF_8), ciphertext);
+        // 同一个线程的 Cipher 重复使用
+        assertEquals(plainText, decryptor.decryptToString("transaction", "fdasflkja484", ciphertext));
+        assertEquals(plainText, decryptor.decryptToString("transaction", "fdasflkja484", ciphertext));
+        assertEquals(sdk, plainText);
+        assertEquals(2, timer.count());
+    }
+
+    @Test
+    void rejectsTamperedData() throws Exception {
+        String ciphertext = encrypt("transaction", "fdasflkja484", "{}");
+        AesGcmDecryptor decryptor = new AesGcmDecryptor(KEY, null);
+
+        assertThrows(AEADBadTagException.class,
+                () -> decryptor.decryptToString("refund", "fdasflkja484", ciphertext));
+        // 失败后同一线程的 Cipher 仍然可用
+        assertEquals("{}", decryptor.decryptToString("transaction", "fdasflkja484", ciphertext));
+    }
+
+    @Test
+    void rejectsKeyOfWrongLength() {
+        assertThrows(IllegalArgumentException.class, () -> new AesGcmDecryptor(new byte[16], null));
+    }
+
+    @Test
+    void concurrentCallbacksDecryptIndependently() throws Exception {
+        AesGcmDecryptor decryptor = new AesGcmDecryptor(KEY, null);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String nonce = String.format("nonce%07d", i);
+            String plainText = "{\"out_trade_no\":\"ORDER_" + i + "\"}";
+            String ciphertext = encrypt("transaction", nonce, plainText);
+            futures.add(pool.submit(() -> {
+                assertEquals(plainText, decryptor.decryptToString("transaction", nonce, ciphertext));
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+    }
+}
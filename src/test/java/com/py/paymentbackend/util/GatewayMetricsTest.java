@@ -0,0 +1,87 @@
+package com.py.paymentbackend.util;
+
+import com.py.paymentbackend.enums.wxpay.WxApiType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GatewayMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private GatewayMetrics gatewayMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        gatewayMetrics = new GatewayMetrics(meterRegistry);
+    }
+
+    private double inflight(String api) {
+        return meterRegistry.get("payment.gateway.inflight").tag("gateway", GatewayMetrics.WXPAY).tag("api", api).gauge().value();
+    }
+
+    @Test
+    void recordsLatencyPerApiAndStatus() throws Exception {
+        gatewayMetrics.record(GatewayMetrics.WXPAY, "ORDER_QUERY_BY_NO", () -> 200, String::valueOf);
+        gatewayMetrics.record(GatewayMetrics.WXPAY, "ORDER_QUERY_BY_NO", () -> 200, String::valueOf);
+        gatewayMetrics.record(GatewayMetrics.WXPAY, "ORDER_QUERY_BY_NO", () -> 404, String::valueOf);
+
+        assertEquals(2, meterRegistry.get("payment.gateway.requests")
+                .tag("api", "ORDER_QUERY_BY_NO").tag("status", "200").timer().count());
+        assertEquals(1, meterRegistry.get("payment.gateway.requests")
+                .tag("api", "ORDER_QUERY_BY_NO").tag("status", "404").timer().count());
+    }
+
+    @Test
+    void countsExceptionsAndRethrows() {
+        assertThrows(IOException.class, () -> gatewayMetrics.record(GatewayMetrics.WXPAY, "DOMESTIC_REFUNDS", () -> {
+            throw new IOException("connect timed out");
+        }, String::valueOf));
+
+        assertEquals(1, meterRegistry.get("payment.gateway.errors")
+                .tag("api", "DOMESTIC_REFUNDS").tag("exception", "IOException").counter().count());
+        assertEquals(1, meterRegistry.get("payment.gateway.requests")
+                .tag("api", "DOMESTIC_REFUNDS").tag("status", "EXCEPTION").timer().count());
+        assertEquals(0, inflight("DOMESTIC_REFUNDS"));
+    }
+
+    @Test
+    void tracksInflightCalls() throws Exception {
+        // 没有调用过的微信接口也已注册
+        for (WxApiType api : WxApiType.values()) {
+            assertEquals(0, inflight(api.name()));
+        }
+
+        int calls = 4;
+        CountDownLatch started = new CountDownLatch(calls);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(calls);
+        Future<?>[] futures = new Future<?>[calls];
+        for (int i = 0; i < calls; i++) {
+            futures[i] = executor.submit(() -> gatewayMetrics.record(GatewayMetrics.WXPAY, "NATIVE_PAY", () -> {
+                started.countDown();
+                release.await();
+                return 200;
+            }, String::valueOf));
+        }
+        started.await();
+        assertEquals(calls, inflight("NATIVE_PAY"));
+
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(0, inflight("NATIVE_PAY"));
+    }
+}
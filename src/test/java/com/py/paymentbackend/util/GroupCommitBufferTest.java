@@ -0,0 +1,195 @@
+package com.py.paymentbackend.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模拟回调线程并发写入，验证组提交：多条记录合成一批写入，每个提交线程拿到自己那条的结果
+ */
+@Slf4j
+class GroupCommitBufferTest {
+
+    private static final int THREADS = 64;
+
+    @Test
+    void concurrentSubmitsAreGroupedIntoBatches() throws Exception {
+        int items = 5000;
+        int maxBatchSize = 100;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AtomicInteger flushes = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        Map<Integer, Boolean> written = new ConcurrentHashMap<>();
+        GroupCommitBuffer<Integer, Integer> buffer = new GroupCommitBuffer<>("test", maxBatchSize, 5, 1000, 5000,
+                batch -> {
+                    flushes.incrementAndGet();
+                    maxSeen.accumulateAndGet(batch.size(), Math::max);
+                    sleep(2); // 一次提交的耗时
+                    List<GroupCommitBuffer.Result<Integer>> results = new ArrayList<>(batch.size());
+                    for (Integer item : batch) {
+                        written.put(item, true);
+                        results.add(GroupCommitBuffer.Result.ok(item * 2));
+                    }
+                    return results;
+                }, registry);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            int item = i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                return buffer.submit(item);
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < items; i++) {
+            assertEquals(i * 2, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        buffer.shutdown();
+
+        DistributionSummary batchSize = registry.get("payment.group-commit.batch.size").summary();
+        log.info("{}条记录，{}次提交，平均每批{}条", items, flushes.get(), batchSize.mean());
+        assertEquals(items, written.size());
+        assertTrue(maxSeen.get() <= maxBatchSize);
+        // 64个线程并发提交，每次提交至少合并了好几条
+        assertTrue(flushes.get() < items / 4, "提交次数：" + flushes.get());
+        assertEquals(items, (long) batchSize.totalAmount());
+    }
+
+    @Test
+    void singleSubmitIsFlushedAfterMaxDelay() throws Exception {
+        GroupCommitBuffer<String, String> buffer = new GroupCommitBuffer<>("test", 100, 20, 10, 5000,
+                GroupCommitBufferTest::echo, new SimpleMeterRegistry());
+        long start = System.nanoTime();
+        assertEquals("a", buffer.submit("a"));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed < 1000, "耗时：" + elapsed);
+        buffer.shutdown();
+    }
+
+    @Test
+    void failedBatchFailsEverySubmitter() throws Exception {
+        GroupCommitBuffer<Integer, Integer> buffer = new GroupCommitBuffer<>("test", 100, 50, 100, 5000,
+                batch -> {
+                    throw new IllegalStateException("数据库不可用");
+                }, new SimpleMeterRegistry());
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int item = i;
+            futures.add(pool.submit(() -> buffer.submit(item)));
+        }
+        for (Future<Integer> future : futures) {
+            Exception e = assertThrows(Exception.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("数据库不可用", e.getCause().getCause().getMessage());
+        }
+        pool.shutdown();
+        buffer.shutdown();
+    }
+
+    @Test
+    void failedItemFailsOnlyItsSubmitter() throws Exception {
+        GroupCommitBuffer<Integer, Integer> buffer = new GroupCommitBuffer<>("test", 100, 50, 100, 5000,
+                batch -> {
+                    List<GroupCommitBuffer.Result<Integer>> results = new ArrayList<>(batch.size());
+                    for (Integer item : batch) {
+                        results.add(item == 3 ? GroupCommitBuffer.Result.failed(new IllegalArgumentException("坏数据"))
+                                : GroupCommitBuffer.Result.ok(item));
+                    }
+                    return results;
+                }, new SimpleMeterRegistry());
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int item = i;
+            futures.add(pool.submit(() -> buffer.submit(item)));
+        }
+        for (int i = 0; i < 8; i++) {
+            if (i == 3) {
+                Exception e = assertThrows(Exception.class, futures.get(i)::get);
+                assertEquals("坏数据", e.getCause().getCause().getMessage());
+            } else {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+        }
+        pool.shutdown();
+        buffer.shutdown();
+    }
+
+    @Test
+    void shutdownWritesQueuedItems() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger written = new AtomicInteger();
+        GroupCommitBuffer<Integer, Integer> buffer = new GroupCommitBuffer<>("test", 1, 0, 100, 5000,
+                batch -> {
+                    blocked.countDown();
+                    awaitQuietly(release);
+                    written.addAndGet(batch.size());
+                    return echo(batch);
+                }, new SimpleMeterRegistry());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int item = i;
+            futures.add(pool.submit(() -> buffer.submit(item)));
+        }
+        blocked.await();
+        // 等另外3条都进入队列
+        Thread.sleep(100);
+        release.countDown();
+        buffer.shutdown();
+        for (Future<Integer> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(4, written.get());
+        pool.shutdown();
+    }
+
+    private static <T> List<GroupCommitBuffer.Result<T>> echo(List<T> batch) {
+        List<GroupCommitBuffer.Result<T>> results = new ArrayList<>(batch.size());
+        for (T item : batch) {
+            results.add(GroupCommitBuffer.Result.ok(item));
+        }
+        return results;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // 关闭时的中断不影响正在写的这一批
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.py.paymentbackend.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+class IdGeneratorTest {
+
+    private static final int THREADS = 8;
+
+    private static final int IDS_PER_THREAD = 500000;
+
+    /**
+     * 多线程同时生成，合并排序后相邻两个都不相等即没有重复
+     */
+    @Test
+    void idsAreUniqueAcrossThreads() throws Exception {
+        IdGenerator generator = new IdGenerator(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[IDS_PER_THREAD];
+                start.await();
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = generator.nextId();
+                }
+                return ids;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        long[] all = new long[THREADS * IDS_PER_THREAD];
+        for (int t = 0; t < THREADS; t++) {
+            long[] ids = futures.get(t).get();
+            // 同一个线程拿到的编号严格递增
+            for (int i = 1; i < ids.length; i++) {
+                assertTrue(ids[i] > ids[i - 1]);
+            }
+            System.arraycopy(ids, 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        long elapsedNanos = System.nanoTime() - begin;
+        executor.shutdown();
+        log.info("{}个线程生成{}个编号，耗时{}ms，{}万个/秒", THREADS, all.length, elapsedNanos / 1000000,
+                all.length * 1000000000L / elapsedNanos / 10000);
+
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertNotEquals(all[i - 1], all[i], "重复的编号");
+        }
+        assertEquals(1, IdGenerator.nodeIdOf(all[0]));
+    }
+
+    @Test
+    void sameMillisecondOnDifferentNodesDoesNotCollide() {
+        IdGenerator node1 = new IdGenerator(1, () -> IdGenerator.EPOCH + 1000);
+        IdGenerator node2 = new IdGenerator(2, () -> IdGenerator.EPOCH + 1000);
+
+        long id1 = node1.nextId();
+        long id2 = node2.nextId();
+
+        assertNotEquals(id1, id2);
+        assertEquals(IdGenerator.EPOCH + 1000, IdGenerator.timestampOf(id1));
+        assertEquals(1, IdGenerator.nodeIdOf(id1));
+        assertEquals(2, IdGenerator.nodeIdOf(id2));
+    }
+
+    @Test
+    void clockRegressionKeepsIdsIncreasing() {
+        AtomicLong now = new AtomicLong(IdGenerator.EPOCH + 10000);
+        IdGenerator generator = new IdGenerator(1, now::get);
+
+        long before = generator.nextId();
+        // 时钟回拨5秒
+        now.addAndGet(-5000);
+        long during = generator.nextId();
+        // 追上来之后回到系统时间
+        now.addAndGet(6000);
+        long after = generator.nextId();
+
+        assertTrue(during > before);
+        assertEquals(IdGenerator.EPOCH + 10000, IdGenerator.timestampOf(during));
+        assertTrue(after > during);
+        assertEquals(IdGenerator.EPOCH + 11000, IdGenerator.timestampOf(after));
+    }
+
+    @Test
+    void sequenceOverflowCarriesIntoNextMillisecond() {
+        IdGenerator generator = new IdGenerator(1, () -> IdGenerator.EPOCH + 1000);
+
+        long last = 0;
+        for (int i = 0; i <= 4096; i++) {
+            last = generator.nextId();
+        }
+
+        assertEquals(IdGenerator.EPOCH + 1001, IdGenerator.timestampOf(last));
+    }
+
+    @Test
+    void rejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new IdGenerator(1024));
+        assertThrows(IllegalArgumentException.class, () -> new IdGenerator(-1));
+    }
+
+    @Test
+    void orderNoFitsWxPayLimit() {
+        String orderNo = OrderNoUtils.getOrderNo();
+        String refundNo = OrderNoUtils.getRefundNo();
+
+        assertTrue(orderNo.startsWith("ORDER_"));
+        assertTrue(refundNo.startsWith("REFUND_"));
+        assertTrue(orderNo.length() <= 32);
+        assertNotEquals(orderNo.substring(6), refundNo.substring(7));
+    }
+}
@@ -0,0 +1,60 @@
+package com.py.paymentbackend.util;
+
+import com.py.paymentbackend.vo.wxpay.WxNativePayRequest;
+import com.py.paymentbackend.vo.wxpay.WxNotify;
+import com.py.paymentbackend.vo.wxpay.WxTransaction;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonUtilsTest {
+
+    @Test
+    void parsesTransactionIntoTypedFields() {
+        String plainText = "{\"amount\":{\"currency\":\"CNY\",\"payer_currency\":\"CNY\",\"payer_total\":1,\"total\":1},"
+                + "\"appid\":\"wx74862e0dfcf69954\",\"mchid\":\"1558950191\",\"out_trade_no\":\"ORDER_20220828172344338\","
+                + "\"payer\":{\"openid\":\"oHwsHuCgDFPyqFo2Sawg6yA0Pu4A\"},\"promotion_detail\":[],"
+                + "\"success_time\":\"2022-08-28T17:23:59+08:00\",\"trade_state\":\"SUCCESS\",\"trade_type\":\"NATIVE\","
+                + "\"transaction_id\":\"4200001550202208284738686219\"}";
+
+        WxTransaction transaction = JsonUtils.fromJson(plainText, WxTransaction.class);
+
+        assertEquals("ORDER_20220828172344338", transaction.getOutTradeNo());
+        assertEquals("4200001550202208284738686219", transaction.getTransactionId());
+        assertEquals("SUCCESS", transaction.getTradeState());
+        assertEquals(Integer.valueOf(1), transaction.getAmount().getPayerTotal());
+        assertEquals("oHwsHuCgDFPyqFo2Sawg6yA0Pu4A", transaction.getPayer().getOpenid());
+    }
+
+    @Test
+    void parsesNotifyEnvelopeFromStream() throws Exception {
+        String body = "{\"id\":\"EV-2018022511223320873\",\"create_time\":\"2015-05-20T13:29:35+08:00\","
+                + "\"resource_type\":\"encrypt-resource\",\"event_type\":\"TRANSACTION.SUCCESS\",\"summary\":\"支付成功\","
+                + "\"resource\":{\"original_type\":\"transaction\",\"algorithm\":\"AEAD_AES_256_GCM\","
+                + "\"ciphertext\":\"abc\",\"associated_data\":\"transaction\",\"nonce\":\"fdasflkja484w\"}}";
+
+        WxNotify notify = JsonUtils.fromJson(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), WxNotify.class);
+
+        assertEquals("EV-2018022511223320873", notify.getId());
+        assertEquals("TRANSACTION.SUCCESS", notify.getEventType());
+        assertEquals("transaction", notify.getResource().getAssociatedData());
+        assertEquals("fdasflkja484w", notify.getResource().getNonce());
+    }
+
+    @Test
+    void writesRequestInSnakeCase() {
+        WxNativePayRequest request = new WxNativePayRequest();
+        request.setOutTradeNo("ORDER_1");
+        request.setNotifyUrl("https://api.woxgo.com/api/wx-pay/native/notify?a=b");
+        WxNativePayRequest.Amount amount = new WxNativePayRequest.Amount();
+        amount.setTotal(1);
+        amount.setCurrency("CNY");
+        request.setAmount(amount);
+
+        assertEquals("{\"out_trade_no\":\"ORDER_1\",\"notify_url\":\"https://api.woxgo.com/api/wx-pay/native/notify?a=b\","
+                + "\"amount\":{\"total\":1,\"currency\":\"CNY\"}}", JsonUtils.toJson(request));
+    }
+}
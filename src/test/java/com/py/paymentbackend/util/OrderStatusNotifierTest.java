@@ -0,0 +1,84 @@
+package com.py.paymentbackend.util;
+
+import com.py.paymentbackend.enums.OrderStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderStatusNotifierTest {
+
+    @Test
+    void signalWakesEveryWaiterOfTheOrderOnce() {
+        OrderStatusNotifier notifier = new OrderStatusNotifier();
+        AtomicInteger woken = new AtomicInteger();
+        AtomicInteger other = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            notifier.await("ORDER_1", status -> woken.incrementAndGet());
+        }
+        notifier.await("ORDER_2", status -> other.incrementAndGet());
+
+        notifier.signal("ORDER_1", OrderStatus.SUCCESS);
+        notifier.signal("ORDER_1", OrderStatus.SUCCESS);
+
+        assertEquals(10, woken.get());
+        assertEquals(0, other.get());
+        assertEquals(1, notifier.getWaitingOrders());
+    }
+
+    @Test
+    void removedWaiterIsNotWokenAndEmptyOrderIsDropped() {
+        OrderStatusNotifier notifier = new OrderStatusNotifier();
+        AtomicInteger woken = new AtomicInteger();
+        Consumer<OrderStatus> listener = status -> woken.incrementAndGet();
+        notifier.await("ORDER_1", listener);
+        notifier.remove("ORDER_1", listener);
+
+        notifier.signal("ORDER_1", OrderStatus.SUCCESS);
+
+        assertEquals(0, woken.get());
+        assertEquals(0, notifier.getWaitingOrders());
+    }
+
+    /**
+     * 登记与通知并发进行：先登记再查状态的等待者，要么被唤醒，要么查到的已经是新状态
+     */
+    @Test
+    void noWakeupIsLostUnderConcurrentRegistration() throws Exception {
+        OrderStatusNotifier notifier = new OrderStatusNotifier();
+        int rounds = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        AtomicInteger lost = new AtomicInteger();
+        for (int i = 0; i < rounds; i++) {
+            String orderNo = "ORDER_" + i;
+            AtomicInteger paid = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(2);
+            CountDownLatch woken = new CountDownLatch(1);
+            pool.execute(() -> {
+                notifier.await(orderNo, status -> woken.countDown());
+                if (paid.get() == 1) {
+                    woken.countDown();
+                }
+                done.countDown();
+            });
+            pool.execute(() -> {
+                paid.set(1);
+                notifier.signal(orderNo, OrderStatus.SUCCESS);
+                done.countDown();
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            if (!woken.await(1, TimeUnit.SECONDS)) {
+                lost.incrementAndGet();
+            }
+        }
+        pool.shutdown();
+        assertEquals(0, lost.get());
+    }
+}
@@ -0,0 +1,83 @@
+package com.py.paymentbackend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 压缩格式要与MySQL的 COMPRESS() 一致，迁移脚本搬运的旧报文才能在应用中读出来
+ */
+class PayloadCodecTest {
+
+    private static final String NOTIFY = "{\"mchid\":\"1558950191\",\"appid\":\"wx74862e0dfcf69954\","
+            + "\"out_trade_no\":\"ORDER_20220829123456789\",\"transaction_id\":\"4200001538202208291234567890\","
+            + "\"trade_type\":\"NATIVE\",\"trade_state\":\"SUCCESS\",\"trade_state_desc\":\"支付成功\","
+            + "\"bank_type\":\"OTHERS\",\"attach\":\"\",\"success_time\":\"2022-08-29T12:34:56+08:00\","
+            + "\"payer\":{\"openid\":\"oHkLxtx0vUqe-18p_AXTZ1innxkCY\"},"
+            + "\"amount\":{\"total\":1,\"payer_total\":1,\"currency\":\"CNY\",\"payer_currency\":\"CNY\"}}";
+
+    @Test
+    void roundTrip() {
+        byte[] compressed = PayloadCodec.compress(NOTIFY);
+        assertEquals(NOTIFY, PayloadCodec.decompress(compressed));
+        assertTrue(compressed.length < NOTIFY.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void largePayloadRoundTrip() {
+        StringBuilder bill = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            bill.append(NOTIFY).append('\n');
+        }
+        String text = bill.toString();
+        byte[] compressed = PayloadCodec.compress(text);
+        assertEquals(text, PayloadCodec.decompress(compressed));
+        assertTrue(compressed.length * 20 < text.length(), "压缩后:" + compressed.length);
+    }
+
+    @Test
+    void headerIsLittleEndianLengthFollowedByZlib() throws Exception {
+        byte[] compressed = PayloadCodec.compress(NOTIFY);
+        int length = NOTIFY.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(length & 0xff, compressed[0] & 0xff);
+        assertEquals(length >>> 8 & 0xff, compressed[1] & 0xff);
+        assertEquals(0, compressed[2]);
+        assertEquals(0, compressed[3]);
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed, 4, compressed.length - 4);
+        byte[] raw = new byte[length];
+        assertEquals(length, inflater.inflate(raw));
+        inflater.end();
+        assertArrayEquals(NOTIFY.getBytes(StandardCharsets.UTF_8), raw);
+    }
+
+    @Test
+    void readsMysqlCompressOutput() {
+        // SELECT HEX(COMPRESS('a')) => 01000000789C4B040000620062
+        byte[] mysql = {0x01, 0x00, 0x00, 0x00, 0x78, (byte) 0x9C, 0x4B, 0x04, 0x00, 0x00, 0x62, 0x00, 0x62};
+        assertEquals("a", PayloadCodec.decompress(mysql));
+    }
+
+    @Test
+    void emptyAndNull() {
+        assertEquals(0, PayloadCodec.compress("").length);
+        assertEquals("", PayloadCodec.decompress(new byte[0]));
+        assertNull(PayloadCodec.decompress(null));
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() {
+        byte[] compressed = PayloadCodec.compress(NOTIFY);
+        byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        assertThrows(IllegalArgumentException.class, () -> PayloadCodec.decompress(truncated));
+    }
+}
@@ -0,0 +1,130 @@
+package com.py.paymentbackend.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 模拟大量并发回调，验证分段锁：不同订单并行处理，同一订单互斥
+ */
+@Slf4j
+class StripedLockTest {
+
+    private static final int THREADS = 64;
+
+    /**
+     * 模拟回调中的 "查状态 -> 改状态 -> 记日志"，不是原子操作，只靠锁保证幂等
+     */
+    private void processOrder(StripedLock orderLock, Map<String, String> statusMap,
+                              Map<String, AtomicInteger> paymentLog, String orderNo) {
+        Lock lock = orderLock.lock(orderNo);
+        try {
+            if (!"NOTPAY".equals(statusMap.get(orderNo))) {
+                return;
+            }
+            Thread.yield();
+            statusMap.put(orderNo, "SUCCESS");
+            paymentLog.computeIfAbsent(orderNo, k -> new AtomicInteger()).incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    void distinctOrdersAreProcessedInParallel() throws Exception {
+        int orders = 5000;
+        StripedLock orderLock = new StripedLock(1024);
+        Map<String, String> statusMap = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> paymentLog = new ConcurrentHashMap<>();
+        for (int i = 0; i < orders; i++) {
+            statusMap.put("ORDER_" + i, "NOTPAY");
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(orders);
+        for (int i = 0; i < orders; i++) {
+            String orderNo = "ORDER_" + i;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    Lock lock = orderLock.lock(orderNo);
+                    try {
+                        int now = running.incrementAndGet();
+                        maxRunning.accumulateAndGet(now, Math::max);
+                        TimeUnit.MICROSECONDS.sleep(200);
+                        running.decrementAndGet();
+                    } finally {
+                        lock.unlock();
+                    }
+                    processOrder(orderLock, statusMap, paymentLog, orderNo);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        log.info("最大并行数:{}，加锁次数:{}，竞争次数:{}",
+                maxRunning.get(), orderLock.getAcquiredCount(), orderLock.getContendedCount());
+        assertTrue(maxRunning.get() > 1, "不同订单的回调应当并行处理");
+        assertEquals(orders, paymentLog.size());
+        paymentLog.values().forEach(count -> assertEquals(1, count.get()));
+        assertEquals(2L * orders, orderLock.getAcquiredCount());
+    }
+
+    @Test
+    void duplicateNotificationsForSameOrderAreMutuallyExclusive() throws Exception {
+        int notifications = 2000;
+        StripedLock orderLock = new StripedLock(16);
+        Map<String, String> statusMap = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> paymentLog = new ConcurrentHashMap<>();
+        statusMap.put("ORDER_1", "NOTPAY");
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(notifications);
+        for (int i = 0; i < notifications; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    processOrder(orderLock, statusMap, paymentLog, "ORDER_1");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        // 重复通知全部处理完（没有被静默丢弃），且只记录一次支付日志
+        assertEquals(notifications, orderLock.getAcquiredCount());
+        assertEquals(1, paymentLog.get("ORDER_1").get());
+    }
+
+    @Test
+    void stripesAreRoundedUpToPowerOfTwo() {
+        assertEquals(1024, new StripedLock(1000).getStripes());
+        assertEquals(1, new StripedLock(1).getStripes());
+    }
+}